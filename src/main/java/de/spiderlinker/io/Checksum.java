@@ -1,9 +1,12 @@
 package de.spiderlinker.io;
 
 import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.zip.CRC32;
@@ -74,6 +77,51 @@ public class Checksum {
         return gCRC.getValue();
     }
 
+    /**
+     * Creates the CRC32 checksum of the remaining bytes of the buffer, the position of the buffer is not changed
+     *
+     * @param buffer buffer to create the checksum of
+     * @return CRC32 checksum
+     */
+    public static long getCRC32Checksum(ByteBuffer buffer) {
+        CRC32 gCRC = new CRC32();
+        gCRC.update(buffer.duplicate());
+        return gCRC.getValue();
+    }
+
+    /**
+     * Creates the CRC32 checksum of a range of the file, the position of the channel is not changed
+     *
+     * @param channel  file to read
+     * @param position start of the range
+     * @param length   number of bytes of the range
+     * @return CRC32 checksum
+     * @throws IOException file is shorter than the range or not readable
+     */
+    public static long getCRC32Checksum(FileChannel channel, long position, long length) throws IOException {
+        CRC32 gCRC = new CRC32();
+
+        /* Buffer to load range */
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) Math.min(length, 1024 * 64));
+
+        long end = position + length;
+        while (position < end) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - position));
+            int bytes = channel.read(buf, position);
+            if (bytes < 0) {
+                throw new EOFException("File ends before " + end);
+            }
+
+            buf.flip();
+            gCRC.update(buf);
+            position += bytes;
+        }
+
+        /* return CRC32 Checksum */
+        return gCRC.getValue();
+    }
+
     public static String getSHA256(String password) {
         if (password == null) {
             return null;
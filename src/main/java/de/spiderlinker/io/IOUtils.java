@@ -1,5 +1,7 @@
 package de.spiderlinker.io;
 
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
 import de.spiderlinker.network.utils.ConnectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,14 +67,26 @@ public class IOUtils {
     }
 
     public static Object readObject(File file) throws IOException, InvalidClassException {
+        /* read Java serialized object */
+        return readObject(file, JavaSerializationCodec.INSTANCE);
+    }
+
+    /**
+     * Reads an object which was written with the given codec.
+     *
+     * @param file  file to read the object from
+     * @param codec codec the object was written with
+     * @return read object or null if the class of the object is unknown
+     * @throws IOException failed to read the file or the file contains no object of the codec
+     */
+    public static Object readObject(File file, Codec codec) throws IOException, InvalidClassException {
         /* object will be read and returned */
         Object obj = null;
 
-        /* ObjectInputStream and FileInputStream to read object */
-        try (FileInputStream fos = new FileInputStream(file);
-             ObjectInputStream stream = new ObjectInputStream(fos)) {
+        /* BufferedInputStream and FileInputStream to read object */
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
             /* read object from file */
-            obj = stream.readObject();
+            obj = codec.decode(stream);
         } catch (ClassNotFoundException e) {
             /*
              * This exception occurs if the read object is not found in this
@@ -90,14 +104,28 @@ public class IOUtils {
 
     public static void writeObject(Object obj, File file)
             throws NotSerializableException, IOException {
+        /* write Java serialized object */
+        writeObject(obj, file, JavaSerializationCodec.INSTANCE);
+    }
+
+    /**
+     * Writes the object with the given codec, it has to be read with the same codec.
+     *
+     * @param obj   object to write
+     * @param file  existing file to write the object to
+     * @param codec codec to encode the object with
+     * @throws IOException failed to encode the object or to write the file
+     */
+    public static void writeObject(Object obj, File file, Codec codec)
+            throws NotSerializableException, IOException {
 
         /* check, if passed file exists */
         FileCheck.validateFileExists(file);
 
-        /* create ObjectOutputStream to write object to file */
-        try (ObjectOutputStream stream = new ObjectOutputStream(new FileOutputStream(file))) {
+        /* create BufferedOutputStream to write object to file */
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
             /* write passed object to passed file */
-            stream.writeObject(obj);
+            codec.encode(obj, stream);
         }
     }
 
@@ -43,4 +43,13 @@ public class AutoCloseClient extends Client {
     closeConnection();
     return receivedData;
   }
+
+  @Override
+  public DataPackage exchange(DataPackage data) throws IOException {
+    try {
+      return super.exchange(data);
+    } finally {
+      closeConnection();
+    }
+  }
 }
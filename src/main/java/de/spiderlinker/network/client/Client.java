@@ -1,20 +1,48 @@
 package de.spiderlinker.network.client;
 
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
 import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.DataPackageRecycler;
+import de.spiderlinker.network.protocol.Compression;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.protocol.FrameCompressor;
 import de.spiderlinker.network.utils.ConnectionUtils;
+import de.spiderlinker.network.utils.ExecutorFactory;
 import de.spiderlinker.network.utils.SocketUtils;
+import de.spiderlinker.network.utils.TlsConfiguration;
 import de.spiderlinker.utils.StringUtils;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 public class Client {
 
+  /** Executes the asynchronous exchanges of all clients (on virtual threads if supported) */
+  private static final ExecutorService ASYNC_EXECUTOR = ExecutorFactory.newThreadPerTaskExecutor("Client-exchange", true);
+
   private String host;
   private int port;
   private int timeout;
+  private boolean keepAlive;
+  private boolean legacyProtocol;
+  private boolean numericRoutes;
+  private Compression compression = Compression.NONE;
+  private int compressionThreshold = FrameCompressor.DEFAULT_THRESHOLD;
+  private TlsConfiguration tls;
+  private Codec codec = CodecRegistry.getDefault();
+  private ClientMetrics metrics = ClientMetrics.getDefault();
+  private DataPackageRecycler recycler;
+  private boolean sessionEstablished;
   private Socket activeConnection;
+  private FrameCodec frameCodec;
+  private RequestPipeline pipeline;
 
   public Client() {
     // create empty clientSocket with no information about host or port
@@ -77,6 +105,183 @@ public class Client {
     this.timeout = SocketUtils.validateTimeout(timeout);
   }
 
+  /**
+   * Enables or disables the keep-alive mode. In keep-alive mode the handshake is performed only once per
+   * connection and all messages and answers are transferred over the same connection until
+   * {@link #closeConnection()} is called. The server has to support keep-alive sessions.
+   * Changing the mode closes the active connection.
+   *
+   * @param keepAlive whether the connection should be kept alive
+   */
+  public void setKeepAlive(boolean keepAlive) {
+    if (this.keepAlive != keepAlive) {
+      ConnectionUtils.close(activeConnection);
+    }
+    this.keepAlive = keepAlive;
+  }
+
+  /**
+   * @return whether this client keeps its connection alive
+   */
+  public boolean isKeepAlive() {
+    return keepAlive;
+  }
+
+  /**
+   * Enables or disables the legacy protocol. By default all handshakes and messages are sent as
+   * length-prefixed frames (see {@link FrameCodec}). The legacy protocol sends the handshake as text line and
+   * every message with its own object stream, it is required to connect to servers which do not support frames.
+   * Changing the protocol closes the active connection.
+   *
+   * @param legacyProtocol whether the legacy protocol should be used
+   */
+  public void setLegacyProtocol(boolean legacyProtocol) {
+    if (this.legacyProtocol != legacyProtocol) {
+      closeConnection();
+    }
+    this.legacyProtocol = legacyProtocol;
+  }
+
+  /**
+   * @return whether this client uses the legacy protocol
+   */
+  public boolean isLegacyProtocol() {
+    return legacyProtocol;
+  }
+
+  /**
+   * Enables or disables numeric routes for keep-alive sessions. The client requests the route table of the
+   * server in the handshake and sends DataPackages with a registered ID with its numeric route instead of the
+   * ID string. Servers without support for numeric routes ignore the request. The legacy protocol and single
+   * messages always send the ID string. Changing the setting closes the active connection.
+   *
+   * @param numericRoutes whether numeric routes should be requested
+   */
+  public void setNumericRoutes(boolean numericRoutes) {
+    if (this.numericRoutes != numericRoutes) {
+      closeConnection();
+    }
+    this.numericRoutes = numericRoutes;
+  }
+
+  /**
+   * @return whether this client requests numeric routes for keep-alive sessions
+   */
+  public boolean isNumericRoutes() {
+    return numericRoutes;
+  }
+
+  /**
+   * Requests the compression of the frames in the handshake. If the server accepts it, both sides compress the
+   * frames whose payload reaches the threshold, which pays off for large repetitive payloads (e.g. text) on
+   * slow links. Servers without support for the compression ignore the request. The legacy protocol is never
+   * compressed. Changing the setting closes the active connection.
+   *
+   * @param compression compression to request (default: {@link Compression#NONE})
+   */
+  public void setCompression(Compression compression) {
+    if (this.compression != Objects.requireNonNull(compression)) {
+      closeConnection();
+    }
+    this.compression = compression;
+  }
+
+  /**
+   * @return compression this client requests
+   */
+  public Compression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Sets the minimum payload length of the frames this client compresses. Changing the threshold closes the
+   * active connection.
+   *
+   * @param compressionThreshold minimum payload length in bytes (default: {@value FrameCompressor#DEFAULT_THRESHOLD})
+   */
+  public void setCompressionThreshold(int compressionThreshold) {
+    if (this.compressionThreshold != FrameCompressor.validateThreshold(compressionThreshold)) {
+      closeConnection();
+    }
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  /**
+   * Encrypts the connections of this client with TLS. Connections to the same host and port resume the
+   * session of the previous connection (as long as it is in the session cache of the configuration),
+   * so a client should keep using the same configuration. Changing the configuration closes the active connection.
+   *
+   * @param tls TLS configuration with the trusted certificates, null for unencrypted connections
+   */
+  public void setTls(TlsConfiguration tls) {
+    if (this.tls != tls) {
+      closeConnection();
+    }
+    this.tls = tls;
+  }
+
+  /**
+   * @return TLS configuration of this client, null if the connections are not encrypted
+   */
+  public TlsConfiguration getTls() {
+    return tls;
+  }
+
+  /**
+   * Sets the codec to encode the messages with. The legacy protocol always uses the Java serialization.
+   * Changing the codec closes the active connection.
+   *
+   * @param codec codec to encode messages with (has to be accepted by the server, see
+   *              {@link de.spiderlinker.network.server.ServerManager#setAcceptedCodecs})
+   */
+  public void setCodec(Codec codec) {
+    if (this.codec != Objects.requireNonNull(codec)) {
+      closeConnection();
+    }
+    this.codec = codec;
+  }
+
+  /**
+   * @return codec to encode messages with
+   */
+  public Codec getCodec() {
+    return codec;
+  }
+
+  /**
+   * Sets the recycler {@link #sendMessage(String, Object...)} acquires its packages from. The package is released
+   * once it is written, so sending does not allocate a package per message.
+   *
+   * @param recycler recycler of the sent packages, null if they are not pooled (default)
+   */
+  public void setRecycler(final DataPackageRecycler recycler) {
+    this.recycler = recycler;
+  }
+
+  public DataPackageRecycler getRecycler() {
+    return recycler;
+  }
+
+  /**
+   * Sets the metrics this client records its connections and exchanges to.
+   *
+   * @param metrics metrics to record to (by default the {@link ClientMetrics#getDefault() shared metrics})
+   */
+  public void setMetrics(ClientMetrics metrics) {
+    this.metrics = Objects.requireNonNull(metrics);
+  }
+
+  /**
+   * @return metrics this client records to
+   */
+  public ClientMetrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * @return Connected host of this clientSocket
    */
@@ -107,7 +312,18 @@ public class Client {
    */
   public void sendMessage(final String id, final Object... data)
       throws IOException {
-    this.sendMessage(new DataPackage(id, data));
+    if (recycler == null) {
+      this.sendMessage(new DataPackage(id, data));
+      return;
+    }
+
+    final DataPackage pooled = recycler.acquire(id);
+    try {
+      pooled.addData(data);
+      this.sendMessage(pooled);
+    } finally {
+      pooled.release();
+    }
   }
 
   /**
@@ -117,9 +333,17 @@ public class Client {
    * @throws IOException host not reachable or other connect exception
    */
   public void sendMessage(final DataPackage data) throws IOException {
+    send(data);
+  }
+
+  private void send(final DataPackage data) throws IOException {
     establishConnection();
-    ConnectionUtils.performHandshake(activeConnection);
-    ConnectionUtils.writeObject(activeConnection, data);
+    if (keepAlive) {
+      establishSession();
+    } else {
+      frameCodec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST);
+    }
+    frameCodec.writeObject(data);
   }
 
   /**
@@ -129,15 +353,111 @@ public class Client {
    * @throws IOException host not reachable or other network error
    */
   public DataPackage receiveMessage() throws IOException {
+    return receive();
+  }
+
+  private DataPackage receive() throws IOException {
     establishConnection();
-    ConnectionUtils.handleHandshake(activeConnection);
+    if (keepAlive) {
+      establishSession();
+    } else if (!frameCodec.isFramed()) {
+      // the server performs a handshake before every answer of the legacy protocol
+      frameCodec.acceptHandshake();
+    }
     return receiveData();
   }
 
+  /**
+   * Sends the passed data to the specified host (and port) and waits for its answer
+   *
+   * @param data data to be sent
+   * @return received answer from host
+   * @throws IOException host not reachable or other network error
+   */
+  public DataPackage exchange(final DataPackage data) throws IOException {
+    final long start = System.nanoTime();
+    boolean success = false;
+    try {
+      send(data);
+      final DataPackage answer = receive();
+      success = answer != null;
+      return answer;
+    } finally {
+      metrics.onExchange(start, success);
+    }
+  }
+
+  /**
+   * Sends the passed data over a new connection to the specified host (and port). The returned future is
+   * completed with the answer of the host. Every exchange blocks a thread of a shared executor while waiting
+   * for the answer. On Java 21+ these are virtual threads, so tens of thousands of exchanges may be
+   * in flight at the same time. The active connection of this client is not used, the new connection has
+   * the settings of this client (e.g. its TLS configuration and codec).
+   *
+   * @param data data to be sent
+   * @return future which is completed with the received answer (or exceptionally with the IOException)
+   */
+  public CompletableFuture<DataPackage> exchangeAsync(final DataPackage data) {
+    final Client connection = new Client(host, port, timeout);
+    connection.setLegacyProtocol(legacyProtocol);
+    connection.setNumericRoutes(numericRoutes);
+    connection.setTls(tls);
+    connection.setCodec(codec);
+    connection.setCompression(compression);
+    connection.setCompressionThreshold(compressionThreshold);
+    connection.setRecycler(recycler);
+    connection.setMetrics(metrics);
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return connection.exchange(data);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      } finally {
+        connection.closeConnection();
+      }
+    }, ASYNC_EXECUTOR);
+  }
+
+  /**
+   * Sends the passed data as request to the specified host (and port) without waiting for the answers of
+   * previous requests. All requests are pipelined over one keep-alive session, which is established by the
+   * first request and is independent of the active connection of this client. The answers are matched to
+   * their requests by the request ID, so they may arrive in any order.
+   * If no answer arrives within the timeout of this client (measured from sending the request), the request
+   * fails with a SocketTimeoutException, other requests and the session are not affected.
+   * The {@link de.spiderlinker.network.data.StreamBody} of an answer has to be read completely or closed,
+   * the answers of further requests are received after it.
+   * This method may be called by multiple threads at the same time.
+   *
+   * @param data data to be sent
+   * @return future which is completed with the answer of the host (or exceptionally with the IOException)
+   */
+  public CompletableFuture<DataPackage> request(final DataPackage data) {
+    try {
+      final long start = System.nanoTime();
+      final CompletableFuture<DataPackage> answer = getPipeline().request(data);
+      answer.whenComplete((received, error) -> metrics.onExchange(start, error == null));
+      return answer;
+    } catch (IOException e) {
+      metrics.onExchange(0, false);
+      final CompletableFuture<DataPackage> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+  }
+
+  private synchronized RequestPipeline getPipeline() throws IOException {
+    if (pipeline == null || pipeline.isClosed()) {
+      pipeline = RequestPipeline.open(host, port, timeout, tls, !legacyProtocol, codec, numericRoutes, compression,
+          compressionThreshold, metrics);
+    }
+    return pipeline;
+  }
+
   private DataPackage receiveData() throws IOException {
     DataPackage data = null;
     try {
-      Object rawData = ConnectionUtils.readObject(activeConnection);
+      Object rawData = frameCodec.readObject();
       if (rawData instanceof DataPackage) {
         data = (DataPackage) rawData;
       }
@@ -149,7 +469,31 @@ public class Client {
 
   private void establishConnection() throws IOException {
     if (isConnectionClosed()) {
-      activeConnection = SocketUtils.createSocket(host, port, timeout);
+      // e.g. the connection of a single message, which was closed by the host
+      releaseCompression();
+      try {
+        activeConnection = SocketUtils.createSocket(host, port, timeout, tls);
+      } catch (IOException e) {
+        metrics.onConnectFailed();
+        throw e;
+      }
+      frameCodec = metrics.onConnected(activeConnection, !legacyProtocol, codec);
+      // the route table only pays off if it is used for multiple messages
+      frameCodec.setRouteNegotiation(numericRoutes && keepAlive);
+      frameCodec.setCompression(compression);
+      frameCodec.setCompressionThreshold(compressionThreshold);
+      sessionEstablished = false;
+    }
+  }
+
+  private void establishSession() throws IOException {
+    if (!sessionEstablished) {
+      if (!frameCodec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE)) {
+        metrics.onHandshakeFailed();
+        closeConnection();
+        throw new IOException("Host " + host + ":" + port + " denied keep-alive session");
+      }
+      sessionEstablished = true;
     }
   }
 
@@ -158,10 +502,71 @@ public class Client {
   }
 
   /**
-   * Closes the active connection (if there is any)
+   * Connects to the host and establishes the keep-alive session (in keep-alive mode) without sending data
+   *
+   * @throws IOException host not reachable or denied the keep-alive session
+   */
+  void connect() throws IOException {
+    establishConnection();
+    if (keepAlive) {
+      establishSession();
+    }
+  }
+
+  /**
+   * @return whether the active connection is open
+   */
+  boolean isConnected() {
+    return !isConnectionClosed();
+  }
+
+  /**
+   * Checks whether the idle connection can still be used. The host must neither have closed it nor have sent
+   * data which was not requested. Waits at most one millisecond for data of the host.
+   *
+   * @return whether the connection is usable
+   */
+  boolean checkConnection() {
+    if (isConnectionClosed()) {
+      return false;
+    }
+
+    try {
+      activeConnection.setSoTimeout(1);
+      try {
+        // end of stream (closed by host) or unexpected data
+        activeConnection.getInputStream().read();
+        return false;
+      } catch (SocketTimeoutException e) {
+        return true;
+      } finally {
+        activeConnection.setSoTimeout(timeout);
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Closes the active connection and the connection of pending requests (if there is any)
    */
   public void closeConnection() {
     ConnectionUtils.close(activeConnection);
+    releaseCompression();
+    closePipeline();
+  }
+
+  private void releaseCompression() {
+    if (frameCodec != null) {
+      frameCodec.releaseCompression();
+    }
+  }
+
+  private synchronized void closePipeline() {
+    if (pipeline != null) {
+      pipeline.close();
+      pipeline = null;
+    }
   }
 
   /**
@@ -0,0 +1,146 @@
+package de.spiderlinker.network.client;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.metrics.HistogramSnapshot;
+import de.spiderlinker.network.metrics.LatencyHistogram;
+import de.spiderlinker.network.metrics.MeteredInputStream;
+import de.spiderlinker.network.metrics.MeteredOutputStream;
+import de.spiderlinker.network.protocol.FrameCodec;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of {@link Client}s: connections, handshakes, exchanges with their round trip latency and the
+ * transferred bytes. Clients are usually short-lived, so the metrics are shared: all clients record to the
+ * {@link #getDefault() default metrics} unless other metrics are set (e.g. per {@link ClientPool}).
+ * <br>
+ * Recording never allocates or locks, the counters are {@link LongAdder}s and the latencies are recorded by
+ * a striped {@link LatencyHistogram}. The values are read on demand via the getters or via JMX
+ * (see {@link de.spiderlinker.network.metrics.JmxExporter}).
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+  private static final ClientMetrics DEFAULT = new ClientMetrics();
+
+  private final LongAdder        openedConnections = new LongAdder();
+  private final LongAdder        failedConnections = new LongAdder();
+  private final LongAdder        handshakeFailures = new LongAdder();
+  private final LongAdder        exchanges         = new LongAdder();
+  private final LongAdder        failedExchanges   = new LongAdder();
+  private final LongAdder        bytesIn           = new LongAdder();
+  private final LongAdder        bytesOut          = new LongAdder();
+  private final LatencyHistogram latency           = new LatencyHistogram();
+
+  /**
+   * @return metrics of all clients without own metrics
+   */
+  public static ClientMetrics getDefault() {
+    return DEFAULT;
+  }
+
+  /*
+   * - - - - - - - - - - Recording - - - - - - - - - -
+   */
+
+  /**
+   * Counts the opened connection and creates the codec for it, which counts the transferred bytes.
+   *
+   * @param socket opened connection
+   * @param framed whether frames or the legacy protocol are used
+   * @param codec  codec to encode the messages with
+   * @return codec for the connection
+   * @throws IOException failed to get the streams of the socket
+   */
+  FrameCodec onConnected(final Socket socket, final boolean framed, final Codec codec) throws IOException {
+    openedConnections.increment();
+    return new FrameCodec(new MeteredInputStream(socket.getInputStream(), bytesIn),
+        new MeteredOutputStream(socket.getOutputStream(), bytesOut), framed, codec);
+  }
+
+  void onConnectFailed() {
+    failedConnections.increment();
+  }
+
+  void onHandshakeFailed() {
+    handshakeFailures.increment();
+  }
+
+  /**
+   * @param startNanos start of the exchange (see {@link System#nanoTime()})
+   * @param success    whether the answer was received
+   */
+  void onExchange(final long startNanos, final boolean success) {
+    if (success) {
+      exchanges.increment();
+      latency.record(System.nanoTime() - startNanos);
+    } else {
+      failedExchanges.increment();
+    }
+  }
+
+  /*
+   * - - - - - - - - - - Reading - - - - - - - - - -
+   */
+
+  /**
+   * @return round trip time of the successful exchanges (until the answer was received)
+   */
+  public HistogramSnapshot getLatency() {
+    return latency.getSnapshot();
+  }
+
+  @Override
+  public long getOpenedConnections() {
+    return openedConnections.sum();
+  }
+
+  @Override
+  public long getFailedConnections() {
+    return failedConnections.sum();
+  }
+
+  @Override
+  public long getHandshakeFailures() {
+    return handshakeFailures.sum();
+  }
+
+  @Override
+  public long getExchanges() {
+    return exchanges.sum();
+  }
+
+  @Override
+  public long getFailedExchanges() {
+    return failedExchanges.sum();
+  }
+
+  @Override
+  public long getBytesIn() {
+    return bytesIn.sum();
+  }
+
+  @Override
+  public long getBytesOut() {
+    return bytesOut.sum();
+  }
+
+  @Override
+  public long getLatencyMedian() {
+    return getLatency().getMedian();
+  }
+
+  @Override
+  public long getLatency99thPercentile() {
+    return getLatency().get99thPercentile();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ClientMetrics[connections=%d, failedConnections=%d, handshakeFailures=%d, exchanges=%d, "
+            + "failedExchanges=%d, bytesIn=%d, bytesOut=%d, %s]", getOpenedConnections(), getFailedConnections(),
+        getHandshakeFailures(), getExchanges(), getFailedExchanges(), getBytesIn(), getBytesOut(), getLatency());
+  }
+
+}
@@ -0,0 +1,26 @@
+package de.spiderlinker.network.client;
+
+/**
+ * Attributes of the {@link ClientMetrics} exported via JMX. Latencies are in microseconds.
+ */
+public interface ClientMetricsMXBean {
+
+  long getOpenedConnections();
+
+  long getFailedConnections();
+
+  long getHandshakeFailures();
+
+  long getExchanges();
+
+  long getFailedExchanges();
+
+  long getBytesIn();
+
+  long getBytesOut();
+
+  long getLatencyMedian();
+
+  long getLatency99thPercentile();
+
+}
@@ -0,0 +1,497 @@
+package de.spiderlinker.network.client;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.utils.ExecutorFactory;
+import de.spiderlinker.network.utils.SocketUtils;
+import de.spiderlinker.network.utils.TlsConfiguration;
+import de.spiderlinker.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of keep-alive connections, kept separately for every host and port. A borrowed {@link PooledClient}
+ * reuses an idle connection if there is one, so the connect and the handshake are saved.
+ * The client has to be returned with {@link PooledClient#close()}, usually in a try-with-resources block:
+ * <pre>
+ * try (PooledClient client = pool.borrow(host, port)) {
+ *   answer = client.exchange(data);
+ * }
+ * </pre>
+ * At most {@link #getMaxConnections()} clients per host are borrowed at the same time, further borrowers wait
+ * up to {@link #getBorrowTimeout()} and (if fair) get the connections in the order they asked for them.
+ * A maintenance thread closes idle connections which are broken, expired or idle for too long and opens
+ * connections in advance to keep {@link #getMinIdle()} idle connections per host.
+ * The settings have to be configured before the first client is borrowed.
+ */
+public class ClientPool implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClientPool.class);
+
+  /** Default maximum number of borrowed connections per host */
+  public static final int DEFAULT_MAX_CONNECTIONS = 8;
+  /** Default maximum lifetime of a connection: 30 minutes */
+  public static final int DEFAULT_MAX_LIFETIME = 30 * 60 * 1000;
+  /** Default maximum idle time of a connection, below the default keep-alive timeout of the server */
+  public static final int DEFAULT_MAX_IDLE_TIME = 30 * 1000;
+  /** Default interval of the health checks of idle connections */
+  public static final int DEFAULT_HEALTH_CHECK_INTERVAL = 5000;
+
+  private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+  private final LongAdder hits               = new LongAdder();
+  private final LongAdder misses             = new LongAdder();
+  private final LongAdder borrowTimeouts     = new LongAdder();
+  private final LongAdder createdConnections = new LongAdder();
+  private final LongAdder closedConnections  = new LongAdder();
+  private final LongAdder totalWaitNanos     = new LongAdder();
+
+  private int minIdle;
+  private int maxIdle = DEFAULT_MAX_CONNECTIONS;
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private int maxLifetime = DEFAULT_MAX_LIFETIME;
+  private int maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+  private int borrowTimeout = SocketUtils.DEFAULT_TIMEOUT;
+  private int healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+  private int timeout = SocketUtils.DEFAULT_TIMEOUT;
+  private boolean fair = true;
+  private Codec codec = CodecRegistry.getDefault();
+  private TlsConfiguration tls;
+  private ClientMetrics metrics = ClientMetrics.getDefault();
+
+  private ScheduledExecutorService maintenance;
+  private volatile boolean closed;
+
+  /**
+   * Borrows a client connected to the given host. The client has to be returned with {@link PooledClient#close()}.
+   *
+   * @param host host to connect to
+   * @param port port of host to connect to
+   * @return client with an established keep-alive session
+   * @throws SocketTimeoutException no connection became available within the borrow timeout
+   * @throws IOException            host not reachable or denied the keep-alive session
+   */
+  public PooledClient borrow(final String host, final int port) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Pool is closed!");
+    }
+
+    final Endpoint endpoint = getEndpoint(StringUtils.requireNonNullOrEmpty(host), SocketUtils.validatePort(port));
+    acquirePermit(endpoint);
+    try {
+      PooledClient client = pollIdleClient(endpoint);
+      if (client != null) {
+        hits.increment();
+      } else {
+        misses.increment();
+        client = createClient(endpoint);
+      }
+      client.markBorrowed();
+      return client;
+    } catch (IOException | RuntimeException e) {
+      endpoint.permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Sends the data over a pooled connection to the given host and waits for its answer
+   *
+   * @param host host to send the data to
+   * @param port port of host
+   * @param data data to be sent
+   * @return received answer from host
+   * @throws IOException no connection available, host not reachable or other network error
+   */
+  public DataPackage exchange(final String host, final int port, final DataPackage data) throws IOException {
+    try (PooledClient client = borrow(host, port)) {
+      return client.exchange(data);
+    }
+  }
+
+  private Endpoint getEndpoint(final String host, final int port) {
+    final String key = host + ":" + port;
+    Endpoint endpoint = endpoints.get(key);
+    if (endpoint == null) {
+      endpoint = endpoints.computeIfAbsent(key, k -> new Endpoint(host, port, maxConnections, fair));
+      startMaintenance();
+    }
+    return endpoint;
+  }
+
+  private void acquirePermit(final Endpoint endpoint) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      if (borrowTimeout == 0) {
+        endpoint.permits.acquire();
+      } else if (!endpoint.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+        borrowTimeouts.increment();
+        throw new SocketTimeoutException("No connection to " + endpoint + " available within " + borrowTimeout + " ms");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a connection to " + endpoint);
+    } finally {
+      totalWaitNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  private PooledClient pollIdleClient(final Endpoint endpoint) {
+    PooledClient client;
+    while ((client = endpoint.idleClients.pollFirst()) != null) {
+      endpoint.idleCount.decrementAndGet();
+      if (isReusable(client, System.nanoTime())) {
+        return client;
+      }
+      closeClient(client);
+    }
+    return null;
+  }
+
+  private PooledClient createClient(final Endpoint endpoint) throws IOException {
+    final PooledClient client = new PooledClient(this, endpoint, timeout);
+    client.setCodec(codec);
+    client.setTls(tls);
+    client.setMetrics(metrics);
+    client.connect();
+    createdConnections.increment();
+    LOGGER.debug("Opened pooled connection to {}", endpoint);
+    return client;
+  }
+
+  /**
+   * Called by {@link PooledClient#close()}, puts the client back to the idle connections or closes it
+   */
+  void release(final PooledClient client) {
+    final Endpoint endpoint = client.getEndpoint();
+    if (closed || !isReusable(client, System.nanoTime()) || endpoint.idleCount.get() >= maxIdle) {
+      closeClient(client);
+    } else {
+      // most recently used first, so the oldest connections expire if there are too many
+      endpoint.idleClients.offerFirst(client);
+      endpoint.idleCount.incrementAndGet();
+    }
+    endpoint.permits.release();
+  }
+
+  private boolean isReusable(final PooledClient client, final long now) {
+    return !client.isBroken() && client.isKeepAlive() && client.isConnected()
+        && (maxLifetime == 0 || now - client.getCreatedAt() < TimeUnit.MILLISECONDS.toNanos(maxLifetime))
+        && (maxIdleTime == 0 || now - client.getLastUsedAt() < TimeUnit.MILLISECONDS.toNanos(maxIdleTime));
+  }
+
+  private void closeClient(final PooledClient client) {
+    client.closeConnection();
+    closedConnections.increment();
+    LOGGER.debug("Closed pooled connection to {}", client.getEndpoint());
+  }
+
+  /*
+   * - - - - - - - - - - Maintenance - - - - - - - - - -
+   */
+
+  private synchronized void startMaintenance() {
+    if (maintenance == null && healthCheckInterval > 0 && !closed) {
+      maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = ExecutorFactory.newThreadFactory("ClientPool-maintenance", false).newThread(runnable);
+        thread.setDaemon(true);
+        return thread;
+      });
+      maintenance.scheduleWithFixedDelay(this::maintain, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Closes broken and expired idle connections and opens new ones to keep the minimum of idle connections
+   */
+  void maintain() {
+    for (final Endpoint endpoint : endpoints.values()) {
+      // copied, otherwise the iteration would visit the checked clients appended again
+      for (final PooledClient client : new ArrayList<>(endpoint.idleClients)) {
+        // removed while checking, so no borrower uses the connection at the same time
+        if (!endpoint.idleClients.remove(client)) {
+          continue;
+        }
+
+        endpoint.idleCount.decrementAndGet();
+        if (isReusable(client, System.nanoTime()) && client.checkConnection()) {
+          endpoint.idleClients.offerLast(client);
+          endpoint.idleCount.incrementAndGet();
+        } else {
+          closeClient(client);
+        }
+      }
+
+      fillIdleClients(endpoint);
+    }
+  }
+
+  private void fillIdleClients(final Endpoint endpoint) {
+    while (!closed && endpoint.idleCount.get() < minIdle
+        && endpoint.idleCount.get() + endpoint.getActiveCount() < maxConnections) {
+      try {
+        endpoint.idleClients.offerLast(createClient(endpoint));
+        endpoint.idleCount.incrementAndGet();
+      } catch (IOException e) {
+        LOGGER.warn("Failed to open idle connection to {}", endpoint, e);
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return snapshot of the metrics of this pool
+   */
+  public ClientPoolStatistics getStatistics() {
+    int active = 0;
+    int idle = 0;
+    for (final Endpoint endpoint : endpoints.values()) {
+      active += endpoint.getActiveCount();
+      idle += endpoint.idleCount.get();
+    }
+    return new ClientPoolStatistics(hits.sum(), misses.sum(), borrowTimeouts.sum(), createdConnections.sum(),
+        closedConnections.sum(), active, idle, totalWaitNanos.sum());
+  }
+
+  /**
+   * Closes all idle connections, borrowed connections are closed when they are returned
+   */
+  @Override
+  public void close() {
+    closed = true;
+    synchronized (this) {
+      if (maintenance != null) {
+        maintenance.shutdownNow();
+      }
+    }
+
+    for (final Endpoint endpoint : endpoints.values()) {
+      PooledClient client;
+      while ((client = endpoint.idleClients.pollFirst()) != null) {
+        endpoint.idleCount.decrementAndGet();
+        closeClient(client);
+      }
+    }
+  }
+
+  /*
+   * - - - - - - - - - - Settings - - - - - - - - - -
+   */
+
+  private void requireNotUsed() {
+    if (!endpoints.isEmpty()) {
+      throw new IllegalStateException("Pool is already in use!");
+    }
+  }
+
+  /**
+   * @param minIdle number of idle connections per host which are opened in advance by the maintenance thread
+   */
+  public void setMinIdle(final int minIdle) {
+    requireNotUsed();
+    if (minIdle < 0) {
+      throw new IllegalArgumentException("Invalid minimum of idle connections! (minIdle>=0)");
+    }
+    this.minIdle = minIdle;
+  }
+
+  public int getMinIdle() {
+    return minIdle;
+  }
+
+  /**
+   * @param maxIdle maximum number of idle connections per host, further returned connections are closed
+   */
+  public void setMaxIdle(final int maxIdle) {
+    requireNotUsed();
+    if (maxIdle < 0) {
+      throw new IllegalArgumentException("Invalid maximum of idle connections! (maxIdle>=0)");
+    }
+    this.maxIdle = maxIdle;
+  }
+
+  public int getMaxIdle() {
+    return maxIdle;
+  }
+
+  /**
+   * @param maxConnections maximum number of connections per host which are borrowed at the same time
+   */
+  public void setMaxConnections(final int maxConnections) {
+    requireNotUsed();
+    if (maxConnections <= 0) {
+      throw new IllegalArgumentException("Invalid maximum of connections! (maxConnections>0)");
+    }
+    this.maxConnections = maxConnections;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * @param maxLifetime time in milliseconds after which a connection is closed instead of reused (0 = unlimited)
+   */
+  public void setMaxLifetime(final int maxLifetime) {
+    requireNotUsed();
+    this.maxLifetime = SocketUtils.validateTimeout(maxLifetime);
+  }
+
+  public int getMaxLifetime() {
+    return maxLifetime;
+  }
+
+  /**
+   * Idle connections should be closed by the pool before the server closes them after its keep-alive timeout.
+   *
+   * @param maxIdleTime time in milliseconds after which an unused connection is closed (0 = unlimited)
+   */
+  public void setMaxIdleTime(final int maxIdleTime) {
+    requireNotUsed();
+    this.maxIdleTime = SocketUtils.validateTimeout(maxIdleTime);
+  }
+
+  public int getMaxIdleTime() {
+    return maxIdleTime;
+  }
+
+  /**
+   * @param borrowTimeout time in milliseconds to wait for an available connection (0 = unlimited)
+   */
+  public void setBorrowTimeout(final int borrowTimeout) {
+    requireNotUsed();
+    this.borrowTimeout = SocketUtils.validateTimeout(borrowTimeout);
+  }
+
+  public int getBorrowTimeout() {
+    return borrowTimeout;
+  }
+
+  /**
+   * @param healthCheckInterval interval in milliseconds of the maintenance thread (0 = no maintenance)
+   */
+  public void setHealthCheckInterval(final int healthCheckInterval) {
+    requireNotUsed();
+    this.healthCheckInterval = SocketUtils.validateTimeout(healthCheckInterval);
+  }
+
+  public int getHealthCheckInterval() {
+    return healthCheckInterval;
+  }
+
+  /**
+   * @param timeout time in milliseconds the clients wait for an answer
+   */
+  public void setTimeout(final int timeout) {
+    requireNotUsed();
+    this.timeout = SocketUtils.validateTimeout(timeout);
+  }
+
+  public int getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * @param fair whether waiting borrowers get the connections in the order they asked for them
+   */
+  public void setFair(final boolean fair) {
+    requireNotUsed();
+    this.fair = fair;
+  }
+
+  public boolean isFair() {
+    return fair;
+  }
+
+  /**
+   * @param codec codec the clients encode their messages with
+   */
+  public void setCodec(final Codec codec) {
+    requireNotUsed();
+    this.codec = Objects.requireNonNull(codec);
+  }
+
+  public Codec getCodec() {
+    return codec;
+  }
+
+  /**
+   * @param tls TLS configuration of the connections (shared, so reconnects resume their session), null for
+   *            unencrypted connections
+   */
+  public void setTls(final TlsConfiguration tls) {
+    requireNotUsed();
+    this.tls = tls;
+  }
+
+  public TlsConfiguration getTls() {
+    return tls;
+  }
+
+  /**
+   * @param metrics metrics the pooled clients record their connections and exchanges to
+   */
+  public void setMetrics(final ClientMetrics metrics) {
+    requireNotUsed();
+    this.metrics = Objects.requireNonNull(metrics);
+  }
+
+  public ClientMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Connections of one host and port
+   */
+  static final class Endpoint {
+
+    private final String host;
+    private final int port;
+    private final int maxConnections;
+    private final Semaphore permits;
+    private final Deque<PooledClient> idleClients = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    Endpoint(final String host, final int port, final int maxConnections, final boolean fair) {
+      this.host = host;
+      this.port = port;
+      this.maxConnections = maxConnections;
+      this.permits = new Semaphore(maxConnections, fair);
+    }
+
+    String getHost() {
+      return host;
+    }
+
+    int getPort() {
+      return port;
+    }
+
+    int getActiveCount() {
+      return maxConnections - permits.availablePermits();
+    }
+
+    @Override
+    public String toString() {
+      return host + ":" + port;
+    }
+  }
+
+}
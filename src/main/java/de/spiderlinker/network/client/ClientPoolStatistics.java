@@ -0,0 +1,105 @@
+package de.spiderlinker.network.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of a {@link ClientPool}, summed over all hosts.
+ */
+public class ClientPoolStatistics {
+
+  private final long hits;
+  private final long misses;
+  private final long borrowTimeouts;
+  private final long createdConnections;
+  private final long closedConnections;
+  private final int activeConnections;
+  private final int idleConnections;
+  private final long totalWaitNanos;
+
+  ClientPoolStatistics(final long hits, final long misses, final long borrowTimeouts,
+                       final long createdConnections, final long closedConnections,
+                       final int activeConnections, final int idleConnections, final long totalWaitNanos) {
+    this.hits = hits;
+    this.misses = misses;
+    this.borrowTimeouts = borrowTimeouts;
+    this.createdConnections = createdConnections;
+    this.closedConnections = closedConnections;
+    this.activeConnections = activeConnections;
+    this.idleConnections = idleConnections;
+    this.totalWaitNanos = totalWaitNanos;
+  }
+
+  /**
+   * @return number of borrowed clients which reused an idle connection
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return number of borrowed clients which had to open a new connection
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return number of borrows which failed because no connection became available in time
+   */
+  public long getBorrowTimeouts() {
+    return borrowTimeouts;
+  }
+
+  /**
+   * @return number of opened connections (including the idle connections opened in advance)
+   */
+  public long getCreatedConnections() {
+    return createdConnections;
+  }
+
+  /**
+   * @return number of closed connections (broken, expired or exceeding the maximum of idle connections)
+   */
+  public long getClosedConnections() {
+    return closedConnections;
+  }
+
+  /**
+   * @return number of currently borrowed clients
+   */
+  public int getActiveConnections() {
+    return activeConnections;
+  }
+
+  /**
+   * @return number of connections currently waiting in the pool
+   */
+  public int getIdleConnections() {
+    return idleConnections;
+  }
+
+  /**
+   * @param unit unit of the returned time
+   * @return time all borrowers waited for a connection to become available
+   */
+  public long getTotalWaitTime(final TimeUnit unit) {
+    return unit.convert(totalWaitNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param unit unit of the returned time
+   * @return average time a borrower waited for a connection to become available
+   */
+  public double getAverageWaitTime(final TimeUnit unit) {
+    final long borrows = hits + misses + borrowTimeouts;
+    return borrows == 0 ? 0 : (double) totalWaitNanos / borrows / TimeUnit.NANOSECONDS.convert(1, unit);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ClientPool[hits=%d, misses=%d, timeouts=%d, created=%d, closed=%d, active=%d, idle=%d, avgWait=%.3fms]",
+        hits, misses, borrowTimeouts, createdConnections, closedConnections, activeConnections, idleConnections,
+        getAverageWaitTime(TimeUnit.MILLISECONDS));
+  }
+
+}
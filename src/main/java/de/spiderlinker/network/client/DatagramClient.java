@@ -0,0 +1,152 @@
+package de.spiderlinker.network.client;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.protocol.DatagramCodec;
+import de.spiderlinker.network.utils.SocketUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Sends DataPackages as UDP datagrams to a {@link de.spiderlinker.network.server.DatagramServerManager}.
+ * Unlike the {@link Client} there is no connection and no handshake, so a message costs a single system call,
+ * but it may be lost, duplicated or reordered and can not be answered (fire and forget).
+ * <br>
+ * A batch of messages is packed into as few datagrams as possible (see {@link #sendMessages(Collection)}).
+ * A message whose frame exceeds the maximum datagram size is rejected with an {@link IOException}: datagrams above
+ * the MTU of the network are fragmented by IP, and a single lost fragment loses the whole datagram.
+ * <br>
+ * The client is thread safe, its socket is opened with the first message and kept until {@link #close()}.
+ */
+public class DatagramClient implements Closeable {
+
+  private final InetSocketAddress    target;
+  private final int                  maxDatagramSize;
+  private final DatagramCodec.Sender sender = this::send;
+  private Codec                      codec  = CodecRegistry.getDefault();
+  private DatagramCodec              datagramCodec;
+  private DatagramChannel            channel;
+  private long                       sentDatagrams;
+
+  /**
+   * @param host Host to send to
+   * @param port Port of host to send to
+   */
+  public DatagramClient(final String host, final int port) {
+    this(host, port, DatagramCodec.DEFAULT_MAX_DATAGRAM_SIZE);
+  }
+
+  /**
+   * @param host            Host to send to
+   * @param port            Port of host to send to
+   * @param maxDatagramSize maximum number of bytes of a datagram (at most {@link DatagramCodec#MAX_DATAGRAM_SIZE})
+   */
+  public DatagramClient(final String host, final int port, final int maxDatagramSize) {
+    this.target = new InetSocketAddress(host, SocketUtils.validatePort(port));
+    this.maxDatagramSize = DatagramCodec.validateDatagramSize(maxDatagramSize);
+  }
+
+  /**
+   * Sets the codec to encode the messages with.
+   *
+   * @param codec codec to encode messages with (has to be accepted by the server, see
+   *              {@link de.spiderlinker.network.server.DatagramServerManager#setAcceptedCodecs})
+   */
+  public synchronized void setCodec(Codec codec) {
+    this.codec = Objects.requireNonNull(codec);
+    this.datagramCodec = null;
+  }
+
+  public synchronized Codec getCodec() {
+    return codec;
+  }
+
+  public int getMaxDatagramSize() {
+    return maxDatagramSize;
+  }
+
+  /**
+   * @return number of datagrams sent by this client
+   */
+  public synchronized long getSentDatagrams() {
+    return sentDatagrams;
+  }
+
+  /**
+   * Sends all passed data with the given id as a single datagram.
+   *
+   * @param id   id of data package
+   * @param data data to be sent
+   * @throws IOException message exceeds the maximum datagram size or failed to send
+   */
+  public void sendMessage(final String id, final Object... data) throws IOException {
+    sendMessage(new DataPackage(id, data));
+  }
+
+  /**
+   * Sends the data as a single datagram.
+   *
+   * @param data data to be sent
+   * @throws IOException message exceeds the maximum datagram size or failed to send
+   */
+  public synchronized void sendMessage(final DataPackage data) throws IOException {
+    final DatagramCodec writer = getDatagramCodec();
+    writer.write(data, sender);
+    writer.flush(sender);
+  }
+
+  /**
+   * Sends the messages packed into as few datagrams as possible, in the given order.
+   * If a message exceeds the maximum datagram size, the messages before it are sent, the others are not.
+   *
+   * @param messages messages to be sent
+   * @return number of sent datagrams
+   * @throws IOException a message exceeds the maximum datagram size or failed to send
+   */
+  public synchronized int sendMessages(final Collection<DataPackage> messages) throws IOException {
+    final DatagramCodec writer = getDatagramCodec();
+    final long before = sentDatagrams;
+    try {
+      for (final DataPackage message : messages) {
+        writer.write(message, sender);
+      }
+    } finally {
+      writer.flush(sender);
+    }
+    return (int) (sentDatagrams - before);
+  }
+
+  /**
+   * Closes the socket of this client, it is opened again by the next message.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  private DatagramCodec getDatagramCodec() {
+    if (datagramCodec == null) {
+      datagramCodec = new DatagramCodec(codec, maxDatagramSize);
+    }
+    return datagramCodec;
+  }
+
+  private void send(final ByteBuffer datagram) throws IOException {
+    if (channel == null) {
+      channel = DatagramChannel.open();
+    }
+    channel.send(datagram, target);
+    sentDatagrams++;
+  }
+
+}
@@ -0,0 +1,91 @@
+package de.spiderlinker.network.client;
+
+import de.spiderlinker.network.data.DataPackage;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client borrowed from a {@link ClientPool}. Its connection is a keep-alive session which is returned to the pool
+ * by {@link #close()} instead of being closed. After a failed send or receive the state of the connection is
+ * unknown, so it is closed when the client is returned.
+ */
+public class PooledClient extends Client implements AutoCloseable {
+
+  private final ClientPool pool;
+  private final ClientPool.Endpoint endpoint;
+  private final long createdAt = System.nanoTime();
+  private final AtomicBoolean borrowed = new AtomicBoolean();
+
+  private volatile long lastUsedAt = createdAt;
+  private volatile boolean broken;
+
+  PooledClient(final ClientPool pool, final ClientPool.Endpoint endpoint, final int timeout) {
+    super(endpoint.getHost(), endpoint.getPort(), timeout);
+    this.pool = pool;
+    this.endpoint = endpoint;
+    setKeepAlive(true);
+  }
+
+  @Override
+  public void sendMessage(final DataPackage data) throws IOException {
+    try {
+      super.sendMessage(data);
+    } catch (IOException e) {
+      broken = true;
+      throw e;
+    }
+  }
+
+  @Override
+  public DataPackage receiveMessage() throws IOException {
+    try {
+      return super.receiveMessage();
+    } catch (IOException e) {
+      broken = true;
+      throw e;
+    }
+  }
+
+  @Override
+  public DataPackage exchange(final DataPackage data) throws IOException {
+    try {
+      return super.exchange(data);
+    } catch (IOException e) {
+      broken = true;
+      throw e;
+    }
+  }
+
+  /**
+   * Returns this client to its pool. Calling this method more than once has no effect.
+   */
+  @Override
+  public void close() {
+    if (borrowed.compareAndSet(true, false)) {
+      lastUsedAt = System.nanoTime();
+      pool.release(this);
+    }
+  }
+
+  void markBorrowed() {
+    borrowed.set(true);
+  }
+
+  ClientPool.Endpoint getEndpoint() {
+    return endpoint;
+  }
+
+  long getCreatedAt() {
+    return createdAt;
+  }
+
+  long getLastUsedAt() {
+    return lastUsedAt;
+  }
+
+  boolean isBroken() {
+    return broken;
+  }
+
+}
@@ -0,0 +1,299 @@
+package de.spiderlinker.network.client;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.StreamBody;
+import de.spiderlinker.network.protocol.Compression;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import de.spiderlinker.network.utils.ExecutorFactory;
+import de.spiderlinker.network.utils.SocketUtils;
+import de.spiderlinker.network.utils.TlsConfiguration;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep-alive session which transfers many requests at the same time. Every request gets an ID which is
+ * sent with the request and returned by the server with the answer. A reader thread receives the answers
+ * and completes the future of the request with the same ID, regardless of the order of the answers.
+ * <br>
+ * Every request has its own deadline (send time plus timeout), so a request without an answer fails
+ * without affecting the other requests or the session. An idle session never times out.
+ * <br>
+ * The chunks of a {@link StreamBody} of an answer precede the next answer on the connection, so the reader
+ * waits until the body was read completely or closed by the caller of the request before it receives
+ * further answers. The body of an answer whose request already expired is discarded.
+ */
+class RequestPipeline implements Runnable {
+
+  /** Expires the requests of all pipelines, the tasks are short and never block */
+  private static final ScheduledThreadPoolExecutor TIMEOUTS = newTimeoutScheduler();
+
+  private final Socket socket;
+  private final FrameCodec frameCodec;
+  private final int timeout;
+  private final Map<Long, CompletableFuture<DataPackage>> pendingRequests = new ConcurrentHashMap<>();
+  private final AtomicLong nextRequestId = new AtomicLong();
+
+  private volatile boolean closed;
+  /** Body of an answer which is read by the caller of its request, null if there is none */
+  private volatile AnswerBody currentBody;
+
+  private RequestPipeline(final Socket socket, final FrameCodec frameCodec, final int timeout) {
+    this.socket = socket;
+    this.frameCodec = frameCodec;
+    this.timeout = timeout;
+  }
+
+  private static ScheduledThreadPoolExecutor newTimeoutScheduler() {
+    final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+      final Thread thread = ExecutorFactory.newThreadFactory("Client-pipeline-timeouts", false).newThread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    });
+    // answered requests must not keep their expiry task (and the future) until the deadline
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+
+  /**
+   * Connects to the given host and starts a keep-alive session to send requests over.
+   *
+   * @param host          host to connect to
+   * @param port          port of host to connect to
+   * @param timeout       time to wait for the answer of a request, 0 to wait forever
+   * @param tls           TLS configuration, null for an unencrypted connection
+   * @param framed        whether frames or the legacy protocol are used
+   * @param codec         codec to encode the requests with (framed protocol only)
+   * @param numericRoutes whether numeric routes are requested in the handshake (framed protocol only)
+   * @param compression   compression requested in the handshake (framed protocol only)
+   * @param threshold     minimum payload length of a compressed frame
+   * @param metrics       metrics to record the connection to
+   * @return pipeline connected to the host
+   * @throws IOException host not reachable or denied the keep-alive session
+   */
+  static RequestPipeline open(final String host, final int port, final int timeout, final TlsConfiguration tls,
+                              final boolean framed, final Codec codec, final boolean numericRoutes,
+                              final Compression compression, final int threshold,
+                              final ClientMetrics metrics) throws IOException {
+    final Socket socket;
+    try {
+      socket = SocketUtils.createSocket(host, port, timeout, tls);
+    } catch (IOException e) {
+      metrics.onConnectFailed();
+      throw e;
+    }
+    final FrameCodec frameCodec = metrics.onConnected(socket, framed, codec);
+    frameCodec.setRouteNegotiation(numericRoutes);
+    frameCodec.setCompression(compression);
+    frameCodec.setCompressionThreshold(threshold);
+    try {
+      if (!frameCodec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE)) {
+        metrics.onHandshakeFailed();
+        throw new IOException("Host " + host + ":" + port + " denied keep-alive session");
+      }
+    } catch (IOException e) {
+      ConnectionUtils.close(socket);
+      frameCodec.releaseCompression();
+      throw e;
+    }
+
+    // the reader waits for answers as long as the session is open, requests expire by their own deadline
+    socket.setSoTimeout(0);
+    final RequestPipeline pipeline = new RequestPipeline(socket, frameCodec, timeout);
+    final Thread reader = ExecutorFactory.newThreadFactory("Client-pipeline-" + host + ":" + port, true).newThread(pipeline);
+    reader.setDaemon(true);
+    reader.start();
+    return pipeline;
+  }
+
+  /**
+   * Sends the data as new request without waiting for the answers of previous requests.
+   *
+   * @param data data to be sent
+   * @return future which is completed with the answer to the request, or exceptionally with a
+   * {@link SocketTimeoutException} if no answer arrives within the timeout
+   */
+  CompletableFuture<DataPackage> request(final DataPackage data) {
+    final long requestId = nextRequestId.incrementAndGet();
+    final CompletableFuture<DataPackage> answer = new CompletableFuture<>();
+    pendingRequests.put(requestId, answer);
+
+    if (closed) {
+      // the reader may have failed all pending requests before this one was added
+      pendingRequests.remove(requestId);
+      answer.completeExceptionally(new IOException("Connection " + socket + " is closed"));
+      return answer;
+    }
+
+    if (timeout > 0) {
+      final ScheduledFuture<?> expiry = TIMEOUTS.schedule(() -> expire(requestId), timeout, TimeUnit.MILLISECONDS);
+      answer.whenComplete((received, error) -> expiry.cancel(false));
+    }
+    try {
+      frameCodec.writeObject(data.withRequestId(requestId));
+    } catch (IOException e) {
+      close(e);
+    }
+    return answer;
+  }
+
+  @Override
+  public void run() {
+    while (!closed) {
+      try {
+        receiveAnswer(frameCodec.readObject());
+      } catch (IOException | ClassNotFoundException e) {
+        close(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close(new IOException("Reader of connection " + socket + " interrupted", e));
+      }
+    }
+  }
+
+  private void receiveAnswer(final Object rawData) throws InterruptedException {
+    if (!(rawData instanceof DataPackage)) {
+      return;
+    }
+
+    final DataPackage answer = (DataPackage) rawData;
+    final CompletableFuture<DataPackage> request = pendingRequests.remove(answer.getRequestId());
+    if (request == null) {
+      // the body of a late answer is skipped by reading the next frame
+      return;
+    }
+
+    final StreamBody body = answer.getBody();
+    if (body == null) {
+      request.complete(answer);
+      return;
+    }
+    final AnswerBody answerBody = new AnswerBody(body.getInputStream());
+    answer.setBody(StreamBody.of(answerBody, body.getLength()));
+    currentBody = answerBody;
+    try {
+      if (request.complete(answer)) {
+        answerBody.awaitConsumed();
+      }
+    } finally {
+      currentBody = null;
+    }
+  }
+
+  /**
+   * Fails the request if it is still pending, a late answer is ignored.
+   */
+  private void expire(final long requestId) {
+    final CompletableFuture<DataPackage> request = pendingRequests.remove(requestId);
+    if (request != null) {
+      request.completeExceptionally(new SocketTimeoutException("No answer to request " + requestId + " within "
+          + timeout + " ms"));
+    }
+  }
+
+  /**
+   * @return whether the connection of this pipeline is closed and no more requests can be sent
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes the connection and fails all pending requests.
+   */
+  void close() {
+    close(new IOException("Connection " + socket + " closed by client"));
+  }
+
+  private void close(final Exception cause) {
+    closed = true;
+    ConnectionUtils.close(socket);
+    frameCodec.releaseCompression();
+    final AnswerBody body = currentBody;
+    if (body != null) {
+      body.release();
+    }
+    for (final Long requestId : pendingRequests.keySet()) {
+      final CompletableFuture<DataPackage> request = pendingRequests.remove(requestId);
+      if (request != null) {
+        request.completeExceptionally(cause);
+      }
+    }
+  }
+
+  /**
+   * Body of an answer which is read by the caller of the request, signals the reader when it was read
+   * completely, failed or was closed.
+   */
+  private final class AnswerBody extends FilterInputStream {
+
+    private boolean consumed;
+
+    AnswerBody(final InputStream input) {
+      super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        return releaseAtEnd(super.read());
+      } catch (IOException e) {
+        release();
+        throw e;
+      }
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      try {
+        return releaseAtEnd(super.read(buffer, offset, length));
+      } catch (IOException e) {
+        release();
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        release();
+      }
+    }
+
+    private int releaseAtEnd(final int read) {
+      if (read < 0) {
+        release();
+      }
+      return read;
+    }
+
+    synchronized void release() {
+      consumed = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits until the body was consumed or the pipeline was closed.
+     */
+    synchronized void awaitConsumed() throws InterruptedException {
+      while (!consumed && !closed) {
+        wait();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,753 @@
+package de.spiderlinker.network.codec;
+
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.DataPackageRecycler;
+import de.spiderlinker.network.data.EncodedValues;
+import de.spiderlinker.network.data.Payload;
+import de.spiderlinker.network.data.PayloadSchema;
+import de.spiderlinker.network.protocol.FrameCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary codec for {@link DataPackage}s. Every value is written as one byte tag followed by its content:
+ * <ul>
+ * <li>null, boolean, byte, short, char, float and double with their fixed size</li>
+ * <li>int and long as variable length zigzag encoded numbers (small values need one byte)</li>
+ * <li>String (UTF-8) and byte[] with their length</li>
+ * <li>{@link List}, {@link Map} and {@link DataPackage} with their size and values</li>
+ * <li>{@link DataPackage} with a {@link PayloadSchema} with the types of its slots followed by the values
+ * without tags, primitives with their fixed size and strings and byte arrays with a fixed size length</li>
+ * </ul>
+ * Other {@link Serializable} values are written with the Java serialization, unless the fallback is disabled.
+ * Lists are decoded as {@link ArrayList} and maps as {@link LinkedHashMap}. The int, long, double and boolean
+ * values of a {@link DataPackage} are written from and read into its {@link Payload} without boxing.
+ * <br>
+ * With lazy decoding only the id, the request ID and the offsets of the values of a received package are decoded,
+ * its values are decoded on first access (see {@link EncodedValues}). The structure of the values is still
+ * validated when the package is received. A package which is sent again without modification (e.g. by a router)
+ * is written with the received bytes of its values.
+ * <br>
+ * Received values may be nested at most {@link #MAX_DEPTH} levels deep, deeper values are rejected.
+ */
+public class BinaryCodec implements Codec {
+
+  /** ID of this codec */
+  public static final int ID = 1;
+
+  private static final int TAG_NULL                = 0;
+  private static final int TAG_TRUE                = 1;
+  private static final int TAG_FALSE               = 2;
+  private static final int TAG_BYTE                = 3;
+  private static final int TAG_SHORT               = 4;
+  private static final int TAG_CHAR                = 5;
+  private static final int TAG_INT                 = 6;
+  private static final int TAG_LONG                = 7;
+  private static final int TAG_FLOAT               = 8;
+  private static final int TAG_DOUBLE              = 9;
+  private static final int TAG_STRING              = 10;
+  private static final int TAG_BYTES               = 11;
+  private static final int TAG_LIST                = 12;
+  private static final int TAG_MAP                 = 13;
+  private static final int TAG_DATA_PACKAGE        = 14;
+  private static final int TAG_SERIALIZED          = 15;
+  private static final int TAG_SCHEMA_DATA_PACKAGE = 16;
+
+  private static final PayloadSchema.Type[] SLOT_TYPES = PayloadSchema.Type.values();
+  /** Length of a null string or byte array in a slot of a schema */
+  private static final int NULL_LENGTH = -1;
+
+  /** Maximum length of a string, byte array, list or map, no value is longer than the largest frame */
+  private static final int MAX_LENGTH = FrameCodec.MAX_PAYLOAD_LENGTH;
+  /** Maximum number of bytes allocated before they are read, longer strings and byte arrays grow with the read bytes */
+  private static final int INITIAL_BYTES_LENGTH = 8 * 1024;
+  /** Maximum number of slot types allocated before they are read, larger schemas grow with the read types */
+  private static final int INITIAL_SLOT_COUNT = 64;
+  /** Maximum nesting of lists, maps and packages, protects the decoding thread against a stack overflow */
+  public static final int MAX_DEPTH = 64;
+
+  private final boolean javaSerializationFallback;
+  private final boolean lazyDecoding;
+  private final EncodedValues.Reader valueReader = this::readEncodedValue;
+
+  /**
+   * Creates a codec which writes unsupported values with the Java serialization.
+   */
+  public BinaryCodec() {
+    this(true);
+  }
+
+  /**
+   * @param javaSerializationFallback whether unsupported values are written and read with the Java serialization
+   *                                  (otherwise they are rejected, which protects the receiver from deserialization attacks)
+   */
+  public BinaryCodec(final boolean javaSerializationFallback) {
+    this(javaSerializationFallback, false);
+  }
+
+  /**
+   * @param javaSerializationFallback whether unsupported values are written and read with the Java serialization
+   * @param lazyDecoding              whether the values of a received package are decoded on first access
+   *                                  (a server decodes with its own or accepted codecs, see
+   *                                  {@link de.spiderlinker.network.server.ServerManager#setAcceptedCodecs},
+   *                                  a client with the codecs of the {@link CodecRegistry})
+   */
+  public BinaryCodec(final boolean javaSerializationFallback, final boolean lazyDecoding) {
+    this.javaSerializationFallback = javaSerializationFallback;
+    this.lazyDecoding = lazyDecoding;
+  }
+
+  public boolean isLazyDecoding() {
+    return lazyDecoding;
+  }
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public void encode(final Object obj, final OutputStream output) throws IOException {
+    final DataOutputStream dataOutput = new DataOutputStream(output);
+    writeValue(dataOutput, obj);
+    dataOutput.flush();
+  }
+
+  @Override
+  public Object decode(final InputStream input) throws IOException, ClassNotFoundException {
+    return decode(input, null);
+  }
+
+  /**
+   * Only the decoded package itself is acquired from the recycler, packages within its values are not pooled.
+   */
+  @Override
+  public Object decode(final InputStream input, final DataPackageRecycler recycler)
+      throws IOException, ClassNotFoundException {
+    final DataInputStream dataInput = new DataInputStream(input);
+    final int tag = dataInput.readUnsignedByte();
+    if (tag == TAG_DATA_PACKAGE && (recycler != null || lazyDecoding)) {
+      return readDataPackage(dataInput, recycler);
+    }
+    return readValue(dataInput, tag, 0);
+  }
+
+  @Override
+  public void decodeValues(final InputStream input, final Payload payload) throws IOException, ClassNotFoundException {
+    final DataInputStream dataInput = new DataInputStream(input);
+    if (dataInput.readUnsignedByte() != TAG_LIST) {
+      throw new StreamCorruptedException("Encoded values are no list");
+    }
+    readPayloadValues(dataInput, payload, lazyDecoding, 1);
+  }
+
+  /*
+   * - - - - - - - - - - Encoding - - - - - - - - - -
+   */
+
+  private void writeValue(final DataOutputStream output, final Object value) throws IOException {
+    if (value == null) {
+      output.writeByte(TAG_NULL);
+    } else if (value instanceof String) {
+      output.writeByte(TAG_STRING);
+      writeBytes(output, ((String) value).getBytes(StandardCharsets.UTF_8));
+    } else if (value instanceof Integer) {
+      output.writeByte(TAG_INT);
+      writeVarLong(output, zigzag((Integer) value));
+    } else if (value instanceof Long) {
+      output.writeByte(TAG_LONG);
+      writeVarLong(output, zigzag((Long) value));
+    } else if (value instanceof Boolean) {
+      output.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+    } else if (value instanceof Double) {
+      output.writeByte(TAG_DOUBLE);
+      output.writeDouble((Double) value);
+    } else if (value instanceof Float) {
+      output.writeByte(TAG_FLOAT);
+      output.writeFloat((Float) value);
+    } else if (value instanceof Byte) {
+      output.writeByte(TAG_BYTE);
+      output.writeByte((Byte) value);
+    } else if (value instanceof Short) {
+      output.writeByte(TAG_SHORT);
+      output.writeShort((Short) value);
+    } else if (value instanceof Character) {
+      output.writeByte(TAG_CHAR);
+      output.writeChar((Character) value);
+    } else if (value instanceof byte[]) {
+      output.writeByte(TAG_BYTES);
+      writeBytes(output, (byte[]) value);
+    } else if (value instanceof DataPackage) {
+      writeDataPackage(output, (DataPackage) value);
+    } else if (value instanceof List) {
+      output.writeByte(TAG_LIST);
+      writeList(output, (List<?>) value);
+    } else if (value instanceof Map) {
+      output.writeByte(TAG_MAP);
+      writeMap(output, (Map<?, ?>) value);
+    } else {
+      writeSerialized(output, value);
+    }
+  }
+
+  private void writeDataPackage(final DataOutputStream output, final DataPackage data) throws IOException {
+    final Payload payload = data.getPayload();
+    output.writeByte(payload.getSchema() == null ? TAG_DATA_PACKAGE : TAG_SCHEMA_DATA_PACKAGE);
+    writeBytes(output, data.getID().getBytes(StandardCharsets.UTF_8));
+    writeVarLong(output, data.getRequestId());
+    if (payload.getSchema() == null) {
+      writeList(output, payload);
+    } else {
+      writeSlots(output, payload);
+    }
+  }
+
+  private void writeList(final DataOutputStream output, final List<?> list) throws IOException {
+    writeVarLong(output, list.size());
+    if (list instanceof Payload) {
+      final EncodedValues encoded = ((Payload) list).getEncoded();
+      if (encoded != null && encoded.getCodecId() == ID) {
+        // the received values are relayed without decoding them
+        output.write(encoded.getBuffer(), encoded.getOffset(), encoded.getLength());
+      } else {
+        writePayloadValues(output, (Payload) list);
+      }
+      return;
+    }
+    for (final Object value : list) {
+      writeValue(output, value);
+    }
+  }
+
+  /**
+   * Writes the values of the payload like the values of a list, but without boxing its primitives.
+   */
+  private void writePayloadValues(final DataOutputStream output, final Payload payload) throws IOException {
+    for (int i = 0; i < payload.size(); i++) {
+      switch (payload.getType(i)) {
+        case INT:
+          output.writeByte(TAG_INT);
+          writeVarLong(output, zigzag(payload.getInt(i)));
+          break;
+        case LONG:
+          output.writeByte(TAG_LONG);
+          writeVarLong(output, zigzag(payload.getLong(i)));
+          break;
+        case DOUBLE:
+          output.writeByte(TAG_DOUBLE);
+          output.writeDouble(payload.getDouble(i));
+          break;
+        case BOOLEAN:
+          output.writeByte(payload.getBoolean(i) ? TAG_TRUE : TAG_FALSE);
+          break;
+        default:
+          writeValue(output, payload.get(i));
+      }
+    }
+  }
+
+  /**
+   * Writes the types of the slots and their values without tags.
+   */
+  private void writeSlots(final DataOutputStream output, final Payload payload) throws IOException {
+    writeVarLong(output, payload.size());
+    for (int i = 0; i < payload.size(); i++) {
+      output.writeByte(payload.getType(i).ordinal());
+    }
+    for (int i = 0; i < payload.size(); i++) {
+      switch (payload.getType(i)) {
+        case INT:
+          output.writeInt(payload.getInt(i));
+          break;
+        case LONG:
+          output.writeLong(payload.getLong(i));
+          break;
+        case DOUBLE:
+          output.writeDouble(payload.getDouble(i));
+          break;
+        case BOOLEAN:
+          output.writeBoolean(payload.getBoolean(i));
+          break;
+        case BYTES:
+          writeSlotBytes(output, payload.getBytes(i));
+          break;
+        case STRING:
+          final String string = payload.getString(i);
+          writeSlotBytes(output, string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+          break;
+        default:
+          writeValue(output, payload.get(i));
+      }
+    }
+  }
+
+  private static void writeSlotBytes(final DataOutputStream output, final byte[] bytes) throws IOException {
+    if (bytes == null) {
+      output.writeInt(NULL_LENGTH);
+    } else {
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private void writeMap(final DataOutputStream output, final Map<?, ?> map) throws IOException {
+    writeVarLong(output, map.size());
+    for (final Map.Entry<?, ?> entry : map.entrySet()) {
+      writeValue(output, entry.getKey());
+      writeValue(output, entry.getValue());
+    }
+  }
+
+  private void writeSerialized(final DataOutputStream output, final Object value) throws IOException {
+    if (!javaSerializationFallback || !(value instanceof Serializable)) {
+      throw new NotSerializableException(value.getClass().getName());
+    }
+
+    final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    JavaSerializationCodec.INSTANCE.encode(value, serialized);
+    output.writeByte(TAG_SERIALIZED);
+    writeVarLong(output, serialized.size());
+    serialized.writeTo(output);
+  }
+
+  private static void writeBytes(final DataOutputStream output, final byte[] bytes) throws IOException {
+    writeVarLong(output, bytes.length);
+    output.write(bytes);
+  }
+
+  private static void writeVarLong(final DataOutputStream output, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte((int) value);
+  }
+
+  private static long zigzag(final long value) {
+    return value << 1 ^ value >> 63;
+  }
+
+  /*
+   * - - - - - - - - - - Decoding - - - - - - - - - -
+   */
+
+  /**
+   * @param depth number of lists, maps and packages which contain the value
+   */
+  private Object readValue(final DataInputStream input, final int depth) throws IOException, ClassNotFoundException {
+    return readValue(input, input.readUnsignedByte(), depth);
+  }
+
+  private Object readValue(final DataInputStream input, final int tag, final int depth)
+      throws IOException, ClassNotFoundException {
+    switch (tag) {
+      case TAG_NULL:
+        return null;
+      case TAG_TRUE:
+        return Boolean.TRUE;
+      case TAG_FALSE:
+        return Boolean.FALSE;
+      case TAG_BYTE:
+        return input.readByte();
+      case TAG_SHORT:
+        return input.readShort();
+      case TAG_CHAR:
+        return input.readChar();
+      case TAG_INT:
+        return (int) unzigzag(readVarLong(input));
+      case TAG_LONG:
+        return unzigzag(readVarLong(input));
+      case TAG_FLOAT:
+        return input.readFloat();
+      case TAG_DOUBLE:
+        return input.readDouble();
+      case TAG_STRING:
+        return new String(readBytes(input), StandardCharsets.UTF_8);
+      case TAG_BYTES:
+        return readBytes(input);
+      case TAG_LIST:
+        return readList(input, new ArrayList<>(), nest(depth));
+      case TAG_MAP:
+        return readMap(input, nest(depth));
+      case TAG_DATA_PACKAGE:
+        return readDataPackage(input, nest(depth));
+      case TAG_SCHEMA_DATA_PACKAGE:
+        return readSchemaDataPackage(input, nest(depth));
+      case TAG_SERIALIZED:
+        return readSerialized(input);
+      default:
+        throw new StreamCorruptedException("Unknown value tag " + tag);
+    }
+  }
+
+  private DataPackage readDataPackage(final DataInputStream input, final int depth)
+      throws IOException, ClassNotFoundException {
+    final DataPackage data = new DataPackage(new String(readBytes(input), StandardCharsets.UTF_8));
+    final long requestId = readVarLong(input);
+    readPayloadValues(input, data.getPayload(), false, depth);
+    return data.withRequestId(requestId);
+  }
+
+  /**
+   * Reads a package which is the last value of the input into a pooled package or with lazy decoding.
+   */
+  private DataPackage readDataPackage(final DataInputStream input, final DataPackageRecycler recycler)
+      throws IOException, ClassNotFoundException {
+    final String id = new String(readBytes(input), StandardCharsets.UTF_8);
+    final long requestId = readVarLong(input);
+    final DataPackage data = recycler == null
+        ? new DataPackage(id).withRequestId(requestId)
+        : recycler.acquire(id, requestId);
+    try {
+      readPayloadValues(input, data.getPayload(), lazyDecoding, 1);
+    } catch (final IOException | ClassNotFoundException | RuntimeException e) {
+      data.release();
+      throw e;
+    }
+    return data;
+  }
+
+  /**
+   * Reads the values of a list into the payload, primitives are stored without boxing.
+   * If the values are decoded lazily, they have to be the rest of the input, only their offsets are read.
+   */
+  private void readPayloadValues(final DataInputStream input, final Payload payload, final boolean lazy,
+                                 final int depth) throws IOException, ClassNotFoundException {
+    final int size = readLength(input);
+    if (lazy) {
+      payload.setEncoded(readEncodedValues(input, size, depth));
+      return;
+    }
+    for (int i = 0; i < size; i++) {
+      final int tag = input.readUnsignedByte();
+      switch (tag) {
+        case TAG_INT:
+          payload.addInt((int) unzigzag(readVarLong(input)));
+          break;
+        case TAG_LONG:
+          payload.addLong(unzigzag(readVarLong(input)));
+          break;
+        case TAG_DOUBLE:
+          payload.addDouble(input.readDouble());
+          break;
+        default:
+          payload.add(readValue(input, tag, depth));
+      }
+    }
+  }
+
+  private DataPackage readSchemaDataPackage(final DataInputStream input, final int depth)
+      throws IOException, ClassNotFoundException {
+    final String id = new String(readBytes(input), StandardCharsets.UTF_8);
+    final long requestId = readVarLong(input);
+    final PayloadSchema.Type[] types = readSlotTypes(input);
+    final DataPackage data = DataPackage.withSchema(id, PayloadSchema.of(types));
+    final Payload payload = data.getPayload();
+    for (int i = 0; i < types.length; i++) {
+      switch (types[i]) {
+        case INT:
+          payload.setInt(i, input.readInt());
+          break;
+        case LONG:
+          payload.setLong(i, input.readLong());
+          break;
+        case DOUBLE:
+          payload.setDouble(i, input.readDouble());
+          break;
+        case BOOLEAN:
+          payload.setBoolean(i, input.readBoolean());
+          break;
+        case BYTES:
+          payload.set(i, readSlotBytes(input));
+          break;
+        case STRING:
+          final byte[] bytes = readSlotBytes(input);
+          payload.set(i, bytes == null ? null : new String(bytes, StandardCharsets.UTF_8));
+          break;
+        default:
+          payload.set(i, readValue(input, depth));
+      }
+    }
+    return data.withRequestId(requestId);
+  }
+
+  /**
+   * Reads the number and the types of the slots of a schema package. The array grows with the read types,
+   * so a corrupted number of slots fails at the end of the input instead of allocating an array for it.
+   */
+  private static PayloadSchema.Type[] readSlotTypes(final DataInputStream input) throws IOException {
+    final int count = readLength(input);
+    PayloadSchema.Type[] types = new PayloadSchema.Type[Math.min(count, INITIAL_SLOT_COUNT)];
+    for (int i = 0; i < count; i++) {
+      final int ordinal = input.read();
+      if (ordinal < 0) {
+        throw new StreamCorruptedException("Input ends after " + i + " of " + count + " slot types");
+      }
+      if (ordinal >= SLOT_TYPES.length) {
+        throw new StreamCorruptedException("Unknown slot type " + ordinal);
+      }
+      if (i == types.length) {
+        types = Arrays.copyOf(types, (int) Math.min(count, 2L * i));
+      }
+      types[i] = SLOT_TYPES[ordinal];
+    }
+    return types;
+  }
+
+  private EncodedValues readEncodedValues(final DataInputStream input, final int size, final int depth)
+      throws IOException {
+    final byte[] buffer = readRemaining(input);
+    final DataInputStream values = new DataInputStream(new ByteArrayInputStream(buffer));
+    if (size > buffer.length) {
+      // every value has at least its tag
+      throw new StreamCorruptedException(size + " values exceed the " + buffer.length + " bytes of the package");
+    }
+    final int[] offsets = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      offsets[i] = buffer.length - values.available();
+      skipValue(values, values.readUnsignedByte(), depth);
+    }
+    offsets[size] = buffer.length - values.available();
+    if (offsets[size] != buffer.length) {
+      throw new StreamCorruptedException((buffer.length - offsets[size]) + " bytes after the values of the package");
+    }
+    return new EncodedValues(ID, buffer, offsets, valueReader);
+  }
+
+  /**
+   * Decodes a value of a lazily decoded package, its nesting was checked when the package was received.
+   */
+  private Object readEncodedValue(final byte[] buffer, final int offset, final int length)
+      throws IOException, ClassNotFoundException {
+    return readValue(new DataInputStream(new ByteArrayInputStream(buffer, offset, length)), 1);
+  }
+
+  /**
+   * Skips a value, checks its structure without decoding it.
+   */
+  private void skipValue(final DataInputStream input, final int tag, final int depth) throws IOException {
+    switch (tag) {
+      case TAG_NULL:
+      case TAG_TRUE:
+      case TAG_FALSE:
+        break;
+      case TAG_BYTE:
+        skipFully(input, 1);
+        break;
+      case TAG_SHORT:
+      case TAG_CHAR:
+        skipFully(input, 2);
+        break;
+      case TAG_INT:
+      case TAG_LONG:
+        readVarLong(input);
+        break;
+      case TAG_FLOAT:
+        skipFully(input, 4);
+        break;
+      case TAG_DOUBLE:
+        skipFully(input, 8);
+        break;
+      case TAG_STRING:
+      case TAG_BYTES:
+        skipFully(input, readLength(input));
+        break;
+      case TAG_LIST:
+        skipValues(input, readLength(input), nest(depth));
+        break;
+      case TAG_MAP:
+        skipValues(input, 2L * readLength(input), nest(depth));
+        break;
+      case TAG_DATA_PACKAGE:
+        skipFully(input, readLength(input));
+        readVarLong(input);
+        skipValues(input, readLength(input), nest(depth));
+        break;
+      case TAG_SCHEMA_DATA_PACKAGE:
+        skipSchemaDataPackage(input, nest(depth));
+        break;
+      case TAG_SERIALIZED:
+        if (!javaSerializationFallback) {
+          throw new InvalidClassException("Java serialized values are not accepted");
+        }
+        skipFully(input, readLength(input));
+        break;
+      default:
+        throw new StreamCorruptedException("Unknown value tag " + tag);
+    }
+  }
+
+  private void skipValues(final DataInputStream input, final long count, final int depth) throws IOException {
+    for (long i = 0; i < count; i++) {
+      skipValue(input, input.readUnsignedByte(), depth);
+    }
+  }
+
+  private void skipSchemaDataPackage(final DataInputStream input, final int depth) throws IOException {
+    skipFully(input, readLength(input));
+    readVarLong(input);
+    for (final PayloadSchema.Type type : readSlotTypes(input)) {
+      if (type.isPrimitive()) {
+        skipFully(input, type.getFixedSize());
+      } else if (type == PayloadSchema.Type.OBJECT) {
+        skipValue(input, input.readUnsignedByte(), depth);
+      } else {
+        final int length = input.readInt();
+        if (length != NULL_LENGTH) {
+          if (length < 0 || length > MAX_LENGTH) {
+            throw new StreamCorruptedException("Invalid length " + length);
+          }
+          skipFully(input, length);
+        }
+      }
+    }
+  }
+
+  private static void skipFully(final DataInputStream input, final int length) throws IOException {
+    if (input.skipBytes(length) != length) {
+      throw new EOFException();
+    }
+  }
+
+  /**
+   * Reads the rest of the input (usually the remaining payload of a frame, whose length is known).
+   */
+  private static byte[] readRemaining(final DataInputStream input) throws IOException {
+    byte[] buffer = new byte[input.available()];
+    int length = 0;
+    while (true) {
+      if (length == buffer.length) {
+        final int next = input.read();
+        if (next < 0) {
+          break;
+        }
+        if (length >= MAX_LENGTH) {
+          throw new StreamCorruptedException("Values of the package exceed " + MAX_LENGTH + " bytes");
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(64, buffer.length * 2));
+        buffer[length++] = (byte) next;
+      }
+      final int read = input.read(buffer, length, buffer.length - length);
+      if (read < 0) {
+        break;
+      }
+      length += read;
+    }
+    return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+  }
+
+  private static byte[] readSlotBytes(final DataInputStream input) throws IOException {
+    final int length = input.readInt();
+    if (length == NULL_LENGTH) {
+      return null;
+    }
+    if (length < 0 || length > MAX_LENGTH) {
+      throw new StreamCorruptedException("Invalid length " + length);
+    }
+    return readBytes(input, length);
+  }
+
+  private List<Object> readList(final DataInputStream input, final List<Object> list, final int depth)
+      throws IOException, ClassNotFoundException {
+    final int size = readLength(input);
+    for (int i = 0; i < size; i++) {
+      list.add(readValue(input, depth));
+    }
+    return list;
+  }
+
+  private Map<Object, Object> readMap(final DataInputStream input, final int depth)
+      throws IOException, ClassNotFoundException {
+    final int size = readLength(input);
+    final Map<Object, Object> map = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      map.put(readValue(input, depth), readValue(input, depth));
+    }
+    return map;
+  }
+
+  /**
+   * @param depth number of lists, maps and packages which contain a list, map or package
+   * @return number of lists, maps and packages which contain its values
+   * @throws StreamCorruptedException values are nested deeper than {@link #MAX_DEPTH} levels
+   */
+  private static int nest(final int depth) throws StreamCorruptedException {
+    if (depth >= MAX_DEPTH) {
+      throw new StreamCorruptedException("Values are nested deeper than " + MAX_DEPTH + " levels");
+    }
+    return depth + 1;
+  }
+
+  private Object readSerialized(final DataInputStream input) throws IOException, ClassNotFoundException {
+    if (!javaSerializationFallback) {
+      throw new InvalidClassException("Java serialized values are not accepted");
+    }
+    return JavaSerializationCodec.INSTANCE.decode(new ByteArrayInputStream(readBytes(input)));
+  }
+
+  private static byte[] readBytes(final DataInputStream input) throws IOException {
+    return readBytes(input, readLength(input));
+  }
+
+  /**
+   * Reads the bytes of a string or byte array. At most the available bytes are allocated before they are read,
+   * so a corrupted length fails at the end of the input instead of allocating an array for it.
+   */
+  private static byte[] readBytes(final DataInputStream input, final int length) throws IOException {
+    byte[] bytes = new byte[Math.min(length, Math.max(INITIAL_BYTES_LENGTH, input.available()))];
+    int read = 0;
+    while (read < length) {
+      if (read == bytes.length) {
+        bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+      }
+      final int count = input.read(bytes, read, bytes.length - read);
+      if (count < 0) {
+        throw new StreamCorruptedException("Input ends after " + read + " of " + length + " bytes");
+      }
+      read += count;
+    }
+    return bytes;
+  }
+
+  private static int readLength(final DataInputStream input) throws IOException {
+    final long length = readVarLong(input);
+    if (length < 0 || length > MAX_LENGTH) {
+      throw new StreamCorruptedException("Invalid length " + length);
+    }
+    return (int) length;
+  }
+
+  private static long readVarLong(final DataInputStream input) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int next = input.readUnsignedByte();
+      value |= (long) (next & 0x7F) << shift;
+      if ((next & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Variable length number exceeds 64 bits");
+  }
+
+  private static long unzigzag(final long value) {
+    return value >>> 1 ^ -(value & 1);
+  }
+
+}
@@ -0,0 +1,75 @@
+package de.spiderlinker.network.codec;
+
+import de.spiderlinker.network.data.DataPackageRecycler;
+import de.spiderlinker.network.data.Payload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.List;
+
+/**
+ * Converts objects (usually {@link de.spiderlinker.network.data.DataPackage}s) to bytes and back.
+ * The ID of the codec is sent with every framed message, so the receiver decodes the message with the
+ * codec of the sender. Custom codecs have to be registered on the client side (see {@link CodecRegistry}) and
+ * accepted by the server (see {@link de.spiderlinker.network.server.ServerManager#setAcceptedCodecs}).
+ */
+public interface Codec {
+
+  /**
+   * @return unique ID of this codec between 0 and {@link CodecRegistry#MAX_CODEC_ID}
+   */
+  int getId();
+
+  /**
+   * Writes the encoded object to the output. The output must not be closed.
+   *
+   * @param obj    object to encode
+   * @param output stream to write the encoded object to
+   * @throws IOException object can not be encoded or failed to write
+   */
+  void encode(Object obj, OutputStream output) throws IOException;
+
+  /**
+   * Reads an encoded object from the input. The input must not be closed.
+   *
+   * @param input stream to read the encoded object from
+   * @return decoded object
+   * @throws IOException            invalid encoding or failed to read
+   * @throws ClassNotFoundException class of the encoded object is unknown
+   */
+  Object decode(InputStream input) throws IOException, ClassNotFoundException;
+
+  /**
+   * Reads an encoded object from the input, a decoded {@link de.spiderlinker.network.data.DataPackage} is acquired
+   * from the recycler if the codec supports it. By default the recycler is ignored.
+   *
+   * @param input    stream to read the encoded object from
+   * @param recycler recycler to acquire the decoded package from (may be null)
+   * @return decoded object
+   * @throws IOException            invalid encoding or failed to read
+   * @throws ClassNotFoundException class of the encoded object is unknown
+   */
+  default Object decode(InputStream input, DataPackageRecycler recycler) throws IOException, ClassNotFoundException {
+    return decode(input);
+  }
+
+  /**
+   * Reads an encoded list of values into the payload of a package (e.g. the values of a routed data frame).
+   * By default the list is decoded and its values are added to the payload.
+   *
+   * @param input   stream to read the encoded list from
+   * @param payload empty payload to add the values to
+   * @throws IOException            invalid encoding, no list or failed to read
+   * @throws ClassNotFoundException class of an encoded value is unknown
+   */
+  default void decodeValues(InputStream input, Payload payload) throws IOException, ClassNotFoundException {
+    final Object values = decode(input);
+    if (!(values instanceof List)) {
+      throw new StreamCorruptedException("Encoded values are no list");
+    }
+    payload.addAll((List<?>) values);
+  }
+
+}
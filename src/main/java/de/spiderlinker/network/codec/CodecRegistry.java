@@ -0,0 +1,85 @@
+package de.spiderlinker.network.codec;
+
+import java.io.StreamCorruptedException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Known codecs by their ID. The {@link JavaSerializationCodec} and the {@link BinaryCodec} are registered by default.
+ */
+public class CodecRegistry {
+
+  /** Highest ID of a codec, the ID is sent in the upper bits of the frame flags */
+  public static final int MAX_CODEC_ID = 15;
+
+  private static final AtomicReferenceArray<Codec> CODECS = new AtomicReferenceArray<>(MAX_CODEC_ID + 1);
+
+  static {
+    register(JavaSerializationCodec.INSTANCE);
+    register(new BinaryCodec());
+  }
+
+  private CodecRegistry() {
+    // Utility class should not be instantiatable
+  }
+
+  /**
+   * Registers the codec to decode received messages with its ID. A codec registered before with the same ID
+   * is replaced (e.g. to replace the default {@link BinaryCodec} by one without Java serialization fallback).
+   *
+   * @param codec codec to register
+   */
+  public static void register(final Codec codec) {
+    CODECS.set(validateId(Objects.requireNonNull(codec).getId()), codec);
+  }
+
+  /**
+   * @return codec to send messages with if no other codec is set (the registered {@link BinaryCodec})
+   */
+  public static Codec getDefault() {
+    return CODECS.get(BinaryCodec.ID);
+  }
+
+  /**
+   * @param id ID of the codec
+   * @return registered codec with the ID
+   * @throws StreamCorruptedException no codec is registered with the ID
+   */
+  public static Codec get(final int id) throws StreamCorruptedException {
+    final Codec codec = id >= 0 && id <= MAX_CODEC_ID ? CODECS.get(id) : null;
+    if (codec == null) {
+      throw new StreamCorruptedException("Unknown codec " + id);
+    }
+    return codec;
+  }
+
+  /**
+   * @param accepted codecs a received message may be encoded with, null to accept all registered codecs
+   * @param id       ID of the codec of a received message
+   * @return accepted codec with the ID
+   * @throws StreamCorruptedException the codec with the ID is not accepted
+   */
+  public static Codec getAccepted(final Codec[] accepted, final int id) throws StreamCorruptedException {
+    if (accepted == null) {
+      return get(id);
+    }
+    for (final Codec codec : accepted) {
+      if (codec.getId() == id) {
+        return codec;
+      }
+    }
+    throw new StreamCorruptedException("Codec " + id + " is not accepted");
+  }
+
+  /**
+   * @param id ID of a codec
+   * @return passed ID if it is valid
+   */
+  public static int validateId(final int id) {
+    if (id < 0 || id > MAX_CODEC_ID) {
+      throw new IllegalArgumentException("Invalid codec id! (0<=id<=" + MAX_CODEC_ID + ")");
+    }
+    return id;
+  }
+
+}
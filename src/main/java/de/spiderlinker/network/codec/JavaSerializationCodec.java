@@ -0,0 +1,39 @@
+package de.spiderlinker.network.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec with the Java serialization, which supports every {@link java.io.Serializable} object.
+ * It is used by the legacy protocol and as fallback of the {@link BinaryCodec}. <br>
+ * Only decode data of trusted senders, deserialization may instantiate any class on the class path.
+ */
+public class JavaSerializationCodec implements Codec {
+
+  /** ID of this codec */
+  public static final int ID = 0;
+
+  /** Shared instance, the codec has no state */
+  public static final JavaSerializationCodec INSTANCE = new JavaSerializationCodec();
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public void encode(final Object obj, final OutputStream output) throws IOException {
+    final ObjectOutputStream objectOutput = new ObjectOutputStream(output);
+    objectOutput.writeObject(obj);
+    objectOutput.flush();
+  }
+
+  @Override
+  public Object decode(final InputStream input) throws IOException, ClassNotFoundException {
+    return new ObjectInputStream(input).readObject();
+  }
+
+}
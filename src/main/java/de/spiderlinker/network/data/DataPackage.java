@@ -2,56 +2,335 @@ package de.spiderlinker.network.data;
 
 import de.spiderlinker.utils.StringUtils;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
-@SuppressWarnings("serial")
+/**
+ * Message with an id and a list of values. The values are stored in a {@link Payload}, which gives indexed
+ * access in constant time and stores primitives added with the typed methods (e.g. {@link #addInt(int)})
+ * without boxing. A package created with a {@link PayloadSchema} has fixed slots, whose values are set by index.
+ * <br>
+ * Packages acquired from a {@link DataPackageRecycler} are reference counted: they start with one reference,
+ * {@link #retain()} adds one and {@link #release()} removes one. The package is returned to its recycler when the
+ * last reference is released and must not be used afterwards. Other packages are not counted.
+ * <br>
+ * Content which is too large to be held in memory is attached as {@link StreamBody}, which is streamed in chunks
+ * behind the values of the package (see {@link #setBody(StreamBody)}).
+ */
 public class DataPackage implements Serializable {
 
-  private final String id;
-  private List<Object> dataObjects;
+  /** UID of the first releases, so packages are still exchanged with their Java serialization */
+  private static final long serialVersionUID = -1331910613942261342L;
+  /**
+   * Serial form of the first releases, the values are serialized as list. The request ID and the types of the
+   * values (optional data behind the fields) were added later, older peers ignore them.
+   */
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("id", String.class),
+      new ObjectStreamField("requestId", long.class),
+      new ObjectStreamField("dataObjects", List.class)
+  };
+
+  /** Request ID of a package which does not belong to a request (e.g. sent by {@code Client#sendMessage}) */
+  public static final long NO_REQUEST_ID = 0;
+
+  private static final AtomicIntegerFieldUpdater<DataPackage> REF_COUNT =
+      AtomicIntegerFieldUpdater.newUpdater(DataPackage.class, "refCount");
+
+  private String id;
+  private long requestId;
+  private transient Payload payload;
+
+  /** Recycler this package is returned to, null if the package is not pooled */
+  private final transient DataPackageRecycler recycler;
+  private transient volatile int refCount;
+  /** Tracks the package while it is acquired if the recycler detects leaks */
+  transient DataPackageRecycler.LeakRecord leak;
+  private transient StreamBody body;
 
   public DataPackage(final String id, final Object... data) {
     this.id = StringUtils.requireNonNullOrEmpty(id);
-    this.setData(data);
+    this.requestId = NO_REQUEST_ID;
+    this.payload = new Payload(data == null ? 0 : data.length);
+    this.recycler = null;
+    this.addData(data);
+  }
+
+  private DataPackage(final String id, final Payload payload) {
+    this.id = StringUtils.requireNonNullOrEmpty(id);
+    this.requestId = NO_REQUEST_ID;
+    this.payload = payload;
+    this.recycler = null;
+  }
+
+  private DataPackage(final DataPackage source, final long requestId) {
+    this.id = source.id;
+    this.requestId = requestId;
+    this.payload = source.payload;
+    this.recycler = null;
+    this.body = source.body;
   }
 
-  private void setData(final Object[] obj) {
-    this.dataObjects = new LinkedList<>();
-    this.addData(obj);
+  /**
+   * Creates an empty package of the recycler, which is initialized by {@link #reuse(String, long)}.
+   */
+  DataPackage(final DataPackageRecycler recycler, final int capacity) {
+    this.payload = new Payload(capacity);
+    this.recycler = recycler;
+  }
+
+  /**
+   * Creates a package whose slots have the types of the schema. The slots are initialized with 0, false or null
+   * and set with {@link Payload#set(int, Object)} or the typed setters of {@link #getPayload()}.
+   *
+   * @param id     id of the package
+   * @param schema types of the slots
+   * @return package with the slots of the schema
+   */
+  public static DataPackage withSchema(final String id, final PayloadSchema schema) {
+    return new DataPackage(id, new Payload(schema));
   }
 
   public void addData(final Object... data) {
     if (data != null) {
-      Collections.addAll(this.dataObjects, data);
+      Collections.addAll(this.payload, data);
     }
   }
 
   public void addData(int index, Object data) {
-    this.dataObjects.add(index, data);
+    this.payload.add(index, data);
+  }
+
+  public DataPackage addInt(final int value) {
+    this.payload.addInt(value);
+    return this;
+  }
+
+  public DataPackage addLong(final long value) {
+    this.payload.addLong(value);
+    return this;
+  }
+
+  public DataPackage addDouble(final double value) {
+    this.payload.addDouble(value);
+    return this;
+  }
+
+  public DataPackage addBoolean(final boolean value) {
+    this.payload.addBoolean(value);
+    return this;
   }
 
   public String getID() {
     return this.id;
   }
 
+  /**
+   * @return ID of the request this package belongs to or {@link #NO_REQUEST_ID}
+   */
+  public long getRequestId() {
+    return this.requestId;
+  }
+
+  /**
+   * @return whether this package belongs to a request whose answer is matched by the request ID
+   */
+  public boolean isRequest() {
+    return this.requestId != NO_REQUEST_ID;
+  }
+
+  /**
+   * @return whether this package was acquired from a {@link DataPackageRecycler}
+   */
+  public boolean isPooled() {
+    return this.recycler != null;
+  }
+
+  /**
+   * @return number of references to this pooled package (0 if it is released), 1 if the package is not pooled
+   */
+  public int refCount() {
+    return this.recycler == null ? 1 : this.refCount;
+  }
+
+  /**
+   * Adds a reference to this pooled package, e.g. before it is handed over to another thread.
+   *
+   * @return this package
+   * @throws IllegalStateException package is already released
+   */
+  public DataPackage retain() {
+    if (this.recycler != null) {
+      int count;
+      do {
+        count = this.refCount;
+        if (count <= 0) {
+          throw new IllegalStateException("DataPackage '" + this.id + "' is already released");
+        }
+      } while (!REF_COUNT.compareAndSet(this, count, count + 1));
+    }
+    return this;
+  }
+
+  /**
+   * Removes a reference from this pooled package. The package is returned to its recycler when the last
+   * reference is released and must not be used afterwards.
+   *
+   * @return whether the last reference was released (always false if the package is not pooled)
+   * @throws IllegalStateException package is already released
+   */
+  public boolean release() {
+    if (this.recycler == null) {
+      return false;
+    }
+
+    int count;
+    do {
+      count = this.refCount;
+      if (count <= 0) {
+        throw new IllegalStateException("DataPackage '" + this.id + "' is already released");
+      }
+    } while (!REF_COUNT.compareAndSet(this, count, count - 1));
+
+    if (count == 1) {
+      this.recycler.recycle(this);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Initializes a pooled package when it is acquired.
+   */
+  void reuse(final String id, final long requestId) {
+    this.id = StringUtils.requireNonNullOrEmpty(id);
+    this.requestId = requestId;
+    this.body = null;
+    this.refCount = 1;
+  }
+
+  /**
+   * Returns this package with the given request ID. The returned package shares its data with this package
+   * (if this package is pooled, the copy must only be used while this package is retained).
+   *
+   * @param requestId ID of the request
+   * @return this package if it already has the request ID, otherwise a copy with the request ID
+   */
+  public DataPackage withRequestId(final long requestId) {
+    return this.requestId == requestId ? this : new DataPackage(this, requestId);
+  }
+
+  /**
+   * Creates the answer to this package. The answer carries the request ID of this package, so the
+   * requesting client can match it to its request, even if other answers are sent before.
+   *
+   * @param id   id of the answer
+   * @param data data of the answer
+   * @return answer to this package
+   */
+  public DataPackage createReply(final String id, final Object... data) {
+    return new DataPackage(id, data).withRequestId(this.requestId);
+  }
+
   public <T extends Object> T get(final int i) {
-    return (T) this.dataObjects.get(i);
+    return (T) this.payload.get(i);
   }
 
   public Object getObject(final int i) {
-    return this.dataObjects.get(i);
+    return this.payload.get(i);
+  }
+
+  public int getInt(final int i) {
+    return this.payload.getInt(i);
+  }
+
+  public long getLong(final int i) {
+    return this.payload.getLong(i);
+  }
+
+  public double getDouble(final int i) {
+    return this.payload.getDouble(i);
+  }
+
+  public boolean getBoolean(final int i) {
+    return this.payload.getBoolean(i);
+  }
+
+  public byte[] getBytes(final int i) {
+    return this.payload.getBytes(i);
+  }
+
+  public String getString(final int i) {
+    return this.payload.getString(i);
+  }
+
+  /**
+   * @return number of values
+   */
+  public int size() {
+    return this.payload.size();
   }
 
   public List<Object> get() {
-    return this.dataObjects;
+    return this.payload;
+  }
+
+  public Payload getPayload() {
+    return this.payload;
+  }
+
+  /**
+   * Attaches content which is streamed in chunks behind the values of this package. The body is not part of the
+   * values, so it is not encoded by a codec and not serialized.
+   *
+   * @param body body of this package, null to remove the body
+   * @return this package
+   */
+  public DataPackage setBody(final StreamBody body) {
+    this.body = body;
+    return this;
+  }
+
+  /**
+   * @return body of this package, null if it has none
+   */
+  public StreamBody getBody() {
+    return this.body;
   }
 
   @Override
   public String toString() {
-    return String.format("[%s] %s", this.id, this.dataObjects.toString());
+    return String.format("[%s] %s", this.id, this.payload.toString());
+  }
+
+  private void writeObject(final ObjectOutputStream output) throws IOException {
+    final ObjectOutputStream.PutField fields = output.putFields();
+    fields.put("id", this.id);
+    fields.put("requestId", this.requestId);
+    fields.put("dataObjects", new LinkedList<>(this.payload));
+    output.writeFields();
+    this.payload.writeTypes(output);
+  }
+
+  private void readObject(final ObjectInputStream input) throws IOException, ClassNotFoundException {
+    final ObjectInputStream.GetField fields = input.readFields();
+    final Object id = fields.get("id", null);
+    final Object values = fields.get("dataObjects", null);
+    if (!(id instanceof String) || ((String) id).isEmpty() || values != null && !(values instanceof List)) {
+      throw new InvalidObjectException("Invalid serialized DataPackage");
+    }
+
+    this.id = (String) id;
+    this.requestId = fields.get("requestId", NO_REQUEST_ID);
+    this.payload = Payload.readSerialized(values == null ? Collections.emptyList() : (List<?>) values, input);
   }
 
 }
@@ -0,0 +1,206 @@
+package de.spiderlinker.network.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable {@link DataPackage}s. At high message rates every message allocates a package and the arrays of
+ * its values, a recycler hands out released packages instead, so steady traffic allocates (almost) no packages.
+ * <br>
+ * An acquired package has one reference. Whoever owns a reference releases it with {@link DataPackage#release()}
+ * once the package is not needed anymore, a package which is handed over to another thread is retained first
+ * (see {@link DataPackage#retain()}). The package returns to the recycler with its last reference.
+ * A package which is not released is not lost, it is just collected by the garbage collector like any other object.
+ * <br>
+ * With leak detection every acquired package is tracked together with the stack trace of its acquisition.
+ * Packages which are collected without being released are logged and counted (see {@link #getLeakCount()}).
+ * The tracking is expensive, so it is meant for tests and debugging.
+ * <br>
+ * The recycler is thread safe, packages may be released by another thread than the one which acquired them.
+ * Packages with a {@link PayloadSchema} are not pooled.
+ */
+public final class DataPackageRecycler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DataPackageRecycler.class);
+
+  /** Default number of released packages which are kept for reuse */
+  public static final int DEFAULT_MAX_POOLED = 1024;
+  /** Number of values whose arrays are kept when a package is released, larger payloads are trimmed */
+  public static final int DEFAULT_MAX_CAPACITY = 64;
+
+  private final DataPackage[] pool;
+  private final int maxCapacity;
+  private final boolean leakDetection;
+  private int pooled;
+
+  private final LongAdder created  = new LongAdder();
+  private final LongAdder acquired = new LongAdder();
+  private final LongAdder leaks    = new LongAdder();
+
+  private final ReferenceQueue<DataPackage> collected = new ReferenceQueue<>();
+  /** Records of the acquired packages, keeps the records reachable until their package is collected */
+  private final Set<LeakRecord> records = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates a recycler without leak detection.
+   */
+  public DataPackageRecycler() {
+    this(DEFAULT_MAX_POOLED, DEFAULT_MAX_CAPACITY, false);
+  }
+
+  /**
+   * @param maxPooled     maximum number of released packages which are kept for reuse
+   * @param maxCapacity   maximum number of values whose arrays are kept when a package is released
+   * @param leakDetection whether packages which are not released are detected
+   */
+  public DataPackageRecycler(final int maxPooled, final int maxCapacity, final boolean leakDetection) {
+    if (maxPooled < 0 || maxCapacity < 0) {
+      throw new IllegalArgumentException("Invalid pool size! (maxPooled>=0, maxCapacity>=0)");
+    }
+    this.pool = new DataPackage[maxPooled];
+    this.maxCapacity = maxCapacity;
+    this.leakDetection = leakDetection;
+  }
+
+  /**
+   * @param id id of the package
+   * @return empty package with one reference
+   */
+  public DataPackage acquire(final String id) {
+    return acquire(id, DataPackage.NO_REQUEST_ID);
+  }
+
+  /**
+   * @param id        id of the package
+   * @param requestId ID of the request the package belongs to or {@link DataPackage#NO_REQUEST_ID}
+   * @return empty package with one reference
+   */
+  public DataPackage acquire(final String id, final long requestId) {
+    DataPackage data = null;
+    synchronized (pool) {
+      if (pooled > 0) {
+        data = pool[--pooled];
+        pool[pooled] = null;
+      }
+    }
+    if (data == null) {
+      data = new DataPackage(this, 0);
+      created.increment();
+    }
+    data.reuse(id, requestId);
+    acquired.increment();
+
+    if (leakDetection) {
+      detectLeaks();
+      final LeakRecord record = new LeakRecord(data, collected);
+      records.add(record);
+      data.leak = record;
+    }
+    return data;
+  }
+
+  /**
+   * Releases the object if it is a pooled package, e.g. a received object which was not handed over to a handler.
+   *
+   * @param obj object which is not used anymore
+   * @return whether the last reference of a pooled package was released
+   */
+  public static boolean release(final Object obj) {
+    return obj instanceof DataPackage && ((DataPackage) obj).release();
+  }
+
+  /**
+   * Called by a package when its last reference was released.
+   */
+  void recycle(final DataPackage data) {
+    final LeakRecord record = data.leak;
+    if (record != null) {
+      data.leak = null;
+      record.clear();
+      records.remove(record);
+    }
+
+    data.getPayload().recycle(maxCapacity);
+    data.setBody(null);
+    synchronized (pool) {
+      if (pooled < pool.length) {
+        pool[pooled++] = data;
+      }
+    }
+  }
+
+  /**
+   * Logs and counts the packages which were collected by the garbage collector without being released.
+   * Called by every acquisition, tests call it after a garbage collection.
+   *
+   * @return number of leaks detected by this call
+   */
+  public int detectLeaks() {
+    int detected = 0;
+    LeakRecord record;
+    while ((record = (LeakRecord) collected.poll()) != null) {
+      if (records.remove(record)) {
+        detected++;
+        leaks.increment();
+        LOGGER.warn("DataPackage '{}' was not released before it was garbage collected, it was acquired at:",
+            record.id, record.acquisition);
+      }
+    }
+    return detected;
+  }
+
+  public boolean isLeakDetection() {
+    return leakDetection;
+  }
+
+  /**
+   * @return number of packages currently available for reuse
+   */
+  public int getPooledCount() {
+    synchronized (pool) {
+      return pooled;
+    }
+  }
+
+  /**
+   * @return number of packages allocated since the creation of the recycler
+   */
+  public long getCreatedCount() {
+    return created.sum();
+  }
+
+  /**
+   * @return number of acquired packages (new and reused) since the creation of the recycler
+   */
+  public long getAcquiredCount() {
+    return acquired.sum();
+  }
+
+  /**
+   * @return number of detected packages which were not released (only counted with leak detection)
+   */
+  public long getLeakCount() {
+    return leaks.sum();
+  }
+
+  /**
+   * Acquisition of a package which is enqueued when the package is collected without being released.
+   */
+  static final class LeakRecord extends PhantomReference<DataPackage> {
+
+    private final String id;
+    private final Throwable acquisition = new Throwable("Acquisition of the leaked DataPackage");
+
+    LeakRecord(final DataPackage data, final ReferenceQueue<DataPackage> queue) {
+      super(data, queue);
+      this.id = data.getID();
+    }
+  }
+
+}
@@ -0,0 +1,103 @@
+package de.spiderlinker.network.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Encoded values of a {@link Payload} which are decoded on first access (see {@link Payload#setEncoded}).
+ * The codec decodes the header of a package (its id and the offsets of its values) eagerly and keeps the bytes
+ * of the values. A package which is forwarded without being modified is written with these bytes, so a router
+ * which only looks at the id of a package never decodes its values.
+ */
+public final class EncodedValues {
+
+  /**
+   * Decodes a single value of the encoded values.
+   */
+  @FunctionalInterface
+  public interface Reader {
+
+    /**
+     * @param buffer array containing the encoded value
+     * @param offset start of the encoded value
+     * @param length length of the encoded value
+     * @return decoded value
+     * @throws IOException            invalid encoding
+     * @throws ClassNotFoundException class of the encoded value is unknown
+     */
+    Object read(byte[] buffer, int offset, int length) throws IOException, ClassNotFoundException;
+
+  }
+
+  private final int    codecId;
+  private final byte[] buffer;
+  private final int[]  offsets;
+  private final Reader reader;
+
+  /**
+   * @param codecId ID of the codec which encoded the values
+   * @param buffer  bytes of the encoded values (not copied, must not be modified afterwards)
+   * @param offsets start of every value followed by the end of the last value
+   * @param reader  decodes a single value
+   */
+  public EncodedValues(final int codecId, final byte[] buffer, final int[] offsets, final Reader reader) {
+    if (offsets.length == 0 || offsets[offsets.length - 1] > buffer.length) {
+      throw new IllegalArgumentException("Invalid offsets of encoded values");
+    }
+    this.codecId = codecId;
+    this.buffer = buffer;
+    this.offsets = offsets;
+    this.reader = reader;
+  }
+
+  /**
+   * @return ID of the codec which encoded the values
+   */
+  public int getCodecId() {
+    return codecId;
+  }
+
+  /**
+   * @return number of values
+   */
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * @return bytes of the encoded values, must not be modified
+   */
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * @return start of the first value in the buffer
+   */
+  public int getOffset() {
+    return offsets[0];
+  }
+
+  /**
+   * @return number of bytes of all values
+   */
+  public int getLength() {
+    return offsets[offsets.length - 1] - offsets[0];
+  }
+
+  /**
+   * @param index index of the value
+   * @return decoded value
+   * @throws UncheckedIOException the value can not be decoded
+   */
+  Object decode(final int index) {
+    try {
+      return reader.read(buffer, offsets[index], offsets[index + 1] - offsets[index]);
+    } catch (final IOException e) {
+      throw new UncheckedIOException("Failed to decode value " + index, e);
+    } catch (final ClassNotFoundException e) {
+      throw new UncheckedIOException(new IOException("Class of value " + index + " is unknown", e));
+    }
+  }
+
+}
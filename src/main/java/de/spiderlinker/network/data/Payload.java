@@ -0,0 +1,580 @@
+package de.spiderlinker.network.data;
+
+import de.spiderlinker.network.data.PayloadSchema.Type;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Values of a {@link DataPackage}, backed by a growable array. Primitives which are added with the typed methods
+ * (e.g. {@link #addInt(int)}) are stored without boxing and read with the typed getters (e.g. {@link #getInt(int)}).
+ * As {@link java.util.List} every value is an object, so primitives are boxed when they are read with
+ * {@link #get(int)}. The typed getters accept the boxed values of other slots as well.
+ * <br>
+ * A payload with a {@link PayloadSchema} has a fixed number of slots with fixed types: values can only be set,
+ * and a value which does not match the type of its slot is rejected.
+ * <br>
+ * A received payload may contain {@link EncodedValues}, whose values are decoded on first access. As long as such
+ * a payload is not modified and none of its mutable values (e.g. a list) was read, codecs write its encoded values
+ * instead of encoding its values again.
+ * <br>
+ * A payload is not thread safe. As decoding modifies the payload, this includes reading encoded values.
+ */
+public final class Payload extends AbstractList<Object> implements RandomAccess, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int      DEFAULT_CAPACITY = 4;
+  private static final Object[] EMPTY            = {};
+  private static final Type[]   TYPES            = Type.values();
+  /** Value of a slot which is not decoded yet */
+  private static final Object   PENDING          = new Object();
+
+  /** Schema of the slots, null if the payload may contain any values */
+  private final PayloadSchema schema;
+
+  private transient Object[] values;
+  /** Primitive values and the ordinals of their types, only allocated once a primitive is stored */
+  private transient long[]   primitives;
+  private transient byte[]   types;
+  private transient int      size;
+  /** Encoded values of the slots which are not decoded yet, null if all values are decoded */
+  private transient EncodedValues encoded;
+  /** Whether the encoded values still equal the values of this payload */
+  private transient boolean       encodedCurrent;
+
+  Payload(final int capacity) {
+    this.schema = null;
+    this.values = capacity == 0 ? EMPTY : new Object[capacity];
+  }
+
+  Payload(final PayloadSchema schema) {
+    this.schema = schema;
+    this.values = new Object[schema.size()];
+    this.primitives = new long[schema.size()];
+    this.types = new byte[schema.size()];
+    for (int slot = 0; slot < schema.size(); slot++) {
+      types[slot] = (byte) schema.getType(slot).ordinal();
+    }
+    this.size = schema.size();
+  }
+
+  /**
+   * @return schema of the slots, null if the payload may contain any values
+   */
+  public PayloadSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @param index index of the value
+   * @return type of the slot: the type of a primitive which is stored without boxing or the type of the schema,
+   * otherwise {@link Type#OBJECT}
+   */
+  public Type getType(final int index) {
+    checkIndex(index);
+    if (values[index] == PENDING) {
+      decodeValue(index);
+    }
+    return types == null ? Type.OBJECT : TYPES[types[index]];
+  }
+
+  /**
+   * Sets the values of this empty payload to encoded values, which are decoded on first access.
+   *
+   * @param encodedValues values received by a codec
+   * @throws IllegalStateException payload already contains values
+   */
+  public void setEncoded(final EncodedValues encodedValues) {
+    requireNoSchema();
+    if (size != 0) {
+      throw new IllegalStateException("Payload already contains values");
+    }
+    ensureCapacity(encodedValues.size());
+    Arrays.fill(values, 0, encodedValues.size(), PENDING);
+    size = encodedValues.size();
+    encoded = encodedValues;
+    encodedCurrent = true;
+    modCount++;
+  }
+
+  /**
+   * @return encoded values of this payload, null if it was not received with encoded values or it was modified
+   */
+  public EncodedValues getEncoded() {
+    return encodedCurrent ? encoded : null;
+  }
+
+  /**
+   * @param index index of the value
+   * @return whether the value is decoded (always true unless the payload contains {@link EncodedValues})
+   */
+  public boolean isDecoded(final int index) {
+    checkIndex(index);
+    return values[index] != PENDING;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /*
+   * - - - - - - - - - - Typed access - - - - - - - - - -
+   */
+
+  public int getInt(final int index) {
+    return getType(index) == Type.INT ? (int) primitives[index] : (Integer) requireObject(index, Type.INT);
+  }
+
+  public long getLong(final int index) {
+    return getType(index) == Type.LONG ? primitives[index] : (Long) requireObject(index, Type.LONG);
+  }
+
+  public double getDouble(final int index) {
+    return getType(index) == Type.DOUBLE
+        ? Double.longBitsToDouble(primitives[index])
+        : (Double) requireObject(index, Type.DOUBLE);
+  }
+
+  public boolean getBoolean(final int index) {
+    return getType(index) == Type.BOOLEAN ? primitives[index] != 0 : (Boolean) requireObject(index, Type.BOOLEAN);
+  }
+
+  /**
+   * @param index index of the value
+   * @return the byte array itself (not a copy)
+   */
+  public byte[] getBytes(final int index) {
+    return (byte[]) expose(requireObject(index, Type.BYTES));
+  }
+
+  public String getString(final int index) {
+    return (String) requireObject(index, Type.STRING);
+  }
+
+  public void addInt(final int value) {
+    addPrimitive(Type.INT, value);
+  }
+
+  public void addLong(final long value) {
+    addPrimitive(Type.LONG, value);
+  }
+
+  public void addDouble(final double value) {
+    addPrimitive(Type.DOUBLE, Double.doubleToRawLongBits(value));
+  }
+
+  public void addBoolean(final boolean value) {
+    addPrimitive(Type.BOOLEAN, value ? 1 : 0);
+  }
+
+  public void setInt(final int index, final int value) {
+    setPrimitive(index, Type.INT, value);
+  }
+
+  public void setLong(final int index, final long value) {
+    setPrimitive(index, Type.LONG, value);
+  }
+
+  public void setDouble(final int index, final double value) {
+    setPrimitive(index, Type.DOUBLE, Double.doubleToRawLongBits(value));
+  }
+
+  public void setBoolean(final int index, final boolean value) {
+    setPrimitive(index, Type.BOOLEAN, value ? 1 : 0);
+  }
+
+  private Object requireObject(final int index, final Type expected) {
+    final Type type = getType(index);
+    if (type.isPrimitive()) {
+      throw new ClassCastException("Value " + index + " is " + type + ", not " + expected);
+    }
+    return values[index];
+  }
+
+  private void addPrimitive(final Type type, final long value) {
+    requireNoSchema();
+    ensureCapacity(size + 1);
+    storePrimitive(size, type, value);
+    size++;
+    modCount++;
+    encodedCurrent = false;
+  }
+
+  private void setPrimitive(final int index, final Type type, final long value) {
+    checkIndex(index);
+    if (schema != null && schema.getType(index) != type) {
+      throw new IllegalArgumentException("Slot " + index + " expects " + schema.getType(index) + ", not " + type);
+    }
+    storePrimitive(index, type, value);
+    encodedCurrent = false;
+  }
+
+  private void storePrimitive(final int index, final Type type, final long value) {
+    ensurePrimitives();
+    types[index] = (byte) type.ordinal();
+    primitives[index] = value;
+    values[index] = null;
+  }
+
+  /**
+   * Decodes a pending value, primitives are stored without boxing like the values added with the typed methods.
+   */
+  private void decodeValue(final int index) {
+    final Object value = encoded.decode(index);
+    if (value instanceof Integer) {
+      storePrimitive(index, Type.INT, (Integer) value);
+    } else if (value instanceof Long) {
+      storePrimitive(index, Type.LONG, (Long) value);
+    } else if (value instanceof Double) {
+      storePrimitive(index, Type.DOUBLE, Double.doubleToRawLongBits((Double) value));
+    } else if (value instanceof Boolean) {
+      storePrimitive(index, Type.BOOLEAN, (Boolean) value ? 1 : 0);
+    } else {
+      values[index] = value;
+      if (types != null) {
+        types[index] = (byte) Type.OBJECT.ordinal();
+      }
+    }
+  }
+
+  /**
+   * A value which may be modified by the caller (e.g. a list or an array) is handed out, so the encoded values
+   * are no longer written in place of the values.
+   */
+  private Object expose(final Object value) {
+    if (encodedCurrent && !isImmutable(value)) {
+      encodedCurrent = false;
+    }
+    return value;
+  }
+
+  private static boolean isImmutable(final Object value) {
+    return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+        || value instanceof Double || value instanceof Boolean || value instanceof Float || value instanceof Short
+        || value instanceof Byte || value instanceof Character;
+  }
+
+  /**
+   * Decodes all pending values before the values are moved, as the encoded values are accessed by index.
+   */
+  private void decodeAll() {
+    if (encoded != null) {
+      for (int index = 0; index < size; index++) {
+        if (values[index] == PENDING) {
+          decodeValue(index);
+        }
+      }
+      encoded = null;
+      encodedCurrent = false;
+    }
+  }
+
+  /*
+   * - - - - - - - - - - List - - - - - - - - - -
+   */
+
+  @Override
+  public Object get(final int index) {
+    switch (getType(index)) {
+      case INT:
+        return (int) primitives[index];
+      case LONG:
+        return primitives[index];
+      case DOUBLE:
+        return Double.longBitsToDouble(primitives[index]);
+      case BOOLEAN:
+        return primitives[index] != 0;
+      default:
+        return expose(values[index]);
+    }
+  }
+
+  @Override
+  public Object set(final int index, final Object value) {
+    final Object previous = get(index);
+    if (schema != null) {
+      setSlot(index, value);
+    } else {
+      values[index] = value;
+      if (types != null) {
+        types[index] = (byte) Type.OBJECT.ordinal();
+      }
+    }
+    encodedCurrent = false;
+    return previous;
+  }
+
+  @Override
+  public boolean add(final Object value) {
+    requireNoSchema();
+    ensureCapacity(size + 1);
+    if (types != null) {
+      types[size] = (byte) Type.OBJECT.ordinal();
+    }
+    values[size++] = value;
+    modCount++;
+    encodedCurrent = false;
+    return true;
+  }
+
+  @Override
+  public void add(final int index, final Object value) {
+    requireNoSchema();
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    if (index < size) {
+      decodeAll();
+    }
+    ensureCapacity(size + 1);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    if (types != null) {
+      System.arraycopy(types, index, types, index + 1, size - index);
+      System.arraycopy(primitives, index, primitives, index + 1, size - index);
+      types[index] = (byte) Type.OBJECT.ordinal();
+    }
+    values[index] = value;
+    size++;
+    modCount++;
+    encodedCurrent = false;
+  }
+
+  @Override
+  public Object remove(final int index) {
+    requireNoSchema();
+    final Object previous = get(index);
+    decodeAll();
+    final int moved = size - index - 1;
+    System.arraycopy(values, index + 1, values, index, moved);
+    if (types != null) {
+      System.arraycopy(types, index + 1, types, index, moved);
+      System.arraycopy(primitives, index + 1, primitives, index, moved);
+    }
+    values[--size] = null;
+    modCount++;
+    encodedCurrent = false;
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    requireNoSchema();
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+    modCount++;
+    encoded = null;
+    encodedCurrent = false;
+  }
+
+  /**
+   * Removes all values of a pooled payload, its arrays are kept for the next use unless they exceed the capacity.
+   *
+   * @param maxCapacity maximum number of values whose arrays are kept
+   */
+  void recycle(final int maxCapacity) {
+    if (values.length > maxCapacity) {
+      values = new Object[maxCapacity];
+      types = null;
+      primitives = null;
+    } else {
+      Arrays.fill(values, 0, size, null);
+    }
+    size = 0;
+    modCount++;
+    encoded = null;
+    encodedCurrent = false;
+  }
+
+  /**
+   * Sets the value of a slot of the schema, primitives are unboxed.
+   */
+  private void setSlot(final int index, final Object value) {
+    final Type type = schema.getType(index);
+    switch (type) {
+      case INT:
+        setInt(index, (Integer) requireType(index, type, value, Integer.class));
+        break;
+      case LONG:
+        setLong(index, (Long) requireType(index, type, value, Long.class));
+        break;
+      case DOUBLE:
+        setDouble(index, (Double) requireType(index, type, value, Double.class));
+        break;
+      case BOOLEAN:
+        setBoolean(index, (Boolean) requireType(index, type, value, Boolean.class));
+        break;
+      case BYTES:
+        values[index] = value == null ? null : requireType(index, type, value, byte[].class);
+        break;
+      case STRING:
+        values[index] = value == null ? null : requireType(index, type, value, String.class);
+        break;
+      default:
+        values[index] = value;
+    }
+  }
+
+  private static Object requireType(final int index, final Type type, final Object value, final Class<?> valueClass) {
+    if (!valueClass.isInstance(value)) {
+      throw new IllegalArgumentException("Slot " + index + " expects " + type + ", not "
+          + (value == null ? "null" : value.getClass().getSimpleName()));
+    }
+    return value;
+  }
+
+  private void requireNoSchema() {
+    if (schema != null) {
+      throw new UnsupportedOperationException("Payload with schema has a fixed number of slots");
+    }
+  }
+
+  private void checkIndex(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (capacity > values.length) {
+      final int newCapacity = Math.max(capacity, values.length == 0 ? DEFAULT_CAPACITY : values.length * 2);
+      values = Arrays.copyOf(values, newCapacity);
+      if (types != null) {
+        types = Arrays.copyOf(types, newCapacity);
+        primitives = Arrays.copyOf(primitives, newCapacity);
+      }
+    }
+  }
+
+  private void ensurePrimitives() {
+    if (types == null) {
+      // the ordinal of OBJECT marks the values which are stored as objects
+      types = new byte[values.length];
+      Arrays.fill(types, (byte) Type.OBJECT.ordinal());
+      primitives = new long[values.length];
+    }
+  }
+
+  /*
+   * - - - - - - - - - - Serialization - - - - - - - - - -
+   */
+
+  private void writeObject(final ObjectOutputStream output) throws IOException {
+    output.defaultWriteObject();
+    output.writeInt(size);
+    for (int index = 0; index < size; index++) {
+      final Type type = getType(index);
+      output.writeByte(type.ordinal());
+      if (type.isPrimitive()) {
+        output.writeLong(primitives[index]);
+      } else {
+        output.writeObject(values[index]);
+      }
+    }
+  }
+
+  private void readObject(final ObjectInputStream input) throws IOException, ClassNotFoundException {
+    input.defaultReadObject();
+    final int length = input.readInt();
+    if (length < 0 || schema != null && length != schema.size()) {
+      throw new InvalidObjectException("Invalid payload size " + length);
+    }
+    this.values = new Object[length];
+    this.primitives = new long[length];
+    this.types = new byte[length];
+    for (int index = 0; index < length; index++) {
+      final int ordinal = input.readUnsignedByte();
+      if (ordinal >= TYPES.length || schema != null && schema.getType(index).ordinal() != ordinal) {
+        throw new InvalidObjectException("Invalid payload type " + ordinal);
+      }
+      types[index] = (byte) ordinal;
+      if (TYPES[ordinal].isPrimitive()) {
+        primitives[index] = input.readLong();
+      } else {
+        values[index] = input.readObject();
+      }
+    }
+    this.size = length;
+  }
+
+  /**
+   * Writes the types of the slots behind the fields of a serialized {@link DataPackage}, whose values are
+   * serialized as list. The types are optional data, which the first releases skip.
+   *
+   * @param output stream of the package
+   * @throws IOException writing failed
+   */
+  void writeTypes(final ObjectOutputStream output) throws IOException {
+    output.writeBoolean(schema != null);
+    for (int index = 0; index < size; index++) {
+      output.writeByte(getType(index).ordinal());
+    }
+  }
+
+  /**
+   * Restores the payload of a serialized {@link DataPackage} with the types of its slots, if the package was not
+   * serialized by the first releases (which wrote no types, all values are objects then).
+   *
+   * @param values values of the package
+   * @param input  stream of the package, positioned behind its fields
+   * @return payload with the values
+   * @throws IOException types are invalid or do not match the values
+   */
+  static Payload readSerialized(final List<?> values, final ObjectInputStream input) throws IOException {
+    final Payload payload;
+    if (input.available() == 0) {
+      payload = new Payload(values.size());
+      payload.addAll(values);
+      return payload;
+    }
+
+    final boolean fixed = input.readBoolean();
+    final Type[] slotTypes = new Type[values.size()];
+    for (int index = 0; index < slotTypes.length; index++) {
+      final int ordinal = input.readUnsignedByte();
+      if (ordinal >= TYPES.length) {
+        throw new InvalidObjectException("Invalid payload type " + ordinal);
+      }
+      slotTypes[index] = TYPES[ordinal];
+    }
+
+    try {
+      payload = fixed ? new Payload(PayloadSchema.of(slotTypes)) : new Payload(values.size());
+      for (int index = 0; index < slotTypes.length; index++) {
+        final Object value = values.get(index);
+        if (fixed) {
+          payload.setSlot(index, value);
+        } else if (slotTypes[index].isPrimitive()) {
+          payload.addPrimitive(slotTypes[index], toPrimitive(slotTypes[index], value));
+        } else {
+          payload.add(value);
+        }
+      }
+    } catch (final ClassCastException | IllegalArgumentException e) {
+      throw new InvalidObjectException("Serialized values do not match their types: " + e.getMessage());
+    }
+    return payload;
+  }
+
+  private static long toPrimitive(final Type type, final Object value) {
+    switch (type) {
+      case INT:
+        return (Integer) value;
+      case LONG:
+        return (Long) value;
+      case DOUBLE:
+        return Double.doubleToRawLongBits((Double) value);
+      default:
+        return (Boolean) value ? 1 : 0;
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+package de.spiderlinker.network.data;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Fixed types of the slots of a {@link Payload}. A package with a schema has exactly one slot per type, the values
+ * of a slot are checked when they are set. Codecs write the values of the fixed size types with their fixed size
+ * (see {@link Type#getFixedSize()}), so the encoded size of such a package only depends on its variable slots.
+ */
+public final class PayloadSchema implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Type of a slot.
+   */
+  public enum Type {
+    INT(Integer.BYTES),
+    LONG(Long.BYTES),
+    DOUBLE(Double.BYTES),
+    BOOLEAN(1),
+    /** byte[] or null */
+    BYTES(-1),
+    /** String or null */
+    STRING(-1),
+    /** any value supported by the codec */
+    OBJECT(-1);
+
+    private final int fixedSize;
+
+    Type(final int fixedSize) {
+      this.fixedSize = fixedSize;
+    }
+
+    /**
+     * @return whether the value is a primitive, which is stored without boxing
+     */
+    public boolean isPrimitive() {
+      return fixedSize > 0;
+    }
+
+    /**
+     * @return number of bytes of an encoded value, -1 if the size depends on the value
+     */
+    public int getFixedSize() {
+      return fixedSize;
+    }
+  }
+
+  private final Type[] types;
+
+  private PayloadSchema(final Type[] types) {
+    this.types = types;
+  }
+
+  /**
+   * @param types types of the slots
+   * @return schema with the given slots
+   */
+  public static PayloadSchema of(final Type... types) {
+    final Type[] copy = types.clone();
+    for (final Type type : copy) {
+      Objects.requireNonNull(type);
+    }
+    return new PayloadSchema(copy);
+  }
+
+  /**
+   * @return number of slots
+   */
+  public int size() {
+    return types.length;
+  }
+
+  /**
+   * @param slot index of the slot
+   * @return type of the slot
+   */
+  public Type getType(final int slot) {
+    return types[slot];
+  }
+
+  /**
+   * @return number of bytes of the encoded values of all fixed size slots
+   */
+  public int getFixedSize() {
+    int size = 0;
+    for (final Type type : types) {
+      size += Math.max(0, type.getFixedSize());
+    }
+    return size;
+  }
+
+  /**
+   * @return whether all slots have a fixed size
+   */
+  public boolean isFixedSize() {
+    for (final Type type : types) {
+      if (!type.isPrimitive()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    return obj instanceof PayloadSchema && Arrays.equals(types, ((PayloadSchema) obj).types);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(types);
+  }
+
+  @Override
+  public String toString() {
+    return "Schema" + Arrays.toString(types);
+  }
+
+}
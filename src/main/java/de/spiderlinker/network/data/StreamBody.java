@@ -0,0 +1,214 @@
+package de.spiderlinker.network.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Content of a {@link DataPackage} which is streamed in chunks behind the package instead of being encoded with its
+ * values, e.g. a file or the output of another stream. Only a single chunk is held in memory at a time, so a body may
+ * be larger than the heap (and than the maximum length of a frame).
+ * <br>
+ * The body of a sent package is read from its source while the package is written, it is not closed by the
+ * connection. The body of a received package is read with {@link #getInputStream()} while its chunks arrive.
+ * The chunks are part of the connection, so it continues with the next message only after the body was read
+ * completely or closed: a handler consumes the body while it runs, the server closes it (and discards the
+ * remaining chunks) after the handler returned.
+ * <br>
+ * A body is read once and is not thread safe. Bodies are sent with the framed protocol only.
+ */
+public final class StreamBody implements Closeable {
+
+  /** Length of a body whose length is not known in advance */
+  public static final long UNKNOWN_LENGTH = -1;
+
+  private static final int TRANSFER_BUFFER_SIZE = 8192;
+
+  private final InputStream input;
+  private final long length;
+
+  private StreamBody(final InputStream input, final long length) {
+    if (length < UNKNOWN_LENGTH) {
+      throw new IllegalArgumentException("Invalid body length! (length>=0 or UNKNOWN_LENGTH)");
+    }
+    this.input = Objects.requireNonNull(input);
+    this.length = length;
+  }
+
+  /**
+   * @param input source of the body, read until its end
+   * @return body with unknown length
+   */
+  public static StreamBody of(final InputStream input) {
+    return new StreamBody(input, UNKNOWN_LENGTH);
+  }
+
+  /**
+   * @param input  source of the body
+   * @param length number of bytes of the body or {@link #UNKNOWN_LENGTH}
+   * @return body with the given length, a source which ends before is an error
+   */
+  public static StreamBody of(final InputStream input, final long length) {
+    return new StreamBody(input, length);
+  }
+
+  /**
+   * @param channel source of the body, read until its end
+   * @return body with unknown length
+   */
+  public static StreamBody of(final ReadableByteChannel channel) {
+    return new StreamBody(Channels.newInputStream(channel), UNKNOWN_LENGTH);
+  }
+
+  /**
+   * Creates a body of a region of a file. The region is read with absolute positions, so the position of the
+   * channel is not changed and the channel is not closed with the body.
+   *
+   * @param file     file to read
+   * @param position start of the region
+   * @param length   number of bytes of the region
+   * @return body with the content of the region
+   */
+  public static StreamBody of(final FileChannel file, final long position, final long length) {
+    if (position < 0 || length < 0) {
+      throw new IllegalArgumentException("Invalid file region! (position>=0, length>=0)");
+    }
+    return new StreamBody(new FileRegionInputStream(file, position, length, false), length);
+  }
+
+  /**
+   * @param file file to read
+   * @return body with the content of the file, the file is closed with the body
+   * @throws IOException failed to open the file
+   */
+  public static StreamBody of(final Path file) throws IOException {
+    final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      final long size = channel.size();
+      return new StreamBody(new FileRegionInputStream(channel, 0, size, true), size);
+    } catch (final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return stream to read the content of the body (the source of a sent body)
+   */
+  public InputStream getInputStream() {
+    return input;
+  }
+
+  /**
+   * @return number of bytes of the body or {@link #UNKNOWN_LENGTH}
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Writes the remaining content of the body to the output.
+   *
+   * @param output stream to write to
+   * @return number of written bytes
+   * @throws IOException failed to read the body or to write the output
+   */
+  public long transferTo(final OutputStream output) throws IOException {
+    final byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+    long transferred = 0;
+    int read;
+    while ((read = input.read(buffer)) >= 0) {
+      output.write(buffer, 0, read);
+      transferred += read;
+    }
+    return transferred;
+  }
+
+  /**
+   * Closes the source of the body. The remaining chunks of a received body are discarded.
+   *
+   * @throws IOException failed to close the source
+   */
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  @Override
+  public String toString() {
+    return length == UNKNOWN_LENGTH ? "StreamBody[unknown length]" : "StreamBody[" + length + " bytes]";
+  }
+
+  /**
+   * Reads a region of a file with absolute positions.
+   */
+  private static class FileRegionInputStream extends InputStream {
+
+    private final FileChannel file;
+    private final boolean owned;
+    private long position;
+    private long remaining;
+
+    FileRegionInputStream(final FileChannel file, final long position, final long length, final boolean owned) {
+      this.file = Objects.requireNonNull(file);
+      this.position = position;
+      this.remaining = length;
+      this.owned = owned;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] single = new byte[1];
+      return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (remaining == 0) {
+        return -1;
+      }
+
+      final int read = file.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, remaining)), position);
+      if (read < 0) {
+        // the file was truncated after the body was created
+        remaining = 0;
+        return -1;
+      }
+      position += read;
+      remaining -= read;
+      return read;
+    }
+
+    @Override
+    public long skip(final long count) {
+      final long skipped = Math.max(0, Math.min(count, remaining));
+      position += skipped;
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (owned) {
+        file.close();
+      }
+    }
+  }
+
+}
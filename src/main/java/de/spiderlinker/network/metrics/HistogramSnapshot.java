@@ -0,0 +1,97 @@
+package de.spiderlinker.network.metrics;
+
+/**
+ * Counts of a {@link LatencyHistogram} at a point in time. All values are in microseconds
+ * and are reported as the upper bound of their bucket.
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+
+    HistogramSnapshot(final long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (final long bucket : counts) {
+            total += bucket;
+        }
+        this.count = total;
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100 (e.g. 99.9)
+     * @return smallest value which is larger than or equal to the given percentage of the recorded values
+     * (0 if no value was recorded)
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile! (0-100)");
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return LatencyHistogram.highestValueOf(counts.length - 1);
+    }
+
+    public long getMedian() {
+        return getValueAtPercentile(50);
+    }
+
+    public long get99thPercentile() {
+        return getValueAtPercentile(99);
+    }
+
+    public long get999thPercentile() {
+        return getValueAtPercentile(99.9);
+    }
+
+    /**
+     * @return largest recorded value (0 if no value was recorded)
+     */
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return mean of the recorded values (0 if no value was recorded)
+     */
+    public double getMean() {
+        if (count == 0) {
+            return 0;
+        }
+
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += (double) counts[i] * LatencyHistogram.highestValueOf(i);
+        }
+        return sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Latency[count=%d, p50=%dus, p99=%dus, p99.9=%dus, max=%dus]",
+                count, getMedian(), get99thPercentile(), get999thPercentile(), getMax());
+    }
+
+}
@@ -0,0 +1,65 @@
+package de.spiderlinker.network.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers metrics as MXBeans at the platform MBean server, so they can be read with JConsole, VisualVM
+ * or any JMX based monitoring agent. The metrics are read when the attributes are requested,
+ * nothing is computed between the requests.
+ */
+public final class JmxExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxExporter.class);
+
+    /** Domain of the names of all registered metrics */
+    public static final String DOMAIN = "de.spiderlinker.network";
+
+    private JmxExporter() {
+    }
+
+    /**
+     * Registers the metrics with the name {@code de.spiderlinker.network:type=<type>,name="<name>"}.
+     * Metrics which are registered with the same name already are replaced.
+     *
+     * @param mxBean metrics which implement an interface whose name ends with MXBean
+     * @param type   type of the metrics (e.g. Server)
+     * @param name   name of the instance (e.g. the port of the server)
+     * @return name of the registered metrics or null if they could not be registered
+     */
+    public static ObjectName register(final Object mxBean, final String type, final String name) {
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mxBean, objectName);
+            return objectName;
+        } catch (final JMException e) {
+            LOGGER.warn("Failed to register metrics {} {} at JMX", type, name, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param objectName name returned by {@link #register(Object, String, String)} (null is ignored)
+     */
+    public static void unregister(final ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (final JMException e) {
+            LOGGER.debug("Failed to unregister metrics {} from JMX", objectName, e);
+        }
+    }
+
+}
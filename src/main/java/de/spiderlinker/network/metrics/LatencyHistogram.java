@@ -0,0 +1,87 @@
+package de.spiderlinker.network.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with a fixed relative precision (like an HDR histogram). Values are recorded in
+ * microseconds: values below 64 µs are counted exactly, larger values in buckets whose width is 1/32 of their
+ * magnitude, so every recorded value is reported with an error below 3.2%. Values above about a day are counted
+ * in the last bucket.
+ * <br>
+ * Recording does not allocate and does not lock. The counts are striped over several arrays, a thread always
+ * records into the array of its stripe, so concurrently recording threads rarely write the same cache line.
+ * The stripes are summed up by {@link #getSnapshot()}.
+ */
+public class LatencyHistogram {
+
+    /** Sub buckets of the first bucket (values counted exactly) */
+    private static final int SUB_BUCKET_COUNT = 64;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKET_COUNT);
+    /** Largest magnitude (power of two) of the recorded microseconds */
+    private static final int MAX_MAGNITUDE = 36;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 3) * SUB_BUCKET_HALF;
+    private static final int MAX_STRIPES = 4;
+
+    private final AtomicLongArray counts;
+    private final int stripeMask;
+
+    public LatencyHistogram() {
+        final int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+        this.counts = new AtomicLongArray(stripes * BUCKET_COUNT);
+        this.stripeMask = stripes - 1;
+    }
+
+    /**
+     * @param nanos latency in nanoseconds (e.g. the difference of two {@link System#nanoTime()} calls)
+     */
+    public void record(final long nanos) {
+        final int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.incrementAndGet(stripe * BUCKET_COUNT + indexOf(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * @return counts recorded so far, the recording threads are not blocked
+     */
+    public HistogramSnapshot getSnapshot() {
+        final long[] summed = new long[BUCKET_COUNT];
+        for (int i = 0; i < counts.length(); i++) {
+            summed[i % BUCKET_COUNT] += counts.get(i);
+        }
+        return new HistogramSnapshot(summed);
+    }
+
+    /**
+     * @param micros recorded value
+     * @return index of the bucket which counts the value
+     */
+    static int indexOf(final long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return micros < 0 ? 0 : (int) micros;
+        }
+
+        final int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        // the value has SUB_BUCKET_BITS significant bits after the shift, the highest is always set
+        final int shift = magnitude - SUB_BUCKET_BITS + 1;
+        return shift * SUB_BUCKET_HALF + (int) (micros >>> shift);
+    }
+
+    /**
+     * @param index index of a bucket
+     * @return largest value counted by the bucket
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKET_HALF - 1;
+        final long subBucket = index - shift * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
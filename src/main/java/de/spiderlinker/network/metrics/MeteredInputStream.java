@@ -0,0 +1,56 @@
+package de.spiderlinker.network.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes read from the wrapped stream. Should wrap the stream of a socket directly (below any buffer),
+ * so the counter is updated once per read from the socket.
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    private final LongAdder bytes;
+
+    /**
+     * @param input stream to read from
+     * @param bytes counter of the read bytes
+     */
+    public MeteredInputStream(final InputStream input, final LongAdder bytes) {
+        super(input);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = super.read();
+        if (read >= 0) {
+            bytes.increment();
+        }
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        final int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            bytes.add(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+        final long skipped = super.skip(count);
+        bytes.add(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // re-read bytes would be counted twice
+        return false;
+    }
+
+}
@@ -0,0 +1,38 @@
+package de.spiderlinker.network.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes written to the wrapped stream. Should wrap the stream of a socket directly (below any buffer),
+ * so the counter is updated once per write to the socket.
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+
+    private final LongAdder bytes;
+
+    /**
+     * @param output stream to write to
+     * @param bytes  counter of the written bytes
+     */
+    public MeteredOutputStream(final OutputStream output, final LongAdder bytes) {
+        super(output);
+        this.bytes = bytes;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        bytes.increment();
+    }
+
+    @Override
+    public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+        // FilterOutputStream would write the bytes one by one
+        out.write(buffer, offset, length);
+        bytes.add(length);
+    }
+
+}
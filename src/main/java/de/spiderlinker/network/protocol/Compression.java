@@ -0,0 +1,63 @@
+package de.spiderlinker.network.protocol;
+
+/**
+ * Compression of the frames of a connection, negotiated by the handshake (see {@link FrameCodec}).
+ * The client requests a compression with the features of its handshake, a server which supports it answers
+ * with the same compression, other servers answer without compression.
+ */
+public enum Compression {
+
+  /** Frames are not compressed */
+  NONE(0),
+  /** DEFLATE of {@code java.util.zip}: high compression ratio, for slow links */
+  DEFLATE(1),
+  /** LZ4 block format: lower compression ratio, but several times faster than DEFLATE */
+  LZ4(2);
+
+  /** Bits of the handshake features which contain the ID of the compression */
+  public static final int FEATURE_MASK  = 0x0E;
+  public static final int FEATURE_SHIFT = 1;
+
+  private final int id;
+
+  Compression(final int id) {
+    this.id = id;
+  }
+
+  /**
+   * @return ID of the compression in the flags of compressed frames
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * @return handshake features which request or confirm this compression
+   */
+  public int getFeatures() {
+    return id << FEATURE_SHIFT;
+  }
+
+  /**
+   * @param id ID of a compression
+   * @return compression with the ID, null if the ID is unknown
+   */
+  public static Compression fromId(final int id) {
+    for (final Compression compression : values()) {
+      if (compression.id == id) {
+        return compression;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param features features of a handshake
+   * @return compression requested or confirmed by the handshake, {@link #NONE} if it is unknown
+   */
+  public static Compression fromFeatures(final int features) {
+    final Compression compression = fromId((features & FEATURE_MASK) >>> FEATURE_SHIFT);
+    return compression == null ? NONE : compression;
+  }
+
+}
@@ -0,0 +1,211 @@
+package de.spiderlinker.network.protocol;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Packs objects into datagrams and unpacks received datagrams. A datagram contains one or more complete
+ * data frames of the {@link FrameCodec}, so a batch of small messages is sent with a single datagram:
+ * <pre>
+ * +---------+---------+-----+---------+
+ * | frame 1 | frame 2 | ... | frame n |
+ * +---------+---------+-----+---------+
+ * </pre>
+ * A frame is never split over multiple datagrams. Since a lost fragment would lose the whole message and
+ * reassembling fragments needs state per sender, a message whose frame exceeds the maximum datagram size is
+ * rejected instead. Routed data frames are not used, as there is no handshake to negotiate routes.
+ * <br>
+ * Writing is not thread safe, reading is stateless.
+ */
+public class DatagramCodec {
+
+  /** Largest datagram which is not fragmented by IP on an Ethernet link (MTU 1500 - IPv4 and UDP header) */
+  public static final int DEFAULT_MAX_DATAGRAM_SIZE = 1472;
+  /** Largest payload of a UDP datagram over IPv4 */
+  public static final int MAX_DATAGRAM_SIZE         = 65507;
+
+  /** Placeholder of a frame header, which is written after the payload is encoded */
+  private static final byte[] EMPTY_HEADER = new byte[FrameCodec.HEADER_LENGTH];
+
+  private final Codec          codec;
+  private final int            maxDatagramSize;
+  private final DatagramBuffer buffer = new DatagramBuffer();
+
+  /**
+   * @param codec           codec to encode the objects with
+   * @param maxDatagramSize maximum number of bytes of a datagram
+   */
+  public DatagramCodec(final Codec codec, final int maxDatagramSize) {
+    this.codec = Objects.requireNonNull(codec);
+    this.maxDatagramSize = validateDatagramSize(maxDatagramSize);
+  }
+
+  /**
+   * @param maxDatagramSize maximum number of bytes of a datagram
+   * @return passed size if it is valid
+   */
+  public static int validateDatagramSize(final int maxDatagramSize) {
+    if (maxDatagramSize <= FrameCodec.HEADER_LENGTH || maxDatagramSize > MAX_DATAGRAM_SIZE) {
+      throw new IllegalArgumentException("Invalid datagram size! (" + FrameCodec.HEADER_LENGTH + "<size<="
+          + MAX_DATAGRAM_SIZE + ")");
+    }
+    return maxDatagramSize;
+  }
+
+  public int getMaxDatagramSize() {
+    return maxDatagramSize;
+  }
+
+  /**
+   * Appends the frame of the object to the pending datagram. If the frame does not fit into the pending
+   * datagram, the pending datagram is sent first and the frame starts the next one.
+   *
+   * @param obj    object to send
+   * @param sender sends completed datagrams
+   * @throws IOException object can not be encoded, its frame exceeds the maximum datagram size
+   *                     (nothing is appended), it has a body or failed to send a completed datagram
+   */
+  public void write(final Object obj, final Sender sender) throws IOException {
+    if (FrameCodec.getBody(obj) != null) {
+      throw new IOException("A package with a body can not be sent as datagram");
+    }
+    final int start = buffer.size();
+    buffer.write(EMPTY_HEADER, 0, EMPTY_HEADER.length);
+    try {
+      codec.encode(obj, buffer);
+    } catch (final IOException | RuntimeException e) {
+      buffer.truncate(start);
+      throw e;
+    }
+
+    final int frameLength = buffer.size() - start;
+    if (frameLength > maxDatagramSize) {
+      buffer.truncate(start);
+      throw new IOException("Message of " + frameLength + " bytes exceeds the maximum datagram size of "
+          + maxDatagramSize + " bytes");
+    }
+    buffer.writeHeader(start, FrameCodec.flags(FrameCodec.TYPE_DATA, codec.getId()),
+        frameLength - FrameCodec.HEADER_LENGTH);
+
+    if (buffer.size() > maxDatagramSize) {
+      // the previous frames are sent, the new frame is moved to the start of the next datagram
+      sender.send(ByteBuffer.wrap(buffer.getBuffer(), 0, start));
+      buffer.moveToStart(start);
+    }
+  }
+
+  /**
+   * Sends the pending datagram.
+   *
+   * @param sender sends the datagram
+   * @return whether a datagram was pending
+   * @throws IOException failed to send the datagram
+   */
+  public boolean flush(final Sender sender) throws IOException {
+    if (buffer.size() == 0) {
+      return false;
+    }
+    try {
+      sender.send(ByteBuffer.wrap(buffer.getBuffer(), 0, buffer.size()));
+    } finally {
+      buffer.reset();
+    }
+    return true;
+  }
+
+  /**
+   * Decodes all frames of a received datagram.
+   *
+   * @param datagram array containing the datagram
+   * @param offset   start of the datagram
+   * @param length   length of the datagram
+   * @param objects  list the decoded objects are added to
+   * @throws IOException            invalid or truncated frame
+   * @throws ClassNotFoundException class of a received object is unknown
+   */
+  public static void decode(final byte[] datagram, final int offset, final int length, final List<Object> objects)
+      throws IOException, ClassNotFoundException {
+    decode(datagram, offset, length, objects, null);
+  }
+
+  /**
+   * Decodes all frames of a received datagram which are encoded with one of the accepted codecs.
+   *
+   * @param datagram       array containing the datagram
+   * @param offset         start of the datagram
+   * @param length         length of the datagram
+   * @param objects        list the decoded objects are added to
+   * @param acceptedCodecs codecs the frames may be encoded with, null to accept all codecs of the {@link CodecRegistry}
+   * @throws IOException            invalid or truncated frame or frame of another codec
+   * @throws ClassNotFoundException class of a received object is unknown
+   */
+  public static void decode(final byte[] datagram, final int offset, final int length, final List<Object> objects,
+                            final Codec[] acceptedCodecs) throws IOException, ClassNotFoundException {
+    final int end = offset + length;
+    int position = offset;
+    while (position < end) {
+      if (end - position < FrameCodec.HEADER_LENGTH) {
+        throw new StreamCorruptedException("Truncated frame header in datagram");
+      }
+      final int payloadLength = FrameCodec.readPayloadLength(datagram, position);
+      FrameCodec.requireType(datagram, position, FrameCodec.TYPE_DATA);
+      final int payloadStart = position + FrameCodec.HEADER_LENGTH;
+      if (payloadLength > end - payloadStart) {
+        throw new StreamCorruptedException("Truncated frame of " + payloadLength + " bytes in datagram");
+      }
+
+      final Codec frameCodec = CodecRegistry.getAccepted(acceptedCodecs, FrameCodec.getCodecId(datagram, position));
+      objects.add(frameCodec.decode(new ByteArrayInputStream(datagram, payloadStart, payloadLength)));
+      position = payloadStart + payloadLength;
+    }
+  }
+
+  /**
+   * Sends a completed datagram, the buffer is only valid during the call.
+   */
+  @FunctionalInterface
+  public interface Sender {
+
+    void send(ByteBuffer datagram) throws IOException;
+
+  }
+
+  /**
+   * Reusable buffer of the pending datagram which gives access to its content without copying it.
+   */
+  private static class DatagramBuffer extends ByteArrayOutputStream {
+
+    byte[] getBuffer() {
+      return buf;
+    }
+
+    void truncate(final int length) {
+      count = length;
+    }
+
+    void moveToStart(final int start) {
+      System.arraycopy(buf, start, buf, 0, count - start);
+      count -= start;
+    }
+
+    void writeHeader(final int offset, final byte flags, final int length) {
+      buf[offset] = (byte) (FrameCodec.MAGIC >>> 8);
+      buf[offset + 1] = (byte) FrameCodec.MAGIC;
+      buf[offset + 2] = (byte) FrameCodec.VERSION;
+      buf[offset + 3] = flags;
+      buf[offset + 4] = (byte) (length >>> 24);
+      buf[offset + 5] = (byte) (length >>> 16);
+      buf[offset + 6] = (byte) (length >>> 8);
+      buf[offset + 7] = (byte) length;
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+package de.spiderlinker.network.protocol;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.DataPackage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Message which is encoded only once for all recipients. The bytes of every wire format (data frame of a codec,
+ * routed data frame or legacy object stream) are created with the first recipient that needs them and are
+ * reused for all further recipients. The bytes must not be modified.
+ */
+public final class EncodedMessage {
+
+  private final DataPackage message;
+  private final Map<Long, byte[]> frames = new ConcurrentHashMap<>();
+  private volatile byte[] legacy;
+
+  /**
+   * @param message message to send
+   * @throws IllegalArgumentException the message has a body, which can not be encoded once for all recipients
+   */
+  public EncodedMessage(final DataPackage message) {
+    if (message.getBody() != null) {
+      throw new IllegalArgumentException("A message with a body can not be sent to multiple recipients");
+    }
+    this.message = message;
+  }
+
+  /**
+   * @return message to send
+   */
+  public DataPackage getMessage() {
+    return message;
+  }
+
+  /**
+   * @param codec  codec to encode the message with
+   * @param routes negotiated routes of the recipient (may be null)
+   * @return complete frame (header and payload) of the message
+   * @throws IOException message can not be encoded with the codec
+   */
+  public byte[] getFrame(final Codec codec, final RouteTable routes) throws IOException {
+    // route IDs of the same name are equal for all recipients, the tables of a server only grow
+    final int routeId = FrameCodec.getRouteId(routes, message);
+    final Long key = ((long) codec.getId() << 32) | (routeId & 0xFFFFFFFFL);
+    final byte[] cached = frames.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    final byte flags;
+    if (routeId == RouteTable.NO_ROUTE) {
+      codec.encode(message, payload);
+      flags = FrameCodec.flags(FrameCodec.TYPE_DATA, codec.getId());
+    } else {
+      FrameCodec.encodeRouted(message, routeId, codec, payload);
+      flags = FrameCodec.flags(FrameCodec.TYPE_ROUTED_DATA, codec.getId());
+    }
+    final byte[] frame = FrameCodec.encodeFrame(flags, payload.toByteArray());
+    frames.put(key, frame);
+    return frame;
+  }
+
+  /**
+   * @return message as object stream of the legacy protocol
+   * @throws IOException message can not be serialized
+   */
+  public byte[] getLegacy() throws IOException {
+    byte[] bytes = legacy;
+    if (bytes == null) {
+      final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      JavaSerializationCodec.INSTANCE.encode(message, stream);
+      bytes = stream.toByteArray();
+      legacy = bytes;
+    }
+    return bytes;
+  }
+
+}
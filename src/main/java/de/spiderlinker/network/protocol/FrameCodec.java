@@ -0,0 +1,1111 @@
+package de.spiderlinker.network.protocol;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.DataPackageRecycler;
+import de.spiderlinker.network.data.StreamBody;
+import de.spiderlinker.network.utils.ConnectionUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Reads and writes the messages of one connection. The codec wraps the streams of the connection once,
+ * so no stream wrapper is created per message. <br>
+ * <br>
+ * In framed mode every handshake and every object is sent as frame (big endian):
+ * <pre>
+ * +---------+---------+---------+----------+------------------+
+ * |  magic  | version |  flags  |  length  |     payload      |
+ * | 2 bytes | 1 byte  | 1 byte  | 4 bytes  |  length bytes    |
+ * +---------+---------+---------+----------+------------------+
+ * </pre>
+ * The lower four bits of the flags contain the type of the frame (handshake or data), the upper four bits
+ * the ID of the {@link Codec} which encoded the object of a data frame or the features of a handshake frame.
+ * <br>
+ * If the client sets {@link #FEATURE_ROUTES} in its handshake, a server which supports numeric routes sets it
+ * in its answer as well and sends its {@link RouteTable} in a routes frame. Afterwards DataPackages whose ID is
+ * in the table are sent as routed data frames with the route ID, request ID and the values of the package,
+ * other objects still as data frames. Servers without support ignore the feature.
+ * <br>
+ * A DataPackage with a {@link StreamBody} is sent as stream data frame (length of the body and the encoded package)
+ * followed by chunk frames with the content of the body. An empty chunk frame ends the body, its flags tell whether
+ * the sender completed or aborted the body. The body of a received package reads the chunks from the connection,
+ * it has to be consumed before the next object is read, otherwise its remaining chunks are skipped.
+ * <br>
+ * A client may request a {@link Compression} in the features of its handshake, a server which accepts it
+ * answers with the same compression. Afterwards both sides send frames (except handshakes and routes) whose
+ * payload reaches the threshold as compressed frames (see {@link FrameCompressor}).
+ * In legacy mode the handshake is sent as text line and every object with its own object stream,
+ * like {@link ConnectionUtils} does (always with the {@link JavaSerializationCodec}). The server detects the mode by the first byte sent by the client
+ * (see {@link #detect(Socket)}).
+ * <br>
+ * Writing is thread safe, reading must be done by a single thread.
+ */
+public class FrameCodec {
+
+  /** First two bytes of every frame ("SP") */
+  public static final int  MAGIC              = 0x5350;
+  /** Version of the frame layout */
+  public static final int  VERSION            = 1;
+  /** Length of the frame header (magic, version, flags and length) */
+  public static final int  HEADER_LENGTH      = 8;
+  /** Maximum length of the payload of a single frame */
+  public static final int  MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+  /** Default maximum length of the payload of a frame received by a server, larger data is sent as body */
+  public static final int  DEFAULT_MAX_PAYLOAD_LENGTH = 4 * 1024 * 1024;
+  /** Type of a frame with an encoded object as payload */
+  public static final int  TYPE_DATA          = 0x00;
+  /** Type of a frame with a handshake line as payload */
+  public static final int  TYPE_HANDSHAKE     = 0x01;
+  /** Type of a frame with an encoded {@link RouteTable} as payload */
+  public static final int  TYPE_ROUTES        = 0x02;
+  /** Type of a frame with a DataPackage sent with its numeric route */
+  public static final int  TYPE_ROUTED_DATA   = 0x03;
+  /** Type of a frame with a DataPackage whose body follows in chunk frames */
+  public static final int  TYPE_STREAM_DATA   = 0x04;
+  /** Type of a frame with a chunk of a body as payload, an empty chunk ends the body */
+  public static final int  TYPE_CHUNK         = 0x05;
+  /** Type of a frame with another compressed frame as payload */
+  public static final int  TYPE_COMPRESSED    = 0x06;
+  /** Feature of a handshake frame: numeric routes are requested by the client and supported by the server */
+  public static final int  FEATURE_ROUTES     = 0x01;
+  /** Flag of the empty chunk frame of a body whose sender failed to read it (e.g. a failed file read) */
+  public static final int  CHUNK_ABORTED      = 0x01;
+  /** Maximum length of the chunk frames written by this codec */
+  public static final int  CHUNK_LENGTH       = 64 * 1024;
+
+  private static final int TYPE_MASK   = 0x0F;
+  private static final int CODEC_SHIFT = 4;
+
+  private static final int    MAX_LINE_LENGTH = 1024;
+  private static final int    INITIAL_READ_BUFFER_LENGTH  = 1024;
+  /** Read buffers up to this length are kept for the next frame, larger ones are released after their frame */
+  private static final int    RETAINED_READ_BUFFER_LENGTH = 64 * 1024;
+  private static final byte[] LINE_SEPARATOR  = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private final DataInputStream  input;
+  private final DataOutputStream output;
+  private final boolean          framed;
+  private final Codec            codec;
+  private final PayloadBuffer    writeBuffer = new PayloadBuffer();
+  private final byte[]           header      = new byte[HEADER_LENGTH];
+
+  private byte[] readBuffer = new byte[INITIAL_READ_BUFFER_LENGTH];
+  private int maxPayloadLength = MAX_PAYLOAD_LENGTH;
+  private boolean routeNegotiation;
+  private int handshakeFeatures;
+  private int lastRouteId = RouteTable.NO_ROUTE;
+  private volatile RouteTable routes;
+  private DataPackageRecycler recycler;
+  private Codec[] acceptedCodecs;
+  /** Buffer of the chunks of sent bodies, allocated with the first body */
+  private byte[] chunkBuffer;
+  /** Body of the last received package whose chunks were not read completely */
+  private ChunkInputStream receivedBody;
+  private Compression requestedCompression = Compression.NONE;
+  private boolean compressionAccepted;
+  private int compressionThreshold = FrameCompressor.DEFAULT_THRESHOLD;
+  /** Compressor of the negotiated compression, null if the frames are not compressed */
+  private volatile FrameCompressor compressor;
+
+  /**
+   * @param input  stream to read messages from
+   * @param output stream to write messages to
+   * @param framed whether frames or the legacy text handshake and object streams are used
+   */
+  public FrameCodec(final InputStream input, final OutputStream output, final boolean framed) {
+    this(input, output, framed, CodecRegistry.getDefault());
+  }
+
+  /**
+   * @param input  stream to read messages from
+   * @param output stream to write messages to
+   * @param framed whether frames or the legacy text handshake and object streams are used
+   * @param codec  codec to encode written objects with (framed mode only)
+   */
+  public FrameCodec(final InputStream input, final OutputStream output, final boolean framed, final Codec codec) {
+    this.input = new DataInputStream(new BufferedInputStream(input));
+    this.output = new DataOutputStream(new BufferedOutputStream(output));
+    this.framed = framed;
+    this.codec = Objects.requireNonNull(codec);
+  }
+
+  /**
+   * Creates a codec for the given connection (client side).
+   *
+   * @param socket connection to read and write messages
+   * @param framed whether frames or the legacy text handshake and object streams are used
+   * @param codec  codec to encode written objects with (framed mode only)
+   * @return codec for the connection
+   * @throws IOException failed to get the streams of the socket
+   */
+  public static FrameCodec forSocket(final Socket socket, final boolean framed, final Codec codec) throws IOException {
+    return new FrameCodec(socket.getInputStream(), socket.getOutputStream(), framed, codec);
+  }
+
+  /**
+   * Creates a codec for the given connection (server side). Waits for the first byte of the client
+   * to detect whether the client sends frames or the legacy text handshake.
+   *
+   * @param socket connection to read and write messages
+   * @param codec  codec to encode written objects with (if the client sends frames)
+   * @return codec for the connection
+   * @throws IOException failed to read from the socket
+   */
+  public static FrameCodec detect(final Socket socket, final Codec codec) throws IOException {
+    return detect(socket.getInputStream(), socket.getOutputStream(), codec);
+  }
+
+  /**
+   * Creates a codec for the given streams of a connection (server side), e.g. streams which count the
+   * transferred bytes. Waits for the first byte of the client to detect the protocol like {@link #detect(Socket, Codec)}.
+   *
+   * @param input  stream to read messages from
+   * @param output stream to write messages to
+   * @param codec  codec to encode written objects with (if the client sends frames)
+   * @return codec for the connection
+   * @throws IOException failed to read from the connection
+   */
+  public static FrameCodec detect(final InputStream input, final OutputStream output, final Codec codec)
+      throws IOException {
+    final BufferedInputStream buffered = new BufferedInputStream(input);
+    buffered.mark(1);
+    final int firstByte = buffered.read();
+    buffered.reset();
+    if (firstByte < 0) {
+      throw new EOFException("Connection closed before the handshake");
+    }
+    return new FrameCodec(buffered, output, isFrameStart(firstByte), codec);
+  }
+
+  /**
+   * @return whether this codec sends frames (otherwise the legacy protocol is used)
+   */
+  public boolean isFramed() {
+    return framed;
+  }
+
+  /**
+   * @param routeNegotiation whether numeric routes are requested by {@link #performHandshake(String)}
+   */
+  public void setRouteNegotiation(final boolean routeNegotiation) {
+    this.routeNegotiation = routeNegotiation;
+  }
+
+  /**
+   * @param compression compression requested by {@link #performHandshake(String)}
+   */
+  public void setCompression(final Compression compression) {
+    this.requestedCompression = Objects.requireNonNull(compression);
+  }
+
+  /**
+   * @param compressionAccepted whether a compression requested by the client is accepted by
+   *                            {@link #acceptHandshake(Supplier)}
+   */
+  public void setCompressionAccepted(final boolean compressionAccepted) {
+    this.compressionAccepted = compressionAccepted;
+  }
+
+  /**
+   * @param compressionThreshold minimum payload length of a compressed frame (applied by the next handshake)
+   */
+  public void setCompressionThreshold(final int compressionThreshold) {
+    this.compressionThreshold = FrameCompressor.validateThreshold(compressionThreshold);
+  }
+
+  /**
+   * @return compression negotiated by the last handshake
+   */
+  public Compression getCompression() {
+    final FrameCompressor current = compressor;
+    return current == null ? Compression.NONE : current.getCompression();
+  }
+
+  /**
+   * @param recycler recycler to acquire the packages returned by {@link #readObject()} from (null = not pooled)
+   */
+  public void setRecycler(final DataPackageRecycler recycler) {
+    this.recycler = recycler;
+  }
+
+  /**
+   * @param maxPayloadLength maximum length of the payload of a received frame (before and after decompression),
+   *                         up to {@link #MAX_PAYLOAD_LENGTH} (default)
+   */
+  public void setMaxPayloadLength(final int maxPayloadLength) {
+    this.maxPayloadLength = validateMaxPayloadLength(maxPayloadLength);
+  }
+
+  /**
+   * @param maxPayloadLength maximum length of the payload of a received frame
+   * @return passed length if it is valid
+   */
+  public static int validateMaxPayloadLength(final int maxPayloadLength) {
+    if (maxPayloadLength < 1 || maxPayloadLength > MAX_PAYLOAD_LENGTH) {
+      throw new IllegalArgumentException("Invalid maximum payload length! (1<=length<=" + MAX_PAYLOAD_LENGTH + ")");
+    }
+    return maxPayloadLength;
+  }
+
+  /**
+   * @param acceptedCodecs codecs received frames may be encoded with, null to accept all codecs of the
+   *                       {@link CodecRegistry} (default)
+   */
+  public void setAcceptedCodecs(final Codec... acceptedCodecs) {
+    this.acceptedCodecs = acceptedCodecs == null ? null : acceptedCodecs.clone();
+  }
+
+  /**
+   * @return negotiated routes or null if the connection uses the ID strings only
+   */
+  public RouteTable getRoutes() {
+    return routes;
+  }
+
+  /**
+   * @return route ID of the last object returned by {@link #readObject()} or {@link RouteTable#NO_ROUTE}
+   */
+  public int getLastRouteId() {
+    return lastRouteId;
+  }
+
+  /*
+   * - - - - - - - - - - Handshake - - - - - - - - - -
+   */
+
+  /**
+   * Sends the handshake request and waits for the answer of the server.
+   *
+   * @param request {@link ConnectionUtils#HANDSHAKE_REQUEST} or {@link ConnectionUtils#HANDSHAKE_REQUEST_KEEP_ALIVE}
+   * @return whether the server accepted the handshake
+   * @throws IOException failed to send the request or to read the answer
+   */
+  public boolean performHandshake(final String request) throws IOException {
+    final boolean requestRoutes = framed && routeNegotiation;
+    final Compression compression = framed ? requestedCompression : Compression.NONE;
+    writeHandshake(request, (requestRoutes ? FEATURE_ROUTES : 0) | compression.getFeatures());
+    final boolean accepted = ConnectionUtils.HANDSHAKE_ACCEPTED.equals(readHandshake());
+    // a server without support for the compression answers without it
+    useCompression(accepted && Compression.fromFeatures(handshakeFeatures) == compression ? compression : Compression.NONE);
+    if (accepted && requestRoutes && (handshakeFeatures & FEATURE_ROUTES) != 0) {
+      final int length = readFrame(TYPE_ROUTES);
+      routes = RouteTable.decode(new ByteArrayInputStream(readBuffer, 0, length));
+    }
+    return accepted;
+  }
+
+  /**
+   * Reads the handshake request of the client and answers it.
+   *
+   * @return accepted request or null if the request was no valid handshake request
+   * @throws IOException failed to read the request or to send the answer
+   */
+  public String acceptHandshake() throws IOException {
+    return acceptHandshake(null);
+  }
+
+  /**
+   * Reads the handshake request of the client and answers it. If the client requests numeric routes,
+   * the given route table is sent with the answer.
+   *
+   * @param routeTable supplies the routes of the server, null if numeric routes are not supported
+   * @return accepted request or null if the request was no valid handshake request
+   * @throws IOException failed to read the request or to send the answer
+   */
+  public String acceptHandshake(final Supplier<RouteTable> routeTable) throws IOException {
+    final String request = readHandshake();
+    final boolean accepted = ConnectionUtils.isHandshakeRequest(request);
+    final boolean negotiateRoutes = accepted && framed && routeTable != null && (handshakeFeatures & FEATURE_ROUTES) != 0;
+    final Compression compression = accepted && framed && compressionAccepted
+        ? Compression.fromFeatures(handshakeFeatures)
+        : Compression.NONE;
+
+    synchronized (output) {
+      writeHandshake(accepted ? ConnectionUtils.HANDSHAKE_ACCEPTED : ConnectionUtils.HANDSHAKE_DENIED,
+          (negotiateRoutes ? FEATURE_ROUTES : 0) | compression.getFeatures());
+      useCompression(compression);
+      if (negotiateRoutes) {
+        final RouteTable table = routeTable.get();
+        final byte[] encoded = table.encode();
+        writeFrameHeader(flags(TYPE_ROUTES, 0), encoded.length);
+        output.write(encoded);
+        output.flush();
+        routes = table;
+      }
+    }
+    return accepted ? request : null;
+  }
+
+  /**
+   * Compresses the following frames with the negotiated compression, the compressor of a previous handshake
+   * with the same compression and threshold is kept. A replaced compressor is closed.
+   */
+  private void useCompression(final Compression compression) {
+    final FrameCompressor current = compressor;
+    if (compression == Compression.NONE) {
+      releaseCompression();
+    } else if (current == null || current.getCompression() != compression || current.getThreshold() != compressionThreshold) {
+      final FrameCompressor created = new FrameCompressor(compression, compressionThreshold);
+      created.setMaxPayloadLength(maxPayloadLength);
+      compressor = created;
+      if (current != null) {
+        current.close();
+      }
+    } else {
+      current.setMaxPayloadLength(maxPayloadLength);
+    }
+  }
+
+  /**
+   * Closes the compressor of the connection to release its native memory, the following frames are not compressed.
+   * It is called when the connection is closed, the streams of this codec are not closed.
+   */
+  public void releaseCompression() {
+    final FrameCompressor current = compressor;
+    compressor = null;
+    if (current != null) {
+      current.close();
+    }
+  }
+
+  /**
+   * @param handshake handshake line to send
+   * @throws IOException failed to write the handshake
+   */
+  public void writeHandshake(final String handshake) throws IOException {
+    writeHandshake(handshake, 0);
+  }
+
+  private void writeHandshake(final String handshake, final int features) throws IOException {
+    final byte[] line = handshake.getBytes(StandardCharsets.UTF_8);
+    synchronized (output) {
+      if (framed) {
+        writeFrameHeader(flags(TYPE_HANDSHAKE, features), line.length);
+        output.write(line);
+      } else {
+        output.write(line);
+        output.write(LINE_SEPARATOR);
+      }
+      output.flush();
+    }
+  }
+
+  /**
+   * Reads a handshake line. A framed codec also accepts a text line, because a busy server
+   * answers with a text line before it knows the protocol of the client.
+   *
+   * @return received handshake line
+   * @throws IOException failed to read the handshake
+   */
+  public String readHandshake() throws IOException {
+    handshakeFeatures = 0;
+    if (!framed || !isFrameStart(peek())) {
+      return readLine();
+    }
+
+    final int length = readFrame(TYPE_HANDSHAKE);
+    handshakeFeatures = getCodecId(header, 0);
+    return new String(readBuffer, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private int peek() throws IOException {
+    input.mark(1);
+    final int next = input.read();
+    input.reset();
+    return next;
+  }
+
+  private String readLine() throws IOException {
+    final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int next;
+    while ((next = input.read()) != '\n') {
+      if (next < 0) {
+        throw new EOFException("Connection closed while reading handshake");
+      }
+      if (line.size() >= MAX_LINE_LENGTH) {
+        throw new StreamCorruptedException("Handshake exceeds maximum length of " + MAX_LINE_LENGTH);
+      }
+      line.write(next);
+    }
+
+    final byte[] bytes = line.toByteArray();
+    final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /*
+   * - - - - - - - - - - Objects - - - - - - - - - -
+   */
+
+  /**
+   * @param obj object to send
+   * @throws IOException failed to serialize or write the object
+   */
+  public void writeObject(final Object obj) throws IOException {
+    final StreamBody body = getBody(obj);
+    synchronized (output) {
+      if (body != null) {
+        requireFramed(body);
+        writeStreamed(obj, body);
+      } else if (framed) {
+        writeBuffer.resetFrame();
+        final int routeId = getRouteId(routes, obj);
+        if (routeId == RouteTable.NO_ROUTE) {
+          codec.encode(obj, writeBuffer);
+        } else {
+          encodeRouted((DataPackage) obj, routeId, codec, writeBuffer);
+        }
+        writeFrame(writeBuffer.getBuffer(), flags(routeId == RouteTable.NO_ROUTE ? TYPE_DATA : TYPE_ROUTED_DATA, codec.getId()),
+            writeBuffer.getPayloadLength());
+        output.flush();
+      } else {
+        // the receiver expects a new object stream for every object
+        JavaSerializationCodec.INSTANCE.encode(obj, output);
+      }
+    }
+  }
+
+  /**
+   * Writes the package as stream data frame followed by the chunks of its body. The output is locked until the body
+   * is written completely, so no other object is written in between.
+   */
+  private void writeStreamed(final Object obj, final StreamBody body) throws IOException {
+    writeBuffer.resetFrame();
+    RouteTable.writeVarLong(writeBuffer, body.getLength() + 1);
+    codec.encode(obj, writeBuffer);
+    writeFrame(writeBuffer.getBuffer(), flags(TYPE_STREAM_DATA, codec.getId()), writeBuffer.getPayloadLength());
+
+    if (chunkBuffer == null) {
+      // the chunk is read behind the space of the frame header
+      chunkBuffer = new byte[HEADER_LENGTH + CHUNK_LENGTH];
+    }
+    final InputStream source = body.getInputStream();
+    long remaining = body.getLength();
+    while (remaining != 0) {
+      final int read;
+      try {
+        read = readChunk(source, remaining < 0 ? CHUNK_LENGTH : (int) Math.min(CHUNK_LENGTH, remaining));
+        if (read < 0 && remaining > 0) {
+          throw new EOFException("Body ended " + remaining + " bytes before its length");
+        }
+      } catch (final IOException e) {
+        // the receiver is told that the body is incomplete, the connection stays usable
+        writeFrameHeader(flags(TYPE_CHUNK, CHUNK_ABORTED), 0);
+        output.flush();
+        throw e;
+      }
+      if (read < 0) {
+        break;
+      }
+      writeFrame(chunkBuffer, flags(TYPE_CHUNK, 0), read);
+      if (remaining > 0) {
+        remaining -= read;
+      }
+    }
+    writeFrameHeader(flags(TYPE_CHUNK, 0), 0);
+    output.flush();
+  }
+
+  /**
+   * Fills the chunk buffer, so a source which returns only a few bytes per read does not produce tiny chunks.
+   *
+   * @return number of read bytes, -1 if the source ended before a byte was read
+   */
+  private int readChunk(final InputStream source, final int length) throws IOException {
+    int filled = 0;
+    while (filled < length) {
+      final int read = source.read(chunkBuffer, HEADER_LENGTH + filled, length - filled);
+      if (read < 0) {
+        return filled == 0 ? -1 : filled;
+      }
+      filled += read;
+    }
+    return filled;
+  }
+
+  private void requireFramed(final StreamBody body) throws IOException {
+    if (!framed) {
+      throw new IOException("A package with a body (" + body + ") requires the framed protocol");
+    }
+  }
+
+  /**
+   * @param obj object to send
+   * @return body of the object if it is a DataPackage with a body, otherwise null
+   */
+  public static StreamBody getBody(final Object obj) {
+    return obj instanceof DataPackage ? ((DataPackage) obj).getBody() : null;
+  }
+
+  /**
+   * Writes the bytes of an already encoded message in the format of this connection.
+   *
+   * @param message message encoded once for all recipients
+   * @throws IOException failed to encode or to write the message
+   */
+  public void writeEncoded(final EncodedMessage message) throws IOException {
+    final byte[] encoded = framed ? message.getFrame(codec, routes) : message.getLegacy();
+    final FrameCompressor frameCompressor = framed ? compressor : null;
+    synchronized (output) {
+      final int compressedLength = frameCompressor == null ? -1 : frameCompressor.compress(encoded, 0, encoded.length);
+      if (compressedLength < 0) {
+        output.write(encoded);
+      } else {
+        output.write(frameCompressor.getCompressed(), 0, compressedLength);
+      }
+      output.flush();
+    }
+  }
+
+  /**
+   * Waits until the first byte of the next object arrived without reading it, e.g. to bound waiting for the next
+   * object and reading it by different timeouts. The remaining chunks of the previous body are skipped before.
+   *
+   * @return whether the next object started, false at the end of the stream
+   * @throws IOException failed to read from the stream
+   */
+  public boolean awaitNextObject() throws IOException {
+    if (receivedBody != null) {
+      receivedBody.close();
+    }
+    return peek() >= 0;
+  }
+
+  /**
+   * @return received object
+   * @throws IOException            failed to read the object
+   * @throws ClassNotFoundException class of the received object is unknown
+   */
+  public Object readObject() throws IOException, ClassNotFoundException {
+    if (!framed) {
+      return JavaSerializationCodec.INSTANCE.decode(input);
+    }
+
+    if (receivedBody != null) {
+      // the remaining chunks of the previous body precede the next frame
+      receivedBody.close();
+    }
+
+    try {
+      final int length = readFrame(-1);
+      final Codec frameCodec = CodecRegistry.getAccepted(acceptedCodecs, getCodecId(header, 0));
+      final ByteArrayInputStream payload = new ByteArrayInputStream(readBuffer, 0, length);
+      if (getType(header, 0) == TYPE_ROUTED_DATA) {
+        lastRouteId = readRouteId(payload);
+        return decodeRouted(payload, requireRoutes(routes).getName(lastRouteId), frameCodec, recycler);
+      }
+      if (getType(header, 0) == TYPE_STREAM_DATA) {
+        lastRouteId = RouteTable.NO_ROUTE;
+        final long bodyLength = readBodyLength(payload);
+        final DataPackage data = requireDataPackage(frameCodec.decode(payload, recycler));
+        receivedBody = new ChunkInputStream(bodyLength);
+        return data.setBody(StreamBody.of(receivedBody, bodyLength));
+      }
+
+      requireType(header, 0, TYPE_DATA);
+      lastRouteId = RouteTable.NO_ROUTE;
+      return frameCodec.decode(payload, recycler);
+    } finally {
+      if (readBuffer.length > RETAINED_READ_BUFFER_LENGTH) {
+        // a single large message must not keep its buffer for the rest of the session
+        readBuffer = new byte[INITIAL_READ_BUFFER_LENGTH];
+      }
+    }
+  }
+
+  /*
+   * - - - - - - - - - - Bodies - - - - - - - - - -
+   */
+
+  /**
+   * @param payload payload of a stream data frame
+   * @return length of the body or {@link StreamBody#UNKNOWN_LENGTH} (the payload continues with the package)
+   * @throws IOException invalid length
+   */
+  public static long readBodyLength(final InputStream payload) throws IOException {
+    return RouteTable.readVarLong(payload) - 1;
+  }
+
+  /**
+   * @param obj object decoded from a stream data frame
+   * @return the object as DataPackage
+   * @throws StreamCorruptedException a body was sent with another object than a DataPackage
+   */
+  public static DataPackage requireDataPackage(final Object obj) throws StreamCorruptedException {
+    if (!(obj instanceof DataPackage)) {
+      throw new StreamCorruptedException("Received a body with " + (obj == null ? null : obj.getClass().getName()));
+    }
+    return (DataPackage) obj;
+  }
+
+  /**
+   * Validates the empty chunk frame which ends a body.
+   *
+   * @param aborted  whether the sender aborted the body
+   * @param length   length of the body or {@link StreamBody#UNKNOWN_LENGTH}
+   * @param received number of received bytes of the body
+   * @throws IOException the body is incomplete
+   */
+  public static void requireCompleteBody(final boolean aborted, final long length, final long received)
+      throws IOException {
+    if (aborted) {
+      throw new IOException("Body was aborted by the sender after " + received + " bytes");
+    }
+    if (length != StreamBody.UNKNOWN_LENGTH && length != received) {
+      throw new StreamCorruptedException("Received " + received + " bytes of a body of " + length + " bytes");
+    }
+  }
+
+  /*
+   * - - - - - - - - - - Routed data - - - - - - - - - -
+   */
+
+  /**
+   * @param routes negotiated routes (may be null)
+   * @param obj    object to send
+   * @return route ID of the object or {@link RouteTable#NO_ROUTE} if it has to be sent as data frame
+   */
+  public static int getRouteId(final RouteTable routes, final Object obj) {
+    return routes != null && obj instanceof DataPackage
+        ? routes.getRouteId(((DataPackage) obj).getID())
+        : RouteTable.NO_ROUTE;
+  }
+
+  /**
+   * Writes the payload of a routed data frame: route ID, request ID and the values encoded with the codec.
+   *
+   * @param data    package to write
+   * @param routeId route ID of the ID of the package
+   * @param codec   codec to encode the values with
+   * @param output  stream to write to
+   * @throws IOException failed to encode the values
+   */
+  public static void encodeRouted(final DataPackage data, final int routeId, final Codec codec,
+                                  final OutputStream output) throws IOException {
+    RouteTable.writeVarLong(output, routeId);
+    RouteTable.writeVarLong(output, data.getRequestId());
+    codec.encode(data.get(), output);
+  }
+
+  /**
+   * @param payload payload of a routed data frame
+   * @return route ID of the routed data (the payload continues with the request ID)
+   * @throws IOException invalid route ID
+   */
+  public static int readRouteId(final InputStream payload) throws IOException {
+    final long routeId = RouteTable.readVarLong(payload);
+    if (routeId >= RouteTable.MAX_ROUTES) {
+      throw new StreamCorruptedException("Invalid route ID " + routeId);
+    }
+    return (int) routeId;
+  }
+
+  /**
+   * Reads the remaining payload of a routed data frame after its route ID.
+   *
+   * @param payload payload of a routed data frame without the route ID
+   * @param id      ID of the route
+   * @param codec   codec which encoded the values
+   * @return received package
+   * @throws IOException            invalid payload
+   * @throws ClassNotFoundException class of a value is unknown
+   */
+  public static DataPackage decodeRouted(final InputStream payload, final String id, final Codec codec)
+      throws IOException, ClassNotFoundException {
+    return decodeRouted(payload, id, codec, null);
+  }
+
+  /**
+   * Reads the remaining payload of a routed data frame after its route ID.
+   *
+   * @param payload  payload of a routed data frame without the route ID
+   * @param id       ID of the route
+   * @param codec    codec which encoded the values
+   * @param recycler recycler to acquire the package from (null = not pooled)
+   * @return received package
+   * @throws IOException            invalid payload
+   * @throws ClassNotFoundException class of a value is unknown
+   */
+  public static DataPackage decodeRouted(final InputStream payload, final String id, final Codec codec,
+                                         final DataPackageRecycler recycler)
+      throws IOException, ClassNotFoundException {
+    final long requestId = RouteTable.readVarLong(payload);
+    final DataPackage data = recycler == null
+        ? new DataPackage(id).withRequestId(requestId)
+        : recycler.acquire(id, requestId);
+    try {
+      codec.decodeValues(payload, data.getPayload());
+    } catch (final IOException | ClassNotFoundException | RuntimeException e) {
+      data.release();
+      throw e;
+    }
+    return data;
+  }
+
+  /**
+   * @param routes negotiated routes
+   * @return the routes
+   * @throws StreamCorruptedException routed data received although no routes were negotiated
+   */
+  public static RouteTable requireRoutes(final RouteTable routes) throws StreamCorruptedException {
+    if (routes == null) {
+      throw new StreamCorruptedException("Received routed data without negotiated routes");
+    }
+    return routes;
+  }
+
+  /*
+   * - - - - - - - - - - Frames - - - - - - - - - -
+   */
+
+  /**
+   * Writes a frame, compressed if a compression was negotiated and the payload reaches the threshold.
+   *
+   * @param frame         array with space for the header followed by the payload
+   * @param flags         flags of the frame
+   * @param payloadLength length of the payload
+   */
+  private void writeFrame(final byte[] frame, final byte flags, final int payloadLength) throws IOException {
+    writeHeader(frame, 0, flags, payloadLength);
+    final FrameCompressor frameCompressor = compressor;
+    final int compressedLength = frameCompressor == null ? -1 : frameCompressor.compress(frame, 0, HEADER_LENGTH + payloadLength);
+    if (compressedLength < 0) {
+      output.write(frame, 0, HEADER_LENGTH + payloadLength);
+    } else {
+      output.write(frameCompressor.getCompressed(), 0, compressedLength);
+    }
+  }
+
+  private void writeFrameHeader(final byte flags, final int length) throws IOException {
+    output.writeShort(MAGIC);
+    output.writeByte(VERSION);
+    output.writeByte(flags);
+    output.writeInt(length);
+  }
+
+  /**
+   * Reads the next frame into the read buffer.
+   *
+   * @param expectedType type the frame must have, -1 for any type
+   * @return length of the payload
+   */
+  private int readFrame(final int expectedType) throws IOException {
+    input.readFully(header);
+    int length = readPayloadLength(header, 0);
+    requireMaxPayloadLength(length);
+    readPayload(length);
+    if (getType(header, 0) == TYPE_COMPRESSED) {
+      length = decompress(length);
+    }
+    if (expectedType >= 0) {
+      requireType(header, 0, expectedType);
+    }
+    return length;
+  }
+
+  /**
+   * Reads the payload into the read buffer, which grows with the received bytes instead of the announced length.
+   */
+  private void readPayload(final int length) throws IOException {
+    int position = 0;
+    while (position < length) {
+      if (position == readBuffer.length) {
+        readBuffer = Arrays.copyOf(readBuffer, (int) Math.min(length, readBuffer.length * 2L));
+      }
+      final int read = input.read(readBuffer, position, Math.min(length, readBuffer.length) - position);
+      if (read < 0) {
+        throw new EOFException("Frame ended after " + position + " of " + length + " bytes");
+      }
+      position += read;
+    }
+  }
+
+  private void requireMaxPayloadLength(final int length) throws StreamCorruptedException {
+    if (length > maxPayloadLength) {
+      throw new StreamCorruptedException("Frame exceeds maximum length of " + maxPayloadLength);
+    }
+  }
+
+  /**
+   * Replaces the compressed frame in the header and read buffer with the decompressed frame.
+   *
+   * @param length length of the payload of the compressed frame
+   * @return length of the payload of the decompressed frame
+   */
+  private int decompress(final int length) throws IOException {
+    final FrameCompressor frameCompressor = compressor;
+    if (frameCompressor == null) {
+      throw new StreamCorruptedException("Received compressed frame without negotiated compression");
+    }
+    final int payloadLength = frameCompressor.decompress(header[3], readBuffer, 0, length);
+    final byte[] decompressed = frameCompressor.getDecompressed();
+    System.arraycopy(decompressed, 0, header, 0, HEADER_LENGTH);
+    if (readBuffer.length < payloadLength) {
+      readBuffer = new byte[Math.max(payloadLength, readBuffer.length * 2)];
+    }
+    System.arraycopy(decompressed, HEADER_LENGTH, readBuffer, 0, payloadLength);
+    return payloadLength;
+  }
+
+  /**
+   * @param firstByte first received byte of a message
+   * @return whether the byte is the first byte of a frame (and not of a legacy handshake line)
+   */
+  public static boolean isFrameStart(final int firstByte) {
+    return firstByte == (MAGIC >>> 8);
+  }
+
+  /**
+   * Validates the frame header at the given offset and returns the length of its payload.
+   *
+   * @param buffer buffer containing at least {@link #HEADER_LENGTH} bytes from offset
+   * @param offset start of the frame header
+   * @return length of the payload
+   * @throws StreamCorruptedException header contains invalid magic, version or length
+   */
+  public static int readPayloadLength(final byte[] buffer, final int offset) throws StreamCorruptedException {
+    final int magic = (buffer[offset] & 0xFF) << 8 | buffer[offset + 1] & 0xFF;
+    if (magic != MAGIC) {
+      throw new StreamCorruptedException(String.format("Invalid frame magic 0x%04X", magic));
+    }
+    final int version = buffer[offset + 2] & 0xFF;
+    if (version != VERSION) {
+      throw new StreamCorruptedException("Unsupported frame version " + version);
+    }
+
+    final int length = (buffer[offset + 4] & 0xFF) << 24 | (buffer[offset + 5] & 0xFF) << 16
+        | (buffer[offset + 6] & 0xFF) << 8 | buffer[offset + 7] & 0xFF;
+    if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+      throw new StreamCorruptedException("Invalid frame length " + length + " (maximum " + MAX_PAYLOAD_LENGTH + ")");
+    }
+    return length;
+  }
+
+  /**
+   * @param buffer       buffer containing the frame header
+   * @param offset       start of the frame header
+   * @param expectedType type the frame must have
+   * @throws StreamCorruptedException frame has another type than expected
+   */
+  public static void requireType(final byte[] buffer, final int offset, final int expectedType)
+      throws StreamCorruptedException {
+    final int type = getType(buffer, offset);
+    if (type != expectedType) {
+      throw new StreamCorruptedException("Unexpected frame type " + type + " (expected " + expectedType + ")");
+    }
+  }
+
+  /**
+   * @param buffer buffer containing the frame header
+   * @param offset start of the frame header
+   * @return type of the frame
+   */
+  public static int getType(final byte[] buffer, final int offset) {
+    return buffer[offset + 3] & TYPE_MASK;
+  }
+
+  /**
+   * @param buffer buffer containing the frame header
+   * @param offset start of the frame header
+   * @return ID of the codec which encoded the payload of the data frame (features of a handshake frame)
+   */
+  public static int getCodecId(final byte[] buffer, final int offset) {
+    return (buffer[offset + 3] & 0xFF) >>> CODEC_SHIFT;
+  }
+
+  /**
+   * @param type    type of the frame
+   * @param codecId ID of the codec which encoded the payload (features of handshake frames)
+   * @return flags of the frame header
+   */
+  public static byte flags(final int type, final int codecId) {
+    return (byte) (CodecRegistry.validateId(codecId) << CODEC_SHIFT | type & TYPE_MASK);
+  }
+
+  /**
+   * Creates a complete frame (e.g. for non-blocking channels).
+   *
+   * @param flags   flags of the frame
+   * @param payload payload of the frame
+   * @return header and payload of the frame
+   */
+  public static byte[] encodeFrame(final byte flags, final byte[] payload) {
+    final byte[] frame = new byte[HEADER_LENGTH + payload.length];
+    writeHeader(frame, 0, flags, payload.length);
+    System.arraycopy(payload, 0, frame, HEADER_LENGTH, payload.length);
+    return frame;
+  }
+
+  /**
+   * @param frame  array to write the header to
+   * @param offset start of the header
+   * @param flags  flags of the frame
+   * @param length length of the payload
+   */
+  static void writeHeader(final byte[] frame, final int offset, final byte flags, final int length) {
+    frame[offset] = (byte) (MAGIC >>> 8);
+    frame[offset + 1] = (byte) MAGIC;
+    frame[offset + 2] = (byte) VERSION;
+    frame[offset + 3] = flags;
+    frame[offset + 4] = (byte) (length >>> 24);
+    frame[offset + 5] = (byte) (length >>> 16);
+    frame[offset + 6] = (byte) (length >>> 8);
+    frame[offset + 7] = (byte) length;
+  }
+
+  /**
+   * Reads the chunk frames of a received body from the connection, the chunks are not buffered.
+   */
+  private final class ChunkInputStream extends InputStream {
+
+    private final long length;
+    private long received;
+    private int remainingInChunk;
+    /** Decompressed chunk which is read instead of the connection, null for an uncompressed chunk */
+    private byte[] decompressedChunk;
+    private int chunkPosition;
+    private boolean finished;
+    private boolean closed;
+
+    ChunkInputStream(final long length) {
+      this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] single = new byte[1];
+      return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+      if (closed) {
+        throw new IOException("Body is closed");
+      }
+      if (count == 0) {
+        return 0;
+      }
+      while (remainingInChunk == 0) {
+        if (finished) {
+          return -1;
+        }
+        readChunkHeader();
+      }
+
+      final int read;
+      if (decompressedChunk != null) {
+        read = Math.min(count, remainingInChunk);
+        System.arraycopy(decompressedChunk, chunkPosition, buffer, offset, read);
+        chunkPosition += read;
+      } else {
+        read = input.read(buffer, offset, Math.min(count, remainingInChunk));
+        if (read < 0) {
+          throw new EOFException("Connection closed while reading body");
+        }
+      }
+      remainingInChunk -= read;
+      received += read;
+      return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+      if (closed) {
+        return 0;
+      }
+      return decompressedChunk != null ? remainingInChunk : Math.min(remainingInChunk, input.available());
+    }
+
+    private void readChunkHeader() throws IOException {
+      input.readFully(header);
+      int chunkLength = readPayloadLength(header, 0);
+      requireMaxPayloadLength(chunkLength);
+      decompressedChunk = null;
+      if (getType(header, 0) == TYPE_COMPRESSED) {
+        readPayload(chunkLength);
+        chunkLength = decompress(chunkLength);
+        // the chunk is decompressed to the read buffer, which is not used while the body is read
+        decompressedChunk = readBuffer;
+        chunkPosition = 0;
+      }
+      requireType(header, 0, TYPE_CHUNK);
+      if (chunkLength == 0) {
+        finished = true;
+        receivedBody = null;
+        requireCompleteBody(getCodecId(header, 0) == CHUNK_ABORTED, length, received);
+      }
+      remainingInChunk = chunkLength;
+    }
+
+    /**
+     * Skips the remaining chunks of the body, so the connection continues with the next frame.
+     */
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      while (!finished) {
+        if (decompressedChunk != null) {
+          remainingInChunk = 0;
+        }
+        while (remainingInChunk > 0) {
+          final int skipped = input.skipBytes(remainingInChunk);
+          if (skipped <= 0) {
+            throw new EOFException("Connection closed while skipping body");
+          }
+          remainingInChunk -= skipped;
+        }
+        try {
+          readChunkHeader();
+        } catch (final IOException e) {
+          if (!finished) {
+            throw e;
+          }
+          // an aborted or incomplete body which is not read anymore
+        }
+      }
+    }
+  }
+
+  /**
+   * Reusable buffer which gives access to its content without copying it.
+   */
+  private static class PayloadBuffer extends ByteArrayOutputStream {
+
+    /**
+     * Clears the buffer and reserves the space of the frame header in front of the payload.
+     */
+    void resetFrame() {
+      count = HEADER_LENGTH;
+    }
+
+    int getPayloadLength() {
+      return count - HEADER_LENGTH;
+    }
+
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+
+}
@@ -0,0 +1,262 @@
+package de.spiderlinker.network.protocol;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses the frames of one connection with the negotiated {@link Compression}.
+ * A frame whose payload reaches the threshold is sent as compressed frame, whose payload is the
+ * length of the original frame (4 bytes) followed by the compressed original frame (header and payload).
+ * Smaller frames and frames which do not get smaller are sent unchanged.
+ * <br>
+ * The {@link Deflater}, {@link Inflater} and buffers are created once per connection and reset for every frame.
+ * Compression is thread safe, decompression must be done by a single thread (the reading thread).
+ * The compressor may be closed by any thread, a later decompression fails.
+ */
+public final class FrameCompressor {
+
+  /** Default minimum payload length of a compressed frame, smaller frames gain too little */
+  public static final int DEFAULT_THRESHOLD = 512;
+
+  private static final int LENGTH_PREFIX = 4;
+
+  private final Compression compression;
+  private final int threshold;
+  private final Deflater deflater;
+  private final Inflater inflater;
+  private final Lz4Block lz4;
+  private byte[] compressed = new byte[1024];
+  private byte[] decompressed = new byte[1024];
+  private int maxPayloadLength = FrameCodec.MAX_PAYLOAD_LENGTH;
+  private volatile boolean closed;
+
+  /**
+   * @param compression negotiated compression (not {@link Compression#NONE})
+   * @param threshold   minimum payload length of a compressed frame
+   */
+  public FrameCompressor(final Compression compression, final int threshold) {
+    if (Objects.requireNonNull(compression) == Compression.NONE) {
+      throw new IllegalArgumentException("No compression negotiated");
+    }
+    this.compression = compression;
+    this.threshold = validateThreshold(threshold);
+    this.deflater = compression == Compression.DEFLATE ? new Deflater(Deflater.DEFAULT_COMPRESSION) : null;
+    this.inflater = compression == Compression.DEFLATE ? new Inflater() : null;
+    this.lz4 = compression == Compression.LZ4 ? new Lz4Block() : null;
+  }
+
+  /**
+   * @param threshold minimum payload length of a compressed frame
+   * @return the threshold
+   * @throws IllegalArgumentException threshold is negative
+   */
+  public static int validateThreshold(final int threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Invalid compression threshold! (threshold>=0)");
+    }
+    return threshold;
+  }
+
+  /**
+   * @param maxPayloadLength maximum length of the payload of a decompressed frame
+   */
+  public void setMaxPayloadLength(final int maxPayloadLength) {
+    this.maxPayloadLength = FrameCodec.validateMaxPayloadLength(maxPayloadLength);
+  }
+
+  public Compression getCompression() {
+    return compression;
+  }
+
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Compresses a complete frame (e.g. for non-blocking channels).
+   *
+   * @param frame header and payload of a frame
+   * @return compressed frame or the given frame if it is not compressed
+   */
+  public synchronized byte[] compress(final byte[] frame) {
+    final int length = compress(frame, 0, frame.length);
+    return length < 0 ? frame : Arrays.copyOf(compressed, length);
+  }
+
+  /**
+   * Compresses a frame into the buffer of this compressor, which is valid until the next compression.
+   *
+   * @param frame  array containing the frame
+   * @param offset start of the frame header
+   * @param length length of header and payload
+   * @return length of the compressed frame in {@link #getCompressed()}, -1 if the frame is not compressed
+   */
+  public synchronized int compress(final byte[] frame, final int offset, final int length) {
+    final int start = FrameCodec.HEADER_LENGTH + LENGTH_PREFIX;
+    if (closed || length - FrameCodec.HEADER_LENGTH < threshold || length <= start
+        || FrameCodec.getType(frame, offset) == FrameCodec.TYPE_COMPRESSED) {
+      return -1;
+    }
+
+    final int limit = Math.max(start + Lz4Block.maxCompressedLength(length), compressed.length);
+    if (compressed.length < limit) {
+      compressed = new byte[limit];
+    }
+
+    final int compressedLength;
+    if (lz4 != null) {
+      compressedLength = lz4.compress(frame, offset, length, compressed, start);
+    } else {
+      deflater.reset();
+      deflater.setInput(frame, offset, length);
+      deflater.finish();
+      // the frame is not compressed if the deflated frame would not be smaller
+      compressedLength = deflater.deflate(compressed, start, length - start);
+      if (!deflater.finished()) {
+        return -1;
+      }
+    }
+
+    final int payloadLength = LENGTH_PREFIX + compressedLength;
+    if (FrameCodec.HEADER_LENGTH + payloadLength >= length) {
+      return -1;
+    }
+    writeHeader(payloadLength);
+    writeInt(compressed, FrameCodec.HEADER_LENGTH, length);
+    return FrameCodec.HEADER_LENGTH + payloadLength;
+  }
+
+  /**
+   * @return buffer of the last compressed frame
+   */
+  public synchronized byte[] getCompressed() {
+    return compressed;
+  }
+
+  /**
+   * Decompresses the payload of a compressed frame into the buffer of this compressor, which is valid until the
+   * next decompression. The decompressed frame is validated, so it can be read like a received frame.
+   *
+   * @param flags   flags of the compressed frame
+   * @param payload array containing the payload of the compressed frame
+   * @param offset  start of the payload
+   * @param length  length of the payload
+   * @return length of the payload of the decompressed frame, which starts at {@link FrameCodec#HEADER_LENGTH}
+   * of {@link #getDecompressed()}
+   * @throws StreamCorruptedException invalid compressed frame
+   * @throws IOException               compressor is closed
+   */
+  public int decompress(final byte flags, final byte[] payload, final int offset, final int length)
+      throws IOException {
+    if (closed) {
+      throw new IOException("Compressor is closed");
+    }
+    final int id = (flags & 0xFF) >>> 4;
+    if (id != compression.getId()) {
+      throw new StreamCorruptedException("Received frame with compression " + id + " instead of " + compression);
+    }
+    if (length < LENGTH_PREFIX) {
+      throw new StreamCorruptedException("Compressed frame without length");
+    }
+    final int frameLength = readInt(payload, offset);
+    if (frameLength < FrameCodec.HEADER_LENGTH || frameLength > FrameCodec.HEADER_LENGTH + maxPayloadLength) {
+      throw new StreamCorruptedException("Invalid length of compressed frame " + frameLength);
+    }
+    if (decompressed.length < frameLength) {
+      decompressed = new byte[Math.max(frameLength, decompressed.length * 2)];
+    }
+
+    if (lz4 != null) {
+      Lz4Block.decompress(payload, offset + LENGTH_PREFIX, length - LENGTH_PREFIX, decompressed, 0, frameLength);
+    } else {
+      inflate(payload, offset + LENGTH_PREFIX, length - LENGTH_PREFIX, frameLength);
+    }
+
+    final int payloadLength = FrameCodec.readPayloadLength(decompressed, 0);
+    if (FrameCodec.HEADER_LENGTH + payloadLength != frameLength || FrameCodec.getType(decompressed, 0) == FrameCodec.TYPE_COMPRESSED) {
+      throw new StreamCorruptedException("Invalid compressed frame");
+    }
+    return payloadLength;
+  }
+
+  /**
+   * @return buffer of the last decompressed frame
+   */
+  public byte[] getDecompressed() {
+    return decompressed;
+  }
+
+  private void inflate(final byte[] payload, final int offset, final int length, final int frameLength)
+      throws IOException {
+    // the inflater is ended under its lock, so it is not ended while it inflates
+    synchronized (inflater) {
+      if (closed) {
+        throw new IOException("Compressor is closed");
+      }
+      inflateFrame(payload, offset, length, frameLength);
+    }
+  }
+
+  private void inflateFrame(final byte[] payload, final int offset, final int length, final int frameLength)
+      throws StreamCorruptedException {
+    inflater.reset();
+    inflater.setInput(payload, offset, length);
+    try {
+      int inflated = 0;
+      while (inflated < frameLength) {
+        final int count = inflater.inflate(decompressed, inflated, frameLength - inflated);
+        if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflated += count;
+      }
+      if (inflated != frameLength || !inflater.finished()) {
+        throw new StreamCorruptedException("Compressed frame inflated to " + inflated + " instead of " + frameLength + " bytes");
+      }
+    } catch (final DataFormatException e) {
+      throw new StreamCorruptedException("Invalid deflated frame: " + e.getMessage());
+    }
+  }
+
+  private void writeHeader(final int payloadLength) {
+    compressed[0] = (byte) (FrameCodec.MAGIC >>> 8);
+    compressed[1] = (byte) FrameCodec.MAGIC;
+    compressed[2] = (byte) FrameCodec.VERSION;
+    compressed[3] = FrameCodec.flags(FrameCodec.TYPE_COMPRESSED, compression.getId());
+    writeInt(compressed, 4, payloadLength);
+  }
+
+  private static void writeInt(final byte[] buffer, final int offset, final int value) {
+    buffer[offset] = (byte) (value >>> 24);
+    buffer[offset + 1] = (byte) (value >>> 16);
+    buffer[offset + 2] = (byte) (value >>> 8);
+    buffer[offset + 3] = (byte) value;
+  }
+
+  private static int readInt(final byte[] buffer, final int offset) {
+    return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+        | (buffer[offset + 2] & 0xFF) << 8 | buffer[offset + 3] & 0xFF;
+  }
+
+  /**
+   * Releases the native memory of the Deflater and Inflater, frames are not compressed anymore.
+   */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (deflater != null) {
+      deflater.end();
+      synchronized (inflater) {
+        inflater.end();
+      }
+    }
+  }
+
+}
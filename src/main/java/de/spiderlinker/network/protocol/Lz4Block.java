@@ -0,0 +1,207 @@
+package de.spiderlinker.network.protocol;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/**
+ * Pure Java implementation of the LZ4 block format: a sequence of literals and back references of at least
+ * four bytes within the last 64 KiB. The compressor finds matches with a single hash table probe per position
+ * and skips faster through data without matches, so incompressible data costs little time.
+ * <br>
+ * An instance reuses its hash table and must only be used by one thread at a time.
+ */
+final class Lz4Block {
+
+  private static final int MIN_MATCH     = 4;
+  /** The last five bytes of a block are always literals */
+  private static final int LAST_LITERALS = 5;
+  /** A match must start at least twelve bytes before the end of the block */
+  private static final int MF_LIMIT      = 12;
+  private static final int MAX_OFFSET    = 0xFFFF;
+  private static final int RUN_MASK      = 0x0F;
+  private static final int HASH_LOG      = 12;
+  /** Every failed match probe after this many increases the step to the next position */
+  private static final int SKIP_TRIGGER  = 6;
+
+  private final int[] table = new int[1 << HASH_LOG];
+
+  /**
+   * @param length number of bytes to compress
+   * @return maximum length of the compressed bytes
+   */
+  static int maxCompressedLength(final int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * @param src    bytes to compress
+   * @param srcOff start of the bytes
+   * @param srcLen number of bytes
+   * @param dst    array of at least {@link #maxCompressedLength(int)} bytes from dstOff
+   * @param dstOff start of the compressed bytes
+   * @return length of the compressed bytes
+   */
+  int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff) {
+    final int end = srcOff + srcLen;
+    final int matchLimit = end - LAST_LITERALS;
+    final int mfLimit = end - MF_LIMIT;
+    int anchor = srcOff;
+    int op = dstOff;
+
+    if (srcLen > MF_LIMIT) {
+      // positions are stored relative to the start, so 0 marks an empty slot
+      Arrays.fill(table, 0);
+      int ip = srcOff + 1;
+      int probes = 1 << SKIP_TRIGGER;
+      while (ip < mfLimit) {
+        final int sequence = readInt(src, ip);
+        final int hash = hash(sequence);
+        final int ref = table[hash] - 1 + srcOff;
+        table[hash] = ip - srcOff + 1;
+        if (ref < srcOff || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+          ip += probes++ >>> SKIP_TRIGGER;
+          continue;
+        }
+        probes = 1 << SKIP_TRIGGER;
+
+        int start = ip;
+        int matchRef = ref;
+        while (start > anchor && matchRef > srcOff && src[start - 1] == src[matchRef - 1]) {
+          start--;
+          matchRef--;
+        }
+        int matchEnd = ip + MIN_MATCH;
+        int refEnd = ref + MIN_MATCH;
+        while (matchEnd < matchLimit && src[matchEnd] == src[refEnd]) {
+          matchEnd++;
+          refEnd++;
+        }
+
+        op = writeSequence(src, anchor, start - anchor, start - matchRef, matchEnd - start - MIN_MATCH, dst, op);
+        ip = matchEnd;
+        anchor = ip;
+      }
+    }
+
+    // the last sequence consists of literals only
+    final int literals = end - anchor;
+    op = writeLength(dst, op, literals, literals >= RUN_MASK ? RUN_MASK << 4 : literals << 4);
+    System.arraycopy(src, anchor, dst, op, literals);
+    return op + literals - dstOff;
+  }
+
+  /**
+   * @param src    compressed bytes
+   * @param srcOff start of the compressed bytes
+   * @param srcLen number of compressed bytes
+   * @param dst    array for the decompressed bytes
+   * @param dstOff start of the decompressed bytes
+   * @param dstLen expected number of decompressed bytes
+   * @throws StreamCorruptedException the bytes are no valid block or do not decompress to dstLen bytes
+   */
+  static void decompress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff,
+                         final int dstLen) throws StreamCorruptedException {
+    final int end = srcOff + srcLen;
+    final int dstEnd = dstOff + dstLen;
+    int ip = srcOff;
+    int op = dstOff;
+
+    while (ip < end) {
+      final int token = src[ip++] & 0xFF;
+      int literals = token >>> 4;
+      if (literals == RUN_MASK) {
+        int next;
+        do {
+          requireAvailable(ip < end);
+          next = src[ip++] & 0xFF;
+          literals += next;
+        } while (next == 0xFF);
+      }
+      requireAvailable(literals <= end - ip && literals <= dstEnd - op);
+      System.arraycopy(src, ip, dst, op, literals);
+      ip += literals;
+      op += literals;
+      if (ip == end) {
+        break;
+      }
+
+      requireAvailable(end - ip >= 2);
+      final int offset = src[ip] & 0xFF | (src[ip + 1] & 0xFF) << 8;
+      ip += 2;
+      if (offset == 0 || offset > op - dstOff) {
+        throw new StreamCorruptedException("Invalid LZ4 match offset " + offset);
+      }
+      int matchLength = token & RUN_MASK;
+      if (matchLength == RUN_MASK) {
+        int next;
+        do {
+          requireAvailable(ip < end);
+          next = src[ip++] & 0xFF;
+          matchLength += next;
+        } while (next == 0xFF);
+      }
+      matchLength += MIN_MATCH;
+      requireAvailable(matchLength <= dstEnd - op);
+      // the match may overlap the bytes it produces (e.g. a repeated byte)
+      for (int i = 0; i < matchLength; i++) {
+        dst[op + i] = dst[op - offset + i];
+      }
+      op += matchLength;
+    }
+
+    if (op != dstEnd) {
+      throw new StreamCorruptedException("LZ4 block decompressed to " + (op - dstOff) + " instead of " + dstLen + " bytes");
+    }
+  }
+
+  private static int writeSequence(final byte[] src, final int literalStart, final int literals, final int offset,
+                                   final int matchLength, final byte[] dst, int op) {
+    final int tokenPos = op;
+    op = writeLength(dst, op, literals, literals >= RUN_MASK ? RUN_MASK << 4 : literals << 4);
+    System.arraycopy(src, literalStart, dst, op, literals);
+    op += literals;
+
+    dst[op++] = (byte) offset;
+    dst[op++] = (byte) (offset >>> 8);
+    if (matchLength >= RUN_MASK) {
+      dst[tokenPos] |= RUN_MASK;
+      op = writeExtension(dst, op, matchLength - RUN_MASK);
+    } else {
+      dst[tokenPos] |= (byte) matchLength;
+    }
+    return op;
+  }
+
+  /**
+   * Writes the token with the literal length and its extension bytes.
+   */
+  private static int writeLength(final byte[] dst, int op, final int literals, final int token) {
+    dst[op++] = (byte) token;
+    return literals >= RUN_MASK ? writeExtension(dst, op, literals - RUN_MASK) : op;
+  }
+
+  private static int writeExtension(final byte[] dst, int op, int remaining) {
+    while (remaining >= 0xFF) {
+      dst[op++] = (byte) 0xFF;
+      remaining -= 0xFF;
+    }
+    dst[op++] = (byte) remaining;
+    return op;
+  }
+
+  private static void requireAvailable(final boolean available) throws StreamCorruptedException {
+    if (!available) {
+      throw new StreamCorruptedException("Truncated or invalid LZ4 block");
+    }
+  }
+
+  private static int readInt(final byte[] buffer, final int offset) {
+    return buffer[offset] & 0xFF | (buffer[offset + 1] & 0xFF) << 8
+        | (buffer[offset + 2] & 0xFF) << 16 | (buffer[offset + 3] & 0xFF) << 24;
+  }
+
+  private static int hash(final int sequence) {
+    return sequence * -1640531535 >>> 32 - HASH_LOG;
+  }
+
+}
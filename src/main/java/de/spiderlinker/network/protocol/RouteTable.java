@@ -0,0 +1,193 @@
+package de.spiderlinker.network.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable table of numeric route IDs, negotiated in the handshake of a connection. A DataPackage whose ID is
+ * in the table is sent with its route ID (a variable length number, usually one byte) instead of its ID string
+ * and the server finds its handler by the route ID as array index. <br>
+ * Tables only grow: {@link #extend(Collection)} appends new names, so the route IDs negotiated by a connection
+ * stay valid while new routes are registered.
+ */
+public final class RouteTable {
+
+  /** Route ID of data which is not sent with a numeric route */
+  public static final int NO_ROUTE = -1;
+  /** Maximum number of routes, protects against allocations for corrupted tables */
+  public static final int MAX_ROUTES = 64 * 1024;
+
+  /** Table without routes */
+  public static final RouteTable EMPTY = new RouteTable(new String[0]);
+
+  private final String[] names;
+  private final Map<String, Integer> routeIds;
+
+  private RouteTable(final String[] names) {
+    this.names = names;
+    final Map<String, Integer> ids = new HashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      ids.put(names[i], i);
+    }
+    this.routeIds = Collections.unmodifiableMap(ids);
+  }
+
+  /**
+   * @param additionalNames names which should be in the table
+   * @return this table if it contains all names, otherwise a copy with the missing names appended
+   */
+  public RouteTable extend(final Collection<String> additionalNames) {
+    // existing names keep their position and therefore their route ID
+    final Set<String> extended = new LinkedHashSet<>(Arrays.asList(names));
+    extended.addAll(additionalNames);
+    if (extended.size() == names.length) {
+      return this;
+    }
+    if (extended.size() > MAX_ROUTES) {
+      throw new IllegalStateException("Route table exceeds maximum of " + MAX_ROUTES + " routes");
+    }
+    return new RouteTable(extended.toArray(new String[0]));
+  }
+
+  /**
+   * @param name ID of a DataPackage
+   * @return route ID of the name or {@link #NO_ROUTE} if the name is not in the table
+   */
+  public int getRouteId(final String name) {
+    final Integer routeId = routeIds.get(name);
+    return routeId == null ? NO_ROUTE : routeId;
+  }
+
+  /**
+   * @param routeId route ID
+   * @return name of the route
+   * @throws StreamCorruptedException route ID is not in the table
+   */
+  public String getName(final int routeId) throws StreamCorruptedException {
+    if (routeId < 0 || routeId >= names.length) {
+      throw new StreamCorruptedException("Unknown route ID " + routeId);
+    }
+    return names[routeId];
+  }
+
+  /**
+   * @return unmodifiable list of the names, the index of a name is its route ID
+   */
+  public List<String> getNames() {
+    return Collections.unmodifiableList(Arrays.asList(names));
+  }
+
+  /**
+   * @return number of routes
+   */
+  public int size() {
+    return names.length;
+  }
+
+  /*
+   * - - - - - - - - - - Encoding - - - - - - - - - -
+   */
+
+  /**
+   * @return number of routes and their names (UTF-8) with variable length numbers
+   */
+  public byte[] encode() {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      writeVarLong(bytes, names.length);
+      for (final String name : names) {
+        final byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes, encoded.length);
+        bytes.write(encoded);
+      }
+    } catch (final IOException e) {
+      // a ByteArrayOutputStream does not throw
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param input encoded table (see {@link #encode()})
+   * @return decoded table
+   * @throws IOException invalid or incomplete table
+   */
+  public static RouteTable decode(final InputStream input) throws IOException {
+    final int size = readLength(input, MAX_ROUTES);
+    final String[] names = new String[size];
+    for (int i = 0; i < size; i++) {
+      final byte[] name = new byte[readLength(input, FrameCodec.MAX_PAYLOAD_LENGTH)];
+      if (readFully(input, name) < name.length) {
+        throw new EOFException("Route table ends within a name");
+      }
+      names[i] = new String(name, StandardCharsets.UTF_8);
+    }
+    return size == 0 ? EMPTY : new RouteTable(names);
+  }
+
+  private static int readFully(final InputStream input, final byte[] buffer) throws IOException {
+    int read = 0;
+    int n;
+    while (read < buffer.length && (n = input.read(buffer, read, buffer.length - read)) >= 0) {
+      read += n;
+    }
+    return read;
+  }
+
+  private static int readLength(final InputStream input, final int maxLength) throws IOException {
+    final long length = readVarLong(input);
+    if (length < 0 || length > maxLength) {
+      throw new StreamCorruptedException("Invalid length " + length);
+    }
+    return (int) length;
+  }
+
+  /**
+   * Writes a non-negative number with 7 bits per byte, small numbers need one byte.
+   *
+   * @param output stream to write to
+   * @param value  number to write
+   * @throws IOException failed to write
+   */
+  public static void writeVarLong(final OutputStream output, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  /**
+   * @param input stream to read from
+   * @return number written with {@link #writeVarLong(OutputStream, long)}
+   * @throws IOException stream ends within the number or the number exceeds 64 bits
+   */
+  public static long readVarLong(final InputStream input) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int next = input.read();
+      if (next < 0) {
+        throw new EOFException("Stream ends within a variable length number");
+      }
+      value |= (long) (next & 0x7F) << shift;
+      if ((next & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Variable length number exceeds 64 bits");
+  }
+
+}
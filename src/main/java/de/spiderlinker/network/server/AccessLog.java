@@ -0,0 +1,238 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.DataPackage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Sampled access log of the handled messages of a {@link ServerManager}, written by the logger
+ * {@value #LOGGER_NAME} as one structured line per message:
+ * <pre>id=ECHO route=3 handled=true remote=/127.0.0.1:50312 latency=117us payload=...</pre>
+ * The worker threads only copy the fields of a sampled message into a preallocated ring buffer, the lines are
+ * formatted and written by a single background thread. A message is never delayed by the log: if the buffer is
+ * full the entry is dropped (and the number of dropped entries is logged). The payload is only rendered if enabled,
+ * since {@link DataPackage#toString()} is expensive for large messages.
+ */
+class AccessLog implements Runnable {
+
+    static final String LOGGER_NAME = "de.spiderlinker.network.access";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessLog.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long DROP_REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_PAYLOAD_LENGTH = 256;
+
+    private final int sampleRate;
+    private final boolean payloads;
+    private final Consumer<String> sink;
+    private final Entry[] entries;
+    private final int mask;
+    /** Sequence of the next entry claimed by a producer */
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder droppedEntries = new LongAdder();
+    private final Thread thread;
+    private final StringBuilder line = new StringBuilder(128);
+    /** Sequence of the next entry written, only used by the thread of the log */
+    private long head;
+    private long reportedDrops;
+    private long lastDropReport;
+    private volatile boolean running;
+
+    /**
+     * @param name       name of the thread of the log
+     * @param sampleRate every n-th message is logged on average (1 = every message)
+     * @param payloads   whether the payload of the messages is logged
+     * @param capacity   number of entries the buffer holds, rounded up to a power of two
+     */
+    AccessLog(final String name, final int sampleRate, final boolean payloads, final int capacity) {
+        this(name, sampleRate, payloads, capacity, LoggerFactory.getLogger(LOGGER_NAME)::info);
+    }
+
+    /**
+     * @param sink receives the formatted lines on the thread of the log
+     */
+    AccessLog(final String name, final int sampleRate, final boolean payloads, final int capacity,
+              final Consumer<String> sink) {
+        if (sampleRate < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid access log! (sampleRate>=1, capacity>=1)");
+        }
+        this.sampleRate = sampleRate;
+        this.payloads = payloads;
+        this.sink = sink;
+        this.entries = new Entry[Integer.highestOneBit(capacity - 1 << 1 | 1)];
+        this.mask = entries.length - 1;
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry(i);
+        }
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    /**
+     * Stops the thread of the log after the buffered entries are written.
+     */
+    void stop() {
+        this.running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return whether the current message is logged, decided without any shared state
+     */
+    boolean isSampled() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    /**
+     * Buffers an entry of a handled message, should only be called if the message {@link #isSampled() is sampled}.
+     *
+     * @param data         handled message
+     * @param routeId      numeric route the message was received with
+     * @param handled      whether a handler was registered for the message
+     * @param remote       address of the client
+     * @param latencyNanos time the handler took
+     * @return whether the entry was buffered, false if it was dropped
+     */
+    boolean log(final DataPackage data, final int routeId, final boolean handled, final SocketAddress remote,
+                final long latencyNanos) {
+        long sequence = tail.get();
+        Entry entry;
+        while (true) {
+            entry = entries[(int) (sequence & mask)];
+            final long difference = entry.sequence - sequence;
+            if (difference == 0) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    break;
+                }
+                sequence = tail.get();
+            } else if (difference < 0) {
+                // the entry of the previous revolution is not yet written
+                droppedEntries.increment();
+                return false;
+            } else {
+                sequence = tail.get();
+            }
+        }
+
+        entry.id = data.getID();
+        entry.routeId = routeId;
+        entry.handled = handled;
+        entry.remote = remote;
+        entry.latencyNanos = latencyNanos;
+        entry.payload = payloads ? renderPayload(data) : null;
+        // publishes the entry to the thread of the log
+        entry.sequence = sequence + 1;
+        return true;
+    }
+
+    long getDroppedEntries() {
+        return droppedEntries.sum();
+    }
+
+    private static String renderPayload(final DataPackage data) {
+        final String payload = String.valueOf(data);
+        return payload.length() > MAX_PAYLOAD_LENGTH ? payload.substring(0, MAX_PAYLOAD_LENGTH) + "..." : payload;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (!writeEntries()) {
+                reportDrops();
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        writeEntries();
+        reportDrops();
+    }
+
+    /**
+     * @return whether any entry was written
+     */
+    private boolean writeEntries() {
+        boolean written = false;
+        Entry entry;
+        while ((entry = entries[(int) (head & mask)]).sequence == head + 1) {
+            write(entry);
+            entry.remote = null;
+            entry.payload = null;
+            // releases the entry for the next revolution
+            entry.sequence = head + entries.length;
+            head++;
+            written = true;
+        }
+        return written;
+    }
+
+    private void write(final Entry entry) {
+        line.setLength(0);
+        line.append("id=").append(entry.id)
+                .append(" route=").append(entry.routeId)
+                .append(" handled=").append(entry.handled)
+                .append(" remote=").append(entry.remote)
+                .append(" latency=").append(TimeUnit.NANOSECONDS.toMicros(entry.latencyNanos)).append("us");
+        if (entry.payload != null) {
+            line.append(" payload=").append(entry.payload);
+        }
+        try {
+            sink.accept(line.toString());
+        } catch (final RuntimeException e) {
+            LOGGER.error("Error while writing access log", e);
+        }
+    }
+
+    private void reportDrops() {
+        final long now = System.nanoTime();
+        if (now - lastDropReport < DROP_REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        final long dropped = droppedEntries.sum();
+        if (dropped != reportedDrops) {
+            LOGGER.warn("Dropped {} access log entries, the log can not keep up", dropped - reportedDrops);
+            reportedDrops = dropped;
+        }
+        lastDropReport = now;
+    }
+
+    /**
+     * Slot of the ring buffer, reused for every revolution.
+     */
+    private static final class Entry {
+
+        /**
+         * Sequence + 1 while the entry is buffered,
+         * the sequence of the next revolution while it can be claimed by a producer
+         */
+        private volatile long sequence;
+        private String id;
+        private int routeId;
+        private boolean handled;
+        private SocketAddress remote;
+        private long latencyNanos;
+        private String payload;
+
+        private Entry(final long sequence) {
+            this.sequence = sequence;
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.protocol.EncodedMessage;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An engine accepts the connections of a {@link ServerManager} and hands every received
+ * {@link DataPackage} over to the registered methods of the server.
+ */
+interface ConnectionEngine {
+
+    /**
+     * Starts accepting connections. This method must not block the calling thread.
+     */
+    void start();
+
+    /**
+     * @return future which is completed as soon as the engine accepts connections
+     * or exceptionally if the server socket could not be bound
+     */
+    CompletableFuture<Void> whenListening();
+
+    /**
+     * Stops accepting connections and closes the keep-alive sessions which are waiting for their next request.
+     * Connections with a request that is received or handled are kept open until their answer is sent.
+     */
+    void stopAccepting();
+
+    /**
+     * Waits until the connections processed the completion of the handlers which completed before,
+     * so connections which answered all their requests are closed while the server stops.
+     *
+     * @param timeoutNanos maximum time to wait
+     * @throws InterruptedException interrupted while waiting
+     */
+    void awaitCompletedDispatches(long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Stops accepting connections, closes all connections and releases the resources of this engine.
+     */
+    void stop();
+
+    /**
+     * @return number of currently open connections
+     */
+    int getConnectionCount();
+
+    /**
+     * Sends the given data to the given client which may be a connection of this engine.
+     *
+     * @param socket address of client / recipient
+     * @param msg    message to send
+     * @throws IOException failed to send message
+     */
+    void sendMessage(Socket socket, DataPackage msg) throws IOException;
+
+    /**
+     * Sends the bytes of an already encoded message to the given client which may be a connection of this engine.
+     *
+     * @param socket address of client / recipient
+     * @param msg    message encoded once for all recipients
+     * @throws IOException failed to send message
+     */
+    void sendEncoded(Socket socket, EncodedMessage msg) throws IOException;
+
+}
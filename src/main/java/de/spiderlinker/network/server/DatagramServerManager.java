@@ -0,0 +1,424 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.Executable;
+import de.spiderlinker.network.protocol.DatagramCodec;
+import de.spiderlinker.network.utils.ExecutorFactory;
+import de.spiderlinker.network.utils.SocketUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives DataPackages sent as UDP datagrams by a {@link de.spiderlinker.network.client.DatagramClient}, e.g.
+ * telemetry which has to be sent without connecting and without handshake, and whose loss is acceptable.
+ * The packages are handled by the executables of a {@link HandlerRegistry}, which may be shared with a
+ * {@link ServerManager} so the same handlers serve both transports.
+ * <br>
+ * There is no connection, so the executables are called without socket (null) and can not answer.
+ * The address of the sender is available with {@link #getSender()} while the package is handled.
+ * <br>
+ * A single thread receives the datagrams. Every time the channel becomes readable it drains up to the batch size
+ * of datagrams and hands them over to the worker threads as one task. If the workers can not keep up and their
+ * queue is full, the received packages are dropped (see {@link #getDroppedMessages()}) like the operating system
+ * drops datagrams when the receive buffer of the socket is full.
+ */
+public class DatagramServerManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatagramServerManager.class);
+
+    /** Default maximum number of datagrams which are received and handed over to the workers at once */
+    public static final int DEFAULT_RECEIVE_BATCH_SIZE = 64;
+    /** Default number of received batches which wait for a worker before further batches are dropped */
+    public static final int DEFAULT_WORKER_QUEUE_CAPACITY = 1024;
+
+    /** Sender of the package which is handled by the current thread */
+    private static final ThreadLocal<SocketAddress> SENDER = new ThreadLocal<>();
+
+    private final int port;
+    private final HandlerRegistry handlerRegistry;
+    private int receiveBatchSize = DEFAULT_RECEIVE_BATCH_SIZE;
+    private int workerThreads = 1;
+    private int workerQueueCapacity = DEFAULT_WORKER_QUEUE_CAPACITY;
+    private int receiveBufferSize = 0;
+    private Codec[] acceptedCodecs;
+    private final LongAdder receivedDatagrams = new LongAdder();
+    private final LongAdder receivedMessages = new LongAdder();
+    private final LongAdder invalidDatagrams = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder unhandledMessages = new LongAdder();
+    private volatile DatagramChannel channel;
+    private volatile Selector selector;
+    private volatile ThreadPoolExecutor workers;
+    private volatile Codec[] decodingCodecs;
+    private volatile boolean running;
+
+    /**
+     * @param port port to receive the datagrams at
+     */
+    public DatagramServerManager(final int port) {
+        this(port, new HandlerRegistry());
+    }
+
+    /**
+     * @param port            port to receive the datagrams at
+     * @param handlerRegistry registry of the executables, e.g. {@link ServerManager#getHandlerRegistry()}
+     */
+    public DatagramServerManager(final int port, final HandlerRegistry handlerRegistry) {
+        this.port = SocketUtils.validatePort(port);
+        this.handlerRegistry = Objects.requireNonNull(handlerRegistry);
+    }
+
+    /**
+     * Sets the maximum number of datagrams which are received before they are handed over to the workers.
+     * The batch size has to be set before the server is started.
+     *
+     * @param receiveBatchSize number of datagrams (at least 1)
+     */
+    public void setReceiveBatchSize(final int receiveBatchSize) {
+        requireServerNotStarted();
+        if (receiveBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size! (size>=1)");
+        }
+        this.receiveBatchSize = receiveBatchSize;
+    }
+
+    public int getReceiveBatchSize() {
+        return receiveBatchSize;
+    }
+
+    /**
+     * Sets the threads which handle the received packages. With a single thread (default) the packages are
+     * handled in the order they were received. The workers have to be set before the server is started.
+     *
+     * @param threads       number of worker threads (at least 1)
+     * @param queueCapacity number of received batches which may wait for a worker (at least 1)
+     */
+    public void setWorkers(final int threads, final int queueCapacity) {
+        requireServerNotStarted();
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid workers! (threads>=1, queueCapacity>=1)");
+        }
+        this.workerThreads = threads;
+        this.workerQueueCapacity = queueCapacity;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    /**
+     * Sets the receive buffer of the socket, which holds the datagrams of bursts until they are received.
+     * The size has to be set before the server is started.
+     *
+     * @param receiveBufferSize size in bytes (0 = default of the operating system)
+     */
+    public void setReceiveBufferSize(final int receiveBufferSize) {
+        requireServerNotStarted();
+        if (receiveBufferSize < 0) {
+            throw new IllegalArgumentException("Invalid receive buffer size! (size>=0)");
+        }
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Sets the codecs the received datagrams may be encoded with, datagrams of other codecs are dropped. The
+     * codecs are used to decode the datagrams. Has to be set before the server is started.
+     *
+     * @param codecs accepted codecs, none to accept only the default codec of the {@link CodecRegistry} (default)
+     */
+    public void setAcceptedCodecs(final Codec... codecs) {
+        requireServerNotStarted();
+        for (final Codec accepted : codecs) {
+            Objects.requireNonNull(accepted);
+        }
+        this.acceptedCodecs = codecs.length == 0 ? null : codecs.clone();
+    }
+
+    /**
+     * @return codecs the received datagrams may be encoded with
+     */
+    public Codec[] getAcceptedCodecs() {
+        return acceptedCodecs == null ? new Codec[]{CodecRegistry.getDefault()} : acceptedCodecs.clone();
+    }
+
+    /**
+     * Register the executable to the id, see {@link ServerManager#registerMethod(String, Executable)}.
+     * The executable is called without socket.
+     *
+     * @param id   id of data to claim (or prefix route, see {@link HandlerRegistry})
+     * @param exec executable to be executed when data with specified id will arrive (null removes the method)
+     */
+    public void registerMethod(final String id, final Executable exec) {
+        if (exec == null) {
+            this.handlerRegistry.unregister(id);
+        } else {
+            this.handlerRegistry.register(id, exec);
+        }
+    }
+
+    /**
+     * @param id id of data (or prefix route) to release
+     * @return executable registered to the id, null if there was none
+     */
+    public Executable unregisterMethod(final String id) {
+        return this.handlerRegistry.unregister(id);
+    }
+
+    public HandlerRegistry getHandlerRegistry() {
+        return handlerRegistry;
+    }
+
+    /**
+     * @return address of the sender of the package which is handled by the current thread,
+     * null if the current thread does not handle a received package
+     */
+    public static SocketAddress getSender() {
+        return SENDER.get();
+    }
+
+    /**
+     * This method will be called if no suitable method was registered for the received data.
+     * The data is only logged at debug level by default, since telemetry may arrive at a high rate.
+     *
+     * @param data   DataPackage that could not be assigned to a registered method
+     * @param sender address of the sender
+     */
+    protected void onUnidentifiedMessage(final DataPackage data, final SocketAddress sender) {
+        LOGGER.debug("No method for datagram with id '{}' from '{}'", data.getID(), sender);
+    }
+
+    /**
+     * Binds the socket and starts receiving datagrams. Unlike {@link ServerManager#start()} the socket is bound
+     * right away, so datagrams may be sent as soon as this method returns.
+     *
+     * @throws IOException failed to bind the socket (e.g. the port is already in use)
+     */
+    public synchronized void start() throws IOException {
+        requireServerNotStarted();
+        LOGGER.info("Starting datagram server at port {}", port);
+
+        final DatagramChannel newChannel = DatagramChannel.open();
+        final Selector newSelector;
+        try {
+            if (receiveBufferSize > 0) {
+                newChannel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            }
+            newChannel.bind(new InetSocketAddress(port));
+            newChannel.configureBlocking(false);
+            newSelector = Selector.open();
+            newChannel.register(newSelector, SelectionKey.OP_READ);
+        } catch (final IOException e) {
+            newChannel.close();
+            throw e;
+        }
+
+        this.channel = newChannel;
+        this.selector = newSelector;
+        this.decodingCodecs = getAcceptedCodecs();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workerQueueCapacity),
+                ExecutorFactory.newThreadFactory("DatagramServerManager-worker-" + port, false),
+                (task, executor) -> droppedMessages.add(((ReceivedBatch) task).size()));
+        this.running = true;
+        final Thread receiver = new Thread(this::receive, "DatagramServerManager-receive-" + port);
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Stops receiving datagrams. The packages which were already received are still handled.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        LOGGER.info("Stopping datagram server at port {}", port);
+        this.running = false;
+        try {
+            selector.close();
+            channel.close();
+        } catch (final IOException e) {
+            LOGGER.debug("Failed to close datagram channel at port {}", port, e);
+        }
+        workers.shutdown();
+        this.channel = null;
+        this.selector = null;
+        this.workers = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return port the socket is bound to, -1 if the server is not started
+     */
+    public int getLocalPort() {
+        final DatagramChannel current = channel;
+        return current == null ? -1 : current.socket().getLocalPort();
+    }
+
+    public long getReceivedDatagrams() {
+        return receivedDatagrams.sum();
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.sum();
+    }
+
+    /**
+     * @return number of datagrams which could not be decoded and were dropped
+     */
+    public long getInvalidDatagrams() {
+        return invalidDatagrams.sum();
+    }
+
+    /**
+     * @return number of received packages which were dropped because the workers could not keep up
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    public long getUnhandledMessages() {
+        return unhandledMessages.sum();
+    }
+
+    private void requireServerNotStarted() {
+        if (this.running) {
+            throw new IllegalStateException("Server is already started!");
+        }
+    }
+
+    /*
+     * - - - - - - - - - - Receiving - - - - - - - - - -
+     */
+
+    private void receive() {
+        final DatagramChannel receiveChannel = this.channel;
+        final Selector receiveSelector = this.selector;
+        final ThreadPoolExecutor receiveWorkers = this.workers;
+        // a datagram larger than the buffer would be truncated silently
+        final ByteBuffer buffer = ByteBuffer.allocate(DatagramCodec.MAX_DATAGRAM_SIZE);
+        while (running) {
+            try {
+                receiveSelector.select();
+                receiveSelector.selectedKeys().clear();
+                final ReceivedBatch batch = receiveBatch(receiveChannel, buffer);
+                if (batch.size() > 0) {
+                    receiveWorkers.execute(batch);
+                }
+            } catch (final ClosedChannelException | ClosedSelectorException e) {
+                break;
+            } catch (final IOException e) {
+                if (running) {
+                    LOGGER.error("Error while receiving datagrams at port {}", port, e);
+                }
+            }
+        }
+    }
+
+    private ReceivedBatch receiveBatch(final DatagramChannel receiveChannel, final ByteBuffer buffer)
+            throws IOException {
+        final ReceivedBatch batch = new ReceivedBatch();
+        for (int i = 0; i < receiveBatchSize; i++) {
+            buffer.clear();
+            final SocketAddress sender = receiveChannel.receive(buffer);
+            if (sender == null) {
+                break;
+            }
+            receivedDatagrams.increment();
+            batch.add(buffer, sender);
+        }
+        return batch;
+    }
+
+    private void handle(final Object received, final SocketAddress sender) {
+        if (!(received instanceof DataPackage)) {
+            return;
+        }
+
+        final DataPackage data = (DataPackage) received;
+        final Executable executable = handlerRegistry.lookup(data.getID());
+        SENDER.set(sender);
+        try {
+            if (executable == null) {
+                unhandledMessages.increment();
+                onUnidentifiedMessage(data, sender);
+            } else {
+                executable.run(data, null);
+            }
+        } catch (final RuntimeException e) {
+            LOGGER.error("Error while handling datagram with id '{}' from '{}'", data.getID(), sender, e);
+        } finally {
+            SENDER.remove();
+        }
+    }
+
+    /**
+     * Packages of the datagrams received at once, handled by a single worker task.
+     */
+    private final class ReceivedBatch implements Runnable {
+
+        private final List<Object> messages = new ArrayList<>();
+        private final List<SocketAddress> senders = new ArrayList<>();
+
+        void add(final ByteBuffer datagram, final SocketAddress sender) {
+            final int before = messages.size();
+            try {
+                DatagramCodec.decode(datagram.array(), 0, datagram.position(), messages, decodingCodecs);
+            } catch (final IOException | ClassNotFoundException | RuntimeException | StackOverflowError e) {
+                // the complete datagram is dropped, like a datagram which was lost (the receiving thread goes on)
+                invalidDatagrams.increment();
+                messages.subList(before, messages.size()).clear();
+                LOGGER.debug("Dropping invalid datagram from {}", sender, e);
+                return;
+            }
+            for (int i = before; i < messages.size(); i++) {
+                senders.add(sender);
+            }
+            receivedMessages.add(messages.size() - before);
+        }
+
+        int size() {
+            return messages.size();
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < messages.size(); i++) {
+                handle(messages.get(i), senders.get(i));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+package de.spiderlinker.network.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of direct buffers of a {@link SelectorEventLoop}. Allocating direct buffers is expensive and their memory
+ * is only released by the garbage collector, so the buffers for encrypting and decrypting TLS records are reused
+ * by all connections of the event loop. A connection only holds a buffer while it contains data which could not
+ * be processed yet (an incomplete record or data the socket did not accept), so thousands of idle connections
+ * do not hold any buffers.
+ * <br>
+ * The pool is not thread-safe, it must only be used on the thread of the owning event loop.
+ */
+class DirectBufferPool {
+
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final int maxPooled;
+    private int allocated;
+
+    /**
+     * @param maxPooled maximum number of released buffers which are kept for reuse
+     */
+    DirectBufferPool(final int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @param capacity minimum capacity of the buffer
+     * @return cleared buffer with at least the given capacity
+     */
+    ByteBuffer acquire(final int capacity) {
+        final ByteBuffer pooled = buffers.poll();
+        if (pooled != null && pooled.capacity() >= capacity) {
+            return pooled;
+        }
+
+        // buffers which are too small (e.g. of a former session with smaller records) are dropped
+        allocated++;
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * @param buffer buffer which is not used anymore, it must not be used after the release
+     */
+    void release(final ByteBuffer buffer) {
+        if (buffers.size() < maxPooled) {
+            buffer.clear();
+            buffers.push(buffer);
+        }
+    }
+
+    /**
+     * @return number of buffers currently available for reuse
+     */
+    int getPooledCount() {
+        return buffers.size();
+    }
+
+    /**
+     * @return number of buffers allocated since the creation of the pool
+     */
+    int getAllocatedCount() {
+        return allocated;
+    }
+
+}
@@ -0,0 +1,14 @@
+package de.spiderlinker.network.server;
+
+/**
+ * Task of a single connection which is executed by the {@link WorkerPool}.
+ */
+interface DispatchTask extends Runnable {
+
+    /**
+     * Called instead of {@link #run()} if the worker pool rejected this task.
+     * The client should be informed that the server is busy.
+     */
+    void reject();
+
+}
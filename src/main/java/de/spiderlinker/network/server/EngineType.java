@@ -0,0 +1,20 @@
+package de.spiderlinker.network.server;
+
+/**
+ * Available engines of a {@link ServerManager} to handle incoming connections.
+ */
+public enum EngineType {
+
+    /**
+     * Every accepted connection is handled by its own thread (default).
+     */
+    THREAD_PER_CONNECTION,
+
+    /**
+     * All connections are multiplexed by a small number of I/O threads using a {@link java.nio.channels.Selector}.
+     * Handlers have to answer via {@link ServerManager#sendMessage(java.net.Socket, de.spiderlinker.network.data.DataPackage)}
+     * because the socket of a connection is in non-blocking mode.
+     */
+    SELECTOR
+
+}
@@ -0,0 +1,253 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.Executable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Thread-safe registry of the executables which handle the received data of a {@link ServerManager}.
+ * <br>
+ * A route is either the exact id of the data or a prefix route ending with {@value #WILDCARD}
+ * (e.g. {@code "user.*"} for all ids starting with {@code "user."}, {@code "*"} for all ids).
+ * An exact route wins over prefix routes, of the prefix routes the longest matching one wins.
+ * A {@value #WILDCARD} inside a route has no special meaning (the route is exact), and the null route handles
+ * the data without id. Note that an id ending with {@value #WILDCARD} is a prefix route, so besides its own data
+ * it handles the data of all ids with the same prefix.
+ * <br>
+ * The routes are stored in an immutable snapshot which is replaced (copy-on-write) by every change,
+ * so handlers may be registered, unregistered or swapped while the server is running.
+ * The lookup reads the current snapshot without locking and without allocating.
+ * Every change increments the version of the registry, which allows to swap all routes only if
+ * nobody else changed them in the meantime (see {@link #swap(long, Map)}).
+ */
+public class HandlerRegistry {
+
+    /** Suffix of prefix routes */
+    public static final String WILDCARD = "*";
+
+    private final AtomicReference<Routes> routes = new AtomicReference<>(Routes.EMPTY);
+    /** Notified with the previous and the new routes after every change */
+    private final List<BiConsumer<Map<String, Executable>, Map<String, Executable>>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the executable for the id of received data.
+     *
+     * @param id id of the received data
+     * @return executable of the exact route or the longest matching prefix route, null if no route matches
+     */
+    public Executable lookup(final String id) {
+        return routes.get().lookup(id);
+    }
+
+    /**
+     * Returns the route which matches the id of received data, e.g. to attribute the data to its route.
+     *
+     * @param id id of the received data
+     * @return exact route or longest matching prefix route, the id itself if no route matches
+     */
+    public String lookupRoute(final String id) {
+        return routes.get().lookupRoute(id);
+    }
+
+    /**
+     * Registers the executable for the route, replacing the executable registered before.
+     *
+     * @param route exact id (may be null) or prefix ending with {@value #WILDCARD}
+     * @param exec  executable to handle the data of the route
+     * @return executable registered before for the route, null if there was none
+     */
+    public Executable register(final String route, final Executable exec) {
+        Objects.requireNonNull(exec);
+
+        Routes current;
+        Routes next;
+        do {
+            current = routes.get();
+            final Map<String, Executable> changed = new LinkedHashMap<>(current.handlers);
+            changed.put(route, exec);
+            next = new Routes(changed, current.version + 1);
+        } while (!routes.compareAndSet(current, next));
+        onChanged(current, next);
+        return current.handlers.get(route);
+    }
+
+    /**
+     * Removes the route, received data of the route is not handled anymore.
+     *
+     * @param route route to be removed
+     * @return executable registered for the route, null if there was none
+     */
+    public Executable unregister(final String route) {
+        Routes current;
+        Routes next;
+        do {
+            current = routes.get();
+            if (!current.handlers.containsKey(route)) {
+                return null;
+            }
+            final Map<String, Executable> changed = new LinkedHashMap<>(current.handlers);
+            changed.remove(route);
+            next = new Routes(changed, current.version + 1);
+        } while (!routes.compareAndSet(current, next));
+        onChanged(current, next);
+        return current.handlers.get(route);
+    }
+
+    /**
+     * Replaces all routes at once, no data is handled with a mix of the old and new routes.
+     *
+     * @param handlers new routes and their executables
+     * @return version of the registry with the new routes
+     */
+    public long replaceAll(final Map<String, Executable> handlers) {
+        final Map<String, Executable> replacement = validateRoutes(handlers);
+        Routes current;
+        Routes next;
+        do {
+            current = routes.get();
+            next = new Routes(replacement, current.version + 1);
+        } while (!routes.compareAndSet(current, next));
+        onChanged(current, next);
+        return next.version;
+    }
+
+    /**
+     * Replaces all routes at once if the registry was not changed since the given version was read.
+     *
+     * @param expectedVersion version the new routes are based on (see {@link #getVersion()})
+     * @param handlers        new routes and their executables
+     * @return whether the routes were replaced, false if the registry has another version
+     */
+    public boolean swap(final long expectedVersion, final Map<String, Executable> handlers) {
+        final Map<String, Executable> replacement = validateRoutes(handlers);
+        final Routes current = routes.get();
+        if (current.version != expectedVersion) {
+            return false;
+        }
+        final Routes next = new Routes(replacement, expectedVersion + 1);
+        if (!routes.compareAndSet(current, next)) {
+            return false;
+        }
+        onChanged(current, next);
+        return true;
+    }
+
+    /**
+     * @return version of the registry, incremented by every change of the routes
+     */
+    public long getVersion() {
+        return routes.get().version;
+    }
+
+    /**
+     * @return unmodifiable snapshot of all routes in the order of their registration
+     */
+    public Map<String, Executable> getRoutes() {
+        return routes.get().handlers;
+    }
+
+    /**
+     * @param listener notified with the previous and the new routes after every change (e.g. to drop the
+     *                 metrics of removed routes), on the thread which changed the routes
+     */
+    void addChangeListener(final BiConsumer<Map<String, Executable>, Map<String, Executable>> listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    private void onChanged(final Routes previous, final Routes current) {
+        for (final BiConsumer<Map<String, Executable>, Map<String, Executable>> listener : listeners) {
+            listener.accept(previous.handlers, current.handlers);
+        }
+    }
+
+    private static Map<String, Executable> validateRoutes(final Map<String, Executable> handlers) {
+        final Map<String, Executable> validated = new LinkedHashMap<>(handlers);
+        for (final Executable exec : validated.values()) {
+            Objects.requireNonNull(exec);
+        }
+        return validated;
+    }
+
+    /**
+     * @param route registered route
+     * @return whether the route is a prefix route (otherwise it is an exact route)
+     */
+    public static boolean isPrefixRoute(final String route) {
+        return route != null && route.endsWith(WILDCARD);
+    }
+
+    /**
+     * Immutable snapshot of the routes. Prefix routes are sorted by length, so the first match is the longest.
+     */
+    private static final class Routes {
+
+        private static final Routes EMPTY = new Routes(Collections.emptyMap(), 0);
+
+        private final Map<String, Executable> handlers;
+        private final Map<String, Executable> exactRoutes = new LinkedHashMap<>();
+        private final String[] prefixes;
+        private final String[] prefixRoutes;
+        private final Executable[] prefixHandlers;
+        private final long version;
+
+        Routes(final Map<String, Executable> handlers, final long version) {
+            this.handlers = Collections.unmodifiableMap(handlers);
+            this.version = version;
+
+            final List<Map.Entry<String, Executable>> prefixRoutes = new ArrayList<>();
+            for (final Map.Entry<String, Executable> route : handlers.entrySet()) {
+                if (isPrefixRoute(route.getKey())) {
+                    prefixRoutes.add(route);
+                } else {
+                    exactRoutes.put(route.getKey(), route.getValue());
+                }
+            }
+            prefixRoutes.sort(Comparator.comparingInt((Map.Entry<String, Executable> route) -> route.getKey().length()).reversed());
+
+            this.prefixes = new String[prefixRoutes.size()];
+            this.prefixRoutes = new String[prefixRoutes.size()];
+            this.prefixHandlers = new Executable[prefixRoutes.size()];
+            for (int i = 0; i < prefixes.length; i++) {
+                final String route = prefixRoutes.get(i).getKey();
+                prefixes[i] = route.substring(0, route.length() - WILDCARD.length());
+                this.prefixRoutes[i] = route;
+                prefixHandlers[i] = prefixRoutes.get(i).getValue();
+            }
+        }
+
+        Executable lookup(final String id) {
+            final Executable exact = exactRoutes.get(id);
+            if (exact != null || id == null) {
+                return exact;
+            }
+            for (int i = 0; i < prefixes.length; i++) {
+                if (id.startsWith(prefixes[i])) {
+                    return prefixHandlers[i];
+                }
+            }
+            return null;
+        }
+
+        String lookupRoute(final String id) {
+            if (id == null || exactRoutes.containsKey(id)) {
+                return id;
+            }
+            for (int i = 0; i < prefixes.length; i++) {
+                if (id.startsWith(prefixes[i])) {
+                    return prefixRoutes[i];
+                }
+            }
+            return id;
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.protocol.EncodedMessage;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import de.spiderlinker.network.utils.ExecutorFactory;
+import de.spiderlinker.network.utils.SocketUtils;
+import de.spiderlinker.network.utils.TlsConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queue of the messages a {@link ServerManager} sends to one destination (host and port).
+ * The messages are encoded as frames by the sending thread and written by a writer thread over a keep-alive
+ * session to the destination. The writer waits up to the linger time for further messages and writes all
+ * collected messages (up to the batch size) with a single write, so a burst of messages needs only a few
+ * system calls and a single handshake. The destination has to support frames and keep-alive sessions.
+ * <br>
+ * Messages are sent asynchronously, failures are logged. The connection is checked before it is reused after
+ * a pause and it is reestablished once if writing a batch fails.
+ */
+class OutboundQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboundQueue.class);
+
+    /** Writes the queued messages of all destinations, a thread only exists while a queue has messages */
+    private static final ExecutorService WRITER = ExecutorFactory.newThreadPerTaskExecutor("ServerManager-outbound", true);
+    /** Time after which an idle connection is checked before it is reused */
+    private static final long STALE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String host;
+    private final int port;
+    private final Codec codec;
+    private final TlsConfiguration tls;
+    private final long lingerNanos;
+    private final int batchSize;
+    private final BlockingQueue<byte[]> pending = new LinkedBlockingQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+
+    private volatile boolean closed;
+    private Socket socket;
+    private long lastWrite;
+
+    /**
+     * @param host         host to send the messages to
+     * @param port         port of the host
+     * @param codec        codec to encode the messages with
+     * @param tls          TLS configuration, null for an unencrypted connection
+     * @param lingerMillis time the writer waits for further messages
+     * @param batchSize    number of bytes which are written without waiting for further messages
+     */
+    OutboundQueue(final String host, final int port, final Codec codec, final TlsConfiguration tls,
+                  final int lingerMillis, final int batchSize) {
+        this.host = host;
+        this.port = port;
+        this.codec = codec;
+        this.tls = tls;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return number of messages waiting for the writer
+     */
+    int getQueuedCount() {
+        return pending.size();
+    }
+
+    /**
+     * Encodes the message on the calling thread and queues it for the writer.
+     *
+     * @param message message to send
+     * @throws IOException queue is closed or the message can not be encoded
+     */
+    void send(final EncodedMessage message) throws IOException {
+        if (closed) {
+            throw new IOException("Outbound queue to " + host + ":" + port + " is closed");
+        }
+
+        pending.add(message.getFrame(codec, null));
+        if (scheduled.compareAndSet(false, true)) {
+            WRITER.execute(this::writeQueued);
+        }
+    }
+
+    /**
+     * Closes the connection, messages which are not written yet are dropped.
+     */
+    void close() {
+        closed = true;
+        pending.clear();
+        synchronized (this) {
+            ConnectionUtils.close(socket);
+        }
+    }
+
+    private void writeQueued() {
+        while (true) {
+            final byte[] first = pending.poll();
+            if (first == null) {
+                scheduled.set(false);
+                // a message may have been queued after the poll but before the reset of the flag
+                if (pending.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            final int messages = collectBatch(first);
+            synchronized (this) {
+                if (!closed) {
+                    writeBatch(messages);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of messages in the batch
+     */
+    private int collectBatch(final byte[] first) {
+        batch.reset();
+        batch.write(first, 0, first.length);
+        int messages = 1;
+
+        final long deadline = System.nanoTime() + lingerNanos;
+        try {
+            while (batch.size() < batchSize) {
+                final long remaining = deadline - System.nanoTime();
+                final byte[] next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                if (next == null) {
+                    break;
+                }
+                batch.write(next, 0, next.length);
+                messages++;
+            }
+        } catch (final InterruptedException e) {
+            // write the collected messages without waiting for more
+            Thread.currentThread().interrupt();
+        }
+        return messages;
+    }
+
+    private void writeBatch(final int messages) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                ensureConnected();
+                batch.writeTo(socket.getOutputStream());
+                socket.getOutputStream().flush();
+                lastWrite = System.nanoTime();
+                return;
+            } catch (final IOException e) {
+                // e.g. the session was closed by the idle timeout of the destination
+                LOGGER.debug("Failed to write {} messages to {}:{}", messages, host, port, e);
+                ConnectionUtils.close(socket);
+            }
+        }
+        LOGGER.error("Failed to send {} messages to {}:{}", messages, host, port);
+    }
+
+    private void ensureConnected() throws IOException {
+        if (socket != null && !socket.isClosed() && (System.nanoTime() - lastWrite < STALE_CHECK_NANOS || isUsable())) {
+            discardReceivedData();
+            return;
+        }
+
+        ConnectionUtils.close(socket);
+        socket = SocketUtils.createSocket(host, port, SocketUtils.DEFAULT_TIMEOUT, tls);
+        final FrameCodec frameCodec = FrameCodec.forSocket(socket, true, codec);
+        if (!frameCodec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE)) {
+            throw new IOException("Host " + host + ":" + port + " denied keep-alive session");
+        }
+    }
+
+    /**
+     * Checks whether the idle connection was closed by the destination. Waits at most one millisecond.
+     */
+    private boolean isUsable() throws IOException {
+        discardReceivedData();
+        final int timeout = socket.getSoTimeout();
+        socket.setSoTimeout(1);
+        try {
+            return socket.getInputStream().read() >= 0;
+        } catch (final SocketTimeoutException e) {
+            return true;
+        } finally {
+            socket.setSoTimeout(timeout);
+        }
+    }
+
+    /**
+     * The messages are sent without waiting for answers, answers of the destination are dropped
+     * so they do not fill up the buffers of the connection.
+     */
+    private void discardReceivedData() throws IOException {
+        final InputStream input = socket.getInputStream();
+        int available;
+        while ((available = input.available()) > 0) {
+            input.skip(available);
+        }
+    }
+
+}
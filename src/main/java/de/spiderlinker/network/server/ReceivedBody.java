@@ -0,0 +1,184 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.protocol.FrameCodec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Body of a package received by a {@link SelectorConnection}. The event loop offers the received chunks, the handler
+ * of the package reads them on its worker thread. At most {@link #MAX_BUFFERED_BYTES} are queued (or a single larger
+ * chunk): a chunk which does not fit is refused and the connection stops reading until the handler consumed the
+ * queued chunks, so a slow handler slows down the client instead of filling the heap.
+ * <br>
+ * After the body was closed, offered chunks are discarded, so the connection continues with the next message.
+ */
+final class ReceivedBody extends InputStream {
+
+    /** Maximum number of queued bytes of a body */
+    static final int MAX_BUFFERED_BYTES = 4 * FrameCodec.CHUNK_LENGTH;
+
+    private final long length;
+    /** Called by the reading thread when the connection may continue to read (the body is not locked) */
+    private final Runnable resume;
+    private final Deque<byte[]> chunks = new ArrayDeque<>();
+    private byte[] current;
+    private int position;
+    private int bufferedBytes;
+    private long received;
+    private boolean refused;
+    private boolean finished;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * @param length length of the body or {@link de.spiderlinker.network.data.StreamBody#UNKNOWN_LENGTH}
+     * @param resume continues reading the connection after a refused chunk
+     */
+    ReceivedBody(final long length, final Runnable resume) {
+        this.length = length;
+        this.resume = resume;
+    }
+
+    /**
+     * Queues a received chunk. Called by the event loop.
+     *
+     * @return whether the chunk was queued (or discarded), false if the queue is full
+     */
+    synchronized boolean offer(final byte[] buffer, final int offset, final int count) {
+        received += count;
+        if (closed) {
+            return true;
+        }
+        if (bufferedBytes > 0 && bufferedBytes + count > MAX_BUFFERED_BYTES) {
+            received -= count;
+            refused = true;
+            return false;
+        }
+
+        chunks.add(Arrays.copyOfRange(buffer, offset, offset + count));
+        bufferedBytes += count;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Ends the body after its last chunk. Called by the event loop.
+     *
+     * @param aborted whether the sender aborted the body
+     */
+    synchronized void finish(final boolean aborted) {
+        try {
+            FrameCodec.requireCompleteBody(aborted, length, received);
+        } catch (final IOException e) {
+            failure = e;
+        }
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Ends the body because its connection was closed. Called by the event loop.
+     */
+    synchronized void fail() {
+        if (!finished) {
+            failure = new EOFException("Connection closed while receiving body");
+            finished = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+
+        final int read;
+        final boolean resumeReading;
+        synchronized (this) {
+            while (current == null) {
+                if (closed) {
+                    throw new IOException("Body is closed");
+                }
+                current = chunks.poll();
+                if (current != null) {
+                    position = 0;
+                } else if (finished) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                } else {
+                    awaitChunk();
+                }
+            }
+
+            read = Math.min(count, current.length - position);
+            System.arraycopy(current, position, buffer, offset, read);
+            position += read;
+            if (position < current.length) {
+                return read;
+            }
+            bufferedBytes -= current.length;
+            current = null;
+            resumeReading = refused;
+            refused = false;
+        }
+
+        if (resumeReading) {
+            resume.run();
+        }
+        return read;
+    }
+
+    private void awaitChunk() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a chunk of the body");
+        }
+    }
+
+    @Override
+    public synchronized int available() {
+        return closed ? 0 : bufferedBytes - position;
+    }
+
+    /**
+     * Discards the queued and all further chunks of the body.
+     */
+    @Override
+    public void close() {
+        final boolean resumeReading;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            chunks.clear();
+            current = null;
+            bufferedBytes = 0;
+            resumeReading = refused;
+            refused = false;
+            notifyAll();
+        }
+
+        if (resumeReading) {
+            resume.run();
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package de.spiderlinker.network.server;
+
+/**
+ * Policies of the worker pool of a {@link ServerManager} if a connection can neither be
+ * handled by a worker thread nor be queued.
+ */
+public enum RejectionPolicy {
+
+    /**
+     * The rejected connection is answered with a busy reply ({@link de.spiderlinker.network.utils.ConnectionUtils#HANDSHAKE_BUSY})
+     * and closed afterwards.
+     */
+    REJECT_WITH_BUSY_REPLY,
+
+    /**
+     * The rejected connection is handled by the worker thread which tried to hand it over to the pool
+     * (e.g. a pipelined request by the thread of its session), which slows down the session until the pool
+     * catches up again. Connections handed over by the accept thread or an I/O thread are handled by an
+     * overflow thread instead (at most as many as the pool has), so the other connections are not blocked;
+     * if all overflow threads are busy as well, the connection is answered with a busy reply.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The oldest queued connection is answered with a busy reply and dropped in favor of the rejected one.
+     */
+    DROP_OLDEST
+
+}
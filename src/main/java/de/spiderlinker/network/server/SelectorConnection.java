@@ -0,0 +1,852 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.StreamBody;
+import de.spiderlinker.network.protocol.Compression;
+import de.spiderlinker.network.protocol.EncodedMessage;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.protocol.FrameCompressor;
+import de.spiderlinker.network.protocol.RouteTable;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * State of a single non-blocking connection of the {@link SelectorConnectionEngine}.
+ * The connection speaks the same protocols as the blocking engine, which are detected by the first received byte:
+ * <ul>
+ * <li>Framed: the client sends a handshake frame followed by a data frame (see {@link FrameCodec}).
+ * Replies are written as data frames.</li>
+ * <li>Legacy: the client sends a handshake line followed by a serialized object. Every reply starts with
+ * a handshake of the server which has to be accepted by the client before the serialized reply is written.</li>
+ * </ul>
+ * If the client requested a keep-alive session, it may send multiple serialized objects after the handshake.
+ * They are dispatched one after another and the replies are written without handshake.
+ * A framed client may request numeric routes in its handshake, the connection then sends the
+ * {@link RouteTable} of the server and accepts routed data frames. A requested compression is negotiated as well,
+ * afterwards received compressed frames are decompressed and large replies are compressed.
+ * Pipelined requests (packages with a request ID) are dispatched as soon as they are received,
+ * so they are handled concurrently and their replies are written in the order they are completed.
+ * The chunks of a received body are handed over to the handler of its package while they arrive (see
+ * {@link ReceivedBody}), the connection stops reading while the handler lags behind.
+ * If the server uses TLS, the received records are decrypted by a {@link TlsTransport} before the protocol
+ * is detected and the queued data is encrypted by it when the connection is flushed.
+ * <br>
+ * Every connection owns a timeout of the {@link TimerWheel} of the server, whose deadline follows the state of the
+ * connection: the handshake timeout until the handshake is received, the read timeout while a message is received
+ * partially and the idle timeout while a keep-alive session waits for its next request. No deadline is set while
+ * a request is handled or its answer is written.
+ * <br>
+ * Apart from {@link #sendReply(Object)} and {@link #isClosed()} all methods
+ * must only be called on the thread of the owning {@link SelectorEventLoop}.
+ */
+class SelectorConnection {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorConnection.class);
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    /** Inbound buffers up to this size are kept once they are empty, larger ones are released */
+    private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HANDSHAKE_LENGTH = 256;
+    /** Maximum number of queued buffers written with one gathering write */
+    private static final int MAX_GATHERED_BUFFERS = 64;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private enum State {
+        AWAIT_HANDSHAKE, AWAIT_DATA, DISPATCHED
+    }
+
+    private final SelectorConnectionEngine engine;
+    private final SelectorEventLoop eventLoop;
+    private final SocketChannel channel;
+    private final Codec codec;
+    private final Codec[] acceptedCodecs;
+    private final TlsTransport tls;
+    private final Deque<ByteBuffer> outbound = new ArrayDeque<>();
+    private final ByteBuffer[] gatheredBuffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+    private final Deque<byte[]> pendingReplies = new ArrayDeque<>();
+    private final TimerWheel.Timeout timeout;
+    private final ServerMetrics metrics;
+
+    private SelectionKey key;
+    private State state = State.AWAIT_HANDSHAKE;
+    private byte[] inbound = new byte[INITIAL_BUFFER_SIZE];
+    private int inboundLength;
+    private volatile boolean framed;
+    private volatile RouteTable routes;
+    /** Compressor of the negotiated compression, null if the frames are not compressed */
+    private volatile FrameCompressor compressor;
+    private boolean session;
+    private int dispatchedCount;
+    private boolean awaitingReplyHandshake;
+    private int routeId = RouteTable.NO_ROUTE;
+    private boolean closeAfterFlush;
+    private long outboundBytes;
+    private boolean flushScheduled;
+    private long flushDeadline;
+    /** Type of the current deadline, null while no deadline is set */
+    private TimeoutType deadlineType;
+    private long deadline;
+    private boolean deadlineArmed;
+    /** Body whose chunks are received, null while no body is received */
+    private ReceivedBody body;
+    /** Whether reading is paused until the handler consumed the queued chunks of the body */
+    private boolean readPaused;
+    private volatile boolean closed;
+
+    /**
+     * @param engine    engine which accepted the connection
+     * @param eventLoop event loop the connection is registered to
+     * @param channel   accepted channel
+     * @param codec     codec of the server for the replies
+     * @param tls       transport which encrypts the connection, null for an unencrypted connection
+     */
+    SelectorConnection(final SelectorConnectionEngine engine, final SelectorEventLoop eventLoop,
+                       final SocketChannel channel, final Codec codec, final TlsTransport tls) {
+        this.engine = engine;
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.codec = codec;
+        this.acceptedCodecs = engine.getAcceptedCodecs();
+        this.tls = tls;
+        this.metrics = engine.getMetrics();
+        this.timeout = engine.newTimeout(this::onTimeout);
+        armDeadline(TimeoutType.HANDSHAKE);
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    Socket getSocket() {
+        return channel.socket();
+    }
+
+    void attach(final SelectionKey key) {
+        this.key = key;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /*
+     * - - - - - - - - - - Read path - - - - - - - - - -
+     */
+
+    void onReadable(final ByteBuffer readBuffer) throws IOException {
+        if (tls != null) {
+            onEncryptedReadable();
+            return;
+        }
+
+        readBuffer.clear();
+        final int read = channel.read(readBuffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        readBuffer.flip();
+        appendInbound(readBuffer);
+        processInbound();
+        updateDeadline();
+    }
+
+    private void onEncryptedReadable() throws IOException {
+        if (tls.read(channel, this::appendInbound) < 0) {
+            close();
+            return;
+        }
+
+        if (tls.hasPendingOutput()) {
+            // answer of the handshake (or a session ticket), which must not wait for the linger time
+            flush();
+        }
+        processInbound();
+        updateDeadline();
+    }
+
+    private void appendInbound(final ByteBuffer data) {
+        metrics.getBytesInCounter().add(data.remaining());
+        final int required = inboundLength + data.remaining();
+        if (required > inbound.length) {
+            inbound = Arrays.copyOf(inbound, Math.max(required, inbound.length * 2));
+        }
+        data.get(inbound, inboundLength, data.remaining());
+        inboundLength = required;
+    }
+
+    private void processInbound() throws IOException {
+        while (!closed) {
+            if (body != null) {
+                // the chunks of a body follow its package, regardless of the state of its dispatch
+                if (!pollChunk()) {
+                    return;
+                }
+            } else if (awaitingReplyHandshake) {
+                if (pollLine() == null) {
+                    return;
+                }
+                // like ServerManager#sendMessage the reply is written regardless of the answer of the client
+                awaitingReplyHandshake = false;
+                queue(ByteBuffer.wrap(pendingReplies.poll()));
+                startNextReply();
+            } else if (state == State.AWAIT_HANDSHAKE) {
+                if (!handleHandshake()) {
+                    return;
+                }
+            } else if (state == State.AWAIT_DATA) {
+                routeId = RouteTable.NO_ROUTE;
+                final Object raw = framed ? pollFramedObject() : pollObject();
+                if (raw == null) {
+                    return;
+                }
+                final boolean pipelined = session && ServerManager.isPipelinedRequest(raw);
+                if (!pipelined) {
+                    state = State.DISPATCHED;
+                }
+                dispatchedCount++;
+                engine.dispatch(raw, this, pipelined, routeId);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean handleHandshake() throws IOException {
+        if (inboundLength == 0) {
+            return false;
+        }
+
+        framed = FrameCodec.isFrameStart(inbound[0]);
+        final int features = framed && inboundLength >= FrameCodec.HEADER_LENGTH ? FrameCodec.getCodecId(inbound, 0) : 0;
+        final String handshake = framed ? pollHandshakeFrame() : pollLine();
+        if (handshake == null) {
+            if (!framed && inboundLength > MAX_HANDSHAKE_LENGTH) {
+                throw new IOException("Handshake exceeds maximum length of " + MAX_HANDSHAKE_LENGTH);
+            }
+            return false;
+        }
+
+        final boolean accepted = ConnectionUtils.isHandshakeRequest(handshake);
+        session = ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.equals(handshake);
+        final boolean negotiateRoutes = accepted && (features & FrameCodec.FEATURE_ROUTES) != 0;
+        final FrameCompressor negotiated = accepted ? engine.newCompressor(Compression.fromFeatures(features)) : null;
+        writeHandshake(accepted ? ConnectionUtils.HANDSHAKE_ACCEPTED : ConnectionUtils.HANDSHAKE_DENIED,
+                (negotiateRoutes ? FrameCodec.FEATURE_ROUTES : 0)
+                        | (negotiated == null ? 0 : negotiated.getCompression().getFeatures()));
+        compressor = negotiated;
+        if (negotiateRoutes) {
+            final RouteTable table = engine.getRouteTable();
+            queue(ByteBuffer.wrap(FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_ROUTES, 0), table.encode())));
+            routes = table;
+        }
+        LOGGER.debug("Handshake performed with {} > {}", channel, handshake);
+
+        if (accepted) {
+            state = State.AWAIT_DATA;
+        } else {
+            metrics.onHandshakeFailed();
+            closeAfterFlush();
+        }
+        return accepted;
+    }
+
+    /**
+     * Called by the worker thread after the dispatched data was handled. A keep-alive session
+     * continues with the next received object. May be called from any thread.
+     *
+     * @param pipelined whether the data was dispatched without waiting for its completion
+     */
+    void onDispatchCompleted(final boolean pipelined) {
+        eventLoop.execute(() -> {
+            dispatchedCount--;
+            if (engine.isDraining() && !closed) {
+                // the answer is written right away, so the connection can be closed
+                flushQueued();
+                if (isDrainable()) {
+                    close();
+                    return;
+                }
+            }
+            if (!pipelined && session && !closed && state == State.DISPATCHED) {
+                state = State.AWAIT_DATA;
+                try {
+                    processInbound();
+                } catch (final IOException e) {
+                    LOGGER.debug("Closing connection {} after error", channel, e);
+                    close();
+                }
+            }
+            updateDeadline();
+        });
+    }
+
+    /**
+     * Closes this connection if it has no request which is received, handled or answered.
+     * Used while the server stops, may be called from any thread.
+     */
+    void closeIfIdle() {
+        eventLoop.execute(() -> {
+            if (isDrainable()) {
+                close();
+            }
+        });
+    }
+
+    private boolean isDrainable() {
+        return !closed && dispatchedCount == 0 && inboundLength == 0 && outbound.isEmpty() && pendingReplies.isEmpty()
+                && !awaitingReplyHandshake && (tls == null || !tls.hasPendingOutput());
+    }
+
+    /*
+     * - - - - - - - - - - Deadlines - - - - - - - - - -
+     */
+
+    /**
+     * Moves the deadline of this connection if its state requires another type of deadline. A deadline of the
+     * same type is not moved, so a client can not extend the read timeout by sending a message byte by byte.
+     */
+    private void updateDeadline() {
+        if (closed) {
+            return;
+        }
+
+        final TimeoutType type = getRequiredDeadline();
+        if (type != deadlineType) {
+            armDeadline(type);
+        }
+    }
+
+    /**
+     * @return type of the deadline the current state requires, null if no deadline is required
+     */
+    private TimeoutType getRequiredDeadline() {
+        if (state == State.AWAIT_HANDSHAKE) {
+            return TimeoutType.HANDSHAKE;
+        }
+        if (dispatchedCount > 0) {
+            return null;
+        }
+        if (inboundLength > 0 || awaitingReplyHandshake || state == State.AWAIT_DATA && !session) {
+            return TimeoutType.READ;
+        }
+        if (!outbound.isEmpty() || tls != null && tls.hasPendingOutput()) {
+            return null;
+        }
+        return TimeoutType.IDLE;
+    }
+
+    private void armDeadline(final TimeoutType type) {
+        deadlineType = type;
+        final long timeoutNanos = type == null ? 0 : engine.getTimeoutNanos(type);
+        deadlineArmed = timeoutNanos > 0;
+        if (deadlineArmed) {
+            deadline = timeout.expireAfter(timeoutNanos);
+        } else {
+            timeout.clear();
+        }
+    }
+
+    /**
+     * Called by the timer wheel when the deadline expired. The deadline may have been moved in the meantime,
+     * so it is checked again on the thread of the event loop.
+     */
+    private void onTimeout() {
+        eventLoop.execute(() -> {
+            if (!closed && deadlineArmed && System.nanoTime() - deadline >= 0) {
+                engine.onConnectionTimedOut(this, deadlineType);
+                close();
+            }
+        });
+    }
+
+    private String pollLine() {
+        for (int i = 0; i < inboundLength; i++) {
+            if (inbound[i] == '\n') {
+                final int end = i > 0 && inbound[i - 1] == '\r' ? i - 1 : i;
+                final String line = new String(inbound, 0, end, StandardCharsets.UTF_8);
+                consume(i + 1);
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tries to deserialize an object from the received bytes. The object stream has no length
+     * information, so an incomplete object is detected by reaching the end of the received bytes.
+     * As every attempt deserializes all received bytes again, an incomplete object may not exceed the
+     * maximum payload length of the server.
+     *
+     * @return deserialized object or null if not all bytes of the object are received yet
+     */
+    private Object pollObject() throws IOException {
+        if (inboundLength == 0) {
+            return null;
+        }
+
+        final ByteArrayInputStream bytes = new ByteArrayInputStream(inbound, 0, inboundLength);
+        try (ObjectInputStream input = new ObjectInputStream(bytes)) {
+            final Object raw = input.readObject();
+            consume(inboundLength - bytes.available());
+            return raw;
+        } catch (final EOFException e) {
+            if (inboundLength > engine.getMaxPayloadLength()) {
+                throw new IOException("Object exceeds maximum length of " + engine.getMaxPayloadLength());
+            }
+            return null;
+        } catch (final ClassNotFoundException e) {
+            throw new IOException("Received object of unknown class", e);
+        }
+    }
+
+    private String pollHandshakeFrame() throws IOException {
+        final int length = pollFrame(FrameCodec.TYPE_HANDSHAKE, MAX_HANDSHAKE_LENGTH);
+        if (length < 0) {
+            return null;
+        }
+
+        final String handshake = new String(inbound, FrameCodec.HEADER_LENGTH, length, StandardCharsets.UTF_8);
+        consume(FrameCodec.HEADER_LENGTH + length);
+        return handshake;
+    }
+
+    private Object pollFramedObject() throws IOException {
+        final int type = inboundLength >= FrameCodec.HEADER_LENGTH ? FrameCodec.getType(inbound, 0) : FrameCodec.TYPE_DATA;
+        final boolean known = type == FrameCodec.TYPE_ROUTED_DATA || type == FrameCodec.TYPE_STREAM_DATA
+                || type == FrameCodec.TYPE_COMPRESSED;
+        final int length = pollFrame(known ? type : FrameCodec.TYPE_DATA, engine.getMaxPayloadLength());
+        if (length < 0) {
+            return null;
+        }
+
+        try {
+            if (type == FrameCodec.TYPE_COMPRESSED) {
+                final FrameCompressor decompressor = requireCompressor();
+                final int payloadLength = decompressor.decompress(inbound[3], inbound, FrameCodec.HEADER_LENGTH, length);
+                return decodeFrame(decompressor.getDecompressed(), payloadLength);
+            }
+            return decodeFrame(inbound, length);
+        } catch (final ClassNotFoundException e) {
+            throw new IOException("Received object of unknown class", e);
+        } finally {
+            consume(FrameCodec.HEADER_LENGTH + length);
+        }
+    }
+
+    /**
+     * @param frame  array starting with a data, routed data or stream data frame
+     * @param length length of the payload of the frame
+     * @return decoded object
+     */
+    private Object decodeFrame(final byte[] frame, final int length) throws IOException, ClassNotFoundException {
+        final int type = FrameCodec.getType(frame, 0);
+        final Codec frameCodec = CodecRegistry.getAccepted(acceptedCodecs, FrameCodec.getCodecId(frame, 0));
+        final ByteArrayInputStream payload = new ByteArrayInputStream(frame, FrameCodec.HEADER_LENGTH, length);
+        if (type == FrameCodec.TYPE_ROUTED_DATA) {
+            routeId = FrameCodec.readRouteId(payload);
+            return FrameCodec.decodeRouted(payload, FrameCodec.requireRoutes(routes).getName(routeId), frameCodec,
+                    engine.getRecycler());
+        }
+        if (type == FrameCodec.TYPE_STREAM_DATA) {
+            final long bodyLength = FrameCodec.readBodyLength(payload);
+            final DataPackage data = FrameCodec.requireDataPackage(frameCodec.decode(payload, engine.getRecycler()));
+            body = new ReceivedBody(bodyLength, () -> eventLoop.execute(this::resumeReading));
+            return data.setBody(StreamBody.of(body, bodyLength));
+        }
+        FrameCodec.requireType(frame, 0, FrameCodec.TYPE_DATA);
+        return frameCodec.decode(payload, engine.getRecycler());
+    }
+
+    private FrameCompressor requireCompressor() throws StreamCorruptedException {
+        final FrameCompressor current = compressor;
+        if (current == null) {
+            throw new StreamCorruptedException("Received compressed frame without negotiated compression");
+        }
+        return current;
+    }
+
+    /**
+     * Hands the next received chunk over to the body.
+     *
+     * @return whether the chunk was received and queued, false if it is incomplete or the body is full
+     */
+    private boolean pollChunk() throws IOException {
+        final boolean compressed = inboundLength >= FrameCodec.HEADER_LENGTH
+                && FrameCodec.getType(inbound, 0) == FrameCodec.TYPE_COMPRESSED;
+        final int length = pollFrame(compressed ? FrameCodec.TYPE_COMPRESSED : FrameCodec.TYPE_CHUNK,
+                engine.getMaxPayloadLength());
+        if (length < 0) {
+            return false;
+        }
+
+        byte[] chunk = inbound;
+        int chunkLength = length;
+        if (compressed) {
+            final FrameCompressor decompressor = requireCompressor();
+            chunkLength = decompressor.decompress(inbound[3], inbound, FrameCodec.HEADER_LENGTH, length);
+            chunk = decompressor.getDecompressed();
+            FrameCodec.requireType(chunk, 0, FrameCodec.TYPE_CHUNK);
+        }
+
+        if (chunkLength == 0) {
+            body.finish(FrameCodec.getCodecId(chunk, 0) == FrameCodec.CHUNK_ABORTED);
+            body = null;
+        } else if (!body.offer(chunk, FrameCodec.HEADER_LENGTH, chunkLength)) {
+            // continued by the reading handler (see #resumeReading)
+            readPaused = true;
+            setInterest(key.interestOps());
+            return false;
+        }
+        consume(FrameCodec.HEADER_LENGTH + length);
+        return true;
+    }
+
+    /**
+     * Called after the handler consumed the queued chunks of the body which refused a chunk.
+     */
+    private void resumeReading() {
+        if (closed || !readPaused) {
+            return;
+        }
+
+        readPaused = false;
+        setInterest(key.interestOps() | SelectionKey.OP_READ);
+        try {
+            processInbound();
+        } catch (final IOException | RuntimeException | StackOverflowError e) {
+            closeAfterError(e);
+            return;
+        }
+        updateDeadline();
+    }
+
+    /**
+     * @return length of the payload of the received frame or -1 if the frame is not completely received yet
+     */
+    private int pollFrame(final int expectedType, final int maxLength) throws IOException {
+        if (inboundLength < FrameCodec.HEADER_LENGTH) {
+            return -1;
+        }
+
+        final int length = FrameCodec.readPayloadLength(inbound, 0);
+        FrameCodec.requireType(inbound, 0, expectedType);
+        if (length > maxLength) {
+            throw new IOException("Frame exceeds maximum length of " + maxLength);
+        }
+        return inboundLength < FrameCodec.HEADER_LENGTH + length ? -1 : length;
+    }
+
+    private void consume(final int count) {
+        System.arraycopy(inbound, count, inbound, 0, inboundLength - count);
+        inboundLength -= count;
+        if (inboundLength == 0 && inbound.length > RETAINED_BUFFER_SIZE) {
+            // a single large message must not keep its buffer for the rest of the session
+            inbound = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    /*
+     * - - - - - - - - - - Write path - - - - - - - - - -
+     */
+
+    /**
+     * Encodes the reply on the calling thread and queues it for this connection. May be called from any thread.
+     *
+     * @param reply reply to send (usually a DataPackage)
+     * @throws IOException connection is already closed or the reply can not be encoded
+     */
+    void sendReply(final Object reply) throws IOException {
+        requireOpen();
+        send(encode(reply));
+    }
+
+    /**
+     * Queues the bytes of the already encoded message in the format of this connection. May be called from any thread.
+     *
+     * @param message message encoded once for all recipients
+     * @throws IOException connection is already closed or the message can not be encoded
+     */
+    void sendEncoded(final EncodedMessage message) throws IOException {
+        requireOpen();
+        send(framed ? compress(message.getFrame(codec, routes)) : message.getLegacy());
+    }
+
+    private void requireOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Connection " + channel + " is already closed");
+        }
+    }
+
+    private void send(final byte[] encoded) {
+        eventLoop.execute(() -> {
+            if (framed || session) {
+                // the client already performed the handshake of its session
+                queue(ByteBuffer.wrap(encoded));
+                return;
+            }
+
+            pendingReplies.add(encoded);
+            if (!awaitingReplyHandshake) {
+                startNextReply();
+            }
+        });
+    }
+
+    private byte[] encode(final Object reply) throws IOException {
+        final StreamBody replyBody = FrameCodec.getBody(reply);
+        if (replyBody != null) {
+            // the replies are encoded in memory, which would defeat the purpose of the body
+            throw new IOException("Replies of the selector engine can not have a body (" + replyBody + ")");
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (!framed) {
+            JavaSerializationCodec.INSTANCE.encode(reply, bytes);
+            return bytes.toByteArray();
+        }
+
+        final int replyRouteId = FrameCodec.getRouteId(routes, reply);
+        if (replyRouteId == RouteTable.NO_ROUTE) {
+            codec.encode(reply, bytes);
+            return compress(FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_DATA, codec.getId()), bytes.toByteArray()));
+        }
+
+        FrameCodec.encodeRouted((DataPackage) reply, replyRouteId, codec, bytes);
+        return compress(FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_ROUTED_DATA, codec.getId()), bytes.toByteArray()));
+    }
+
+    /**
+     * @param frame frame to send
+     * @return compressed frame or the given frame if it is not compressed
+     */
+    private byte[] compress(final byte[] frame) {
+        final FrameCompressor current = compressor;
+        return current == null ? frame : current.compress(frame);
+    }
+
+    private void startNextReply() {
+        if (!pendingReplies.isEmpty() && !closed) {
+            awaitingReplyHandshake = true;
+            writeHandshake(ConnectionUtils.HANDSHAKE_REQUEST);
+        }
+    }
+
+    private void writeHandshake(final String handshake) {
+        writeHandshake(handshake, 0);
+    }
+
+    private void writeHandshake(final String handshake, final int features) {
+        if (framed) {
+            final byte flags = FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, features);
+            queue(ByteBuffer.wrap(FrameCodec.encodeFrame(flags, handshake.getBytes(StandardCharsets.UTF_8))));
+        } else {
+            queue(ByteBuffer.wrap((handshake + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Queues the data, it is written together with further data queued within the linger time of the event loop
+     * or as soon as the queued data reaches the batch size of the event loop.
+     */
+    private void queue(final ByteBuffer data) {
+        outbound.add(data);
+        outboundBytes += data.remaining();
+        if (outboundBytes >= eventLoop.getBatchSize()) {
+            flushQueued();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            flushDeadline = System.nanoTime() + eventLoop.getLingerNanos();
+            eventLoop.scheduleFlush(this);
+        }
+    }
+
+    /**
+     * @return time the queued data has to be written at (see {@link System#nanoTime()})
+     */
+    long getFlushDeadline() {
+        return flushDeadline;
+    }
+
+    /**
+     * Called by the event loop after the linger time of the queued data.
+     */
+    void onFlushDue() {
+        flushScheduled = false;
+        if (!closed) {
+            flushQueued();
+        }
+    }
+
+    private void flushQueued() {
+        try {
+            flush();
+        } catch (final IOException e) {
+            LOGGER.debug("Closing connection {} after failed write", channel, e);
+            close();
+        }
+    }
+
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (tls != null) {
+            if (!flushEncrypted()) {
+                setInterest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        } else if (!flushPlain()) {
+            return;
+        }
+
+        setInterest(SelectionKey.OP_READ);
+        if (closeAfterFlush || engine.isDraining() && isDrainable()) {
+            close();
+            return;
+        }
+        updateDeadline();
+    }
+
+    /**
+     * @return whether all queued data was written
+     */
+    private boolean flushPlain() throws IOException {
+        while (!outbound.isEmpty()) {
+            // all queued buffers are written with a single gathering write
+            int count = 0;
+            for (final ByteBuffer data : outbound) {
+                if (count == gatheredBuffers.length) {
+                    break;
+                }
+                gatheredBuffers[count++] = data;
+            }
+            final long written = channel.write(gatheredBuffers, 0, count);
+            outboundBytes -= written;
+            metrics.getBytesOutCounter().add(written);
+            final boolean complete = !gatheredBuffers[count - 1].hasRemaining();
+            Arrays.fill(gatheredBuffers, 0, count, null);
+
+            while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) {
+                outbound.poll();
+            }
+            if (!complete) {
+                // socket buffer is full, continue as soon as the channel is writable again
+                setInterest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encrypts the queued data record by record and writes the records. While the TLS handshake is not finished
+     * the data stays queued, it is written by the first flush after the handshake.
+     *
+     * @return whether all encrypted data was written
+     */
+    private boolean flushEncrypted() throws IOException {
+        do {
+            if (!tls.write(channel)) {
+                return false;
+            }
+
+            int count = 0;
+            for (final ByteBuffer data : outbound) {
+                if (count == gatheredBuffers.length) {
+                    break;
+                }
+                gatheredBuffers[count++] = data;
+            }
+            final long encrypted = tls.wrap(gatheredBuffers, 0, count);
+            outboundBytes -= encrypted;
+            metrics.getBytesOutCounter().add(encrypted);
+            Arrays.fill(gatheredBuffers, 0, count, null);
+
+            while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) {
+                outbound.poll();
+            }
+        } while (tls.hasPendingOutput());
+        return true;
+    }
+
+    private void closeAfterFlush() {
+        closeAfterFlush = true;
+        if (outbound.isEmpty()) {
+            close();
+        }
+    }
+
+    private void setInterest(final int ops) {
+        // reading stays paused until the handler consumed the queued chunks of the body
+        final int interest = readPaused ? ops & ~SelectionKey.OP_READ : ops;
+        if (key != null && key.isValid() && key.interestOps() != interest) {
+            key.interestOps(interest);
+        }
+    }
+
+    /**
+     * Closes this connection after a failed read or write. An error before the handshake was received
+     * (e.g. a failed TLS handshake or an invalid handshake) is counted as failed handshake.
+     *
+     * @param error cause of the close
+     */
+    void closeAfterError(final Throwable error) {
+        LOGGER.debug("Closing connection {} after error", this, error);
+        if (!closed && state == State.AWAIT_HANDSHAKE) {
+            metrics.onHandshakeFailed();
+        }
+        close();
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        timeout.cancel();
+        if (body != null) {
+            body.fail();
+        }
+        final FrameCompressor current = compressor;
+        if (current != null) {
+            current.close();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        if (tls != null) {
+            tls.close(channel);
+        }
+        ConnectionUtils.close(channel);
+        engine.onConnectionClosed(this);
+    }
+
+    @Override
+    public String toString() {
+        return "SelectorConnection[" + channel + "]";
+    }
+
+}
@@ -0,0 +1,289 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.DataPackageRecycler;
+import de.spiderlinker.network.protocol.Compression;
+import de.spiderlinker.network.protocol.EncodedMessage;
+import de.spiderlinker.network.protocol.FrameCompressor;
+import de.spiderlinker.network.protocol.RouteTable;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Engine which multiplexes all connections over a fixed number of {@link SelectorEventLoop}s.
+ * Accepted connections are distributed round robin over the event loops. The event loops only do
+ * the non-blocking I/O (including the TLS encryption), the registered methods are executed by the threads
+ * of the {@link WorkerPool}.
+ */
+class SelectorConnectionEngine implements ConnectionEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorConnectionEngine.class);
+
+    private final ServerManager server;
+    private final WorkerPool workerPool;
+    private final int ioThreadCount;
+    private final TimerWheel timerWheel;
+    private final ServerMetrics metrics;
+    private final Map<Socket, SelectorConnection> connections = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> listening = new CompletableFuture<>();
+
+    private ServerSocketChannel serverChannel;
+    private SelectorEventLoop[] eventLoops;
+    private Thread serverHandleThread;
+    private volatile boolean isServerAlive;
+    private int nextEventLoop;
+
+    SelectorConnectionEngine(final ServerManager server, final WorkerPool workerPool, final int ioThreadCount) {
+        this.server = server;
+        this.workerPool = workerPool;
+        this.ioThreadCount = ioThreadCount;
+        this.timerWheel = server.getTimerWheel();
+        this.metrics = server.getMetrics();
+    }
+
+    @Override
+    public void start() {
+        this.isServerAlive = true;
+        this.serverHandleThread = new Thread(() -> {
+            try {
+                this.eventLoops = createEventLoops();
+                this.serverChannel = ServerSocketChannel.open();
+                this.serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                this.serverChannel.bind(new InetSocketAddress(server.getPort()), server.getClientLimit());
+                listening.complete(null);
+                waitForIncomingConnections();
+            } catch (final IOException e) {
+                listening.completeExceptionally(e);
+                LOGGER.error("Error while starting server", e);
+            }
+        }, "ServerManager-accept-" + server.getPort());
+        this.serverHandleThread.start();
+    }
+
+    private SelectorEventLoop[] createEventLoops() throws IOException {
+        final SelectorEventLoop[] loops = new SelectorEventLoop[ioThreadCount];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorEventLoop("ServerManager-io-" + server.getPort() + "-" + i,
+                    server.getOutboundLinger(), server.getOutboundBatchSize());
+            loops[i].start();
+        }
+        return loops;
+    }
+
+    private void waitForIncomingConnections() {
+        LOGGER.info("Start listening with {} I/O threads... >> {}", ioThreadCount, serverChannel);
+        while (this.isServerAlive) {
+            try {
+                final SocketChannel channel = serverChannel.accept();
+                registerConnection(channel);
+            } catch (final IOException e) {
+                // If the server was stopped the #accept() method will throw this error
+                // because the channel was closed. It is no error (only if server is alive)
+                if (isServerAlive) {
+                    LOGGER.error("Error while accepting clientSocket", e);
+                }
+            }
+        }
+    }
+
+    private void registerConnection(final SocketChannel channel) throws IOException {
+        final SelectorEventLoop eventLoop = eventLoops[nextEventLoop];
+        nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+        TlsTransport tls = null;
+        if (server.getTls() != null) {
+            tls = new TlsTransport(server.getTls().createServerEngine(), eventLoop.getBufferPool());
+            // the handshake consists of several small records, which must not wait for delayed acknowledgements
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        final SelectorConnection connection = new SelectorConnection(this, eventLoop, channel, server.getCodec(), tls);
+        connections.put(connection.getSocket(), connection);
+        metrics.onConnectionAccepted();
+        eventLoop.register(connection);
+    }
+
+    /**
+     * Hands the received data of the connection over to a worker thread.
+     *
+     * @param raw        received data
+     * @param connection connection which received the data
+     * @param pipelined  whether the connection continues reading while the data is handled
+     * @param routeId    numeric route the data was received with or {@link RouteTable#NO_ROUTE}
+     */
+    void dispatch(final Object raw, final SelectorConnection connection, final boolean pipelined, final int routeId) {
+        workerPool.execute(new DispatchTask() {
+            @Override
+            public void run() {
+                try {
+                    server.processReceivedRawData(raw, connection.getSocket(), routeId);
+                } finally {
+                    connection.onDispatchCompleted(pipelined);
+                }
+            }
+
+            @Override
+            public void reject() {
+                // the handshake is already accepted, so the client expects a DataPackage as answer
+                try {
+                    connection.sendReply(ServerManager.createBusyReply(raw));
+                } catch (final IOException e) {
+                    LOGGER.debug("Failed to send busy reply to {}", connection, e);
+                } finally {
+                    ServerManager.releaseReceived(raw);
+                    connection.onDispatchCompleted(pipelined);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return routes of the server sent to clients which request numeric routes
+     */
+    RouteTable getRouteTable() {
+        return server.getRouteTable();
+    }
+
+    /**
+     * @return recycler of the received packages (null if they are not pooled)
+     */
+    Codec[] getAcceptedCodecs() {
+        return server.getAcceptedCodecs();
+    }
+
+    DataPackageRecycler getRecycler() {
+        return server.getRecycler();
+    }
+
+    /**
+     * @param compression compression requested by a client
+     * @return compressor of the connection, null if the frames are not compressed
+     */
+    FrameCompressor newCompressor(final Compression compression) {
+        if (compression == Compression.NONE || !server.isCompressionEnabled()) {
+            return null;
+        }
+        final FrameCompressor compressor = new FrameCompressor(compression, server.getCompressionThreshold());
+        compressor.setMaxPayloadLength(server.getMaxPayloadLength());
+        return compressor;
+    }
+
+    int getMaxPayloadLength() {
+        return server.getMaxPayloadLength();
+    }
+
+    /**
+     * @return whether the server stopped accepting connections, idle sessions are closed then
+     */
+    boolean isDraining() {
+        return !isServerAlive;
+    }
+
+    ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param task task to run on the thread of the timer wheel when the deadline of the connection expired
+     * @return timeout of a connection without deadline
+     */
+    TimerWheel.Timeout newTimeout(final Runnable task) {
+        return timerWheel.newTimeout(task);
+    }
+
+    /**
+     * @param type deadline of a connection
+     * @return configured timeout in nanoseconds (0 = unlimited)
+     */
+    long getTimeoutNanos(final TimeoutType type) {
+        return server.getTimeoutNanos(type);
+    }
+
+    void onConnectionTimedOut(final SelectorConnection connection, final TimeoutType type) {
+        LOGGER.debug("Closing connection {} after {} timeout", connection, type);
+        server.onConnectionTimedOut(type);
+    }
+
+    void onConnectionClosed(final SelectorConnection connection) {
+        connections.remove(connection.getSocket());
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void sendMessage(final Socket socket, final DataPackage msg) throws IOException {
+        final SelectorConnection connection = connections.get(socket);
+        if (connection == null) {
+            // not a connection of this engine (e.g. a newly created socket to another host)
+            ServerManager.sendMessageBlocking(socket, msg);
+            return;
+        }
+
+        connection.sendReply(msg);
+    }
+
+    @Override
+    public void sendEncoded(final Socket socket, final EncodedMessage msg) throws IOException {
+        final SelectorConnection connection = connections.get(socket);
+        if (connection == null) {
+            ServerManager.sendEncodedBlocking(socket, msg);
+            return;
+        }
+
+        connection.sendEncoded(msg);
+    }
+
+    @Override
+    public CompletableFuture<Void> whenListening() {
+        return listening;
+    }
+
+    @Override
+    public void stopAccepting() {
+        this.isServerAlive = false;
+        ConnectionUtils.close(this.serverChannel);
+        this.serverChannel = null;
+
+        if (this.serverHandleThread != null) {
+            this.serverHandleThread.interrupt();
+        }
+        for (final SelectorConnection connection : connections.values()) {
+            connection.closeIfIdle();
+        }
+    }
+
+    @Override
+    public void awaitCompletedDispatches(final long timeoutNanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        if (this.eventLoops != null) {
+            for (final SelectorEventLoop eventLoop : eventLoops) {
+                eventLoop.awaitTasks(deadline - System.nanoTime());
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopAccepting();
+        if (this.eventLoops != null) {
+            for (final SelectorEventLoop eventLoop : eventLoops) {
+                eventLoop.stop();
+            }
+        }
+    }
+
+}
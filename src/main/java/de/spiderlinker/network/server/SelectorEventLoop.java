@@ -0,0 +1,238 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * I/O thread of the {@link SelectorConnectionEngine}. Every event loop owns a {@link Selector} and
+ * multiplexes all connections registered to it. All state changes of a {@link SelectorConnection}
+ * are done on the thread of its event loop, other threads have to hand over their work via {@link #execute(Runnable)}.
+ */
+class SelectorEventLoop implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorEventLoop.class);
+
+    private static final int READ_BUFFER_SIZE = 1024 * 64;
+    /** Maximum number of pooled TLS buffers, a connection uses up to three of them at the same time */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Deque<SelectorConnection> pendingFlushes = new ArrayDeque<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final DirectBufferPool bufferPool = new DirectBufferPool(MAX_POOLED_BUFFERS);
+    private final Thread thread;
+    private final long lingerNanos;
+    private final int batchSize;
+    private volatile boolean running;
+
+    /**
+     * @param name         name of the I/O thread
+     * @param lingerMillis time queued data of a connection waits for further data to be written with
+     * @param batchSize    number of queued bytes of a connection which are written without waiting
+     * @throws IOException failed to open selector
+     */
+    SelectorEventLoop(final String name, final int lingerMillis, final int batchSize) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.batchSize = batchSize;
+    }
+
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    void stop() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    /**
+     * @return whether the calling thread is the thread of this event loop
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the given task on the thread of this event loop.
+     *
+     * @param task task to run
+     */
+    void execute(final Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Waits until the tasks which were handed over before are run.
+     *
+     * @param timeoutNanos maximum time to wait
+     * @return whether the tasks were run within the timeout
+     * @throws InterruptedException interrupted while waiting
+     */
+    boolean awaitTasks(final long timeoutNanos) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        execute(done::countDown);
+        return done.await(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    long getLingerNanos() {
+        return lingerNanos;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return pool of the buffers for encrypting and decrypting the TLS records of the connections of this event loop
+     */
+    DirectBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Writes the queued data of the connection after its linger time. Without linger time the data is written
+     * after all currently ready connections and tasks were processed, so it is coalesced with their data.
+     * Must only be called on the thread of this event loop.
+     *
+     * @param connection connection with queued data
+     */
+    void scheduleFlush(final SelectorConnection connection) {
+        pendingFlushes.add(connection);
+    }
+
+    /**
+     * Registers the channel of the given connection for read events.
+     *
+     * @param connection connection to register
+     */
+    void register(final SelectorConnection connection) {
+        execute(() -> {
+            try {
+                connection.getChannel().configureBlocking(false);
+                connection.attach(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+            } catch (final IOException e) {
+                LOGGER.error("Error while registering connection {}", connection, e);
+                connection.close();
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            runTasks();
+            flushPending();
+            try {
+                final long timeout = getSelectTimeout();
+                if (timeout < 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(timeout);
+                }
+            } catch (final IOException e) {
+                LOGGER.error("Error while selecting ready connections", e);
+                continue;
+            }
+            processSelectedKeys();
+            flushPending();
+        }
+
+        closeAllConnections();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (final RuntimeException | StackOverflowError e) {
+                // a failed task (e.g. resumed reading of a connection) must not stop the event loop
+                LOGGER.error("Error while running task of the event loop", e);
+            }
+        }
+    }
+
+    /**
+     * @return time to wait for ready connections (0 = unlimited, negative = do not wait)
+     */
+    private long getSelectTimeout() {
+        final SelectorConnection next = pendingFlushes.peek();
+        if (next == null) {
+            // expired deadlines of the connections are handed over as tasks
+            return 0;
+        }
+
+        final long remaining = next.getFlushDeadline() - System.nanoTime();
+        if (remaining <= 0) {
+            return -1;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    private void flushPending() {
+        final long now = System.nanoTime();
+        // all connections have the same linger time, so the deadlines are in order
+        SelectorConnection connection;
+        while ((connection = pendingFlushes.peek()) != null && connection.getFlushDeadline() - now <= 0) {
+            pendingFlushes.poll();
+            connection.onFlushDue();
+        }
+    }
+
+    private void processSelectedKeys() {
+        final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+        while (selectedKeys.hasNext()) {
+            final SelectionKey key = selectedKeys.next();
+            selectedKeys.remove();
+
+            final SelectorConnection connection = (SelectorConnection) key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    connection.onReadable(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+            } catch (final IOException | CancelledKeyException e) {
+                connection.closeAfterError(e);
+            } catch (final RuntimeException | StackOverflowError e) {
+                // e.g. a corrupted message which the codec fails to decode, only its connection is affected
+                LOGGER.warn("Unexpected error on connection {}", connection, e);
+                connection.closeAfterError(e);
+            }
+        }
+    }
+
+    private void closeAllConnections() {
+        // answers which were sent before the stop are written as far as the sockets accept them
+        runTasks();
+        for (final SelectionKey key : selector.keys()) {
+            final SelectorConnection connection = (SelectorConnection) key.attachment();
+            connection.onFlushDue();
+            connection.close();
+        }
+        ConnectionUtils.close(selector);
+    }
+
+}
@@ -1,29 +1,102 @@
 package de.spiderlinker.network.server;
 
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
 import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.DataPackageRecycler;
 import de.spiderlinker.network.data.Executable;
+import de.spiderlinker.network.data.StreamBody;
+import de.spiderlinker.network.metrics.JmxExporter;
+import de.spiderlinker.network.protocol.EncodedMessage;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.protocol.FrameCompressor;
+import de.spiderlinker.network.protocol.RouteTable;
 import de.spiderlinker.network.utils.ConnectionUtils;
+import de.spiderlinker.network.utils.ExecutorFactory;
 import de.spiderlinker.network.utils.SocketUtils;
+import de.spiderlinker.network.utils.TlsConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class ServerManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ServerManager.class);
 
-    private final Map<String, Executable> registeredMethods = new HashMap<>();
+    /** Default number of I/O threads of the {@link EngineType#SELECTOR} engine */
+    public static final int DEFAULT_IO_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /** Default time in milliseconds a keep-alive session may be idle before it is closed */
+    public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 60000;
+    /** Default time in milliseconds a client has to complete its handshake after the connection was accepted */
+    public static final int DEFAULT_HANDSHAKE_TIMEOUT = 10000;
+    /** Default time in milliseconds a client has to complete a started message */
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+    /** Default number of queued bytes of a connection which are written without waiting for further messages */
+    public static final int DEFAULT_OUTBOUND_BATCH_SIZE = 64 * 1024;
+
+    /** Precision of the deadlines of the connections */
+    private static final int TIMER_TICK_MILLIS = 10;
+    private static final int TIMER_BUCKET_COUNT = 1024;
+    private static final int ACCESS_LOG_CAPACITY = 8192;
+
+    /** Request which is handled by the registered method on the current thread, used to correlate its answers */
+    private static final ThreadLocal<HandledRequest> HANDLED_REQUEST = new ThreadLocal<>();
+
+    private final HandlerRegistry handlerRegistry = new HandlerRegistry();
+    /** Routes sent to clients which request numeric routes, only grows so negotiated route IDs stay valid */
+    private RouteTable routeTable = RouteTable.EMPTY;
+    private long routeTableVersion = -1;
+    /** Executables of the route IDs, resolved for the version of the registry */
+    private volatile RouteHandlers routeHandlers = new RouteHandlers(-1, new Executable[0]);
 
-    private ServerSocket serverSocket;
     private int serverListeningPort;
     private int clientLimit;
-    private Thread serverHandleThread;
-    private boolean isServerAlive;
+    private EngineType engineType = EngineType.THREAD_PER_CONNECTION;
+    private int ioThreadCount = DEFAULT_IO_THREAD_COUNT;
+    private int workerCoreThreads = 0;
+    private int workerMaxThreads = Integer.MAX_VALUE;
+    private int workerQueueCapacity = 0;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.REJECT_WITH_BUSY_REPLY;
+    private boolean virtualThreads;
+    private int keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+    private int handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+    private final LongAdder[] timeouts = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private final ServerMetrics metrics = new ServerMetrics(this, handlerRegistry);
+    private boolean jmxEnabled;
+    private ObjectName jmxName;
+    private int accessLogSampleRate = 0;
+    private boolean accessLogPayloads;
+    private volatile AccessLog accessLog;
+    private Codec codec = CodecRegistry.getDefault();
+    private Codec[] acceptedCodecs;
+    private int maxPayloadLength = FrameCodec.DEFAULT_MAX_PAYLOAD_LENGTH;
+    private DataPackageRecycler recycler;
+    private boolean compressionEnabled = true;
+    private int compressionThreshold = FrameCompressor.DEFAULT_THRESHOLD;
+    private int outboundLinger = 0;
+    private TlsConfiguration tls;
+    private int outboundBatchSize = DEFAULT_OUTBOUND_BATCH_SIZE;
+    private final Map<String, OutboundQueue> outboundQueues = new ConcurrentHashMap<>();
+    private volatile ConnectionEngine engine;
+    private volatile WorkerPool workerPool;
+    private volatile TimerWheel timerWheel;
 
     public ServerManager(final int port) {
         this(port, SocketUtils.DEFAULT_LIMIT);
@@ -43,6 +116,428 @@ public abstract class ServerManager {
         this.clientLimit = limit;
     }
 
+    /**
+     * Sets the engine to handle incoming connections with. The engine has to be set before the server is started.
+     *
+     * @param engineType engine to use
+     */
+    public void setEngineType(final EngineType engineType) {
+        requireServerNotStarted();
+        this.engineType = Objects.requireNonNull(engineType);
+    }
+
+    /**
+     * Sets the number of I/O threads that multiplex all connections of the {@link EngineType#SELECTOR} engine.
+     * The number has to be set before the server is started.
+     *
+     * @param ioThreadCount number of I/O threads (at least 1)
+     */
+    public void setIoThreadCount(final int ioThreadCount) {
+        requireServerNotStarted();
+        if (ioThreadCount < 1) {
+            throw new IllegalArgumentException("Invalid I/O thread count! (count>=1)");
+        }
+        this.ioThreadCount = ioThreadCount;
+    }
+
+    /**
+     * Limits the threads which handle the connections of this server. Connections that arrive while all
+     * threads are busy are queued up to the given capacity, further connections are handled according to
+     * the given rejection policy. Without a limit every connection gets its own (reused) thread.
+     * The pool has to be set before the server is started.
+     *
+     * @param coreThreads     number of threads to keep even if they are idle
+     * @param maxThreads      maximum number of threads (at least 1 and not less than coreThreads)
+     * @param queueCapacity   number of connections that may wait for a free thread (0 = no queue)
+     * @param rejectionPolicy handling of connections that neither get a thread nor fit into the queue
+     */
+    public void setWorkerPool(final int coreThreads, final int maxThreads, final int queueCapacity,
+                              final RejectionPolicy rejectionPolicy) {
+        requireServerNotStarted();
+        if (coreThreads < 0 || maxThreads < 1 || maxThreads < coreThreads) {
+            throw new IllegalArgumentException("Invalid thread count! (0<=coreThreads<=maxThreads, maxThreads>=1)");
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid queue capacity! (capacity>=0)");
+        }
+        this.workerCoreThreads = coreThreads;
+        this.workerMaxThreads = maxThreads;
+        this.workerQueueCapacity = queueCapacity;
+        this.rejectionPolicy = Objects.requireNonNull(rejectionPolicy);
+    }
+
+    /**
+     * Runs the connection handlers on virtual threads instead of platform threads. This allows a much higher
+     * number of concurrent (blocking) connections with the default unlimited worker pool. Virtual threads
+     * require Java 21 or newer, on older JVMs platform threads are used.
+     * The mode has to be set before the server is started.
+     *
+     * @param virtualThreads whether virtual threads should be used
+     * @see ExecutorFactory#isVirtualThreadSupported()
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        requireServerNotStarted();
+        if (virtualThreads && !ExecutorFactory.isVirtualThreadSupported()) {
+            LOGGER.warn("Virtual threads are not supported by this JVM, using platform threads instead");
+        }
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @return whether the connection handlers run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads && ExecutorFactory.isVirtualThreadSupported();
+    }
+
+    /**
+     * Sets the time a keep-alive session may be idle (no data received) before it is closed by the server.
+     * The timeout has to be set before the server is started.
+     *
+     * @param keepAliveTimeout idle timeout in milliseconds (0 = unlimited)
+     */
+    public void setKeepAliveTimeout(final int keepAliveTimeout) {
+        requireServerNotStarted();
+        this.keepAliveTimeout = SocketUtils.validateTimeout(keepAliveTimeout);
+    }
+
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Sets the time a client has to complete its handshake (including the TLS handshake) after its connection
+     * was accepted. Connections which do not send a handshake are closed after this time.
+     * The timeout has to be set before the server is started.
+     *
+     * @param handshakeTimeout handshake timeout in milliseconds (0 = unlimited)
+     */
+    public void setHandshakeTimeout(final int handshakeTimeout) {
+        requireServerNotStarted();
+        this.handshakeTimeout = SocketUtils.validateTimeout(handshakeTimeout);
+    }
+
+    public int getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+
+    /**
+     * Sets the time a client has to complete a message after it started to send it.
+     * The time is not extended by received parts of the message, so slowly sending clients are closed as well.
+     * The timeout has to be set before the server is started.
+     *
+     * @param readTimeout read timeout in milliseconds (0 = unlimited)
+     */
+    public void setReadTimeout(final int readTimeout) {
+        requireServerNotStarted();
+        this.readTimeout = SocketUtils.validateTimeout(readTimeout);
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the codec to encode the messages to clients with the framed protocol. Received messages are decoded
+     * with this codec as well, other codecs have to be allowed by {@link #setAcceptedCodecs(Codec...)}.
+     * Clients with the legacy protocol always receive Java serialized messages.
+     * The codec has to be set before the server is started.
+     *
+     * @param codec codec to encode messages with
+     */
+    public void setCodec(final Codec codec) {
+        requireServerNotStarted();
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codecs clients of the framed protocol may encode their messages with. Frames of other codecs
+     * close the connection, so e.g. no client can send Java serialized objects to a server which only accepts
+     * the {@link de.spiderlinker.network.codec.BinaryCodec}. The codecs are used to decode the messages
+     * (instead of the codecs of the {@link CodecRegistry}). Has to be set before the server is started.
+     *
+     * @param codecs accepted codecs, none to accept only the codec of the server (default)
+     */
+    public void setAcceptedCodecs(final Codec... codecs) {
+        requireServerNotStarted();
+        for (final Codec accepted : codecs) {
+            Objects.requireNonNull(accepted);
+        }
+        this.acceptedCodecs = codecs.length == 0 ? null : codecs.clone();
+    }
+
+    /**
+     * @return codecs received frames may be encoded with
+     */
+    public Codec[] getAcceptedCodecs() {
+        return acceptedCodecs == null ? new Codec[]{codec} : acceptedCodecs.clone();
+    }
+
+    /**
+     * Sets the maximum length of a frame received from a client of the framed protocol (before and after
+     * decompression), a larger frame closes the connection. The selector engine limits the objects received
+     * with the legacy protocol as well. Larger data has to be sent as body of a package
+     * (see {@link DataPackage#setBody}), whose chunks are limited as well. Has to be set before the server is started.
+     *
+     * @param maxPayloadLength maximum length in bytes (default {@link FrameCodec#DEFAULT_MAX_PAYLOAD_LENGTH},
+     *                         at most {@link FrameCodec#MAX_PAYLOAD_LENGTH})
+     */
+    public void setMaxPayloadLength(final int maxPayloadLength) {
+        requireServerNotStarted();
+        this.maxPayloadLength = FrameCodec.validateMaxPayloadLength(maxPayloadLength);
+    }
+
+    public int getMaxPayloadLength() {
+        return maxPayloadLength;
+    }
+
+    /**
+     * Acquires the received packages from the recycler instead of allocating a package per message. A received
+     * package is released after its registered method returned, so a method which keeps the package (e.g. hands
+     * it over to another thread) has to {@link DataPackage#retain() retain} it and release it when it is done.
+     * Packages are only pooled if the sender used a codec which supports it (like the
+     * {@link de.spiderlinker.network.codec.BinaryCodec}). The recycler has to be set before the server is started.
+     *
+     * @param recycler recycler of the received packages, null if they are not pooled (default)
+     */
+    public void setRecycler(final DataPackageRecycler recycler) {
+        requireServerNotStarted();
+        this.recycler = recycler;
+    }
+
+    public DataPackageRecycler getRecycler() {
+        return recycler;
+    }
+
+    /**
+     * Sets whether the server accepts the compression requested by a client in its handshake (see
+     * {@link de.spiderlinker.network.client.Client#setCompression}). Clients which do not request a compression
+     * are not affected. Has to be set before the server is started.
+     *
+     * @param compressionEnabled whether requested compressions are accepted (default: true)
+     */
+    public void setCompressionEnabled(final boolean compressionEnabled) {
+        requireServerNotStarted();
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Sets the minimum payload length of the frames the server compresses on connections with a negotiated
+     * compression. Has to be set before the server is started.
+     *
+     * @param compressionThreshold minimum payload length in bytes (default: {@value FrameCompressor#DEFAULT_THRESHOLD})
+     */
+    public void setCompressionThreshold(final int compressionThreshold) {
+        requireServerNotStarted();
+        this.compressionThreshold = FrameCompressor.validateThreshold(compressionThreshold);
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Encrypts all connections of this server (and the connections it opens to send messages) with TLS.
+     * The session cache of the configuration allows reconnecting clients to resume their session.
+     * The {@link EngineType#SELECTOR} engine encrypts its connections with an {@link javax.net.ssl.SSLEngine}
+     * on the I/O threads, so TLS connections do not need a thread of their own either.
+     * The configuration has to be set before the server is started.
+     *
+     * @param tls TLS configuration with the key of the server, null for unencrypted connections
+     */
+    public void setTls(final TlsConfiguration tls) {
+        requireServerNotStarted();
+        this.tls = tls;
+    }
+
+    public TlsConfiguration getTls() {
+        return tls;
+    }
+
+    /**
+     * Sets the time messages wait for further messages to the same destination, so they are written together with
+     * a single write (and a single flush). A burst of messages needs only a few system calls, in exchange every
+     * message may be delayed by up to the linger time. Messages are written without waiting as soon as the queued
+     * messages of a destination reach the batch size.
+     * <ul>
+     * <li>Connections of the {@link EngineType#SELECTOR} engine always coalesce the messages queued while the
+     * I/O thread is busy, the linger time additionally delays the write.</li>
+     * <li>With a linger time, {@link #sendMessage(String, int, DataPackage)} queues the messages per destination
+     * and sends them over a keep-alive session (frames) instead of a new connection per message. The messages are
+     * sent asynchronously and failures are logged.</li>
+     * </ul>
+     * The settings have to be set before the server is started.
+     *
+     * @param lingerMillis time in milliseconds to wait for further messages (0 = no waiting, default)
+     * @param batchSize    number of bytes which are written without waiting for further messages
+     */
+    public void setOutboundCoalescing(final int lingerMillis, final int batchSize) {
+        requireServerNotStarted();
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("Invalid linger time! (linger>=0)");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size! (size>=1)");
+        }
+        this.outboundLinger = lingerMillis;
+        this.outboundBatchSize = batchSize;
+    }
+
+    public int getOutboundLinger() {
+        return outboundLinger;
+    }
+
+    public int getOutboundBatchSize() {
+        return outboundBatchSize;
+    }
+
+    /**
+     * @return current state of the worker pool (empty if the server is not started)
+     */
+    public WorkerPoolStatistics getWorkerPoolStatistics() {
+        final WorkerPool pool = this.workerPool;
+        return pool == null ? new WorkerPoolStatistics(0, 0, 0, 0, 0, 0) : pool.getStatistics();
+    }
+
+    /**
+     * @return number of connections which were closed because their handshake, read or idle timeout expired
+     */
+    public TimeoutStatistics getTimeoutStatistics() {
+        return new TimeoutStatistics(timeouts[TimeoutType.HANDSHAKE.ordinal()].sum(),
+                timeouts[TimeoutType.READ.ordinal()].sum(), timeouts[TimeoutType.IDLE.ordinal()].sum());
+    }
+
+    /**
+     * @return metrics of this server (kept while the server is stopped and restarted)
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exports the {@link ServerMetrics} of this server via JMX while the server is started
+     * (as {@code de.spiderlinker.network:type=Server,name="<port>"}).
+     * The export has to be enabled before the server is started.
+     *
+     * @param jmxEnabled whether the metrics are registered at the platform MBean server
+     */
+    public void setJmxEnabled(final boolean jmxEnabled) {
+        requireServerNotStarted();
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Enables the access log, which writes a structured line per handled message (id, route, whether it was
+     * handled, client and handler latency) with the logger {@value AccessLog#LOGGER_NAME}. The lines are written
+     * asynchronously by a background thread, entries which the log can not keep up with are dropped instead of
+     * delaying the messages. Logging the payload renders every sampled message, so it should only be enabled
+     * for debugging. The access log has to be enabled before the server is started.
+     *
+     * @param sampleRate every n-th message is logged on average (0 = disabled, default; 1 = every message)
+     * @param payloads   whether the payload of the messages is logged
+     */
+    public void setAccessLog(final int sampleRate, final boolean payloads) {
+        requireServerNotStarted();
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Invalid sample rate! (rate>=0)");
+        }
+        this.accessLogSampleRate = sampleRate;
+        this.accessLogPayloads = payloads;
+    }
+
+    public int getAccessLogSampleRate() {
+        return accessLogSampleRate;
+    }
+
+    public boolean isAccessLogPayloads() {
+        return accessLogPayloads;
+    }
+
+    public EngineType getEngineType() {
+        return engineType;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    int getPort() {
+        return serverListeningPort;
+    }
+
+    int getClientLimit() {
+        return clientLimit;
+    }
+
+    /**
+     * @return number of open connections of the engine (0 if the server is not started)
+     */
+    int getConnectionCount() {
+        final ConnectionEngine activeEngine = this.engine;
+        return activeEngine == null ? 0 : activeEngine.getConnectionCount();
+    }
+
+    /**
+     * @return number of messages queued for other servers
+     */
+    int getOutboundQueueDepth() {
+        int depth = 0;
+        for (final OutboundQueue queue : outboundQueues.values()) {
+            depth += queue.getQueuedCount();
+        }
+        return depth;
+    }
+
+    /**
+     * @return wheel which enforces the deadlines of the connections (null if the server is not started)
+     */
+    TimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
+    /**
+     * @param type deadline of a connection
+     * @return configured timeout in nanoseconds (0 = unlimited)
+     */
+    long getTimeoutNanos(final TimeoutType type) {
+        switch (type) {
+            case HANDSHAKE:
+                return TimeUnit.MILLISECONDS.toNanos(handshakeTimeout);
+            case READ:
+                return TimeUnit.MILLISECONDS.toNanos(readTimeout);
+            case IDLE:
+            default:
+                return TimeUnit.MILLISECONDS.toNanos(keepAliveTimeout);
+        }
+    }
+
+    /**
+     * Counts a connection which is closed by the engine because the given deadline expired.
+     *
+     * @param type expired deadline
+     */
+    void onConnectionTimedOut(final TimeoutType type) {
+        timeouts[type.ordinal()].increment();
+    }
+
+    private void requireServerNotStarted() {
+        if (this.engine != null) {
+            throw new IllegalStateException("Server is already started!");
+        }
+    }
+
 
     /**
      * Creates the ServerSocket for this ServerManager.
@@ -52,6 +547,9 @@ public abstract class ServerManager {
      */
     protected ServerSocket createServerSocket() throws IOException {
         LOGGER.info("Creating new server listening socket on {} with limit {}", serverListeningPort, clientLimit);
+        if (tls != null) {
+            return tls.createServerSocket(this.serverListeningPort, this.clientLimit, null);
+        }
         return SocketUtils.createServerSocket(this.serverListeningPort, this.clientLimit);
     }
 
@@ -65,12 +563,36 @@ public abstract class ServerManager {
     /**
      * Register the executable to the id. Every incoming data with
      * the specified id will be handed over to the passed executable.
+     * Methods may be registered while the server is running, an id ending with
+     * {@value HandlerRegistry#WILDCARD} claims all ids starting with the part before it.
      *
-     * @param id   id of data to claim
-     * @param exec executable to be executed when data with specified id will arrive
+     * @param id   id of data to claim (or prefix route, see {@link HandlerRegistry})
+     * @param exec executable to be executed when data with specified id will arrive (null removes the method)
      */
     public void registerMethod(final String id, final Executable exec) {
-        this.registeredMethods.put(id, exec);
+        if (exec == null) {
+            this.handlerRegistry.unregister(id);
+        } else {
+            this.handlerRegistry.register(id, exec);
+        }
+    }
+
+    /**
+     * Removes the executable registered to the id, further data with the id is passed to
+     * {@link #onUnidentifiedMessage(DataPackage, Socket)}.
+     *
+     * @param id id of data (or prefix route) to release
+     * @return executable registered to the id, null if there was none
+     */
+    public Executable unregisterMethod(final String id) {
+        return this.handlerRegistry.unregister(id);
+    }
+
+    /**
+     * @return registry of the methods, e.g. to swap all methods at once while the server is running
+     */
+    public HandlerRegistry getHandlerRegistry() {
+        return handlerRegistry;
     }
 
     /**
@@ -87,20 +609,61 @@ public abstract class ServerManager {
     /**
      * Send given data to specified client. The specified client and data must not be null!
      * The client must be able to perform a handshake and reading the data!
+     * With a linger time (see {@link #setOutboundCoalescing(int, int)}) the data is queued and sent together with
+     * further data to the same client over a keep-alive session.
      *
      * @param host address of client
      * @param port port of client
      * @param msg  message to send
-     * @throws IOException failed to send message
+     * @throws IOException failed to send (or to queue) message
      */
     public void sendMessage(final String host, final int port, final DataPackage msg)
             throws IOException {
-        this.sendMessage(SocketUtils.createSocket(host, port), msg);
+        if (outboundLinger == 0 || msg == null) {
+            this.sendMessage(SocketUtils.createSocket(host, port, SocketUtils.DEFAULT_TIMEOUT, tls), msg);
+            return;
+        }
+
+        final OutboundQueue queue = outboundQueues.computeIfAbsent(host + ":" + port,
+                destination -> new OutboundQueue(host, port, codec, tls, outboundLinger, outboundBatchSize));
+        queue.send(new EncodedMessage(msg));
+    }
+
+    /**
+     * Sends the data to all given clients. The data is encoded only once per protocol of the clients
+     * (see {@link EncodedMessage}) and the encoded bytes are written to every client.
+     * A client which can not be reached does not prevent the data from being sent to the other clients.
+     *
+     * @param sockets clients / recipients
+     * @param msg     message to send
+     * @return number of clients the message was sent to
+     */
+    public int broadcast(final Collection<Socket> sockets, final DataPackage msg) {
+        final EncodedMessage encoded = new EncodedMessage(Objects.requireNonNull(msg));
+        final ConnectionEngine activeEngine = this.engine;
+        int sent = 0;
+        for (final Socket socket : sockets) {
+            try {
+                if (activeEngine != null) {
+                    activeEngine.sendEncoded(socket, encoded);
+                } else {
+                    sendEncodedBlocking(socket, encoded);
+                }
+                sent++;
+            } catch (final IOException e) {
+                LOGGER.debug("Failed to broadcast message to {}", socket, e);
+            }
+        }
+        return sent;
     }
 
     /**
      * Send given data to specified client. The specified client and data must not be null!
      * The client must be able to perform a handshake and reading the data!
+     * If the client is connected with a keep-alive session, the data is written without a handshake.
+     * <br>
+     * Data sent to the client of a request while its registered method is running carries the request ID,
+     * so the client can match the answer (see {@link DataPackage#createReply(String, Object...)}).
      *
      * @param socket address of client / recipient
      * @param msg    message to send
@@ -112,6 +675,31 @@ public abstract class ServerManager {
             return;
         }
 
+        final DataPackage correlatedMsg = correlateWithHandledRequest(socket, msg);
+        final ConnectionEngine activeEngine = this.engine;
+        if (activeEngine != null) {
+            activeEngine.sendMessage(socket, correlatedMsg);
+        } else {
+            sendMessageBlocking(socket, correlatedMsg);
+        }
+    }
+
+    private static DataPackage correlateWithHandledRequest(final Socket socket, final DataPackage msg) {
+        final HandledRequest request = HANDLED_REQUEST.get();
+        if (request == null || request.client != socket || msg.isRequest()) {
+            return msg;
+        }
+        return msg.withRequestId(request.requestId);
+    }
+
+    /**
+     * Performs a handshake with the given client and writes the data to its blocking socket.
+     *
+     * @param socket address of client / recipient
+     * @param msg    message to send
+     * @throws IOException failed to send message
+     */
+    static void sendMessageBlocking(final Socket socket, final DataPackage msg) throws IOException {
         try {
             ConnectionUtils.performHandshake(socket);
             ConnectionUtils.writeObject(socket, msg);
@@ -121,102 +709,197 @@ public abstract class ServerManager {
         }
     }
 
-    private void createServerListeningThread() {
-        this.serverHandleThread = new Thread(() -> {
-            try {
-                this.serverSocket = createServerSocket();
-                waitForIncomingConnections();
-            } catch (final IOException e) {
-                LOGGER.error("Error while starting server", e);
-            }
-        });
+    /**
+     * Performs a handshake with the given client and writes the already encoded data to its blocking socket.
+     *
+     * @param socket address of client / recipient
+     * @param msg    message encoded once for all recipients
+     * @throws IOException failed to send message
+     */
+    static void sendEncodedBlocking(final Socket socket, final EncodedMessage msg) throws IOException {
+        ConnectionUtils.performHandshake(socket);
+        final OutputStream output = socket.getOutputStream();
+        output.write(msg.getLegacy());
+        output.flush();
+    }
+
+    /**
+     * Hands the received data over to the registered method for its id.
+     *
+     * @param rawData data received from the client
+     * @param client  client that sent this data
+     */
+    void processReceivedRawData(Object rawData, Socket client) {
+        processReceivedRawData(rawData, client, RouteTable.NO_ROUTE);
     }
 
-    private void waitForIncomingConnections() {
-        LOGGER.info("Start listening... >> {}", serverSocket);
-        while (ServerManager.this.isServerAlive) {
-            LOGGER.info("Waiting for clientSocket...");
-            handleIncomingClientConnectionInNewThread();
+    /**
+     * @param rawData data received from the client
+     * @param client  client that sent the data
+     * @param routeId numeric route the data was received with or {@link RouteTable#NO_ROUTE}
+     */
+    void processReceivedRawData(Object rawData, Socket client, int routeId) {
+        if (!isDataPackage(rawData)) {
+            return;
         }
+
+        metrics.onMessageReceived();
+        final DataPackage data = (DataPackage) rawData;
+        Executable dataHandle = getExecutableForReceivedData(data, routeId);
+        runExecutableOrDefault(dataHandle, data, client, routeId);
     }
 
-    private void handleIncomingClientConnectionInNewThread() {
-        try {
-            Socket client = this.serverSocket.accept();
-            Runnable clientHandle = createConnectionHandle(client);
-            new Thread(clientHandle).start();
-        } catch (final IOException e) {
-            // If the server was stopped the #accept() method will throw this error
-            // because the socket was closed. It is no error (only if server is alive)
-            if (isServerAlive) {
-                LOGGER.error("Error while accepting clientSocket", e);
-            }
+    private boolean isDataPackage(Object rawData) {
+        return rawData instanceof DataPackage;
+    }
+
+    /**
+     * @param data    received data
+     * @param routeId numeric route the data was received with or {@link RouteTable#NO_ROUTE}
+     * @return executable registered for the data, the route ID is resolved by array index
+     */
+    Executable getExecutableForReceivedData(DataPackage data, int routeId) {
+        if (routeId < 0) {
+            return handlerRegistry.lookup(data.getID());
+        }
+
+        RouteHandlers handlers = routeHandlers;
+        if (handlers.version != handlerRegistry.getVersion() || routeId >= handlers.executables.length) {
+            handlers = resolveRouteHandlers();
         }
+        return routeId < handlers.executables.length ? handlers.executables[routeId] : handlerRegistry.lookup(data.getID());
     }
 
-    private Runnable createConnectionHandle(final Socket socket) {
-        return () -> {
-            try {
-                if (!ConnectionUtils.handleHandshake(socket)) {
-                    return;
-                }
+    private synchronized RouteHandlers resolveRouteHandlers() {
+        // the version is read first, a concurrent change only causes another resolve
+        final long version = handlerRegistry.getVersion();
+        final List<String> names = getRouteTable().getNames();
+        final Executable[] executables = new Executable[names.size()];
+        for (int i = 0; i < executables.length; i++) {
+            executables[i] = handlerRegistry.lookup(names.get(i));
+        }
+        routeHandlers = new RouteHandlers(version, executables);
+        return routeHandlers;
+    }
 
-                LOGGER.info("Handle connection: {}", socket);
-                final Object raw = ConnectionUtils.readObject(socket);
+    /**
+     * Returns the routes sent to clients which request numeric routes: all exact ids registered so far.
+     * Ids of prefix routes are sent with their string, ids which are not registered anymore keep their route ID.
+     *
+     * @return current route table of the server
+     */
+    synchronized RouteTable getRouteTable() {
+        final long version = handlerRegistry.getVersion();
+        if (version != routeTableVersion) {
+            final List<String> exactRoutes = new ArrayList<>();
+            for (final String route : handlerRegistry.getRoutes().keySet()) {
+                // the route table has no entry for data without id
+                if (route != null && !HandlerRegistry.isPrefixRoute(route)) {
+                    exactRoutes.add(route);
+                }
+            }
+            routeTable = routeTable.extend(exactRoutes);
+            routeTableVersion = version;
+        }
+        return routeTable;
+    }
 
-                LOGGER.info("Incoming data (raw): {}", raw);
-                processReceivedRawData(raw, socket);
+    private void runExecutableOrDefault(Executable executable, DataPackage data, Socket client, int routeId) {
+        if (data.isRequest()) {
+            HANDLED_REQUEST.set(new HandledRequest(data.getRequestId(), client));
+        }
 
-            } catch (IOException | ClassNotFoundException e) {
-                LOGGER.error("Error while handling clientSocket connection", e);
+        final long start = System.nanoTime();
+        try {
+            if (executable == null) {
+                this.onUnidentifiedMessage(data, client);
+            } else {
+                executable.run(data, client);
+            }
+        } finally {
+            HANDLED_REQUEST.remove();
+            final long latency = System.nanoTime() - start;
+            metrics.onMessageHandled(executable, data.getID(), latency);
+            final AccessLog log = accessLog;
+            if (log != null && log.isSampled()) {
+                log.log(data, routeId, executable != null, client.getRemoteSocketAddress(), latency);
             }
-        };
+            releaseReceived(data);
+        }
     }
 
-    private void processReceivedRawData(Object rawData, Socket client) {
-        if (!isDataPackage(rawData)) {
+    /**
+     * Releases received data after it was handled or rejected. The remaining chunks of its body are discarded,
+     * so the connection continues with the next message.
+     *
+     * @param rawData data received from the client
+     */
+    static void releaseReceived(final Object rawData) {
+        if (!(rawData instanceof DataPackage)) {
             return;
         }
 
         final DataPackage data = (DataPackage) rawData;
-        Executable dataHandle = getExecutableForReceivedData(data);
-
-        LOGGER.info("Method for incoming data with id '{}' found: {} (from address: {})",
-                data.getID(), dataHandle != null /* TODO remove this unnecessary output*/, client);
-
-        runExecutableOrDefault(dataHandle, data, client);
+        final StreamBody body = data.getBody();
+        if (body != null) {
+            try {
+                body.close();
+            } catch (final IOException e) {
+                LOGGER.debug("Failed to discard the body of {}", data.getID(), e);
+            }
+        }
+        data.release();
     }
 
-    private boolean isDataPackage(Object rawData) {
-        return rawData instanceof DataPackage;
+    /**
+     * @param rawData data received from the client
+     * @return whether the data is a request of a pipelining client which may be handled concurrently
+     * to other requests of the same connection
+     */
+    static boolean isPipelinedRequest(final Object rawData) {
+        // the chunks of a body follow the package, so it is handled before the next message is read
+        return isRequest(rawData) && ((DataPackage) rawData).getBody() == null;
     }
 
-    private Executable getExecutableForReceivedData(DataPackage data) {
-        return registeredMethods.get(data.getID());
+    private static boolean isRequest(final Object rawData) {
+        return rawData instanceof DataPackage && ((DataPackage) rawData).isRequest();
     }
 
-    private void runExecutableOrDefault(Executable executable, DataPackage data, Socket client) {
-        if (executable == null) {
-            this.onUnidentifiedMessage(data, client);
-        } else {
-            executable.run(data, client);
-        }
+    /**
+     * @param rawData data received from the client that could not be handled
+     * @return busy answer to the data (with its request ID if it is a request)
+     */
+    static DataPackage createBusyReply(final Object rawData) {
+        final DataPackage busy = new DataPackage(ConnectionUtils.HANDSHAKE_BUSY);
+        return isRequest(rawData) ? busy.withRequestId(((DataPackage) rawData).getRequestId()) : busy;
     }
 
     /**
-     * Starts the server if it is not already started
+     * Starts the server if it is not already started. The server socket is bound in the background,
+     * use {@link #awaitStarted()} to wait until clients can connect.
      *
      * @return if the server was successfully started
      */
     public boolean start() {
         boolean started = false;
 
-        LOGGER.info("Starting server (existing socket: {}) at port {}", serverSocket, serverListeningPort);
+        LOGGER.info("Starting server (engine: {}) at port {}", engineType, serverListeningPort);
 
-        if (this.serverSocket == null && !this.isServerAlive) {
-            this.createServerListeningThread();
-            this.isServerAlive = true;
-            this.serverHandleThread.start();
+        if (this.engine == null) {
+            this.timerWheel = new TimerWheel("ServerManager-timer-" + serverListeningPort, TIMER_TICK_MILLIS,
+                    TIMER_BUCKET_COUNT);
+            this.timerWheel.start();
+            if (accessLogSampleRate > 0) {
+                this.accessLog = new AccessLog("ServerManager-access-log-" + serverListeningPort, accessLogSampleRate,
+                        accessLogPayloads, ACCESS_LOG_CAPACITY);
+                this.accessLog.start();
+            }
+            this.workerPool = createWorkerPool();
+            this.engine = createEngine(this.workerPool);
+            this.engine.start();
+            if (jmxEnabled) {
+                this.jmxName = JmxExporter.register(metrics, "Server", String.valueOf(serverListeningPort));
+            }
             started = true;
         }
         /* otherwise the server is already started */
@@ -225,18 +908,188 @@ public abstract class ServerManager {
     }
 
     /**
-     * Stop the server (stop listening thread and close server socket)
+     * Waits until the server socket is bound and the server accepts connections.
+     *
+     * @throws IOException          the server socket could not be bound (e.g. the port is already in use)
+     * @throws InterruptedException interrupted while waiting
+     */
+    public void awaitStarted() throws IOException, InterruptedException {
+        try {
+            requireStartedEngine().whenListening().get();
+        } catch (final ExecutionException e) {
+            throw new IOException("Failed to start server at port " + serverListeningPort, e.getCause());
+        }
+    }
+
+    /**
+     * Waits until the server socket is bound and the server accepts connections.
+     *
+     * @param timeout maximum time to wait
+     * @return whether the server accepts connections, false if the timeout elapsed
+     * @throws IOException          the server socket could not be bound (e.g. the port is already in use)
+     * @throws InterruptedException interrupted while waiting
+     */
+    public boolean awaitStarted(final Duration timeout) throws IOException, InterruptedException {
+        try {
+            requireStartedEngine().whenListening().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (final ExecutionException e) {
+            throw new IOException("Failed to start server at port " + serverListeningPort, e.getCause());
+        } catch (final TimeoutException e) {
+            return false;
+        }
+    }
+
+    private ConnectionEngine requireStartedEngine() {
+        final ConnectionEngine started = this.engine;
+        if (started == null) {
+            throw new IllegalStateException("Server is not started!");
+        }
+        return started;
+    }
+
+    /**
+     * Stops the server without waiting for its handlers: no further connections are accepted and the connections
+     * are closed, the running and queued handlers are completed in the background (they are not interrupted).
+     * See {@link #stop(Duration)} to wait for the handlers and {@link #stopNow()} to interrupt them.
      */
     public void stop() {
-        LOGGER.info("Stopping server {}", serverSocket);
+        LOGGER.info("Stopping server at port {}", serverListeningPort);
+        stop(0, false);
+    }
+
+    /**
+     * Stops the server immediately, running handlers are interrupted and queued handlers are rejected
+     * (see {@link #stop(Duration)} without drain timeout).
+     *
+     * @return statistics of the abandoned handlers and closed connections
+     */
+    public ShutdownStatistics stopNow() {
+        return stop(Duration.ZERO);
+    }
+
+    /**
+     * Stops the server gracefully:
+     * <ol>
+     * <li>the server socket is closed, so no further connections are accepted</li>
+     * <li>keep-alive sessions which wait for their next request are closed</li>
+     * <li>the handlers which are running or queued (and the answers they send) are completed, further requests
+     * of open sessions are answered with {@link ConnectionUtils#HANDSHAKE_BUSY}</li>
+     * <li>handlers which did not complete within the drain timeout are interrupted and all remaining
+     * connections are closed</li>
+     * </ol>
+     *
+     * @param drainTimeout maximum time to wait for running handlers
+     * @return statistics of the drained handlers and closed connections
+     */
+    public ShutdownStatistics stop(final Duration drainTimeout) {
+        LOGGER.info("Stopping server at port {} (drain timeout: {} ms)", serverListeningPort, drainTimeout.toMillis());
+        return stop(drainTimeout.toNanos(), true);
+    }
+
+    /**
+     * @param drainTimeoutNanos maximum time to wait for running handlers
+     * @param interrupt         whether the handlers which did not complete within the drain timeout are interrupted
+     */
+    private ShutdownStatistics stop(final long drainTimeoutNanos, final boolean interrupt) {
+
+        ShutdownStatistics statistics = new ShutdownStatistics(Duration.ZERO, 0, 0, 0);
+        final ConnectionEngine stoppedEngine = this.engine;
+        final WorkerPool stoppedPool = this.workerPool;
+        if (stoppedEngine != null) {
+            final long start = System.nanoTime();
+            stoppedEngine.stopAccepting();
+
+            final long completedBefore = stoppedPool.getStatistics().getCompletedTasks();
+            boolean drained;
+            try {
+                drained = stoppedPool.drain(drainTimeoutNanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drained = false;
+            }
+            final Duration drainTime = Duration.ofNanos(System.nanoTime() - start);
+            // without interrupt the pool is shut down by the drain, its handlers are completed in the background
+            final int abandoned = drained || !interrupt ? 0 : stoppedPool.shutdownNow();
+            if (drained) {
+                awaitCompletedDispatches(stoppedEngine);
+            }
+            final long completed = stoppedPool.getStatistics().getCompletedTasks() - completedBefore;
 
-        if (this.serverHandleThread != null) {
-            this.serverHandleThread.interrupt();
+            final int closedConnections = stoppedEngine.getConnectionCount();
+            stoppedEngine.stop();
+            statistics = new ShutdownStatistics(drainTime, completed, abandoned, closedConnections);
+            LOGGER.info("Server at port {} stopped: {}", serverListeningPort, statistics);
         }
+        this.engine = null;
+        this.workerPool = null;
+        if (this.timerWheel != null) {
+            this.timerWheel.stop();
+            this.timerWheel = null;
+        }
+        if (this.accessLog != null) {
+            this.accessLog.stop();
+            this.accessLog = null;
+        }
+        JmxExporter.unregister(this.jmxName);
+        this.jmxName = null;
+
+        for (final OutboundQueue queue : outboundQueues.values()) {
+            queue.close();
+        }
+        outboundQueues.clear();
+        return statistics;
+    }
 
-        this.isServerAlive = false;
-        ConnectionUtils.close(this.serverSocket);
-        this.serverSocket = null;
+    private static void awaitCompletedDispatches(final ConnectionEngine stoppedEngine) {
+        try {
+            stoppedEngine.awaitCompletedDispatches(TimeUnit.SECONDS.toNanos(1));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private WorkerPool createWorkerPool() {
+        return new WorkerPool(workerCoreThreads, workerMaxThreads, workerQueueCapacity, rejectionPolicy,
+                ExecutorFactory.newThreadFactory("ServerManager-worker-" + serverListeningPort, virtualThreads));
+    }
+
+    private ConnectionEngine createEngine(final WorkerPool pool) {
+        switch (engineType) {
+            case SELECTOR:
+                return new SelectorConnectionEngine(this, pool, ioThreadCount);
+            case THREAD_PER_CONNECTION:
+            default:
+                return new ThreadPerConnectionEngine(this, pool);
+        }
+    }
+
+    /**
+     * Client and ID of the request that is handled by a registered method.
+     */
+    private static final class HandledRequest {
+
+        private final long requestId;
+        private final Socket client;
+
+        HandledRequest(final long requestId, final Socket client) {
+            this.requestId = requestId;
+            this.client = client;
+        }
+    }
+
+    /**
+     * Executables of the route IDs, resolved for a version of the {@link HandlerRegistry}.
+     */
+    private static final class RouteHandlers {
+
+        private final long version;
+        private final Executable[] executables;
+
+        RouteHandlers(final long version, final Executable[] executables) {
+            this.version = version;
+            this.executables = executables;
+        }
     }
 
 }
@@ -0,0 +1,239 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.Executable;
+import de.spiderlinker.network.metrics.HistogramSnapshot;
+import de.spiderlinker.network.metrics.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics of a {@link ServerManager}: connections, handshakes, messages, transferred bytes, queue depths and the
+ * latency of every registered handler. The values are read on demand, either as consistent
+ * {@link ServerMetricsSnapshot} or attribute by attribute via JMX.
+ * <br>
+ * The engines record on the hot path of every connection and message, so recording never allocates or locks:
+ * counters are {@link LongAdder}s (striped over cells under contention) and the latencies are recorded by the
+ * {@link LatencyHistogram} of the route which matched the handled message. The histogram of a route is created
+ * when a handler is registered for the route and dropped when the route is removed or gets another handler.
+ * The metrics are kept while the server is stopped and restarted.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private final ServerManager server;
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder handshakeFailures = new LongAdder();
+    private final LongAdder receivedMessages = new LongAdder();
+    private final LongAdder unhandledMessages = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    /** Key of the null route, which handles the data without id */
+    private static final Object NULL_ROUTE = new Object();
+
+    private final HandlerRegistry handlerRegistry;
+    /** Latency of every registered route, the same handler may be registered for multiple routes */
+    private final Map<Object, HandlerMetrics> routes = new ConcurrentHashMap<>();
+
+    /**
+     * @param server          server whose metrics are recorded
+     * @param handlerRegistry registry of the server, the metrics of its routes follow its changes
+     */
+    ServerMetrics(final ServerManager server, final HandlerRegistry handlerRegistry) {
+        this.server = server;
+        this.handlerRegistry = handlerRegistry;
+        handlerRegistry.addChangeListener(this::onRoutesChanged);
+    }
+
+    /*
+     * - - - - - - - - - - Recording - - - - - - - - - -
+     */
+
+    void onConnectionAccepted() {
+        acceptedConnections.increment();
+    }
+
+    /**
+     * Counts a connection whose handshake was denied or failed (e.g. an invalid handshake or TLS handshake).
+     */
+    void onHandshakeFailed() {
+        handshakeFailures.increment();
+    }
+
+    void onMessageReceived() {
+        receivedMessages.increment();
+    }
+
+    /**
+     * Drops the metrics of removed routes and of routes with another handler, creates the metrics of new handlers.
+     *
+     * @param previous routes before the change
+     * @param current  routes after the change
+     */
+    private void onRoutesChanged(final Map<String, Executable> previous, final Map<String, Executable> current) {
+        previous.forEach((route, executable) -> {
+            if (current.get(route) != executable) {
+                routes.remove(key(route));
+            }
+        });
+        current.forEach((route, executable) -> {
+            if (previous.get(route) != executable) {
+                // the null route is reported by name, the latencies are exported by JMX with the route as key
+                routes.put(key(route), new HandlerMetrics(String.valueOf(route)));
+            }
+        });
+    }
+
+    /**
+     * @param executable   handler which handled the message, null if no handler was registered for the message
+     * @param id           id of the handled message
+     * @param latencyNanos time the handler took
+     */
+    void onMessageHandled(final Executable executable, final String id, final long latencyNanos) {
+        if (executable == null) {
+            unhandledMessages.increment();
+            return;
+        }
+
+        final HandlerMetrics metrics = routes.get(key(handlerRegistry.lookupRoute(id)));
+        // the route was removed while the message was handled
+        if (metrics != null) {
+            metrics.latency.record(latencyNanos);
+        }
+    }
+
+    private static Object key(final String route) {
+        return route == null ? NULL_ROUTE : route;
+    }
+
+    LongAdder getBytesInCounter() {
+        return bytesIn;
+    }
+
+    LongAdder getBytesOutCounter() {
+        return bytesOut;
+    }
+
+    /*
+     * - - - - - - - - - - Reading - - - - - - - - - -
+     */
+
+    /**
+     * @return current values of all metrics
+     */
+    public ServerMetricsSnapshot getSnapshot() {
+        return new ServerMetricsSnapshot(getAcceptedConnections(), getActiveConnections(), getHandshakeFailures(),
+                getReceivedMessages(), getUnhandledMessages(), getBytesIn(), getBytesOut(), getWorkerQueueDepth(),
+                getOutboundQueueDepth(), server.getTimeoutStatistics(), getHandlerLatencies());
+    }
+
+    /**
+     * @return latency of every registered route (the count of a histogram is the number of handled messages)
+     */
+    public Map<String, HistogramSnapshot> getHandlerLatencies() {
+        final Map<String, HistogramSnapshot> latencies = new LinkedHashMap<>();
+        for (final String route : handlerRegistry.getRoutes().keySet()) {
+            final HandlerMetrics metrics = routes.get(key(route));
+            if (metrics != null) {
+                latencies.put(metrics.route, metrics.latency.getSnapshot());
+            }
+        }
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return server.getConnectionCount();
+    }
+
+    @Override
+    public long getHandshakeFailures() {
+        return handshakeFailures.sum();
+    }
+
+    @Override
+    public long getReceivedMessages() {
+        return receivedMessages.sum();
+    }
+
+    @Override
+    public long getUnhandledMessages() {
+        return unhandledMessages.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public int getWorkerQueueDepth() {
+        return server.getWorkerPoolStatistics().getQueueDepth();
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        return server.getOutboundQueueDepth();
+    }
+
+    @Override
+    public long getHandshakeTimeouts() {
+        return server.getTimeoutStatistics().getHandshakeTimeouts();
+    }
+
+    @Override
+    public long getReadTimeouts() {
+        return server.getTimeoutStatistics().getReadTimeouts();
+    }
+
+    @Override
+    public long getIdleTimeouts() {
+        return server.getTimeoutStatistics().getIdleTimeouts();
+    }
+
+    @Override
+    public Map<String, Long> getMessagesPerRoute() {
+        return mapHandlerLatencies(HistogramSnapshot::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getHandlerLatencyMedian() {
+        return mapHandlerLatencies(HistogramSnapshot::getMedian);
+    }
+
+    @Override
+    public Map<String, Long> getHandlerLatency99thPercentile() {
+        return mapHandlerLatencies(HistogramSnapshot::get99thPercentile);
+    }
+
+    private Map<String, Long> mapHandlerLatencies(final ToLongFunction<HistogramSnapshot> value) {
+        final Map<String, Long> values = new LinkedHashMap<>();
+        getHandlerLatencies().forEach((route, latency) -> values.put(route, value.applyAsLong(latency)));
+        return values;
+    }
+
+    private static final class HandlerMetrics {
+
+        private final String route;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private HandlerMetrics(final String route) {
+            this.route = route;
+        }
+
+    }
+
+}
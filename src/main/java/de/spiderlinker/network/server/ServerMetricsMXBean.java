@@ -0,0 +1,50 @@
+package de.spiderlinker.network.server;
+
+import java.util.Map;
+
+/**
+ * Attributes of the {@link ServerMetrics} exported via JMX (see {@link ServerManager#setJmxEnabled(boolean)}).
+ * Latencies are in microseconds.
+ */
+public interface ServerMetricsMXBean {
+
+    long getAcceptedConnections();
+
+    int getActiveConnections();
+
+    long getHandshakeFailures();
+
+    long getReceivedMessages();
+
+    long getUnhandledMessages();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    int getWorkerQueueDepth();
+
+    int getOutboundQueueDepth();
+
+    long getHandshakeTimeouts();
+
+    long getReadTimeouts();
+
+    long getIdleTimeouts();
+
+    /**
+     * @return number of handled messages per route (the ID the handler is registered with)
+     */
+    Map<String, Long> getMessagesPerRoute();
+
+    /**
+     * @return median latency of the handler of every route
+     */
+    Map<String, Long> getHandlerLatencyMedian();
+
+    /**
+     * @return 99th percentile of the latency of the handler of every route
+     */
+    Map<String, Long> getHandlerLatency99thPercentile();
+
+}
@@ -0,0 +1,123 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.metrics.HistogramSnapshot;
+
+import java.util.Map;
+
+/**
+ * Values of the {@link ServerMetrics} at a point in time.
+ */
+public class ServerMetricsSnapshot {
+
+    private final long acceptedConnections;
+    private final int activeConnections;
+    private final long handshakeFailures;
+    private final long receivedMessages;
+    private final long unhandledMessages;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final int workerQueueDepth;
+    private final int outboundQueueDepth;
+    private final TimeoutStatistics timeouts;
+    private final Map<String, HistogramSnapshot> handlerLatencies;
+
+    ServerMetricsSnapshot(final long acceptedConnections, final int activeConnections, final long handshakeFailures,
+                          final long receivedMessages, final long unhandledMessages, final long bytesIn,
+                          final long bytesOut, final int workerQueueDepth, final int outboundQueueDepth,
+                          final TimeoutStatistics timeouts, final Map<String, HistogramSnapshot> handlerLatencies) {
+        this.acceptedConnections = acceptedConnections;
+        this.activeConnections = activeConnections;
+        this.handshakeFailures = handshakeFailures;
+        this.receivedMessages = receivedMessages;
+        this.unhandledMessages = unhandledMessages;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.workerQueueDepth = workerQueueDepth;
+        this.outboundQueueDepth = outboundQueueDepth;
+        this.timeouts = timeouts;
+        this.handlerLatencies = handlerLatencies;
+    }
+
+    /**
+     * @return number of connections accepted since the creation of the server
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections;
+    }
+
+    /**
+     * @return number of currently open connections
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * @return number of connections whose handshake was denied or failed (including TLS handshakes)
+     */
+    public long getHandshakeFailures() {
+        return handshakeFailures;
+    }
+
+    /**
+     * @return number of received DataPackages
+     */
+    public long getReceivedMessages() {
+        return receivedMessages;
+    }
+
+    /**
+     * @return number of received DataPackages without registered handler
+     */
+    public long getUnhandledMessages() {
+        return unhandledMessages;
+    }
+
+    /**
+     * @return number of bytes received from the clients (decrypted bytes for TLS connections)
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return number of bytes sent to the clients (before the encryption for TLS connections)
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return number of connections and requests waiting for a worker thread
+     */
+    public int getWorkerQueueDepth() {
+        return workerQueueDepth;
+    }
+
+    /**
+     * @return number of messages waiting to be written to other servers (see {@link ServerManager#setOutboundCoalescing(int, int)})
+     */
+    public int getOutboundQueueDepth() {
+        return outboundQueueDepth;
+    }
+
+    public TimeoutStatistics getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return latency of the handler of every route, the count of a histogram is the number of handled messages
+     */
+    public Map<String, HistogramSnapshot> getHandlerLatencies() {
+        return handlerLatencies;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ServerMetrics[accepted=%d, active=%d, handshakeFailures=%d, received=%d, unhandled=%d, "
+                        + "bytesIn=%d, bytesOut=%d, workerQueue=%d, outboundQueue=%d, %s, handlers=%s]",
+                acceptedConnections, activeConnections, handshakeFailures, receivedMessages, unhandledMessages,
+                bytesIn, bytesOut, workerQueueDepth, outboundQueueDepth, timeouts, handlerLatencies);
+    }
+
+}
@@ -0,0 +1,64 @@
+package de.spiderlinker.network.server;
+
+import java.time.Duration;
+
+/**
+ * Result of {@link ServerManager#stop(Duration)}.
+ */
+public class ShutdownStatistics {
+
+    private final Duration drainTime;
+    private final long completedTasks;
+    private final int abandonedTasks;
+    private final int closedConnections;
+
+    ShutdownStatistics(final Duration drainTime, final long completedTasks, final int abandonedTasks,
+                       final int closedConnections) {
+        this.drainTime = drainTime;
+        this.completedTasks = completedTasks;
+        this.abandonedTasks = abandonedTasks;
+        this.closedConnections = closedConnections;
+    }
+
+    /**
+     * @return time from the stop of accepting connections until all handlers finished or the drain timeout elapsed
+     */
+    public Duration getDrainTime() {
+        return drainTime;
+    }
+
+    /**
+     * @return number of handlers (and queued connections) which were completed while draining
+     */
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /**
+     * @return number of handlers which were still running or queued after the drain timeout, they were interrupted
+     */
+    public int getAbandonedTasks() {
+        return abandonedTasks;
+    }
+
+    /**
+     * @return number of connections which were still open after the drain timeout and were closed forcibly
+     */
+    public int getClosedConnections() {
+        return closedConnections;
+    }
+
+    /**
+     * @return whether all handlers finished within the drain timeout
+     */
+    public boolean isDrained() {
+        return abandonedTasks == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Shutdown[drainTime=%dms, completed=%d, abandoned=%d, closedConnections=%d]",
+                drainTime.toMillis(), completedTasks, abandonedTasks, closedConnections);
+    }
+
+}
@@ -0,0 +1,502 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.metrics.MeteredInputStream;
+import de.spiderlinker.network.metrics.MeteredOutputStream;
+import de.spiderlinker.network.protocol.EncodedMessage;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSocket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Engine which accepts connections with a blocking {@link ServerSocket} and
+ * handles every accepted connection by a thread of the {@link WorkerPool}.
+ * A keep-alive session occupies its thread until the client closes the connection or the session times out.
+ * Pipelined requests of a session are handed over to further threads of the pool, so they are handled
+ * concurrently and their answers may be sent in any order.
+ * The {@link FrameCodec} of a connection is kept while the connection is handled, so the answers
+ * are written with the protocol of the client (frames or the legacy text handshake).
+ * <br>
+ * The blocking reads of a connection are bounded by a {@link ConnectionDeadline} of the {@link TimerWheel} of the
+ * server, which closes the socket of the connection when the handshake, read or idle timeout expired.
+ */
+class ThreadPerConnectionEngine implements ConnectionEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadPerConnectionEngine.class);
+
+    private final ServerManager server;
+    private final WorkerPool workerPool;
+    private final TimerWheel timerWheel;
+    private final ServerMetrics metrics;
+    private final Map<Socket, FrameCodec> codecs = new ConcurrentHashMap<>();
+    private final Set<Socket> sessions = ConcurrentHashMap.newKeySet();
+    /** Accepted connections which are handled or wait for a worker thread */
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    /** Connections which are blocked waiting for the next request of their session (or for their close) */
+    private final Map<Socket, AtomicInteger> awaitingData = new ConcurrentHashMap<>();
+    /** Sessions whose reading thread received the first byte of the next request and reads the rest of it */
+    private final Set<Socket> receiving = ConcurrentHashMap.newKeySet();
+    private final CompletableFuture<Void> listening = new CompletableFuture<>();
+
+    private ServerSocket serverSocket;
+    private Thread serverHandleThread;
+    private volatile boolean isServerAlive;
+
+    ThreadPerConnectionEngine(final ServerManager server, final WorkerPool workerPool) {
+        this.server = server;
+        this.workerPool = workerPool;
+        this.timerWheel = server.getTimerWheel();
+        this.metrics = server.getMetrics();
+    }
+
+    @Override
+    public void start() {
+        this.createServerListeningThread();
+        this.isServerAlive = true;
+        this.serverHandleThread.start();
+    }
+
+    private void createServerListeningThread() {
+        this.serverHandleThread = new Thread(() -> {
+            try {
+                this.serverSocket = server.createServerSocket();
+                listening.complete(null);
+                waitForIncomingConnections();
+            } catch (final IOException e) {
+                listening.completeExceptionally(e);
+                LOGGER.error("Error while starting server", e);
+            }
+        }, "ServerManager-accept-" + server.getPort());
+    }
+
+    private void waitForIncomingConnections() {
+        LOGGER.info("Start listening... >> {}", serverSocket);
+        while (this.isServerAlive) {
+            LOGGER.trace("Waiting for clientSocket...");
+            handleIncomingClientConnectionInWorkerThread();
+        }
+    }
+
+    private void handleIncomingClientConnectionInWorkerThread() {
+        try {
+            Socket client = this.serverSocket.accept();
+            if (client instanceof SSLSocket) {
+                // the handshake consists of several small records, which must not wait for delayed acknowledgements
+                client.setTcpNoDelay(true);
+            }
+            connections.add(client);
+            metrics.onConnectionAccepted();
+            workerPool.execute(createConnectionHandle(client));
+        } catch (final IOException e) {
+            // If the server was stopped the #accept() method will throw this error
+            // because the socket was closed. It is no error (only if server is alive)
+            if (isServerAlive) {
+                LOGGER.error("Error while accepting clientSocket", e);
+            }
+        }
+    }
+
+    private DispatchTask createConnectionHandle(final Socket socket) {
+        return new DispatchTask() {
+            @Override
+            public void run() {
+                final ConnectionDeadline deadline = new ConnectionDeadline(socket);
+                try {
+                    deadline.expireAfter(TimeoutType.HANDSHAKE);
+                    final FrameCodec codec = FrameCodec.detect(
+                            new MeteredInputStream(socket.getInputStream(), metrics.getBytesInCounter()),
+                            new MeteredOutputStream(socket.getOutputStream(), metrics.getBytesOutCounter()),
+                            server.getCodec());
+                    codec.setRecycler(server.getRecycler());
+                    codec.setAcceptedCodecs(server.getAcceptedCodecs());
+                    codec.setMaxPayloadLength(server.getMaxPayloadLength());
+                    codec.setCompressionAccepted(server.isCompressionEnabled());
+                    codec.setCompressionThreshold(server.getCompressionThreshold());
+                    final String request = codec.acceptHandshake(server::getRouteTable);
+                    if (request == null) {
+                        metrics.onHandshakeFailed();
+                        ConnectionUtils.close(socket);
+                        return;
+                    }
+
+                    LOGGER.debug("Handle connection: {}", socket);
+                    codecs.put(socket, codec);
+                    if (ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.equals(request)) {
+                        handleSession(socket, codec, deadline);
+                    } else {
+                        handleSingleMessage(socket, codec, deadline);
+                    }
+
+                } catch (final EOFException e) {
+                    // e.g. a client which only checks whether the server is reachable
+                    LOGGER.debug("Connection closed by client {}", socket, e);
+                    ConnectionUtils.close(socket);
+                } catch (final SSLHandshakeException e) {
+                    if (deadline.isExpired()) {
+                        LOGGER.debug("TLS handshake with {} timed out", socket);
+                    } else if (e.getCause() instanceof EOFException) {
+                        LOGGER.debug("Connection closed by client {} during TLS handshake", socket, e);
+                    } else {
+                        metrics.onHandshakeFailed();
+                        LOGGER.warn("TLS handshake with {} failed: {}", socket, e.getMessage());
+                    }
+                    ConnectionUtils.close(socket);
+                } catch (IOException | ClassNotFoundException e) {
+                    if (deadline.isExpired()) {
+                        LOGGER.debug("Connection {} timed out", socket);
+                        ConnectionUtils.close(socket);
+                    } else if (isServerAlive) {
+                        LOGGER.error("Error while handling clientSocket connection", e);
+                    } else {
+                        LOGGER.debug("Connection {} closed by shutdown", socket, e);
+                    }
+                } finally {
+                    deadline.cancel();
+                    // a session is released by its last pipelined request
+                    if (!sessions.contains(socket)) {
+                        removeCodec(socket);
+                        connections.remove(socket);
+                    }
+                }
+            }
+
+            @Override
+            public void reject() {
+                // the handshake request of the client is not read, it is answered right away
+                try {
+                    ConnectionUtils.println(socket, ConnectionUtils.HANDSHAKE_BUSY);
+                } catch (final IOException e) {
+                    LOGGER.debug("Failed to send busy reply to {}", socket, e);
+                } finally {
+                    ConnectionUtils.close(socket);
+                    connections.remove(socket);
+                }
+            }
+        };
+    }
+
+    private void handleSingleMessage(final Socket socket, final FrameCodec codec, final ConnectionDeadline deadline)
+            throws IOException, ClassNotFoundException {
+        try {
+            deadline.expireAfter(TimeoutType.READ);
+            final Object raw = codec.readObject();
+            deadline.clear();
+
+            LOGGER.trace("Incoming data (raw): {}", raw);
+            server.processReceivedRawData(raw, socket, codec.getLastRouteId());
+            if (socket instanceof SSLSocket) {
+                awaitClose(socket, deadline);
+            }
+        } finally {
+            // the connection of a single message is closed after its answer, even if the handler failed
+            ConnectionUtils.close(socket);
+        }
+    }
+
+    /**
+     * A TLS client waits for the close_notify of the server when it closes the connection after the answer,
+     * so the connection is closed as soon as the client closed it (or the keep-alive timeout elapsed).
+     */
+    private void awaitClose(final Socket socket, final ConnectionDeadline deadline) {
+        awaitingData.put(socket, new AtomicInteger(1));
+        try {
+            deadline.expireAfter(TimeoutType.IDLE);
+            while (isServerAlive && socket.getInputStream().read() >= 0) {
+                // data after the single message is dropped
+            }
+        } catch (final IOException e) {
+            LOGGER.debug("Failed to wait for close of {}", socket, e);
+        } finally {
+            awaitingData.remove(socket);
+            ConnectionUtils.close(socket);
+        }
+    }
+
+    private void handleSession(final Socket socket, final FrameCodec codec, final ConnectionDeadline deadline)
+            throws IOException, ClassNotFoundException {
+        sessions.add(socket);
+        // the reading thread and every pipelined request in flight hold a reference to the session
+        final AtomicInteger references = new AtomicInteger(1);
+        try {
+            while (!socket.isClosed()) {
+                // registered before the check, so #stopAccepting() either closes the socket or the check fails
+                awaitingData.put(socket, references);
+                final Object raw;
+                try {
+                    if (!isServerAlive) {
+                        break;
+                    }
+                    armSessionDeadline(socket, references, deadline);
+                    if (!codec.awaitNextObject()) {
+                        LOGGER.debug("Session closed by client {}", socket);
+                        break;
+                    }
+                    // the idle timeout ends with the first byte of the request, the rest must arrive in the read timeout
+                    synchronized (references) {
+                        awaitingData.remove(socket);
+                        receiving.add(socket);
+                        armSessionDeadline(socket, references, deadline);
+                    }
+                    raw = codec.readObject();
+                } finally {
+                    synchronized (references) {
+                        deadline.clear();
+                        awaitingData.remove(socket);
+                        receiving.remove(socket);
+                    }
+                }
+
+                if (ServerManager.isPipelinedRequest(raw)) {
+                    references.incrementAndGet();
+                    workerPool.execute(createRequestHandle(raw, socket, codec.getLastRouteId(), references, deadline));
+                } else {
+                    server.processReceivedRawData(raw, socket, codec.getLastRouteId());
+                }
+            }
+        } catch (final EOFException e) {
+            LOGGER.debug("Session closed by client {}", socket);
+        } finally {
+            releaseSession(socket, references);
+        }
+    }
+
+    /**
+     * Starts the idle timeout of a session whose reading thread waits for the next request, or the read timeout
+     * once the first byte of the request arrived. No timeout is started while pipelined requests are still handled
+     * (their answers are no sign of an idle client), the last pipelined request starts it when it completes.
+     */
+    private void armSessionDeadline(final Socket socket, final AtomicInteger references,
+                                    final ConnectionDeadline deadline) {
+        synchronized (references) {
+            if (references.get() != 1) {
+                return;
+            }
+            if (awaitingData.containsKey(socket)) {
+                deadline.expireAfter(TimeoutType.IDLE);
+            } else if (receiving.contains(socket)) {
+                deadline.expireAfter(TimeoutType.READ);
+            }
+        }
+    }
+
+    /**
+     * Closes the session as soon as the reading thread and all pipelined requests released it.
+     */
+    private void releaseSession(final Socket socket, final AtomicInteger references) {
+        if (references.decrementAndGet() == 0) {
+            sessions.remove(socket);
+            removeCodec(socket);
+            connections.remove(socket);
+            ConnectionUtils.close(socket);
+        }
+    }
+
+    /**
+     * Removes the codec of a released connection and closes its compressor.
+     */
+    private void removeCodec(final Socket socket) {
+        final FrameCodec codec = codecs.remove(socket);
+        if (codec != null) {
+            codec.releaseCompression();
+        }
+    }
+
+    private void completePipelinedRequest(final Socket socket, final AtomicInteger references,
+                                          final ConnectionDeadline deadline) {
+        releaseSession(socket, references);
+        if (isServerAlive) {
+            armSessionDeadline(socket, references, deadline);
+        }
+        // the last request of a session which waits for its next request while the server stops
+        if (!isServerAlive && references.get() == 1 && awaitingData.containsKey(socket)) {
+            ConnectionUtils.close(socket);
+        }
+    }
+
+    private DispatchTask createRequestHandle(final Object raw, final Socket socket, final int routeId,
+                                             final AtomicInteger references, final ConnectionDeadline deadline) {
+        return new DispatchTask() {
+            @Override
+            public void run() {
+                try {
+                    server.processReceivedRawData(raw, socket, routeId);
+                } finally {
+                    completePipelinedRequest(socket, references, deadline);
+                }
+            }
+
+            @Override
+            public void reject() {
+                try {
+                    sendMessage(socket, ServerManager.createBusyReply(raw));
+                } catch (final IOException e) {
+                    LOGGER.debug("Failed to send busy reply to {}", socket, e);
+                } finally {
+                    ServerManager.releaseReceived(raw);
+                    completePipelinedRequest(socket, references, deadline);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void sendMessage(final Socket socket, final DataPackage msg) throws IOException {
+        final FrameCodec codec = codecs.get(socket);
+        if (codec == null) {
+            // not handled anymore (or a newly created socket to another host)
+            ServerManager.sendMessageBlocking(socket, msg);
+            return;
+        }
+
+        // a framed client and the client of a session do not expect a handshake before the answer
+        if (codec.isFramed() || sessions.contains(socket)) {
+            codec.writeObject(msg);
+            return;
+        }
+        synchronized (codec) {
+            codec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST);
+            codec.writeObject(msg);
+        }
+    }
+
+    @Override
+    public void sendEncoded(final Socket socket, final EncodedMessage msg) throws IOException {
+        final FrameCodec codec = codecs.get(socket);
+        if (codec == null) {
+            ServerManager.sendEncodedBlocking(socket, msg);
+            return;
+        }
+
+        if (codec.isFramed() || sessions.contains(socket)) {
+            codec.writeEncoded(msg);
+            return;
+        }
+        synchronized (codec) {
+            codec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST);
+            codec.writeEncoded(msg);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> whenListening() {
+        return listening;
+    }
+
+    @Override
+    public void stopAccepting() {
+        if (this.serverHandleThread != null) {
+            this.serverHandleThread.interrupt();
+        }
+
+        this.isServerAlive = false;
+        ConnectionUtils.close(this.serverSocket);
+        this.serverSocket = null;
+
+        // sessions with pipelined requests in flight are closed by their last request
+        awaitingData.forEach((socket, references) -> {
+            if (references.get() <= 1) {
+                ConnectionUtils.close(socket);
+            }
+        });
+    }
+
+    @Override
+    public void awaitCompletedDispatches(final long timeoutNanos) {
+        // the handlers write their answers and release their connections themselves
+    }
+
+    @Override
+    public void stop() {
+        stopAccepting();
+        for (final Socket socket : connections) {
+            ConnectionUtils.close(socket);
+        }
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Deadline of the blocking reads of an accepted connection. Instead of a socket timeout the connection
+     * owns a timeout of the {@link TimerWheel} of the server, which closes the socket when it expires.
+     * The blocked read then fails and the thread of the connection is released.
+     * <br>
+     * Closing an {@link SSLSocket} waits for the lock of its blocked reader, which must not stall the timer wheel.
+     * Its input is shut down instead, so the reader fails and closes the socket itself.
+     */
+    private final class ConnectionDeadline implements Runnable {
+
+        private final Socket socket;
+        private final TimerWheel.Timeout timeout;
+        private volatile TimeoutType type;
+        private volatile boolean expired;
+
+        private ConnectionDeadline(final Socket socket) {
+            this.socket = socket;
+            this.timeout = timerWheel.newTimeout(this);
+        }
+
+        /**
+         * Starts the timeout of the given type, a former deadline is replaced.
+         */
+        void expireAfter(final TimeoutType type) {
+            final long timeoutNanos = server.getTimeoutNanos(type);
+            if (timeoutNanos == 0) {
+                timeout.clear();
+                return;
+            }
+            this.type = type;
+            timeout.expireAfter(timeoutNanos);
+        }
+
+        void clear() {
+            timeout.clear();
+        }
+
+        void cancel() {
+            timeout.cancel();
+        }
+
+        /**
+         * @return whether the socket was closed because the deadline expired
+         */
+        boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public void run() {
+            expired = true;
+            server.onConnectionTimedOut(type);
+            if (!(socket instanceof SSLSocket)) {
+                ConnectionUtils.close(socket);
+                return;
+            }
+
+            try {
+                socket.shutdownInput();
+            } catch (final IOException | UnsupportedOperationException e) {
+                LOGGER.debug("Failed to shut down input of {}", socket, e);
+                ConnectionUtils.close(socket);
+            }
+        }
+
+    }
+
+}
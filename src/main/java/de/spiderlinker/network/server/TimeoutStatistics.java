@@ -0,0 +1,51 @@
+package de.spiderlinker.network.server;
+
+/**
+ * Number of connections of a {@link ServerManager} which were closed because a deadline expired.
+ */
+public class TimeoutStatistics {
+
+    private final long handshakeTimeouts;
+    private final long readTimeouts;
+    private final long idleTimeouts;
+
+    TimeoutStatistics(final long handshakeTimeouts, final long readTimeouts, final long idleTimeouts) {
+        this.handshakeTimeouts = handshakeTimeouts;
+        this.readTimeouts = readTimeouts;
+        this.idleTimeouts = idleTimeouts;
+    }
+
+    /**
+     * @return number of connections which did not complete their handshake in time
+     */
+    public long getHandshakeTimeouts() {
+        return handshakeTimeouts;
+    }
+
+    /**
+     * @return number of connections which did not complete a started message in time
+     */
+    public long getReadTimeouts() {
+        return readTimeouts;
+    }
+
+    /**
+     * @return number of keep-alive sessions which were idle for too long
+     */
+    public long getIdleTimeouts() {
+        return idleTimeouts;
+    }
+
+    /**
+     * @return number of all closed connections
+     */
+    public long getTotalTimeouts() {
+        return handshakeTimeouts + readTimeouts + idleTimeouts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Timeouts[handshake=%d, read=%d, idle=%d]", handshakeTimeouts, readTimeouts, idleTimeouts);
+    }
+
+}
@@ -0,0 +1,23 @@
+package de.spiderlinker.network.server;
+
+/**
+ * Deadlines of a connection which are enforced by the {@link TimerWheel} of a {@link ServerManager}.
+ */
+enum TimeoutType {
+
+    /**
+     * The client has to complete its handshake (including the TLS handshake) after the connection was accepted.
+     */
+    HANDSHAKE,
+
+    /**
+     * The client has to complete a started message (or the answer to a handshake of the server).
+     */
+    READ,
+
+    /**
+     * A keep-alive session may wait for its next request (see {@link ServerManager#setKeepAliveTimeout(int)}).
+     */
+    IDLE
+
+}
@@ -0,0 +1,249 @@
+package de.spiderlinker.network.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel which enforces the deadlines of all connections of a {@link ServerManager} with a single thread.
+ * The wheel has a fixed number of buckets, every tick the thread checks the timeouts of the next bucket.
+ * <br>
+ * Every connection owns a single {@link Timeout}, whose deadline is moved when the connection changes its state.
+ * Moving a deadline to a later time is a single volatile write, the timeout is moved to the bucket of the new
+ * deadline when it is checked at its former deadline. Only a deadline that is moved to an earlier time has to be
+ * handed over to the thread of the wheel. Thereby scheduling is cheap even with 100k connections, which move their
+ * deadline with every request. A timeout without deadline is checked once per revolution of the wheel.
+ * <br>
+ * Timeouts expire up to one tick late. The task of an expired timeout is run on the thread of the wheel,
+ * so it must only hand over its work (e.g. close a socket or notify an event loop).
+ */
+class TimerWheel implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    /** Deadline of a timeout that is not armed */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final AtomicLongFieldUpdater<Timeout> DEADLINE =
+            AtomicLongFieldUpdater.newUpdater(Timeout.class, "deadline");
+
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long tickNanos;
+    private final long startTime = System.nanoTime();
+    private final Queue<Timeout> changedTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    /** Tick whose bucket was checked last, only used by the thread of the wheel */
+    private long tick;
+    private volatile boolean running;
+
+    /**
+     * @param name       name of the thread of the wheel
+     * @param tickMillis time between two checked buckets (the precision of the deadlines)
+     * @param bucketCount number of buckets, rounded up to a power of two
+     */
+    TimerWheel(final String name, final long tickMillis, final int bucketCount) {
+        if (tickMillis < 1 || bucketCount < 1) {
+            throw new IllegalArgumentException("Invalid timer wheel! (tick>=1, buckets>=1)");
+        }
+        this.buckets = new Timeout[Integer.highestOneBit(bucketCount - 1 << 1 | 1)];
+        this.mask = buckets.length - 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    void stop() {
+        this.running = false;
+        this.thread.interrupt();
+    }
+
+    /**
+     * @param task task to run when the deadline of the timeout expired
+     * @return timeout without deadline, it is checked by the wheel until it is cancelled
+     */
+    Timeout newTimeout(final Runnable task) {
+        final Timeout timeout = new Timeout(task);
+        changedTimeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            final long nextTick = startTime + (tick + 1) * tickNanos;
+            final long sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+
+            tick++;
+            scheduleChangedTimeouts();
+            expireTimeouts();
+        }
+    }
+
+    private void scheduleChangedTimeouts() {
+        Timeout timeout;
+        while ((timeout = changedTimeouts.poll()) != null) {
+            unlink(timeout);
+            if (!timeout.cancelled) {
+                schedule(timeout);
+            }
+        }
+    }
+
+    private void expireTimeouts() {
+        final long now = System.nanoTime();
+        Timeout timeout = buckets[(int) (tick & mask)];
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            // timeouts of later revolutions stay in the bucket
+            if (timeout.checkTick <= tick) {
+                unlink(timeout);
+                if (timeout.cancelled) {
+                    timeout = next;
+                    continue;
+                }
+
+                final long deadline = timeout.deadline;
+                // a deadline which is moved concurrently is not expired
+                if (deadline != NO_DEADLINE && deadline - now <= 0
+                        && DEADLINE.compareAndSet(timeout, deadline, NO_DEADLINE)) {
+                    timeout.expire();
+                } else {
+                    schedule(timeout);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Adds the timeout to the bucket of its deadline (or of the next revolution without deadline).
+     */
+    private void schedule(final Timeout timeout) {
+        long deadline;
+        long checkTick;
+        do {
+            deadline = timeout.deadline;
+            checkTick = deadline == NO_DEADLINE ? tick + buckets.length
+                    : Math.max(tick + 1, ceilDiv(deadline - startTime, tickNanos));
+            timeout.checkTime = startTime + checkTick * tickNanos;
+            // a deadline moved to an earlier time before the check time was published would be missed
+        } while (timeout.deadline != deadline);
+
+        timeout.checkTick = checkTick;
+        final int index = (int) (checkTick & mask);
+        timeout.bucket = index;
+        timeout.next = buckets[index];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    private void unlink(final Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return;
+        }
+
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    private static long ceilDiv(final long dividend, final long divisor) {
+        return dividend <= 0 ? 0 : (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Deadline of a connection. The deadline may be moved and cleared from any thread.
+     */
+    final class Timeout {
+
+        private final Runnable task;
+        volatile long deadline = NO_DEADLINE;
+        /** Time at which the wheel checks this timeout next, written by the thread of the wheel */
+        private volatile long checkTime = NO_DEADLINE;
+        private volatile boolean cancelled;
+
+        // only used by the thread of the wheel
+        private long checkTick;
+        private int bucket = -1;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(final Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * @param delayNanos time from now until the timeout expires
+         * @return new deadline (see {@link System#nanoTime()})
+         */
+        long expireAfter(final long delayNanos) {
+            long newDeadline = System.nanoTime() + delayNanos;
+            if (newDeadline == NO_DEADLINE) {
+                newDeadline--;
+            }
+            deadline = newDeadline;
+            final long scheduledCheck = checkTime;
+            if (scheduledCheck != NO_DEADLINE && newDeadline - scheduledCheck < 0) {
+                // the wheel would check the timeout too late
+                changedTimeouts.add(this);
+            }
+            return newDeadline;
+        }
+
+        /**
+         * Removes the deadline, the timeout does not expire until a new deadline is set.
+         */
+        void clear() {
+            deadline = NO_DEADLINE;
+        }
+
+        /**
+         * Removes the timeout from the wheel, it must not be used anymore.
+         */
+        void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                changedTimeouts.add(this);
+            }
+        }
+
+        private void expire() {
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                LOGGER.error("Error while expiring timeout", e);
+            }
+            if (!cancelled) {
+                // the timeout stays in the wheel until it is cancelled
+                schedule(this);
+            }
+        }
+
+    }
+
+}
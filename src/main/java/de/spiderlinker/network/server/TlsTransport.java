@@ -0,0 +1,279 @@
+package de.spiderlinker.network.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * Encrypts and decrypts the data of a non-blocking {@link SelectorConnection} with an {@link SSLEngine}.
+ * The handshake is driven by the received data: records of the client are unwrapped as soon as they are read,
+ * the handshake messages of the server are wrapped and written right away.
+ * <br>
+ * The records are decrypted from and encrypted into direct buffers of the {@link DirectBufferPool} of the event loop.
+ * The buffer of the received records is only kept while it contains an incomplete record, the buffer of the
+ * encrypted records only while the socket did not accept all of them.
+ * <br>
+ * Must only be used on the thread of the owning {@link SelectorEventLoop}. The delegated tasks of the engine
+ * (e.g. signing the handshake) are run on this thread as well, they take about a millisecond.
+ */
+class TlsTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TlsTransport.class);
+
+    private static final ByteBuffer[] NO_DATA = new ByteBuffer[0];
+
+    private final SSLEngine engine;
+    private final DirectBufferPool bufferPool;
+
+    /** Received records, in write mode */
+    private ByteBuffer netIn;
+    /** Encrypted records which are not written yet, in write mode */
+    private ByteBuffer netOut;
+
+    /**
+     * @param engine     engine of the connection in server mode
+     * @param bufferPool pool of the event loop of the connection
+     */
+    TlsTransport(final SSLEngine engine, final DirectBufferPool bufferPool) {
+        this.engine = engine;
+        this.bufferPool = bufferPool;
+    }
+
+    SSLEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Reads the available records from the channel and decrypts them. Handshake messages which have
+     * to be answered are wrapped, they are written by the next {@link #write(SocketChannel)}.
+     *
+     * @param channel   channel to read from
+     * @param plaintext receives the decrypted data (the buffer is only valid during the call)
+     * @return number of bytes read from the channel or -1 if the client closed the connection
+     * @throws IOException failed to read or invalid record (e.g. failed handshake)
+     */
+    int read(final SocketChannel channel, final Consumer<ByteBuffer> plaintext) throws IOException {
+        if (netIn == null) {
+            netIn = bufferPool.acquire(engine.getSession().getPacketBufferSize());
+        }
+
+        final int read = channel.read(netIn);
+        if (read < 0) {
+            releaseNetIn();
+            closeInbound();
+            return -1;
+        }
+
+        netIn.flip();
+        try {
+            return unwrap(channel, plaintext) ? read : -1;
+        } finally {
+            netIn.compact();
+            if (netIn.position() == 0) {
+                releaseNetIn();
+            }
+        }
+    }
+
+    /**
+     * Decrypts all complete records of the buffer of the received records.
+     *
+     * @return false if the client closed the TLS session
+     */
+    private boolean unwrap(final SocketChannel channel, final Consumer<ByteBuffer> plaintext) throws IOException {
+        ByteBuffer appIn = bufferPool.acquire(engine.getSession().getApplicationBufferSize());
+        try {
+            while (true) {
+                final SSLEngineResult result = engine.unwrap(netIn, appIn);
+                if (appIn.position() > 0) {
+                    appIn.flip();
+                    plaintext.accept(appIn);
+                    appIn.clear();
+                }
+
+                switch (result.getStatus()) {
+                    case CLOSED:
+                        return false;
+                    case BUFFER_UNDERFLOW:
+                        if (netIn.capacity() < engine.getSession().getPacketBufferSize()) {
+                            // the negotiated session allows larger records than the handshake session
+                            netIn = resize(netIn, engine.getSession().getPacketBufferSize());
+                        }
+                        // the remaining record is not completely received yet
+                        return true;
+                    case BUFFER_OVERFLOW:
+                        bufferPool.release(appIn);
+                        appIn = bufferPool.acquire(engine.getSession().getApplicationBufferSize());
+                        break;
+                    default:
+                        handleHandshakeStatus(channel);
+                        if (!netIn.hasRemaining() || result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                            return true;
+                        }
+                }
+            }
+        } finally {
+            bufferPool.release(appIn);
+        }
+    }
+
+    /**
+     * @param buffer   buffer in read mode
+     * @param capacity required capacity
+     * @return buffer with the given capacity and the remaining data of the given buffer, in read mode
+     */
+    private ByteBuffer resize(final ByteBuffer buffer, final int capacity) {
+        final ByteBuffer larger = bufferPool.acquire(capacity);
+        larger.put(buffer);
+        bufferPool.release(buffer);
+        larger.flip();
+        return larger;
+    }
+
+    /**
+     * Runs the delegated tasks and wraps the handshake messages the engine has to send.
+     */
+    private void handleHandshakeStatus(final SocketChannel channel) throws IOException {
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+                case NEED_WRAP:
+                    wrap(NO_DATA, 0, 0);
+                    if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP && !write(channel)) {
+                        // the socket does not accept further records, continued by the next write
+                        return;
+                    }
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Encrypts as much of the given data as fits into the buffer of the encrypted records.
+     * While the handshake is not finished no data is encrypted.
+     *
+     * @param data   plaintext to encrypt, the position of the buffers is advanced by the encrypted bytes
+     * @param offset index of the first buffer
+     * @param length number of buffers
+     * @return number of bytes of the data which were encrypted
+     * @throws IOException failed to encrypt
+     */
+    long wrap(final ByteBuffer[] data, final int offset, final int length) throws IOException {
+        if (netOut == null) {
+            netOut = bufferPool.acquire(engine.getSession().getPacketBufferSize());
+        }
+
+        long consumed = 0;
+        while (true) {
+            final SSLEngineResult result = engine.wrap(data, offset, length, netOut);
+            consumed += result.bytesConsumed();
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED && engine.isOutboundDone() && !hasPendingOutput()) {
+                throw new EOFException("TLS session is closed");
+            }
+            if (result.getStatus() != SSLEngineResult.Status.OK) {
+                // buffer overflow: continued after the buffer was written
+                return consumed;
+            }
+
+            if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+            }
+            if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                // all data is encrypted or the handshake waits for the client
+                return consumed;
+            }
+        }
+    }
+
+    /**
+     * Writes the encrypted records.
+     *
+     * @param channel channel to write to
+     * @return whether all encrypted records were written
+     * @throws IOException failed to write
+     */
+    boolean write(final SocketChannel channel) throws IOException {
+        if (netOut == null) {
+            return true;
+        }
+
+        netOut.flip();
+        try {
+            channel.write(netOut);
+        } finally {
+            netOut.compact();
+        }
+        if (netOut.position() > 0) {
+            return false;
+        }
+        bufferPool.release(netOut);
+        netOut = null;
+        return true;
+    }
+
+    /**
+     * @return whether encrypted records are waiting to be written
+     */
+    boolean hasPendingOutput() {
+        return netOut != null && netOut.position() > 0;
+    }
+
+    /**
+     * Sends the close_notify of the server if the socket accepts it without blocking and releases the buffers.
+     *
+     * @param channel channel of the connection
+     */
+    void close(final SocketChannel channel) {
+        engine.closeOutbound();
+        try {
+            if (channel.isOpen()) {
+                wrap(NO_DATA, 0, 0);
+                write(channel);
+            }
+        } catch (final IOException e) {
+            LOGGER.debug("Failed to send close_notify to {}", channel, e);
+        }
+
+        releaseNetIn();
+        if (netOut != null) {
+            bufferPool.release(netOut);
+            netOut = null;
+        }
+    }
+
+    private void closeInbound() {
+        try {
+            engine.closeInbound();
+        } catch (final SSLException e) {
+            // the client closed the connection without close_notify (possible truncation attack)
+            LOGGER.debug("Connection closed without close_notify", e);
+        }
+    }
+
+    private void releaseNetIn() {
+        if (netIn != null) {
+            bufferPool.release(netIn);
+            netIn = null;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package de.spiderlinker.network.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes the {@link DispatchTask}s of a {@link ServerManager} with a bounded number of threads
+ * and a bounded queue. Tasks which do not fit into the pool are handled according to the {@link RejectionPolicy}.
+ * <br>
+ * With {@link RejectionPolicy#CALLER_RUNS} a worker thread which hands over a task (e.g. a pipelined request of its
+ * session) runs the task itself. The accept thread and the I/O threads of the engines must not block on a handler,
+ * their tasks are run by overflow threads instead (at most as many as the pool has), further tasks are rejected.
+ */
+class WorkerPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkerPool.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /** Pool of the worker or overflow thread which runs the current thread, null for other threads */
+    private static final ThreadLocal<WorkerPool> CURRENT_POOL = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+    /** Runs the tasks of the caller runs policy which were handed over by other than worker threads */
+    private final ThreadPoolExecutor overflow;
+    private final RejectionPolicy rejectionPolicy;
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder callerRunsTasks = new LongAdder();
+
+    WorkerPool(final int coreThreads, final int maxThreads, final int queueCapacity,
+               final RejectionPolicy rejectionPolicy, final ThreadFactory threadFactory) {
+        this.rejectionPolicy = rejectionPolicy;
+        final ThreadFactory workerThreadFactory = runnable -> threadFactory.newThread(() -> {
+            CURRENT_POOL.set(this);
+            runnable.run();
+        });
+        this.executor = new ThreadPoolExecutor(coreThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                createQueue(queueCapacity), workerThreadFactory, new RejectionHandler());
+        this.overflow = new ThreadPoolExecutor(0, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), workerThreadFactory);
+    }
+
+    private static BlockingQueue<Runnable> createQueue(final int queueCapacity) {
+        return queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Executes the given task by a worker thread or rejects it according to the rejection policy.
+     *
+     * @param task task to execute
+     */
+    void execute(final DispatchTask task) {
+        executor.execute(task);
+    }
+
+    /**
+     * @return snapshot of the current state of this pool
+     */
+    WorkerPoolStatistics getStatistics() {
+        return new WorkerPoolStatistics(executor.getPoolSize() + overflow.getPoolSize(),
+                executor.getActiveCount() + overflow.getActiveCount(), executor.getQueue().size(),
+                executor.getCompletedTaskCount() + overflow.getCompletedTaskCount(), rejectedTasks.sum(),
+                callerRunsTasks.sum());
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        overflow.shutdown();
+    }
+
+    /**
+     * Stops accepting tasks (further tasks are rejected) and waits until the running and queued tasks are completed.
+     *
+     * @param timeoutNanos maximum time to wait
+     * @return whether all tasks were completed within the timeout
+     * @throws InterruptedException interrupted while waiting
+     */
+    boolean drain(final long timeoutNanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        shutdown();
+        return executor.awaitTermination(timeoutNanos, TimeUnit.NANOSECONDS)
+                && overflow.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Interrupts the running tasks and rejects the queued tasks.
+     *
+     * @return number of tasks which were running or queued
+     */
+    int shutdownNow() {
+        final int running = executor.getActiveCount() + overflow.getActiveCount();
+        overflow.shutdownNow();
+        final List<Runnable> queued = executor.shutdownNow();
+        for (final Runnable task : queued) {
+            ((DispatchTask) task).reject();
+        }
+        return running + queued.size();
+    }
+
+    private void reject(final DispatchTask task) {
+        rejectedTasks.increment();
+        task.reject();
+    }
+
+    private class RejectionHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(final Runnable rejected, final ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                reject((DispatchTask) rejected);
+                return;
+            }
+
+            switch (rejectionPolicy) {
+                case CALLER_RUNS:
+                    if (CURRENT_POOL.get() == WorkerPool.this) {
+                        callerRunsTasks.increment();
+                        rejected.run();
+                    } else {
+                        // the accept thread or an I/O thread would block all of its connections
+                        runOnOverflow((DispatchTask) rejected);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    final Runnable oldest = pool.getQueue().poll();
+                    if (oldest != null) {
+                        reject((DispatchTask) oldest);
+                    }
+                    retry((DispatchTask) rejected, pool);
+                    break;
+                case REJECT_WITH_BUSY_REPLY:
+                default:
+                    LOGGER.warn("Worker pool exhausted, rejecting connection (queued: {})", pool.getQueue().size());
+                    reject((DispatchTask) rejected);
+                    break;
+            }
+        }
+
+        private void runOnOverflow(final DispatchTask task) {
+            try {
+                overflow.execute(task);
+                callerRunsTasks.increment();
+            } catch (final RejectedExecutionException e) {
+                LOGGER.warn("Worker pool and overflow threads exhausted, rejecting connection");
+                reject(task);
+            }
+        }
+
+        private void retry(final DispatchTask task, final ThreadPoolExecutor pool) {
+            try {
+                pool.execute(task);
+            } catch (final RejectedExecutionException e) {
+                reject(task);
+            }
+        }
+    }
+
+}
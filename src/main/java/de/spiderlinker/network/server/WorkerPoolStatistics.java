@@ -0,0 +1,74 @@
+package de.spiderlinker.network.server;
+
+/**
+ * Snapshot of the worker pool of a {@link ServerManager}.
+ */
+public class WorkerPoolStatistics {
+
+    private final int poolSize;
+    private final int activeThreads;
+    private final int queueDepth;
+    private final long completedTasks;
+    private final long rejectedTasks;
+    private final long callerRunsTasks;
+
+    WorkerPoolStatistics(final int poolSize, final int activeThreads, final int queueDepth,
+                         final long completedTasks, final long rejectedTasks, final long callerRunsTasks) {
+        this.poolSize = poolSize;
+        this.activeThreads = activeThreads;
+        this.queueDepth = queueDepth;
+        this.completedTasks = completedTasks;
+        this.rejectedTasks = rejectedTasks;
+        this.callerRunsTasks = callerRunsTasks;
+    }
+
+    /**
+     * @return current number of threads in the pool
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return number of threads currently handling a connection
+     */
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    /**
+     * @return number of connections waiting for a free worker thread
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return number of handled connections
+     */
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /**
+     * @return number of connections the pool could neither handle nor queue and which were rejected
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks;
+    }
+
+    /**
+     * @return number of connections the pool could neither handle nor queue, which were handled according to
+     * {@link RejectionPolicy#CALLER_RUNS} by the handing over worker thread or an overflow thread
+     */
+    public long getCallerRunsTasks() {
+        return callerRunsTasks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WorkerPool[size=%d, active=%d, queued=%d, completed=%d, rejected=%d, callerRuns=%d]",
+                poolSize, activeThreads, queueDepth, completedTasks, rejectedTasks, callerRunsTasks);
+    }
+
+}
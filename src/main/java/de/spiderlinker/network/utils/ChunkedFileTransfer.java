@@ -0,0 +1,344 @@
+package de.spiderlinker.network.utils;
+
+import de.spiderlinker.io.Checksum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Transfers files in chunks with a CRC32 checksum per chunk. A failed transfer is resumed with the first chunk
+ * which is not yet stored by the receiver, and large files can be sent over several connections at the same time,
+ * each carrying a range of chunks which the receiver writes to its position in the file. <br>
+ * <br>
+ * Every connection transfers one range of chunks:
+ * <ol>
+ * <li>sender: magic, file length, chunk size, index of the first chunk, number of chunks and their checksums</li>
+ * <li>receiver: index of the first chunk which is not yet stored with a matching checksum</li>
+ * <li>sender: data of the missing chunks (sent with {@link FileChannel#transferTo(long, long, WritableByteChannel)})</li>
+ * <li>receiver: index after the last verified chunk</li>
+ * </ol>
+ * The receiver verifies the stored chunks with the checksums of the sender, so no transfer state has to be kept
+ * between the attempts and a transfer can even be resumed after a restart of the receiver.
+ *
+ * @see #receive(Socket, File)
+ */
+public class ChunkedFileTransfer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedFileTransfer.class);
+
+  /** Default size of a chunk */
+  public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+  /** Maximum size of a chunk, the receiver holds one chunk per connection in memory */
+  public static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+  /** Default read timeout, the receiver verifies the stored chunks before it answers */
+  public static final int DEFAULT_TIMEOUT = 30000;
+
+  /** "SPFT", identifies the start of a transfer */
+  private static final int MAGIC = 0x53504654;
+  /** magic, file length, chunk size, first chunk and number of chunks */
+  private static final int HEADER_LENGTH = Integer.BYTES + Long.BYTES + Integer.BYTES * 3;
+  /** Maximum number of chunks per connection, limits the size of the checksum header */
+  private static final int MAX_CHUNKS = 1024 * 1024;
+
+  private int chunkSize   = DEFAULT_CHUNK_SIZE;
+  private int connections = 1;
+  private int maxAttempts = 3;
+  private int timeout     = DEFAULT_TIMEOUT;
+
+  /**
+   * Sends the file to the receiver listening on the given host and port. Every range of chunks is sent
+   * up to {@link #getMaxAttempts()} times, every attempt resumes with the chunks the receiver is missing.
+   *
+   * @param host host to connect to
+   * @param port port of host to connect to
+   * @param file file to be sent
+   * @throws IOException file not readable or a range of chunks could not be sent with all attempts
+   */
+  public void send(final String host, final int port, final File file) throws IOException {
+    if (!file.isFile()) {
+      throw new FileNotFoundException(file.getPath());
+    }
+
+    final long length = file.length();
+    final int chunks = getChunkCount(length, chunkSize);
+    final int ranges = Math.max(1, Math.min(connections, chunks));
+    if ((chunks + ranges - 1) / ranges > MAX_CHUNKS) {
+      throw new IllegalArgumentException("File has too many chunks, increase the chunk size");
+    }
+
+    if (ranges == 1) {
+      sendRange(host, port, file, length, 0, chunks);
+      return;
+    }
+
+    final ExecutorService executor = ExecutorFactory.newThreadPerTaskExecutor("ChunkedFileTransfer", true);
+    try {
+      final List<Future<?>> transfers = new ArrayList<>();
+      for (int range = 0; range < ranges; range++) {
+        final int firstChunk = (int) ((long) chunks * range / ranges);
+        final int chunkCount = (int) ((long) chunks * (range + 1) / ranges) - firstChunk;
+        transfers.add(executor.submit(() -> {
+          sendRange(host, port, file, length, firstChunk, chunkCount);
+          return null;
+        }));
+      }
+      awaitTransfers(transfers);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void awaitTransfers(final List<Future<?>> transfers) throws IOException {
+    IOException failure = null;
+    for (final Future<?> transfer : transfers) {
+      try {
+        transfer.get();
+      } catch (ExecutionException e) {
+        final IOException cause = e.getCause() instanceof IOException
+            ? (IOException) e.getCause()
+            : new IOException(e.getCause());
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while sending file", e);
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void sendRange(final String host, final int port, final File file, final long length,
+                         final int firstChunk, final int chunkCount) throws IOException {
+    final long[] checksums = new long[chunkCount];
+    try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      for (int i = 0; i < chunkCount; i++) {
+        final long position = (long) (firstChunk + i) * chunkSize;
+        checksums[i] = Checksum.getCRC32Checksum(input, position, Math.min(chunkSize, length - position));
+      }
+
+      IOException failure = null;
+      for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+        try (Socket socket = SocketUtils.createChannelSocket(host, port, timeout)) {
+          sendRange(socket, input, length, chunkSize, firstChunk, checksums);
+          return;
+        } catch (IOException e) {
+          LOGGER.warn("Attempt {}/{} to send chunks {}-{} of {} failed", attempt, maxAttempts,
+              firstChunk, firstChunk + chunkCount, file, e);
+          failure = e;
+        }
+      }
+      throw failure;
+    }
+  }
+
+  private static void sendRange(final Socket socket, final FileChannel input, final long length, final int chunkSize,
+                                final int firstChunk, final long[] checksums) throws IOException {
+    final WritableByteChannel output = ConnectionUtils.getWritableChannel(socket);
+    final ReadableByteChannel answers = ConnectionUtils.getReadableChannel(socket);
+    final int endChunk = firstChunk + checksums.length;
+
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + checksums.length * Long.BYTES);
+    header.putInt(MAGIC).putLong(length).putInt(chunkSize).putInt(firstChunk).putInt(checksums.length);
+    for (final long checksum : checksums) {
+      header.putLong(checksum);
+    }
+    header.flip();
+    ConnectionUtils.writeFully(output, header);
+
+    final int resumeChunk = readInt(answers);
+    if (resumeChunk < firstChunk || resumeChunk > endChunk) {
+      throw new StreamCorruptedException("Invalid chunk to resume with " + resumeChunk);
+    }
+    LOGGER.debug("Sending chunks {}-{} to {}", resumeChunk, endChunk, socket);
+
+    long position = (long) resumeChunk * chunkSize;
+    final long end = Math.min(length, (long) endChunk * chunkSize);
+    while (position < end) {
+      position += input.transferTo(position, end - position, output);
+    }
+
+    final int verifiedChunk = readInt(answers);
+    if (verifiedChunk != endChunk) {
+      throw new StreamCorruptedException("Receiver verified chunks up to " + verifiedChunk + " of " + endChunk);
+    }
+  }
+
+  /**
+   * Receives one range of chunks sent with {@link #send(String, int, File)} and writes them to their position
+   * in the file. For a transfer over several connections this method has to be called for every connection,
+   * usually at the same time. Chunks already stored in the file with a matching checksum are not transferred again.
+   *
+   * @param socket connection of the sender
+   * @param file   file to write the chunks to (created if it does not exist)
+   * @return number of received bytes, without the bytes which were already stored
+   * @throws IOException connection closed, invalid header or checksum mismatch of a received chunk
+   */
+  public static long receive(final Socket socket, final File file) throws IOException {
+    final ReadableByteChannel input = ConnectionUtils.getReadableChannel(socket);
+    final WritableByteChannel answers = ConnectionUtils.getWritableChannel(socket);
+
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    ConnectionUtils.readFully(input, header);
+    header.flip();
+    if (header.getInt() != MAGIC) {
+      throw new StreamCorruptedException("Connection " + socket + " does not start a chunked file transfer");
+    }
+
+    final long length = header.getLong();
+    final int chunkSize = header.getInt();
+    final int firstChunk = header.getInt();
+    final int chunkCount = header.getInt();
+    if (length < 0 || chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE || firstChunk < 0 || chunkCount < 0
+        || chunkCount > MAX_CHUNKS || (long) firstChunk + chunkCount > getChunkCount(length, chunkSize)) {
+      throw new StreamCorruptedException("Invalid range of chunks " + firstChunk + "+" + chunkCount
+          + " (file length " + length + ", chunk size " + chunkSize + ")");
+    }
+
+    final ByteBuffer checksumBuffer = ByteBuffer.allocate(chunkCount * Long.BYTES);
+    ConnectionUtils.readFully(input, checksumBuffer);
+    checksumBuffer.flip();
+    final long[] checksums = new long[chunkCount];
+    checksumBuffer.asLongBuffer().get(checksums);
+
+    try (FileChannel output = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      if (output.size() > length) {
+        output.truncate(length);
+      }
+
+      final int endChunk = firstChunk + chunkCount;
+      int resumeChunk = firstChunk;
+      while (resumeChunk < endChunk && isChunkStored(output, length, chunkSize, resumeChunk, checksums[resumeChunk - firstChunk])) {
+        resumeChunk++;
+      }
+      writeInt(answers, resumeChunk);
+      LOGGER.debug("Receiving chunks {}-{} of {} from {}", resumeChunk, endChunk, file, socket);
+
+      long received = 0;
+      final ByteBuffer chunk = ByteBuffer.allocateDirect((int) Math.min(chunkSize, Math.max(length, 1)));
+      for (int index = resumeChunk; index < endChunk; index++) {
+        long position = (long) index * chunkSize;
+        chunk.clear();
+        chunk.limit((int) Math.min(chunkSize, length - position));
+        ConnectionUtils.readFully(input, chunk);
+        chunk.flip();
+
+        if (Checksum.getCRC32Checksum(chunk) != checksums[index - firstChunk]) {
+          throw new StreamCorruptedException("Checksum mismatch of chunk " + index + " of " + file);
+        }
+
+        received += chunk.remaining();
+        while (chunk.hasRemaining()) {
+          position += output.write(chunk, position);
+        }
+      }
+
+      writeInt(answers, endChunk);
+      return received;
+    }
+  }
+
+  private static boolean isChunkStored(final FileChannel file, final long length, final int chunkSize,
+                                       final int index, final long checksum) throws IOException {
+    final long position = (long) index * chunkSize;
+    final long size = Math.min(chunkSize, length - position);
+    return position + size <= file.size() && Checksum.getCRC32Checksum(file, position, size) == checksum;
+  }
+
+  private static int getChunkCount(final long length, final int chunkSize) {
+    return (int) Math.min(Integer.MAX_VALUE, (length + chunkSize - 1) / chunkSize);
+  }
+
+  private static int readInt(final ReadableByteChannel input) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+    ConnectionUtils.readFully(input, buffer);
+    buffer.flip();
+    return buffer.getInt();
+  }
+
+  private static void writeInt(final WritableByteChannel output, final int value) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+    buffer.putInt(value);
+    buffer.flip();
+    ConnectionUtils.writeFully(output, buffer);
+  }
+
+  /*
+   * - - - - - - - - - - Settings - - - - - - - - - -
+   */
+
+  /**
+   * @param chunkSize size of the chunks a checksum is created for and which are sent again after a failure
+   */
+  public void setChunkSize(final int chunkSize) {
+    if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+      throw new IllegalArgumentException("Invalid chunk size! (0<chunkSize<=" + MAX_CHUNK_SIZE + ")");
+    }
+    this.chunkSize = chunkSize;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @param connections number of connections to send the ranges of a file over at the same time
+   */
+  public void setConnections(final int connections) {
+    if (connections <= 0) {
+      throw new IllegalArgumentException("Invalid number of connections! (connections>0)");
+    }
+    this.connections = connections;
+  }
+
+  public int getConnections() {
+    return connections;
+  }
+
+  /**
+   * @param maxAttempts number of attempts to send a range of chunks before the transfer fails
+   */
+  public void setMaxAttempts(final int maxAttempts) {
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("Invalid number of attempts! (maxAttempts>0)");
+    }
+    this.maxAttempts = maxAttempts;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @param timeout read timeout while waiting for the answers of the receiver (0 = unlimited)
+   */
+  public void setTimeout(final int timeout) {
+    this.timeout = SocketUtils.validateTimeout(timeout);
+  }
+
+  public int getTimeout() {
+    return timeout;
+  }
+
+}
@@ -5,11 +5,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * This class provides various methods to interact with sockets. <br>
  * <br> !! Important !! <br>
  * All streams (Input + OutputStreams) of the given sockets will not be closed while calling any method (except readFile/writeFile) of this class!
+ * Use sendFile/receiveFile to transfer files over a connection which should stay open.
  * The streams may be flushed but never closed. This would cause the socket to close the connection to the other end.
  * After calling any method in this class you have to close the socket by your own!
  *
@@ -22,10 +30,17 @@ public class ConnectionUtils {
 
   /** Handshake connect request */
   public static final String HANDSHAKE_REQUEST = "HANDSHAKE_REQUEST";
+  /** Handshake connect request for a session with multiple DataPackages over the same connection */
+  public static final String HANDSHAKE_REQUEST_KEEP_ALIVE = "HANDSHAKE_REQUEST_KEEP_ALIVE";
   /** Handshake accepted from server */
   public static final String HANDSHAKE_ACCEPTED = "HANDSHAKE_ACCEPTED";
   /** Handshake denied from server */
   public static final String HANDSHAKE_DENIED = "HANDSHAKE_DENIED";
+  /** Handshake denied from server because all of its workers are busy */
+  public static final String HANDSHAKE_BUSY = "HANDSHAKE_BUSY";
+
+  /** Size of the direct buffer used to receive files */
+  private static final int RECEIVE_BUFFER_SIZE = 1024 * 1024;
 
   /*
    * - - - - - - - - - - Connection handshake - - - - - - - - - -
@@ -38,9 +53,24 @@ public class ConnectionUtils {
    * @return success of handshake
    */
   public static boolean performHandshake(final Socket server) {
+    return performHandshake(server, ConnectionUtils.HANDSHAKE_REQUEST);
+  }
+
+  /**
+   * Performs a handshake with the server and requests a keep-alive session.
+   * After a successful handshake multiple objects can be written to the server without further handshakes.
+   *
+   * @param server server to perform handshake with
+   * @return success of handshake
+   */
+  public static boolean performKeepAliveHandshake(final Socket server) {
+    return performHandshake(server, ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE);
+  }
+
+  private static boolean performHandshake(final Socket server, final String request) {
     boolean success = false;
     try {
-      ConnectionUtils.println(server, ConnectionUtils.HANDSHAKE_REQUEST);
+      ConnectionUtils.println(server, request);
       success = ConnectionUtils.HANDSHAKE_ACCEPTED.equals(ConnectionUtils.readLine(server));
     } catch (final IOException e) {
       LOGGER.error("Failed to perform handshake with " + server, e);
@@ -72,6 +102,37 @@ public class ConnectionUtils {
     return success;
   }
 
+  /**
+   * Performs a handshake with the connected clientSocket. In contrast to {@link #handleHandshake(Socket)}
+   * the request of the client is returned, so the caller knows whether a keep-alive session was requested.
+   *
+   * @param client clientSocket to perform the handshake with
+   * @return accepted request ({@link #HANDSHAKE_REQUEST} or {@link #HANDSHAKE_REQUEST_KEEP_ALIVE})
+   * or null if the handshake was denied or failed
+   */
+  public static String acceptHandshake(final Socket client) {
+    String acceptedRequest = null;
+    try {
+      final String request = ConnectionUtils.readLine(client);
+      final boolean accepted = ConnectionUtils.isHandshakeRequest(request);
+      ConnectionUtils.println(client, accepted ? ConnectionUtils.HANDSHAKE_ACCEPTED : ConnectionUtils.HANDSHAKE_DENIED);
+      acceptedRequest = accepted ? request : null;
+    } catch (final IOException e) {
+      LOGGER.error("Failed to perform handshake with " + client, e);
+    }
+
+    LOGGER.debug("Handshake performed with {} > {}", client, acceptedRequest);
+    return acceptedRequest;
+  }
+
+  /**
+   * @param request received handshake line
+   * @return whether the passed line is a valid handshake request
+   */
+  public static boolean isHandshakeRequest(final String request) {
+    return ConnectionUtils.HANDSHAKE_REQUEST.equals(request) || ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.equals(request);
+  }
+
   /*
    * - - - - - - - - - - Socket read methods - - - - - - - - - -
    */
@@ -108,6 +169,50 @@ public class ConnectionUtils {
     }
   }
 
+  /**
+   * Receives a file sent with {@link #sendFile(Socket, File)}. Only the announced number of bytes is read,
+   * so the socket stays open and can be used for further transfers. <br>
+   * The bytes are read into a direct buffer and written to the file channel. The JDK has no kernel path from a socket
+   * to a file, so {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} would copy them in 8 KB blocks.
+   *
+   * @param socket       socket to receive the file from
+   * @param fileLocation file to save the received data to (will be overwritten)
+   * @return number of received bytes
+   * @throws IOException connection closed before the whole file was received or file not writable
+   */
+  public static long receiveFile(final Socket socket, final File fileLocation) throws IOException {
+    final ReadableByteChannel input = getReadableChannel(socket);
+
+    /* read length header */
+    final ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+    readFully(input, header);
+    header.flip();
+    final long length = header.getLong();
+    if (length < 0) {
+      throw new StreamCorruptedException("Invalid file length " + length);
+    }
+
+    try (FileChannel output = FileChannel.open(fileLocation.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(length, RECEIVE_BUFFER_SIZE));
+      long position = 0;
+      while (position < length) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), length - position));
+        if (input.read(buffer) < 0) {
+          throw new EOFException("Connection closed after " + position + " of " + length + " bytes");
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          position += output.write(buffer);
+        }
+      }
+    }
+
+    return length;
+  }
+
   /*
    * - - - - - - - - - - - Socket write methods - - - - - - - - - - -
    */
@@ -150,8 +255,8 @@ public class ConnectionUtils {
     ObjectOutputStream output = null;
 
     try {
-      /* Create ObjectOutputStream */
-      output = new ObjectOutputStream(socket.getOutputStream());
+      /* Create ObjectOutputStream, buffered to send the object with as few writes as possible */
+      output = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
       output.writeObject(obj);// write object
     } finally {
       ConnectionUtils.flush(output);
@@ -171,6 +276,76 @@ public class ConnectionUtils {
     }
   }
 
+  /**
+   * Sends the file with a length header, so the receiver knows where the file ends and the socket stays open. <br>
+   * The bytes are transferred with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which uses
+   * sendfile on Linux if the socket has a channel (see {@link SocketUtils#createChannelSocket(String, int, int)}).
+   * Otherwise the bytes are copied by the JDK to the stream of the socket.
+   *
+   * @param socket destination host which will receive the file
+   * @param file   file to be sent
+   * @throws IOException error while reading file or writing to host
+   */
+  public static void sendFile(final Socket socket, final File file) throws IOException {
+    try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final WritableByteChannel output = getWritableChannel(socket);
+      final long length = input.size();
+
+      /* write length header */
+      final ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+      header.putLong(length);
+      header.flip();
+      writeFully(output, header);
+
+      long position = 0;
+      while (position < length) {
+        position += input.transferTo(position, length - position, output);
+      }
+    }
+  }
+
+  /**
+   * @return channel of the socket if it has a blocking one, otherwise a channel writing to the socket stream.
+   * The returned channel must not be closed, this would close the socket.
+   */
+  static WritableByteChannel getWritableChannel(final Socket socket) throws IOException {
+    final SocketChannel channel = socket.getChannel();
+    return channel != null && channel.isBlocking() ? channel : Channels.newChannel(socket.getOutputStream());
+  }
+
+  /**
+   * @return channel of the socket if it has a blocking one and no read timeout (reads of the channel ignore it),
+   * otherwise a channel reading from the socket stream. The returned channel must not be closed, this would close the socket.
+   */
+  static ReadableByteChannel getReadableChannel(final Socket socket) throws IOException {
+    final SocketChannel channel = socket.getChannel();
+    return channel != null && channel.isBlocking() && socket.getSoTimeout() == 0
+        ? channel
+        : Channels.newChannel(socket.getInputStream());
+  }
+
+  /**
+   * Reads from the channel until the buffer is full
+   *
+   * @throws EOFException channel reached its end before the buffer is full
+   */
+  static void readFully(final ReadableByteChannel input, final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (input.read(buffer) < 0) {
+        throw new EOFException("Connection closed, " + buffer.remaining() + " bytes missing");
+      }
+    }
+  }
+
+  /**
+   * Writes all remaining bytes of the buffer to the channel
+   */
+  static void writeFully(final WritableByteChannel output, final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+  }
+
   private static void pipeDataFromInputToOutput(InputStream input, OutputStream output) throws IOException {
     final byte[] buffer = new byte[1024 * 8];
     int n;
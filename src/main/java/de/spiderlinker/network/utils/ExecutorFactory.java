@@ -0,0 +1,137 @@
+package de.spiderlinker.network.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the network classes. On a JDK with virtual threads (Java 21+) the threads
+ * may be virtual threads, which are detected at runtime, so this library still runs on Java 8.
+ *
+ * @see #isVirtualThreadSupported()
+ */
+public class ExecutorFactory {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorFactory.class);
+
+  /* Thread.ofVirtual() and Thread.Builder (Java 21+), null if not supported */
+  private static final Method OF_VIRTUAL        = findMethod(Thread.class, "ofVirtual");
+  private static final Method BUILDER_NAME      = findMethod(findClass("java.lang.Thread$Builder"), "name", String.class, long.class);
+  private static final Method BUILDER_FACTORY   = findMethod(findClass("java.lang.Thread$Builder"), "factory");
+  /* Executors.newThreadPerTaskExecutor(ThreadFactory) (Java 21+), null if not supported */
+  private static final Method PER_TASK_EXECUTOR = findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+  private static final boolean VIRTUAL_THREADS_SUPPORTED = detectVirtualThreadSupport();
+
+  private ExecutorFactory() {
+    // Utility class should not be instantiatable
+  }
+
+  /**
+   * @return whether the running JVM supports virtual threads
+   */
+  public static boolean isVirtualThreadSupported() {
+    return VIRTUAL_THREADS_SUPPORTED;
+  }
+
+  private static boolean detectVirtualThreadSupport() {
+    if (OF_VIRTUAL == null || BUILDER_NAME == null || BUILDER_FACTORY == null || PER_TASK_EXECUTOR == null) {
+      return false;
+    }
+    try {
+      // Java 19 and 20 know virtual threads only as preview feature which may be disabled
+      OF_VIRTUAL.invoke(null);
+      return true;
+    } catch (final ReflectiveOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Creates a factory for threads named with the given prefix and a consecutive number.
+   * If virtual threads are requested but not supported by the running JVM, platform threads are created.
+   *
+   * @param prefix  prefix of the thread names
+   * @param virtual whether virtual threads should be created
+   * @return factory for (virtual) threads
+   */
+  public static ThreadFactory newThreadFactory(final String prefix, final boolean virtual) {
+    if (virtual && isVirtualThreadSupported()) {
+      try {
+        final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 0L);
+        return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+      } catch (final ReflectiveOperationException e) {
+        LOGGER.error("Failed to create virtual thread factory, falling back to platform threads", e);
+      }
+    }
+    return new PlatformThreadFactory(prefix);
+  }
+
+  /**
+   * Creates an executor which runs every task in a new (virtual) thread. Without support for virtual threads
+   * a cached pool of platform daemon threads is returned, which reuses idle threads.
+   *
+   * @param prefix  prefix of the thread names
+   * @param virtual whether virtual threads should be used
+   * @return executor which runs every task immediately
+   */
+  public static ExecutorService newThreadPerTaskExecutor(final String prefix, final boolean virtual) {
+    if (virtual && isVirtualThreadSupported()) {
+      try {
+        return (ExecutorService) PER_TASK_EXECUTOR.invoke(null, newThreadFactory(prefix, true));
+      } catch (final ReflectiveOperationException e) {
+        LOGGER.error("Failed to create virtual thread executor, falling back to platform threads", e);
+      }
+    }
+
+    final ThreadFactory platformThreads = new PlatformThreadFactory(prefix);
+    return Executors.newCachedThreadPool(runnable -> {
+      final Thread thread = platformThreads.newThread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static Class<?> findClass(final String name) {
+    try {
+      return Class.forName(name);
+    } catch (final ClassNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static Method findMethod(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+    if (type == null) {
+      return null;
+    }
+    try {
+      return type.getMethod(name, parameterTypes);
+    } catch (final NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Creates platform threads with the given prefix and a consecutive number as name.
+   */
+  private static class PlatformThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    PlatformThreadFactory(final String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      return new Thread(runnable, prefix + "-" + threadNumber.getAndIncrement());
+    }
+  }
+
+}
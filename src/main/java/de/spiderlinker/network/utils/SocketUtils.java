@@ -3,11 +3,12 @@ package de.spiderlinker.network.utils;
 import javax.net.ServerSocketFactory;
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
+import java.io.File;
 import java.io.IOException;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -52,15 +53,20 @@ public class SocketUtils {
     return createSSLSocket(host, port, DEFAULT_TIMEOUT);
   }
 
+  /**
+   * Creates a socket with the default context of the JVM and the protocols and cipher suites
+   * of {@link TlsConfiguration}.
+   *
+   * @param host    host to connect to
+   * @param port    port of host to connect to
+   * @param timeout read timeout of the socket
+   * @return connected socket
+   * @throws IOException host not reachable
+   */
   public static SSLSocket createSSLSocket(String host, int port, int timeout)
       throws IOException {
-    /* Create SSLSocket */
-    SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-    SSLSocket socket = (SSLSocket) factory.createSocket(host, port);
-    socket.setEnabledCipherSuites(factory.getSupportedCipherSuites());
-    socket.setSoTimeout(timeout);// set timeout of socket
-
-    return socket;
+    /* Create SSLSocket with the curated cipher suites */
+    return TlsConfiguration.getDefault().createSocket(host, port, timeout);
   }
 
   /*
@@ -77,13 +83,19 @@ public class SocketUtils {
     return createSSLServerSocket(port, limit, null);
   }
 
+  /**
+   * Creates a server socket with the default context of the JVM and the protocols and cipher suites
+   * of {@link TlsConfiguration}.
+   *
+   * @param port    port to listen on
+   * @param limit   maximum length of the queue of incoming connections
+   * @param address address to bind to, null for all local addresses
+   * @return bound server socket
+   * @throws IOException port already in use
+   */
   public static SSLServerSocket createSSLServerSocket(int port, int limit, InetAddress address) throws IOException {
-    /* Create SSLServerSocket */
-    SSLServerSocketFactory factory = (SSLServerSocketFactory) SSLServerSocketFactory.getDefault();
-    final SSLServerSocket serverSocket = (SSLServerSocket) factory.createServerSocket(port, limit, address);
-    serverSocket.setEnabledCipherSuites(factory.getSupportedCipherSuites());
-
-    return serverSocket;
+    /* Create SSLServerSocket with the curated cipher suites */
+    return TlsConfiguration.getDefault().createServerSocket(port, limit, address);
   }
 
   /*
@@ -104,6 +116,44 @@ public class SocketUtils {
     return socket;
   }
 
+  /**
+   * @param host    host to connect to
+   * @param port    port of host to connect to
+   * @param timeout read timeout of the socket
+   * @param tls     TLS configuration, null for a plain socket
+   * @return connected (TLS) socket
+   * @throws IOException host not reachable
+   */
+  public static Socket createSocket(String host, int port, int timeout, TlsConfiguration tls) throws IOException {
+    /* create TLS socket if configured */
+    return tls == null ? createSocket(host, port, timeout) : tls.createSocket(host, port, timeout);
+  }
+
+  /**
+   * Creates a socket backed by a blocking {@link SocketChannel}. Files sent over such a socket with
+   * {@link ConnectionUtils#sendFile(Socket, File)} are transferred by the kernel (sendfile on Linux).
+   *
+   * @param host    host to connect to
+   * @param port    port of host to connect to
+   * @param timeout read timeout of the socket streams
+   * @return connected socket with a channel
+   * @throws IOException host not reachable
+   */
+  public static Socket createChannelSocket(String host, int port, int timeout) throws IOException {
+    /* create channel and connect it */
+    SocketChannel channel = SocketChannel.open();
+    try {
+      channel.connect(new InetSocketAddress(host, port));
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    Socket socket = channel.socket();
+    socket.setSoTimeout(timeout);// set timeout
+    return socket;
+  }
+
   /*
    * - - - - - - - - Server Sockets - - - - - - - -
    */
@@ -123,6 +173,28 @@ public class SocketUtils {
     return ServerSocketFactory.getDefault().createServerSocket(port, limit, address);
   }
 
+  /**
+   * Creates a server socket backed by a {@link ServerSocketChannel}. The accepted sockets have a blocking channel,
+   * so files sent over them with {@link ConnectionUtils#sendFile(Socket, File)} are transferred by the kernel.
+   *
+   * @param port    port to listen on
+   * @param limit   maximum length of the queue of incoming connections
+   * @param address address to bind to, null for all local addresses
+   * @return bound server socket with a channel
+   * @throws IOException port already in use
+   */
+  public static ServerSocket createChannelServerSocket(int port, int limit, InetAddress address) throws IOException {
+    /* create channel and bind it to passed port and address */
+    ServerSocketChannel channel = ServerSocketChannel.open();
+    try {
+      channel.bind(new InetSocketAddress(address, port), limit);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return channel.socket();
+  }
+
   /*
    * - - - - - - - - Local addresses - - - - - - - -
    */
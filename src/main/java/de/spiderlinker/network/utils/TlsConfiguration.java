@@ -0,0 +1,224 @@
+package de.spiderlinker.network.utils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * TLS settings of a server or client: the {@link SSLContext} with the keys and trusted certificates,
+ * the enabled protocols and the enabled cipher suites.
+ * <br>
+ * By default only TLS 1.3 and TLS 1.2 with forward secrecy and AEAD ciphers (AES-GCM, ChaCha20-Poly1305)
+ * are enabled, the server prefers its own order (AES-128-GCM first, which is hardware accelerated on most CPUs).
+ * Settings which are not supported by the context are ignored.
+ * <br>
+ * Sessions are cached by the context, so a client which connects again to the same host and port with the same
+ * configuration resumes its session (TLS 1.3 session tickets or TLS 1.2 session IDs) and skips the key exchange
+ * and the certificate verification. Server and client must therefore share their configuration between connections.
+ */
+public final class TlsConfiguration {
+
+  /** Protocols enabled by default, in order of preference */
+  public static final List<String> DEFAULT_PROTOCOLS = Collections.unmodifiableList(Arrays.asList("TLSv1.3", "TLSv1.2"));
+
+  /** Cipher suites enabled by default, in order of preference */
+  public static final List<String> DEFAULT_CIPHER_SUITES = Collections.unmodifiableList(Arrays.asList(
+      // TLS 1.3
+      "TLS_AES_128_GCM_SHA256",
+      "TLS_CHACHA20_POLY1305_SHA256",
+      "TLS_AES_256_GCM_SHA384",
+      // TLS 1.2, ephemeral key exchange only
+      "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+      "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+      "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+      "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256",
+      "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+      "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384"));
+
+  /** Default number of cached sessions (client and server side) */
+  public static final int DEFAULT_SESSION_CACHE_SIZE = 10000;
+  /** Default time in seconds a cached session may be resumed */
+  public static final int DEFAULT_SESSION_TIMEOUT = 24 * 60 * 60;
+
+  private final SSLContext context;
+  private final String[] protocols;
+  private final String[] cipherSuites;
+
+  private TlsConfiguration(final SSLContext context, final String[] protocols, final String[] cipherSuites) {
+    this.context = context;
+    this.protocols = protocols;
+    this.cipherSuites = cipherSuites;
+  }
+
+  /**
+   * Creates a configuration with the default protocols, cipher suites and session cache.
+   *
+   * @param context initialized context with the keys (server) and trusted certificates (client)
+   * @return configuration for the context
+   */
+  public static TlsConfiguration of(final SSLContext context) {
+    final SSLParameters supported = Objects.requireNonNull(context).getSupportedSSLParameters();
+    final TlsConfiguration configuration = new TlsConfiguration(context,
+        filter(DEFAULT_PROTOCOLS, supported.getProtocols()),
+        filter(DEFAULT_CIPHER_SUITES, supported.getCipherSuites()));
+    return configuration.withSessionCache(DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT);
+  }
+
+  /**
+   * @return configuration of the default context of the JVM (see {@link SSLContext#getDefault()})
+   * @throws IOException no default context available
+   */
+  public static TlsConfiguration getDefault() throws IOException {
+    try {
+      return of(SSLContext.getDefault());
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IOException("No default SSLContext available", e);
+    }
+  }
+
+  /**
+   * @param protocols protocols to enable, in order of preference
+   * @return configuration with the given protocols (as far as they are supported by the context)
+   */
+  public TlsConfiguration withProtocols(final String... protocols) {
+    return new TlsConfiguration(context,
+        filter(Arrays.asList(protocols), context.getSupportedSSLParameters().getProtocols()), cipherSuites);
+  }
+
+  /**
+   * @param cipherSuites cipher suites to enable, in order of preference
+   * @return configuration with the given cipher suites (as far as they are supported by the context)
+   */
+  public TlsConfiguration withCipherSuites(final String... cipherSuites) {
+    return new TlsConfiguration(context, protocols,
+        filter(Arrays.asList(cipherSuites), context.getSupportedSSLParameters().getCipherSuites()));
+  }
+
+  /**
+   * Configures the session caches of the context (shared by all configurations of the context).
+   *
+   * @param size           maximum number of cached sessions (0 = unlimited)
+   * @param timeoutSeconds time a session may be resumed (0 = unlimited)
+   * @return this configuration
+   */
+  public TlsConfiguration withSessionCache(final int size, final int timeoutSeconds) {
+    if (size < 0 || timeoutSeconds < 0) {
+      throw new IllegalArgumentException("Invalid session cache! (size>=0, timeout>=0)");
+    }
+    for (final SSLSessionContext sessions : Arrays.asList(context.getClientSessionContext(), context.getServerSessionContext())) {
+      if (sessions != null) {
+        sessions.setSessionCacheSize(size);
+        sessions.setSessionTimeout(timeoutSeconds);
+      }
+    }
+    return this;
+  }
+
+  public SSLContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return enabled protocols
+   */
+  public String[] getProtocols() {
+    return protocols.clone();
+  }
+
+  /**
+   * @return enabled cipher suites
+   */
+  public String[] getCipherSuites() {
+    return cipherSuites.clone();
+  }
+
+  /**
+   * Connects to the given host. The TLS handshake is performed with the first read or write.
+   *
+   * @param host    host to connect to
+   * @param port    port of host to connect to
+   * @param timeout read timeout of the socket
+   * @return connected socket
+   * @throws IOException host not reachable
+   */
+  public SSLSocket createSocket(final String host, final int port, final int timeout) throws IOException {
+    // host and port identify the cached session to resume
+    final SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(host, port);
+    configure(socket);
+    // the handshake consists of several small records, which must not wait for delayed acknowledgements
+    socket.setTcpNoDelay(true);
+    socket.setSoTimeout(timeout);
+    return socket;
+  }
+
+  /**
+   * @param port    port to listen on
+   * @param limit   maximum length of the queue of incoming connections
+   * @param address address to bind to, null for all local addresses
+   * @return bound server socket
+   * @throws IOException port already in use
+   */
+  public SSLServerSocket createServerSocket(final int port, final int limit, final InetAddress address) throws IOException {
+    final SSLServerSocket serverSocket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(port, limit, address);
+    serverSocket.setSSLParameters(createParameters());
+    return serverSocket;
+  }
+
+  /**
+   * Creates the engine of a non-blocking server connection. The handshake is performed by the first
+   * {@link SSLEngine#unwrap(java.nio.ByteBuffer, java.nio.ByteBuffer)} of the data of the client.
+   *
+   * @return engine in server mode with the protocols and cipher suites of this configuration
+   */
+  public SSLEngine createServerEngine() {
+    final SSLEngine engine = context.createSSLEngine();
+    engine.setUseClientMode(false);
+    engine.setSSLParameters(createParameters());
+    return engine;
+  }
+
+  /**
+   * Enables the protocols and cipher suites of this configuration.
+   *
+   * @param socket socket to configure
+   */
+  public void configure(final SSLSocket socket) {
+    socket.setSSLParameters(createParameters());
+  }
+
+  private SSLParameters createParameters() {
+    final SSLParameters parameters = context.getDefaultSSLParameters();
+    parameters.setProtocols(protocols);
+    parameters.setCipherSuites(cipherSuites);
+    parameters.setUseCipherSuitesOrder(true);
+    return parameters;
+  }
+
+  private static String[] filter(final List<String> requested, final String[] supported) {
+    final Set<String> available = new HashSet<>(Arrays.asList(supported));
+    final List<String> enabled = new ArrayList<>();
+    for (final String value : requested) {
+      if (available.contains(value)) {
+        enabled.add(value);
+      }
+    }
+    if (enabled.isEmpty()) {
+      throw new IllegalArgumentException("None of " + requested + " is supported");
+    }
+    return enabled.toArray(new String[0]);
+  }
+
+}
@@ -0,0 +1,188 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.ClientPool;
+import de.spiderlinker.network.client.ClientPoolStatistics;
+import de.spiderlinker.network.client.PooledClient;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ClientPoolTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24640;
+  private static final String HOST        = "localhost";
+  private static final String MESSAGE_ID  = "POOLED";
+
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+  private ServerManager server;
+  private ClientPool    pool = new ClientPool();
+
+  @AfterEach
+  public void shutdown() {
+    pool.close();
+    server.stop();
+  }
+
+  @Test
+  public void testConnectionIsReused() throws Exception {
+    startServer(SERVER_PORT, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+
+    for (int i = 0; i < 100; i++) {
+      Assertions.assertEquals(i, (int) pool.exchange(HOST, SERVER_PORT, new DataPackage(MESSAGE_ID, i)).get(0));
+    }
+
+    ClientPoolStatistics statistics = pool.getStatistics();
+    System.out.println(statistics);
+    Assertions.assertEquals(1, statistics.getMisses());
+    Assertions.assertEquals(99, statistics.getHits());
+    Assertions.assertEquals(1, statistics.getIdleConnections());
+    Assertions.assertEquals(0, statistics.getActiveConnections());
+    Assertions.assertEquals(1, connections.size());
+  }
+
+  @Test
+  public void testConcurrentBorrowers() throws Exception {
+    startServer(SERVER_PORT + 1, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+    pool.setMaxConnections(4);
+
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int thread = 0; thread < 16; thread++) {
+        results.add(executor.submit(() -> {
+          for (int i = 0; i < 50; i++) {
+            Assertions.assertEquals(i, (int) pool.exchange(HOST, SERVER_PORT + 1, new DataPackage(MESSAGE_ID, i)).get(0));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    ClientPoolStatistics statistics = pool.getStatistics();
+    System.out.println(statistics);
+    Assertions.assertTrue(statistics.getCreatedConnections() <= 4, "At most 4 connections must be opened");
+    Assertions.assertEquals(16 * 50, statistics.getHits() + statistics.getMisses());
+  }
+
+  @Test
+  public void testBorrowTimeout() throws Exception {
+    startServer(SERVER_PORT + 2, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+    pool.setMaxConnections(1);
+    pool.setBorrowTimeout(100);
+
+    try (PooledClient client = pool.borrow(HOST, SERVER_PORT + 2)) {
+      Assertions.assertThrows(SocketTimeoutException.class, () -> pool.borrow(HOST, SERVER_PORT + 2));
+    }
+    try (PooledClient client = pool.borrow(HOST, SERVER_PORT + 2)) {
+      Assertions.assertEquals(1, (int) client.exchange(new DataPackage(MESSAGE_ID, 1)).get(0));
+    }
+
+    ClientPoolStatistics statistics = pool.getStatistics();
+    Assertions.assertEquals(1, statistics.getBorrowTimeouts());
+    Assertions.assertTrue(statistics.getTotalWaitTime(TimeUnit.MILLISECONDS) >= 100);
+  }
+
+  @Test
+  public void testConnectionClosedByServerIsRemoved() throws Exception {
+    startServer(SERVER_PORT + 3, 200);
+    pool.setMaxIdleTime(0);
+    pool.setHealthCheckInterval(100);
+
+    pool.exchange(HOST, SERVER_PORT + 3, new DataPackage(MESSAGE_ID, 0));
+    Thread.sleep(600);
+
+    ClientPoolStatistics statistics = pool.getStatistics();
+    Assertions.assertEquals(0, statistics.getIdleConnections());
+    Assertions.assertEquals(1, statistics.getClosedConnections());
+    Assertions.assertEquals(1, (int) pool.exchange(HOST, SERVER_PORT + 3, new DataPackage(MESSAGE_ID, 1)).get(0));
+  }
+
+  @Test
+  public void testMaxLifetime() throws Exception {
+    startServer(SERVER_PORT + 4, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+    pool.setMaxLifetime(100);
+
+    pool.exchange(HOST, SERVER_PORT + 4, new DataPackage(MESSAGE_ID, 0));
+    Thread.sleep(150);
+    pool.exchange(HOST, SERVER_PORT + 4, new DataPackage(MESSAGE_ID, 1));
+
+    Assertions.assertEquals(2, pool.getStatistics().getMisses());
+    Assertions.assertEquals(2, connections.size());
+  }
+
+  @Test
+  public void testMinIdle() throws Exception {
+    startServer(SERVER_PORT + 5, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+    pool.setMinIdle(3);
+    pool.setHealthCheckInterval(50);
+
+    pool.exchange(HOST, SERVER_PORT + 5, new DataPackage(MESSAGE_ID, 0));
+    Thread.sleep(300);
+
+    Assertions.assertEquals(3, pool.getStatistics().getIdleConnections());
+  }
+
+  @Test
+  public void testBrokenClientIsNotReused() throws Exception {
+    startServer(SERVER_PORT + 6, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+
+    try (PooledClient client = pool.borrow(HOST, SERVER_PORT + 6)) {
+      client.closeConnection();
+    }
+
+    Assertions.assertEquals(0, pool.getStatistics().getIdleConnections());
+    Assertions.assertEquals(1, pool.getStatistics().getClosedConnections());
+  }
+
+  private void startServer(int port, int keepAliveTimeout) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(EngineType.SELECTOR);
+    server.setKeepAliveTimeout(keepAliveTimeout);
+    server.registerMethod(MESSAGE_ID, (data, socket) -> {
+      connections.add(socket);
+      try {
+        server.sendMessage(socket, new DataPackage("ANSWER", data.getObject(0)));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    Assertions.assertTrue(server.start());
+
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; attempt < 50 && !isListening(port); attempt++) {
+      Thread.sleep(20);
+    }
+  }
+
+  private boolean isListening(int port) {
+    try (Socket socket = new Socket(HOST, port)) {
+      return socket.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+}
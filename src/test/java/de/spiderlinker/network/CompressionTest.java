@@ -0,0 +1,185 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.StreamBody;
+import de.spiderlinker.network.protocol.Compression;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+public class CompressionTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24750;
+  private static final String HOST        = "localhost";
+  private static final String ECHO_ID     = "ECHO";
+  private static final String UPLOAD_ID   = "UPLOAD";
+  private static final int    MESSAGES    = 20;
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testDeflateThreadPerConnection() throws Exception {
+    assertCompressed(EngineType.THREAD_PER_CONNECTION, Compression.DEFLATE, SERVER_PORT);
+  }
+
+  @Test
+  public void testDeflateSelector() throws Exception {
+    assertCompressed(EngineType.SELECTOR, Compression.DEFLATE, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testLz4ThreadPerConnection() throws Exception {
+    assertCompressed(EngineType.THREAD_PER_CONNECTION, Compression.LZ4, SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testLz4Selector() throws Exception {
+    assertCompressed(EngineType.SELECTOR, Compression.LZ4, SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testCompressionDisabled() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 4, false);
+    client = createClient(SERVER_PORT + 4, Compression.DEFLATE);
+
+    // the server answers the handshake without compression
+    String text = text(100_000);
+    echo(text);
+    Assertions.assertTrue(server.getMetrics().getBytesIn() > text.length(), server.getMetrics().toString());
+  }
+
+  @Test
+  public void testCompressedBody() throws Exception {
+    for (EngineType engineType : EngineType.values()) {
+      int port = SERVER_PORT + 5 + engineType.ordinal();
+      startServer(engineType, port, true);
+      client = createClient(port, Compression.LZ4);
+
+      byte[] body = text(2 * 1024 * 1024).getBytes(StandardCharsets.UTF_8);
+      CRC32 expected = new CRC32();
+      expected.update(body, 0, body.length);
+      for (int i = 0; i < 2; i++) {
+        client.sendMessage(new DataPackage(UPLOAD_ID).setBody(StreamBody.of(new ByteArrayInputStream(body))));
+        DataPackage result = client.receiveMessage();
+        Assertions.assertEquals(body.length, result.getLong(0));
+        Assertions.assertEquals(expected.getValue(), result.getLong(1));
+      }
+      Assertions.assertTrue(server.getMetrics().getBytesIn() < body.length, server.getMetrics().toString());
+
+      client.closeConnection();
+      server.stop();
+    }
+  }
+
+  private void assertCompressed(EngineType engineType, Compression compression, int port) throws Exception {
+    startServer(engineType, port, true);
+    client = createClient(port, Compression.NONE);
+    String text = text(100_000);
+    long start = System.nanoTime();
+    echo(text);
+    long plainNanos = System.nanoTime() - start;
+    long plainBytes = server.getMetrics().getBytesIn();
+    long plainRepliedBytes = server.getMetrics().getBytesOut();
+    client.closeConnection();
+
+    client.setCompression(compression);
+    start = System.nanoTime();
+    echo(text);
+    // small messages are not compressed
+    Assertions.assertEquals("small", client.exchange(new DataPackage(ECHO_ID, "small")).get(0));
+    long compressedNanos = System.nanoTime() - start;
+    long compressedBytes = server.getMetrics().getBytesIn() - plainBytes;
+
+    System.out.printf("%s %s: %d -> %d bytes, %d -> %d us%n", engineType, compression, plainBytes, compressedBytes,
+        plainNanos / 1000, compressedNanos / 1000);
+    Assertions.assertTrue(compressedBytes < plainBytes / 3, compressedBytes + " of " + plainBytes + " bytes");
+    // the replies are compressed as well
+    long compressedRepliedBytes = server.getMetrics().getBytesOut() - plainRepliedBytes;
+    Assertions.assertTrue(compressedRepliedBytes < plainRepliedBytes / 3, compressedRepliedBytes + " of " + plainRepliedBytes + " bytes");
+  }
+
+  private void echo(String text) throws Exception {
+    for (int i = 0; i < MESSAGES; i++) {
+      String message = i + text;
+      DataPackage reply = client.exchange(new DataPackage(ECHO_ID, message));
+      Assertions.assertEquals(message, reply.get(0));
+    }
+  }
+
+  private Client createClient(int port, Compression compression) {
+    Client newClient = new Client(HOST, port);
+    newClient.setKeepAlive(true);
+    newClient.setCompression(compression);
+    return newClient;
+  }
+
+  private void startServer(EngineType engineType, int port, boolean compressionEnabled) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.setCompressionEnabled(compressionEnabled);
+    server.registerMethod(ECHO_ID, (data, socket) -> reply(socket, new DataPackage(ECHO_ID, data.<String>get(0))));
+    server.registerMethod(UPLOAD_ID, this::receiveUpload);
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+  }
+
+  private void receiveUpload(DataPackage data, Socket socket) {
+    try {
+      InputStream body = data.getBody().getInputStream();
+      CRC32 crc = new CRC32();
+      byte[] buffer = new byte[8192];
+      long received = 0;
+      int read;
+      while ((read = body.read(buffer)) >= 0) {
+        crc.update(buffer, 0, read);
+        received += read;
+      }
+      reply(socket, new DataPackage("RESULT", received, crc.getValue()));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void reply(Socket socket, DataPackage reply) {
+    try {
+      server.sendMessage(socket, reply);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @return bulky, repetitive text like a log file
+   */
+  private static String text(int length) {
+    StringBuilder text = new StringBuilder(length + 100);
+    int line = 0;
+    while (text.length() < length) {
+      text.append("2024-01-01 12:00:").append(line % 60).append(" INFO  [worker-").append(line % 8)
+          .append("] de.spiderlinker.network.server.ServerManager - handled request ").append(line++).append('\n');
+    }
+    return text.substring(0, length);
+  }
+
+}
@@ -0,0 +1,200 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import de.spiderlinker.network.server.TimeoutStatistics;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import de.spiderlinker.network.utils.TlsConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+public class ConnectionTimeoutTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24700;
+  private static final String HOST        = "localhost";
+  private static final String MESSAGE_ID  = "TIMEOUT";
+  private static final int    TIMEOUT     = 200;
+
+  private final List<ServerManager> servers = new ArrayList<>();
+  private Client client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    servers.forEach(ServerManager::stop);
+  }
+
+  @Test
+  public void testHandshakeTimeoutThreadPerConnection() throws Exception {
+    expectHandshakeTimeout(startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT, false), SERVER_PORT);
+  }
+
+  @Test
+  public void testHandshakeTimeoutSelector() throws Exception {
+    expectHandshakeTimeout(startServer(EngineType.SELECTOR, SERVER_PORT + 1, false), SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testTlsHandshakeTimeoutThreadPerConnection() throws Exception {
+    expectHandshakeTimeout(startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 2, true), SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testTlsHandshakeTimeoutSelector() throws Exception {
+    expectHandshakeTimeout(startServer(EngineType.SELECTOR, SERVER_PORT + 3, true), SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testReadTimeoutThreadPerConnection() throws Exception {
+    expectReadTimeout(startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 4, false), SERVER_PORT + 4);
+  }
+
+  @Test
+  public void testReadTimeoutSelector() throws Exception {
+    expectReadTimeout(startServer(EngineType.SELECTOR, SERVER_PORT + 5, false), SERVER_PORT + 5);
+  }
+
+  @Test
+  public void testIdleTimeoutThreadPerConnection() throws Exception {
+    expectIdleTimeout(startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 6, false), SERVER_PORT + 6);
+  }
+
+  @Test
+  public void testIdleTimeoutSelector() throws Exception {
+    expectIdleTimeout(startServer(EngineType.SELECTOR, SERVER_PORT + 7, false), SERVER_PORT + 7);
+  }
+
+  @Test
+  public void testActiveSessionIsNotClosedSelector() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 8, false);
+    client = new Client(HOST, SERVER_PORT + 8);
+    client.setKeepAlive(true);
+
+    // every exchange starts a new idle timeout
+    long end = System.currentTimeMillis() + 3 * TIMEOUT;
+    for (int i = 0; System.currentTimeMillis() < end; i++) {
+      Assertions.assertEquals(i, (int) client.exchange(new DataPackage(MESSAGE_ID, i)).get(0));
+      Thread.sleep(TIMEOUT / 4);
+    }
+    Assertions.assertEquals(0, servers.get(0).getTimeoutStatistics().getTotalTimeouts());
+  }
+
+  @Test
+  public void testReadTimeoutOfSessionThreadPerConnection() throws Exception {
+    ServerManager server = startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 9, false, 60_000);
+    try (Socket socket = new Socket(HOST, SERVER_PORT + 9)) {
+      OutputStream output = socket.getOutputStream();
+      output.write((ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE + "\n").getBytes(StandardCharsets.UTF_8));
+      output.flush();
+      Assertions.assertEquals(ConnectionUtils.HANDSHAKE_ACCEPTED, ConnectionUtils.readLine(socket));
+
+      // the request of the session started, so the read timeout applies instead of the keep-alive timeout
+      output.write(new byte[]{(byte) 0xAC, (byte) 0xED, 0x00, 0x05});
+      output.flush();
+      assertClosedByServer(socket);
+    }
+    awaitTimeouts(server, TimeoutStatistics::getReadTimeouts, 1);
+    Assertions.assertEquals(0, server.getTimeoutStatistics().getIdleTimeouts());
+  }
+
+  private void expectHandshakeTimeout(ServerManager server, int port) throws Exception {
+    // a client which connects but never sends its handshake
+    try (Socket socket = new Socket(HOST, port)) {
+      assertClosedByServer(socket);
+    }
+    awaitTimeouts(server, TimeoutStatistics::getHandshakeTimeouts, 1);
+    Assertions.assertEquals(1, server.getTimeoutStatistics().getTotalTimeouts());
+  }
+
+  private void expectReadTimeout(ServerManager server, int port) throws Exception {
+    try (Socket socket = new Socket(HOST, port)) {
+      OutputStream output = socket.getOutputStream();
+      output.write((ConnectionUtils.HANDSHAKE_REQUEST + "\n").getBytes(StandardCharsets.UTF_8));
+      output.flush();
+      Assertions.assertEquals(ConnectionUtils.HANDSHAKE_ACCEPTED, ConnectionUtils.readLine(socket));
+
+      // the header of an object stream, the object itself is never sent
+      output.write(new byte[]{(byte) 0xAC, (byte) 0xED, 0x00, 0x05});
+      output.flush();
+      assertClosedByServer(socket);
+    }
+    awaitTimeouts(server, TimeoutStatistics::getReadTimeouts, 1);
+    Assertions.assertEquals(0, server.getTimeoutStatistics().getHandshakeTimeouts());
+  }
+
+  private void expectIdleTimeout(ServerManager server, int port) throws Exception {
+    client = new Client(HOST, port);
+    client.setKeepAlive(true);
+    Assertions.assertEquals(1, (int) client.exchange(new DataPackage(MESSAGE_ID, 1)).get(0));
+
+    awaitTimeouts(server, TimeoutStatistics::getIdleTimeouts, 1);
+    Assertions.assertThrows(IOException.class, () -> client.exchange(new DataPackage(MESSAGE_ID, 2)));
+    Assertions.assertEquals(0, server.getTimeoutStatistics().getReadTimeouts());
+  }
+
+  private static void assertClosedByServer(Socket socket) throws IOException {
+    socket.setSoTimeout(10 * TIMEOUT);
+    InputStream input = socket.getInputStream();
+    try {
+      // a TLS server sends its close alert before it closes the connection
+      while (input.read() >= 0) {
+        // skip remaining data of the server
+      }
+    } catch (IOException e) {
+      // connection reset
+    }
+  }
+
+  private static void awaitTimeouts(ServerManager server, ToLongFunction<TimeoutStatistics> counter, long expected)
+      throws InterruptedException {
+    long end = System.currentTimeMillis() + 10 * TIMEOUT;
+    while (counter.applyAsLong(server.getTimeoutStatistics()) < expected && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(expected, counter.applyAsLong(server.getTimeoutStatistics()),
+        server.getTimeoutStatistics().toString());
+  }
+
+  private ServerManager startServer(EngineType engineType, int port, boolean tls) throws Exception {
+    return startServer(engineType, port, tls, TIMEOUT);
+  }
+
+  private ServerManager startServer(EngineType engineType, int port, boolean tls, int keepAliveTimeout) throws Exception {
+    ServerManager server = new ServerManager(port) {
+    };
+    servers.add(server);
+    server.setEngineType(engineType);
+    server.setHandshakeTimeout(TIMEOUT);
+    server.setReadTimeout(TIMEOUT);
+    server.setKeepAliveTimeout(keepAliveTimeout);
+    if (tls) {
+      server.setTls(TlsConfiguration.of(TlsTest.createContext()));
+    }
+    server.registerMethod(MESSAGE_ID, (data, socket) -> {
+      try {
+        server.sendMessage(socket, new DataPackage("ANSWER", data.getObject(0)));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+    return server;
+  }
+
+}
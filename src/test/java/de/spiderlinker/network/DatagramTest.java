@@ -0,0 +1,191 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.DatagramClient;
+import de.spiderlinker.network.codec.BinaryCodec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.DatagramServerManager;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class DatagramTest extends AbstractTest {
+
+  private static final int    SERVER_PORT  = 24720;
+  private static final String HOST         = "localhost";
+  private static final String TELEMETRY_ID = "TELEMETRY";
+  private static final int    MESSAGES     = 200;
+
+  private final List<DataPackage>   received = Collections.synchronizedList(new ArrayList<>());
+  private final List<SocketAddress> senders  = Collections.synchronizedList(new ArrayList<>());
+  private final List<Socket>        sockets  = Collections.synchronizedList(new ArrayList<>());
+
+  private DatagramServerManager server;
+  private DatagramClient        client;
+
+  @AfterEach
+  public void shutdown() throws IOException {
+    if (client != null) {
+      client.close();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testSendMessage() throws Exception {
+    CountDownLatch latch = startServer(SERVER_PORT, 1);
+    client = new DatagramClient(HOST, SERVER_PORT);
+    client.sendMessage(TELEMETRY_ID, 42, "cpu");
+
+    Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(42, (int) received.get(0).get(0));
+    Assertions.assertEquals("cpu", received.get(0).get(1));
+    Assertions.assertTrue(senders.get(0) instanceof InetSocketAddress);
+    Assertions.assertNull(sockets.get(0));
+    Assertions.assertEquals(1, client.getSentDatagrams());
+  }
+
+  @Test
+  public void testBatchSend() throws Exception {
+    CountDownLatch latch = startServer(SERVER_PORT + 1, MESSAGES);
+    client = new DatagramClient(HOST, SERVER_PORT + 1);
+    List<DataPackage> batch = new ArrayList<>();
+    for (int i = 0; i < MESSAGES; i++) {
+      batch.add(new DataPackage(TELEMETRY_ID, i));
+    }
+    int datagrams = client.sendMessages(batch);
+
+    Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS), received.size() + " received");
+    Assertions.assertTrue(datagrams < MESSAGES / 10, datagrams + " datagrams");
+    Assertions.assertEquals(datagrams, server.getReceivedDatagrams());
+    Assertions.assertEquals(MESSAGES, server.getReceivedMessages());
+    // a single worker handles the packages in the order they were received
+    for (int i = 0; i < MESSAGES; i++) {
+      Assertions.assertEquals(i, (int) received.get(i).get(0));
+    }
+  }
+
+  @Test
+  public void testOversizedMessageIsRejected() throws Exception {
+    CountDownLatch latch = startServer(SERVER_PORT + 2, 1);
+    client = new DatagramClient(HOST, SERVER_PORT + 2, 512);
+    Assertions.assertThrows(IOException.class, () -> client.sendMessage(TELEMETRY_ID, new byte[1024]));
+    Assertions.assertEquals(0, client.getSentDatagrams());
+
+    client.sendMessage(TELEMETRY_ID, new byte[256]);
+    Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(256, ((byte[]) received.get(0).get(0)).length);
+  }
+
+  @Test
+  public void testInvalidAndUnhandledDatagrams() throws Exception {
+    CountDownLatch latch = startServer(SERVER_PORT + 3, 1);
+    try (DatagramSocket socket = new DatagramSocket()) {
+      byte[] garbage = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+      socket.send(new DatagramPacket(garbage, garbage.length, InetAddress.getByName(HOST), SERVER_PORT + 3));
+    }
+    client = new DatagramClient(HOST, SERVER_PORT + 3);
+    client.sendMessage("UNKNOWN", 1);
+    client.sendMessage(TELEMETRY_ID, 2);
+
+    Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, server.getInvalidDatagrams());
+    Assertions.assertEquals(1, server.getUnhandledMessages());
+    Assertions.assertEquals(2, server.getReceivedMessages());
+  }
+
+  @Test
+  public void testDeeplyNestedDatagram() throws Exception {
+    CountDownLatch latch = startServer(SERVER_PORT + 6, 1);
+    client = new DatagramClient(HOST, SERVER_PORT + 6);
+    client.sendMessage(TELEMETRY_ID, nestedLists(BinaryCodec.MAX_DEPTH + 1));
+    client.sendMessage(TELEMETRY_ID, 2);
+
+    // the receiving thread drops the datagram and still receives the next one
+    Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, server.getInvalidDatagrams());
+    Assertions.assertEquals(2, received.get(0).getInt(0));
+  }
+
+  private static List<Object> nestedLists(int depth) {
+    List<Object> list = new ArrayList<>();
+    for (int i = 1; i < depth; i++) {
+      List<Object> outer = new ArrayList<>();
+      outer.add(list);
+      list = outer;
+    }
+    return list;
+  }
+
+  @Test
+  public void testSharedHandlerRegistry() throws Exception {
+    ServerManager tcpServer = new ServerManager(SERVER_PORT + 4) {
+    };
+    CountDownLatch latch = new CountDownLatch(1);
+    tcpServer.registerMethod(TELEMETRY_ID, (data, socket) -> latch.countDown());
+
+    server = new DatagramServerManager(SERVER_PORT + 4, tcpServer.getHandlerRegistry());
+    server.start();
+    client = new DatagramClient(HOST, SERVER_PORT + 4);
+    client.sendMessage(TELEMETRY_ID, 1);
+
+    Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalStateException.class, () -> server.setReceiveBatchSize(1));
+  }
+
+  @Test
+  public void testThroughput() throws Exception {
+    int messages = 100_000;
+    CountDownLatch latch = startServer(SERVER_PORT + 5, messages);
+    client = new DatagramClient(HOST, SERVER_PORT + 5);
+    List<DataPackage> batch = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < messages; i++) {
+      batch.add(new DataPackage(TELEMETRY_ID, i));
+      if (batch.size() == 50) {
+        client.sendMessages(batch);
+        batch.clear();
+        // loopback drops datagrams which exceed the receive buffer
+        if (i % 5000 == 0) {
+          Thread.sleep(1);
+        }
+      }
+    }
+    latch.await(10, TimeUnit.SECONDS);
+    long durationMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    System.out.println("Datagrams: " + server.getReceivedMessages() + "/" + messages + " messages in "
+        + client.getSentDatagrams() + " datagrams within " + durationMillis + " ms -> "
+        + (server.getReceivedMessages() * 1000 / durationMillis) + " messages/s");
+    Assertions.assertTrue(server.getReceivedMessages() > messages / 2, "Most messages must be received");
+  }
+
+  private CountDownLatch startServer(int port, int expectedMessages) throws IOException {
+    CountDownLatch latch = new CountDownLatch(expectedMessages);
+    server = new DatagramServerManager(port);
+    server.setReceiveBufferSize(4 * 1024 * 1024);
+    server.registerMethod(TELEMETRY_ID, (data, socket) -> {
+      received.add(data);
+      senders.add(DatagramServerManager.getSender());
+      sockets.add(socket);
+      latch.countDown();
+    });
+    server.start();
+    return latch;
+  }
+
+}
@@ -0,0 +1,223 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import de.spiderlinker.network.server.ShutdownStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class GracefulShutdownTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24690;
+  private static final String HOST        = "localhost";
+  private static final String SLOW_ID     = "SLOW";
+
+  private final List<ServerManager> servers = new ArrayList<>();
+  private final List<Client> clients = new ArrayList<>();
+  private CountDownLatch handlerStarted = new CountDownLatch(1);
+  private final CountDownLatch handlerInterrupted = new CountDownLatch(1);
+  private final CountDownLatch handlerCompleted = new CountDownLatch(1);
+
+  @AfterEach
+  public void shutdown() {
+    clients.forEach(Client::closeConnection);
+    servers.forEach(ServerManager::stop);
+  }
+
+  @Test
+  public void testAwaitStarted() throws Exception {
+    ServerManager server = createServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT, 0);
+    Assertions.assertThrows(IllegalStateException.class, server::awaitStarted);
+
+    server.start();
+    Assertions.assertTrue(server.awaitStarted(Duration.ofSeconds(5)));
+    try (Socket socket = new Socket(HOST, SERVER_PORT)) {
+      Assertions.assertTrue(socket.isConnected());
+    }
+
+    // the port is already in use
+    ServerManager second = createServer(EngineType.SELECTOR, SERVER_PORT, 0);
+    second.start();
+    Assertions.assertThrows(IOException.class, () -> second.awaitStarted(Duration.ofSeconds(5)));
+  }
+
+  @Test
+  public void testDrainThreadPerConnection() throws Exception {
+    drainRunningHandler(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testDrainSelector() throws Exception {
+    drainRunningHandler(EngineType.SELECTOR, SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testDrainPipelinedRequestsThreadPerConnection() throws Exception {
+    drainPipelinedRequests(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 7);
+  }
+
+  @Test
+  public void testDrainPipelinedRequestsSelector() throws Exception {
+    drainPipelinedRequests(EngineType.SELECTOR, SERVER_PORT + 8);
+  }
+
+  @Test
+  public void testDrainTimeoutThreadPerConnection() throws Exception {
+    abandonStraggler(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testDrainTimeoutSelector() throws Exception {
+    abandonStraggler(EngineType.SELECTOR, SERVER_PORT + 4);
+  }
+
+  @Test
+  public void testIdleSessionsAreClosedThreadPerConnection() throws Exception {
+    closeIdleSessions(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 5);
+  }
+
+  @Test
+  public void testIdleSessionsAreClosedSelector() throws Exception {
+    closeIdleSessions(EngineType.SELECTOR, SERVER_PORT + 6);
+  }
+
+  @Test
+  public void testStopLetsHandlersFinish() throws Exception {
+    ServerManager server = startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 9, 300);
+    Client client = new Client(HOST, SERVER_PORT + 9);
+    clients.add(client);
+    client.sendMessage(new DataPackage(SLOW_ID, 1));
+    Assertions.assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+
+    // returns right away, the running handler is not interrupted
+    long start = System.nanoTime();
+    server.stop();
+    Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 300);
+    Assertions.assertTrue(handlerCompleted.await(5, TimeUnit.SECONDS), "Handler must complete");
+    Assertions.assertEquals(1, handlerInterrupted.getCount());
+    Assertions.assertThrows(IOException.class, () -> new Socket(HOST, SERVER_PORT + 9).close());
+  }
+
+  @Test
+  public void testStopNowInterruptsHandlers() throws Exception {
+    ServerManager server = startServer(EngineType.SELECTOR, SERVER_PORT - 1, 60000);
+    Client client = new Client(HOST, SERVER_PORT - 1);
+    clients.add(client);
+    client.sendMessage(new DataPackage(SLOW_ID, 1));
+    Assertions.assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+
+    ShutdownStatistics statistics = server.stopNow();
+
+    Assertions.assertFalse(statistics.isDrained());
+    Assertions.assertEquals(1, statistics.getAbandonedTasks(), statistics.toString());
+    Assertions.assertTrue(handlerInterrupted.await(5, TimeUnit.SECONDS), "Handler must be interrupted");
+  }
+
+  private void drainRunningHandler(EngineType engineType, int port) throws Exception {
+    ServerManager server = startServer(engineType, port, 300);
+    CompletableFuture<DataPackage> answer = new Client(HOST, port).exchangeAsync(new DataPackage(SLOW_ID, 1));
+    Assertions.assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+
+    ShutdownStatistics statistics = server.stop(Duration.ofSeconds(5));
+
+    // the answer of the handler is still sent, but no further connections are accepted
+    Assertions.assertEquals(1, (int) answer.get(5, TimeUnit.SECONDS).get(0));
+    Assertions.assertTrue(statistics.isDrained(), statistics.toString());
+    Assertions.assertTrue(statistics.getCompletedTasks() >= 1, statistics.toString());
+    Assertions.assertTrue(statistics.getDrainTime().toMillis() < 5000, statistics.toString());
+    Assertions.assertThrows(IOException.class, () -> new Socket(HOST, port).close());
+  }
+
+  private void drainPipelinedRequests(EngineType engineType, int port) throws Exception {
+    handlerStarted = new CountDownLatch(3);
+    ServerManager server = startServer(engineType, port, 300);
+    Client client = new Client(HOST, port);
+    clients.add(client);
+    List<CompletableFuture<DataPackage>> answers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      answers.add(client.request(new DataPackage(SLOW_ID, i)));
+    }
+    Assertions.assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+
+    ShutdownStatistics statistics = server.stop(Duration.ofSeconds(5));
+
+    // the session is kept open until the answers of its running requests are sent
+    for (int i = 0; i < answers.size(); i++) {
+      Assertions.assertEquals(i, (int) answers.get(i).get(5, TimeUnit.SECONDS).get(0));
+    }
+    Assertions.assertTrue(statistics.isDrained(), statistics.toString());
+  }
+
+  private void abandonStraggler(EngineType engineType, int port) throws Exception {
+    ServerManager server = startServer(engineType, port, 60000);
+    Client client = new Client(HOST, port);
+    clients.add(client);
+    client.sendMessage(new DataPackage(SLOW_ID, 1));
+    Assertions.assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+
+    ShutdownStatistics statistics = server.stop(Duration.ofMillis(200));
+
+    Assertions.assertFalse(statistics.isDrained());
+    Assertions.assertEquals(1, statistics.getAbandonedTasks(), statistics.toString());
+    Assertions.assertTrue(statistics.getDrainTime().toMillis() < 2000, statistics.toString());
+    Assertions.assertTrue(handlerInterrupted.await(5, TimeUnit.SECONDS), "Straggler must be interrupted");
+  }
+
+  private void closeIdleSessions(EngineType engineType, int port) throws Exception {
+    ServerManager server = startServer(engineType, port, 0);
+    for (int i = 0; i < 5; i++) {
+      Client client = new Client(HOST, port);
+      client.setKeepAlive(true);
+      clients.add(client);
+      Assertions.assertEquals(i, (int) client.exchange(new DataPackage(SLOW_ID, i)).get(0));
+    }
+
+    ShutdownStatistics statistics = server.stop(Duration.ofSeconds(10));
+
+    // the sessions wait for their next request, so they are closed right away
+    Assertions.assertTrue(statistics.isDrained(), statistics.toString());
+    Assertions.assertEquals(0, statistics.getClosedConnections(), statistics.toString());
+    Assertions.assertTrue(statistics.getDrainTime().toMillis() < 2000, statistics.toString());
+  }
+
+  private ServerManager startServer(EngineType engineType, int port, long handlerMillis) throws Exception {
+    ServerManager server = createServer(engineType, port, handlerMillis);
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+    return server;
+  }
+
+  private ServerManager createServer(EngineType engineType, int port, long handlerMillis) {
+    ServerManager server = new ServerManager(port) {
+    };
+    servers.add(server);
+    server.setEngineType(engineType);
+    server.registerMethod(SLOW_ID, (data, socket) -> {
+      handlerStarted.countDown();
+      try {
+        Thread.sleep(handlerMillis);
+        handlerCompleted.countDown();
+        server.sendMessage(socket, new DataPackage("ANSWER", data.getObject(0)));
+      } catch (InterruptedException e) {
+        handlerInterrupted.countDown();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    return server;
+  }
+
+}
@@ -0,0 +1,113 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class KeepAliveSessionTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24590;
+  private static final int    MESSAGES    = 100;
+  private static final String MESSAGE_ID  = "SESSION";
+
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testSessionThreadPerConnection() throws Exception {
+    exchangeMessagesInSession(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testSessionSelector() throws Exception {
+    exchangeMessagesInSession(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testSessionTimeoutThreadPerConnection() throws Exception {
+    expectSessionTimeout(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testSessionTimeoutSelector() throws Exception {
+    expectSessionTimeout(EngineType.SELECTOR, SERVER_PORT + 3);
+  }
+
+  private void exchangeMessagesInSession(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+    client = createKeepAliveClient(port);
+
+    for (int i = 0; i < MESSAGES; i++) {
+      DataPackage answer = client.exchange(new DataPackage(MESSAGE_ID, i));
+      Assertions.assertEquals(i, (int) answer.get(0));
+    }
+
+    Assertions.assertEquals(1, connections.size(), "All messages must be sent over the same connection");
+  }
+
+  private void expectSessionTimeout(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port, 200);
+    client = createKeepAliveClient(port);
+
+    Assertions.assertEquals(0, (int) client.exchange(new DataPackage(MESSAGE_ID, 0)).get(0));
+    Thread.sleep(1000);
+
+    Assertions.assertThrows(IOException.class, () -> client.exchange(new DataPackage(MESSAGE_ID, 1)));
+  }
+
+  private void startServer(EngineType engineType, int port, int keepAliveTimeout) {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.setKeepAliveTimeout(keepAliveTimeout);
+    server.registerMethod(MESSAGE_ID, (data, socket) -> {
+      connections.add(socket);
+      try {
+        server.sendMessage(socket, new DataPackage("ANSWER", data.getObject(0)));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    Assertions.assertTrue(server.start());
+  }
+
+  private Client createKeepAliveClient(int port) throws Exception {
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; attempt < 50 && !isListening(port); attempt++) {
+      Thread.sleep(20);
+    }
+
+    Client keepAliveClient = new Client("localhost", port);
+    keepAliveClient.setKeepAlive(true);
+    return keepAliveClient;
+  }
+
+  private boolean isListening(int port) {
+    try (Socket socket = new Socket("localhost", port)) {
+      return socket.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,229 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.codec.BinaryCodec;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Peers which send corrupted or hostile messages only lose their own connection.
+ */
+public class MalformedInputTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24760;
+  private static final String HOST        = "localhost";
+  private static final String ECHO_ID     = "ECHO";
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testDeeplyNestedValuesSelector() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT);
+    assertConnectionClosed(SERVER_PORT, FrameCodec.flags(FrameCodec.TYPE_DATA, BinaryCodec.ID), nestedLists(200_000));
+    assertEcho(SERVER_PORT);
+  }
+
+  @Test
+  public void testDeeplyNestedValuesThreadPerConnection() throws Exception {
+    startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 1);
+    assertConnectionClosed(SERVER_PORT + 1, FrameCodec.flags(FrameCodec.TYPE_DATA, BinaryCodec.ID), nestedLists(200_000));
+    assertEcho(SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testUnacceptedCodecSelector() throws Exception {
+    assertUnacceptedCodecRejected(EngineType.SELECTOR, SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testUnacceptedCodecThreadPerConnection() throws Exception {
+    assertUnacceptedCodecRejected(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testOversizedFrameSelector() throws Exception {
+    assertOversizedFrameRejected(EngineType.SELECTOR, SERVER_PORT + 4);
+  }
+
+  @Test
+  public void testOversizedFrameThreadPerConnection() throws Exception {
+    assertOversizedFrameRejected(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 5);
+  }
+
+  /**
+   * The header of a frame which exceeds the maximum length closes the connection before its payload arrives.
+   */
+  private void assertOversizedFrameRejected(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    byte[] header = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_DATA, BinaryCodec.ID), new byte[0]);
+    int length = FrameCodec.DEFAULT_MAX_PAYLOAD_LENGTH + 1;
+    for (int i = 0; i < 4; i++) {
+      header[4 + i] = (byte) (length >>> (24 - 8 * i));
+    }
+    try (Socket socket = openFramedSession(port)) {
+      socket.getOutputStream().write(header);
+      Assertions.assertEquals(-1, socket.getInputStream().read());
+    }
+    assertEcho(port);
+  }
+
+  @Test
+  public void testOversizedLegacyObjectSelector() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 6, configured -> configured.setMaxPayloadLength(10_000));
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    JavaSerializationCodec.INSTANCE.encode(new DataPackage(ECHO_ID, new String(new char[50_000])), serialized);
+
+    try (Socket socket = new Socket(HOST, SERVER_PORT + 6)) {
+      socket.setSoTimeout(5000);
+      OutputStream output = socket.getOutputStream();
+      output.write((ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE + "\r\n").getBytes(StandardCharsets.UTF_8));
+      InputStream input = socket.getInputStream();
+      int read;
+      while ((read = input.read()) != '\n') {
+        Assertions.assertNotEquals(-1, read);
+      }
+      // the object is never completed, so the server would deserialize the growing bytes again and again
+      output.write(Arrays.copyOf(serialized.toByteArray(), serialized.size() - 1));
+      Assertions.assertEquals(-1, input.read());
+    }
+    assertEcho(SERVER_PORT + 6);
+  }
+
+  @Test
+  public void testFailingHandlerThreadPerConnection() throws Exception {
+    startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 7, configured -> configured.registerMethod("FAIL", (data, socket) -> {
+      throw new IllegalStateException("Handler failed");
+    }));
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    new BinaryCodec(false).encode(new DataPackage("FAIL"), encoded);
+
+    // the connection of a single message is closed although the handler threw an exception
+    try (Socket socket = openFramedConnection(SERVER_PORT + 7, ConnectionUtils.HANDSHAKE_REQUEST)) {
+      socket.getOutputStream().write(FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_DATA, BinaryCodec.ID), encoded.toByteArray()));
+      Assertions.assertEquals(-1, socket.getInputStream().read());
+    }
+    assertEcho(SERVER_PORT + 7);
+  }
+
+  /**
+   * A server which does not accept the Java serialization neither decodes Java serialized frames nor
+   * Java serialized values of binary frames.
+   */
+  private void assertUnacceptedCodecRejected(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port, configured -> configured.setCodec(new BinaryCodec(false)));
+    DataPackage data = new DataPackage(ECHO_ID, new StringBuilder("serialized"));
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    JavaSerializationCodec.INSTANCE.encode(data, serialized);
+    assertConnectionClosed(port, FrameCodec.flags(FrameCodec.TYPE_DATA, JavaSerializationCodec.ID), serialized.toByteArray());
+
+    ByteArrayOutputStream fallback = new ByteArrayOutputStream();
+    new BinaryCodec(true).encode(data, fallback);
+    assertConnectionClosed(port, FrameCodec.flags(FrameCodec.TYPE_DATA, BinaryCodec.ID), fallback.toByteArray());
+    assertEcho(port);
+  }
+
+  /**
+   * Sends the frame after the handshake and expects the server to close the connection.
+   */
+  private void assertConnectionClosed(int port, byte flags, byte[] payload) throws IOException {
+    try (Socket socket = openFramedSession(port)) {
+      socket.getOutputStream().write(FrameCodec.encodeFrame(flags, payload));
+      Assertions.assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  /**
+   * The server still answers other connections (which are handled by the same event loop).
+   */
+  private void assertEcho(int port) throws IOException {
+    client = new Client(HOST, port);
+    client.setKeepAlive(true);
+    Assertions.assertEquals("still alive", client.exchange(new DataPackage(ECHO_ID, "still alive")).getString(0));
+  }
+
+  private Socket openFramedSession(int port) throws IOException {
+    return openFramedConnection(port, ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE);
+  }
+
+  private Socket openFramedConnection(int port, String handshake) throws IOException {
+    Socket socket = new Socket(HOST, port);
+    socket.setSoTimeout(5000);
+    OutputStream output = socket.getOutputStream();
+    output.write(FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, 0), handshake.getBytes()));
+    DataInputStream input = new DataInputStream(socket.getInputStream());
+    byte[] header = new byte[FrameCodec.HEADER_LENGTH];
+    input.readFully(header);
+    input.readFully(new byte[FrameCodec.readPayloadLength(header, 0)]);
+    return socket;
+  }
+
+  /**
+   * @return package of the binary codec whose only value is a list in a list in a list...
+   */
+  private static byte[] nestedLists(int depth) {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    // tag, length and bytes of the id, request ID and one value
+    payload.write(14);
+    payload.write(1);
+    payload.write('X');
+    payload.write(0);
+    payload.write(1);
+    for (int i = 0; i < depth; i++) {
+      // list with one value
+      payload.write(12);
+      payload.write(1);
+    }
+    payload.write(0);
+    return payload.toByteArray();
+  }
+
+  private void startServer(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port, configured -> {
+    });
+  }
+
+  private void startServer(EngineType engineType, int port, Consumer<ServerManager> configuration) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    configuration.accept(server);
+    server.setIoThreadCount(1);
+    server.registerMethod(ECHO_ID, (data, socket) -> {
+      try {
+        server.sendMessage(socket, data.createReply(ECHO_ID, data.getString(0)));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+  }
+
+}
@@ -0,0 +1,227 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.client.ClientMetrics;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.Executable;
+import de.spiderlinker.network.metrics.HistogramSnapshot;
+import de.spiderlinker.network.metrics.JmxExporter;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import de.spiderlinker.network.server.ServerMetricsSnapshot;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class MetricsTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24710;
+  private static final String HOST        = "localhost";
+  private static final String ECHO_ID     = "ECHO";
+  private static final String SLOW_ID     = "SLOW";
+  private static final int    MESSAGES    = 50;
+
+  private final ClientMetrics clientMetrics = new ClientMetrics();
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testServerMetricsThreadPerConnection() throws Exception {
+    recordServerMetrics(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testServerMetricsSelector() throws Exception {
+    recordServerMetrics(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testHandshakeFailuresThreadPerConnection() throws Exception {
+    countDeniedHandshake(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testHandshakeFailuresSelector() throws Exception {
+    countDeniedHandshake(EngineType.SELECTOR, SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testJmxExport() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 4, true);
+    client = createClient(SERVER_PORT + 4);
+    client.exchange(new DataPackage(ECHO_ID, 1));
+    // the handled message is recorded after the answer was sent
+    long end = System.currentTimeMillis() + 2000;
+    while (server.getMetrics().getMessagesPerRoute().get(ECHO_ID) < 1 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(JmxExporter.DOMAIN + ":type=Server,name=\"" + (SERVER_PORT + 4) + "\"");
+    Assertions.assertEquals(1L, mBeanServer.getAttribute(name, "ReceivedMessages"));
+    Assertions.assertEquals(1, mBeanServer.getAttribute(name, "ActiveConnections"));
+    TabularData messages = (TabularData) mBeanServer.getAttribute(name, "MessagesPerRoute");
+    Assertions.assertEquals(1L, messages.get(new Object[]{ECHO_ID}).get("value"));
+
+    ObjectName clientName = JmxExporter.register(clientMetrics, "Client", "test");
+    Assertions.assertEquals(1L, mBeanServer.getAttribute(clientName, "Exchanges"));
+    JmxExporter.unregister(clientName);
+
+    server.stop();
+    Assertions.assertFalse(mBeanServer.isRegistered(name));
+  }
+
+  @Test
+  public void testHandlerLatenciesPerRoute() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 5, false);
+    Executable shared = this::answer;
+    server.registerMethod("FIRST", shared);
+    server.registerMethod("SECOND", shared);
+    server.registerMethod("PREFIX.*", shared);
+    client = createClient(SERVER_PORT + 5);
+    for (String id : new String[]{"FIRST", "SECOND", "SECOND", "PREFIX.A", "PREFIX.B", "PREFIX.C"}) {
+      client.exchange(new DataPackage(id, 1));
+    }
+
+    // the latency is recorded after the answer was sent
+    long end = System.currentTimeMillis() + 2000;
+    while (server.getMetrics().getMessagesPerRoute().get("PREFIX.*") < 3 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+
+    // a handler registered for several routes is reported per route
+    Map<String, Long> messages = server.getMetrics().getMessagesPerRoute();
+    Assertions.assertEquals(Arrays.asList(ECHO_ID, SLOW_ID, "FIRST", "SECOND", "PREFIX.*"), new ArrayList<>(messages.keySet()));
+    Assertions.assertEquals(1, (long) messages.get("FIRST"));
+    Assertions.assertEquals(2, (long) messages.get("SECOND"));
+    Assertions.assertEquals(3, (long) messages.get("PREFIX.*"));
+
+    // the metrics of replaced and removed routes are dropped
+    server.registerMethod("FIRST", this::answer);
+    server.unregisterMethod("SECOND");
+    Assertions.assertEquals(0, (long) server.getMetrics().getMessagesPerRoute().get("FIRST"));
+    Assertions.assertFalse(server.getMetrics().getMessagesPerRoute().containsKey("SECOND"));
+    server.getHandlerRegistry().replaceAll(Collections.singletonMap("PREFIX.*", shared));
+    Assertions.assertEquals(Collections.singletonMap("PREFIX.*", 3L), server.getMetrics().getMessagesPerRoute());
+    Assertions.assertTrue(server.getHandlerRegistry().swap(server.getHandlerRegistry().getVersion(), Collections.emptyMap()));
+    Assertions.assertTrue(server.getMetrics().getHandlerLatencies().isEmpty());
+  }
+
+  private void recordServerMetrics(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port, false);
+    client = createClient(port);
+    for (int i = 0; i < MESSAGES; i++) {
+      Assertions.assertEquals(i, (int) client.exchange(new DataPackage(ECHO_ID, i)).get(0));
+    }
+    Assertions.assertEquals(1, (int) client.exchange(new DataPackage(SLOW_ID, 1)).get(0));
+    client.sendMessage(new DataPackage("UNKNOWN", 1));
+    awaitReceivedMessages(MESSAGES + 2);
+    client.closeConnection();
+
+    ServerMetricsSnapshot metrics = awaitReceivedMessages(MESSAGES + 2);
+    Assertions.assertEquals(1, metrics.getAcceptedConnections(), metrics.toString());
+    Assertions.assertEquals(0, metrics.getHandshakeFailures(), metrics.toString());
+    Assertions.assertEquals(1, metrics.getUnhandledMessages(), metrics.toString());
+    Assertions.assertTrue(metrics.getBytesIn() > 0 && metrics.getBytesOut() > 0, metrics.toString());
+
+    HistogramSnapshot echo = metrics.getHandlerLatencies().get(ECHO_ID);
+    HistogramSnapshot slow = metrics.getHandlerLatencies().get(SLOW_ID);
+    Assertions.assertEquals(MESSAGES, echo.getCount());
+    Assertions.assertEquals(1, slow.getCount());
+    Assertions.assertTrue(slow.getMax() >= 50_000, slow.toString());
+    Assertions.assertTrue(echo.getMedian() < slow.getMedian(), echo + " " + slow);
+
+    // the client counts the same bytes as the server
+    Assertions.assertEquals(MESSAGES + 1, clientMetrics.getExchanges(), clientMetrics.toString());
+    Assertions.assertEquals(metrics.getBytesIn(), clientMetrics.getBytesOut(), clientMetrics.toString());
+    Assertions.assertEquals(metrics.getBytesOut(), clientMetrics.getBytesIn(), clientMetrics.toString());
+    Assertions.assertTrue(clientMetrics.getLatency().getMax() >= 50_000, clientMetrics.toString());
+    System.out.println(metrics);
+    System.out.println(clientMetrics);
+  }
+
+  private void countDeniedHandshake(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port, false);
+    try (Socket socket = new Socket(HOST, port)) {
+      OutputStream output = socket.getOutputStream();
+      output.write("INVALID\n".getBytes(StandardCharsets.UTF_8));
+      output.flush();
+      Assertions.assertEquals(ConnectionUtils.HANDSHAKE_DENIED, ConnectionUtils.readLine(socket));
+    }
+
+    long end = System.currentTimeMillis() + 2000;
+    while (server.getMetrics().getHandshakeFailures() == 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(1, server.getMetrics().getHandshakeFailures());
+    Assertions.assertEquals(1, server.getMetrics().getAcceptedConnections());
+  }
+
+  private ServerMetricsSnapshot awaitReceivedMessages(long expected) throws InterruptedException {
+    long end = System.currentTimeMillis() + 2000;
+    while (server.getMetrics().getReceivedMessages() < expected && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    // the bytes of the last answer are counted after it was written
+    Thread.sleep(50);
+    return server.getMetrics().getSnapshot();
+  }
+
+  private Client createClient(int port) {
+    Client newClient = new Client(HOST, port);
+    newClient.setKeepAlive(true);
+    newClient.setMetrics(clientMetrics);
+    return newClient;
+  }
+
+  private void startServer(EngineType engineType, int port, boolean jmx) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.setJmxEnabled(jmx);
+    server.registerMethod(ECHO_ID, (data, socket) -> answer(data, socket));
+    server.registerMethod(SLOW_ID, (data, socket) -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      answer(data, socket);
+    });
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+  }
+
+  private void answer(DataPackage data, Socket socket) {
+    try {
+      server.sendMessage(socket, new DataPackage("ANSWER", data.getObject(0)));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+}
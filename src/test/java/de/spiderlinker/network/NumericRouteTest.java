@@ -0,0 +1,153 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.protocol.RouteTable;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import de.spiderlinker.network.utils.SocketUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+public class NumericRouteTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24650;
+  private static final String HOST        = "localhost";
+  private static final String MESSAGE_ID  = "ROUTED";
+  private static final String PREFIX_ID   = "PREFIX.value";
+  private static final int    MESSAGES    = 10000;
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testNegotiationThreadPerConnection() throws Exception {
+    expectNegotiatedRoutes(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testNegotiationSelector() throws Exception {
+    expectNegotiatedRoutes(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testLatencyThreadPerConnection() throws Exception {
+    compareLatency(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testLatencySelector() throws Exception {
+    compareLatency(EngineType.SELECTOR, SERVER_PORT + 3);
+  }
+
+  private void expectNegotiatedRoutes(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+
+    try (Socket socket = SocketUtils.createSocket(HOST, port, SocketUtils.DEFAULT_TIMEOUT)) {
+      FrameCodec codec = FrameCodec.forSocket(socket, true, CodecRegistry.getDefault());
+      codec.setRouteNegotiation(true);
+      Assertions.assertTrue(codec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE));
+      Assertions.assertNotEquals(RouteTable.NO_ROUTE, codec.getRoutes().getRouteId(MESSAGE_ID));
+      Assertions.assertEquals(RouteTable.NO_ROUTE, codec.getRoutes().getRouteId("PREFIX.*"),
+          "Prefix routes must be sent with the ID string");
+
+      codec.writeObject(new DataPackage(MESSAGE_ID, 1));
+      Assertions.assertEquals(1, (int) ((DataPackage) codec.readObject()).get(0));
+      Assertions.assertEquals(codec.getRoutes().getRouteId(MESSAGE_ID), codec.getLastRouteId(),
+          "The answer must be sent with the route of its ID");
+
+      codec.writeObject(new DataPackage(PREFIX_ID, 2));
+      Assertions.assertEquals(2, (int) ((DataPackage) codec.readObject()).get(0));
+    }
+
+    // routes registered after the handshake of the client are sent with the ID string
+    client = createClient(port, true);
+    Assertions.assertEquals(3, (int) client.exchange(new DataPackage(MESSAGE_ID, 3)).get(0));
+    server.registerMethod("LATE", (data, socket) -> reply(socket, data));
+    Assertions.assertEquals(4, (int) client.exchange(new DataPackage("LATE", 4)).get(0));
+    Assertions.assertEquals(5, (int) client.request(new DataPackage(MESSAGE_ID, 5)).get(5, TimeUnit.SECONDS).get(0));
+  }
+
+  private void compareLatency(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+
+    long stringRouting = measureExchanges(createClient(port, false));
+    long numericRouting = measureExchanges(createClient(port, true));
+
+    System.out.printf("%s: %.1f us per exchange with ID strings, %.1f us with numeric routes%n", engineType,
+        stringRouting / 1000.0 / MESSAGES, numericRouting / 1000.0 / MESSAGES);
+  }
+
+  private long measureExchanges(Client client) throws IOException {
+    this.client = client;
+    try {
+      // warm up
+      for (int i = 0; i < MESSAGES / 10; i++) {
+        client.exchange(new DataPackage(MESSAGE_ID, i));
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < MESSAGES; i++) {
+        Assertions.assertEquals(i, (int) client.exchange(new DataPackage(MESSAGE_ID, i)).get(0));
+      }
+      return System.nanoTime() - start;
+    } finally {
+      client.closeConnection();
+    }
+  }
+
+  private Client createClient(int port, boolean numericRoutes) {
+    Client client = new Client(HOST, port);
+    client.setKeepAlive(true);
+    client.setNumericRoutes(numericRoutes);
+    return client;
+  }
+
+  private void startServer(EngineType engineType, int port) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.registerMethod(MESSAGE_ID, (data, socket) -> reply(socket, data));
+    server.registerMethod("PREFIX.*", (data, socket) -> reply(socket, data));
+    Assertions.assertTrue(server.start());
+
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; attempt < 50 && !isListening(port); attempt++) {
+      Thread.sleep(20);
+    }
+  }
+
+  private void reply(Socket socket, DataPackage data) {
+    try {
+      server.sendMessage(socket, new DataPackage(data.getID(), data.getObject(0)));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private boolean isListening(int port) {
+    try (Socket socket = new Socket(HOST, port)) {
+      return socket.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,178 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OutboundCoalescingTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24670;
+  private static final String HOST        = "localhost";
+  private static final String JOIN_ID     = "JOIN";
+  private static final String NEWS_ID     = "NEWS";
+  private static final int    CLIENTS     = 20;
+  private static final int    MESSAGES    = 200;
+
+  private final List<Client> clients = new ArrayList<>();
+  private final List<Socket> members = new ArrayList<>();
+  private final List<ServerManager> servers = new ArrayList<>();
+
+  @AfterEach
+  public void shutdown() {
+    clients.forEach(Client::closeConnection);
+    servers.forEach(ServerManager::stop);
+  }
+
+  @Test
+  public void testBroadcastThreadPerConnection() throws Exception {
+    broadcastToMembers(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testBroadcastSelector() throws Exception {
+    broadcastToMembers(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testQueuedMessagesToHost() throws Exception {
+    int port = SERVER_PORT + 2;
+    Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    CountDownLatch received = new CountDownLatch(MESSAGES * 10);
+    ServerManager receiver = startServer(EngineType.SELECTOR, port);
+    receiver.registerMethod(NEWS_ID, (data, socket) -> {
+      connections.add(socket);
+      received.countDown();
+    });
+
+    ServerManager sender = new ServerManager(port + 1) {
+    };
+    servers.add(sender);
+    sender.setOutboundCoalescing(5, ServerManager.DEFAULT_OUTBOUND_BATCH_SIZE);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < MESSAGES * 10; i++) {
+      sender.sendMessage(HOST, port, new DataPackage(NEWS_ID, i));
+    }
+    Assertions.assertTrue(received.await(10, TimeUnit.SECONDS), "All queued messages must be received");
+    long queued = System.nanoTime() - start;
+
+    Assertions.assertEquals(1, connections.size(), "All queued messages must be sent over the same connection");
+    System.out.printf("%d queued messages to a host: %.1f us per message%n",
+        MESSAGES * 10, queued / 1000.0 / (MESSAGES * 10));
+  }
+
+  @Test
+  public void testUnqueuedMessagesToHost() throws Exception {
+    int port = SERVER_PORT + 4;
+    CountDownLatch received = new CountDownLatch(MESSAGES);
+    ServerManager receiver = startServer(EngineType.SELECTOR, port);
+    receiver.registerMethod(NEWS_ID, (data, socket) -> received.countDown());
+
+    // without linger time every message is sent over its own connection
+    ServerManager sender = new ServerManager(port + 1) {
+    };
+    servers.add(sender);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < MESSAGES; i++) {
+      try (Socket socket = new Socket(HOST, port)) {
+        sender.sendMessage(socket, new DataPackage(NEWS_ID, i));
+      }
+    }
+    Assertions.assertTrue(received.await(10, TimeUnit.SECONDS));
+    System.out.printf("%d messages to a host without queue: %.1f us per message%n",
+        MESSAGES, (System.nanoTime() - start) / 1000.0 / MESSAGES);
+  }
+
+  private void broadcastToMembers(EngineType engineType, int port) throws Exception {
+    CountDownLatch joined = new CountDownLatch(CLIENTS);
+    ServerManager server = startServer(engineType, port);
+    server.registerMethod(JOIN_ID, (data, socket) -> {
+      synchronized (members) {
+        members.add(socket);
+      }
+      joined.countDown();
+    });
+
+    for (int i = 0; i < CLIENTS; i++) {
+      Client client = new Client(HOST, port);
+      client.setKeepAlive(true);
+      // every protocol gets the bytes of its own format
+      client.setLegacyProtocol(i % 3 == 1);
+      client.setNumericRoutes(i % 3 == 2);
+      client.sendMessage(new DataPackage(JOIN_ID));
+      clients.add(client);
+    }
+    Assertions.assertTrue(joined.await(10, TimeUnit.SECONDS));
+
+    // the first round warms up the encoding of both variants
+    for (int round = 0; round < 2; round++) {
+      int offset = round * 2 * MESSAGES;
+      long start = System.nanoTime();
+      for (int i = 0; i < MESSAGES; i++) {
+        Assertions.assertEquals(CLIENTS, server.broadcast(members, new DataPackage(NEWS_ID, offset + i)));
+      }
+      long broadcast = System.nanoTime() - start;
+      assertReceived(offset);
+
+      start = System.nanoTime();
+      for (int i = 0; i < MESSAGES; i++) {
+        for (Socket member : members) {
+          server.sendMessage(member, new DataPackage(NEWS_ID, offset + MESSAGES + i));
+        }
+      }
+      long separate = System.nanoTime() - start;
+      assertReceived(offset + MESSAGES);
+
+      System.out.printf("%s: %.1f us per broadcast to %d clients, %.1f us with a message per client%n", engineType,
+          broadcast / 1000.0 / MESSAGES, CLIENTS, separate / 1000.0 / MESSAGES);
+    }
+  }
+
+  private void assertReceived(int offset) throws IOException {
+    for (Client client : clients) {
+      for (int i = 0; i < MESSAGES; i++) {
+        DataPackage news = client.receiveMessage();
+        Assertions.assertEquals(NEWS_ID, news.getID());
+        Assertions.assertEquals(offset + i, (int) news.get(0));
+      }
+    }
+  }
+
+  private ServerManager startServer(EngineType engineType, int port) throws Exception {
+    ServerManager server = new ServerManager(port) {
+    };
+    servers.add(server);
+    server.setEngineType(engineType);
+    Assertions.assertTrue(server.start());
+
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; attempt < 50 && !isListening(port); attempt++) {
+      Thread.sleep(20);
+    }
+    return server;
+  }
+
+  private boolean isListening(int port) {
+    try (Socket socket = new Socket(HOST, port)) {
+      return socket.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+}
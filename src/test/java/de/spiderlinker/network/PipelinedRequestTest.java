@@ -0,0 +1,198 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class PipelinedRequestTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24600;
+  private static final int    REQUESTS    = 20;
+  private static final int    MAX_DELAY   = 200;
+  private static final String MESSAGE_ID  = "DELAYED_ECHO";
+
+  private final Set<Socket>   connections    = ConcurrentHashMap.newKeySet();
+  private final List<Integer> answeredValues = new CopyOnWriteArrayList<>();
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testPipelinedRequestsThreadPerConnection() throws Exception {
+    sendPipelinedRequests(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testPipelinedRequestsSelector() throws Exception {
+    sendPipelinedRequests(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testPendingRequestsFailOnClose() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 2);
+    client = createClient(SERVER_PORT + 2);
+
+    CompletableFuture<DataPackage> answer = client.request(new DataPackage(MESSAGE_ID, 0));
+    client.closeConnection();
+
+    Assertions.assertTrue(answer.isCompletedExceptionally());
+  }
+
+  @Test
+  public void testIdleSessionDoesNotTimeOut() throws Exception {
+    startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 3);
+    client = createClient(SERVER_PORT + 3);
+    client.updateTimeout(500);
+
+    Assertions.assertEquals(REQUESTS - 1, (int) client.request(new DataPackage(MESSAGE_ID, REQUESTS - 1)).get(5, TimeUnit.SECONDS).get(0));
+    // the timeout of a request starts when it is sent, not when the session became idle
+    Thread.sleep(450);
+    Assertions.assertEquals(REQUESTS / 2, (int) client.request(new DataPackage(MESSAGE_ID, REQUESTS / 2)).get(5, TimeUnit.SECONDS).get(0));
+  }
+
+  @Test
+  public void testUnansweredRequestTimesOut() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 4);
+    client = createClient(SERVER_PORT + 4);
+    client.updateTimeout(500);
+
+    // the server does not answer unknown messages, the session is busy with other requests meanwhile
+    CompletableFuture<DataPackage> unanswered = client.request(new DataPackage("UNKNOWN"));
+    for (int i = 0; i < 8; i++) {
+      Assertions.assertEquals(REQUESTS - 1, (int) client.request(new DataPackage(MESSAGE_ID, REQUESTS - 1)).get(5, TimeUnit.SECONDS).get(0));
+    }
+    ExecutionException error = Assertions.assertThrows(ExecutionException.class, () -> unanswered.get(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(error.getCause() instanceof SocketTimeoutException, error.toString());
+
+    // only the unanswered request failed, the session is still open
+    Assertions.assertEquals(1, (int) client.request(new DataPackage(MESSAGE_ID, 1)).get(5, TimeUnit.SECONDS).get(0));
+    Assertions.assertEquals(1, connections.size());
+  }
+
+  @Test
+  public void testSlowRequestThreadPerConnection() throws Exception {
+    assertSlowRequestIsNoIdleSession(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 5);
+  }
+
+  @Test
+  public void testSlowRequestSelector() throws Exception {
+    assertSlowRequestIsNoIdleSession(EngineType.SELECTOR, SERVER_PORT + 6);
+  }
+
+  /**
+   * A session whose client waits for the answer of a request is not idle, even if the request takes
+   * longer than the keep-alive timeout.
+   */
+  private void assertSlowRequestIsNoIdleSession(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port, MAX_DELAY / 4);
+    client = createClient(port);
+
+    Assertions.assertEquals(0, (int) client.request(new DataPackage(MESSAGE_ID, 0)).get(5, TimeUnit.SECONDS).get(0));
+    Assertions.assertEquals(1, (int) client.request(new DataPackage(MESSAGE_ID, 1)).get(5, TimeUnit.SECONDS).get(0));
+    Assertions.assertEquals(0, server.getTimeoutStatistics().getIdleTimeouts());
+    Assertions.assertEquals(1, connections.size());
+
+    // the idle timeout starts once the last request is answered
+    long end = System.currentTimeMillis() + 10 * MAX_DELAY;
+    while (server.getTimeoutStatistics().getIdleTimeouts() == 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(1, server.getTimeoutStatistics().getIdleTimeouts());
+  }
+
+  /**
+   * The first requests are delayed the longest, so their answers arrive last.
+   */
+  private void sendPipelinedRequests(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    client = createClient(port);
+
+    long start = System.nanoTime();
+    List<CompletableFuture<DataPackage>> answers = new ArrayList<>();
+    for (int i = 0; i < REQUESTS; i++) {
+      answers.add(client.request(new DataPackage(MESSAGE_ID, i)));
+    }
+    for (int i = 0; i < REQUESTS; i++) {
+      Assertions.assertEquals(i, (int) answers.get(i).get(5, TimeUnit.SECONDS).get(0));
+    }
+    long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    System.out.println(engineType + ": " + REQUESTS + " pipelined requests in " + duration + " ms");
+
+    Assertions.assertEquals(1, connections.size(), "All requests must be sent over the same connection");
+    Assertions.assertNotEquals(0, (int) answeredValues.get(0), "Answers must not be sent in the order of the requests");
+    Assertions.assertTrue(duration < REQUESTS * MAX_DELAY / 2, "Requests must be handled concurrently");
+  }
+
+  private void startServer(EngineType engineType, int port) {
+    startServer(engineType, port, ServerManager.DEFAULT_KEEP_ALIVE_TIMEOUT);
+  }
+
+  private void startServer(EngineType engineType, int port, int keepAliveTimeout) {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.setKeepAliveTimeout(keepAliveTimeout);
+    server.registerMethod(MESSAGE_ID, (data, socket) -> {
+      connections.add(socket);
+      int value = data.get(0);
+      sleep(MAX_DELAY - value * (MAX_DELAY / REQUESTS));
+      try {
+        server.sendMessage(socket, new DataPackage("ANSWER", value));
+        answeredValues.add(value);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    Assertions.assertTrue(server.start());
+  }
+
+  private Client createClient(int port) throws Exception {
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; attempt < 50 && !isListening(port); attempt++) {
+      Thread.sleep(20);
+    }
+    return new Client("localhost", port);
+  }
+
+  private boolean isListening(int port) {
+    try (Socket socket = new Socket("localhost", port)) {
+      return socket.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void sleep(int millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.AutoCloseClient;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Clients with the framed and the legacy protocol and with different codecs have to be served by the same server.
+ */
+public class ProtocolCompatibilityTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24610;
+  private static final int    MESSAGES    = 10;
+  private static final String MESSAGE_ID  = "ECHO";
+
+  private ServerManager server;
+
+  @AfterEach
+  public void shutdown() {
+    server.stop();
+  }
+
+  @Test
+  public void testThreadPerConnection() throws Exception {
+    assertBothProtocols(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testSelector() throws Exception {
+    assertBothProtocols(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testJavaSerializationCodec() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 2, CodecRegistry.getDefault(), JavaSerializationCodec.INSTANCE);
+    assertExchanges(SERVER_PORT + 2, false, JavaSerializationCodec.INSTANCE);
+  }
+
+  private void assertBothProtocols(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    assertExchanges(port, false, server.getCodec());
+    assertExchanges(port, true, server.getCodec());
+  }
+
+  private void assertExchanges(int port, boolean legacyProtocol, Codec codec) throws Exception {
+    Client client = new AutoCloseClient("localhost", port);
+    client.setLegacyProtocol(legacyProtocol);
+    client.setCodec(codec);
+    Assertions.assertEquals("single", client.exchange(new DataPackage(MESSAGE_ID, "single")).getObject(0));
+
+    Client session = new Client("localhost", port);
+    session.setLegacyProtocol(legacyProtocol);
+    session.setCodec(codec);
+    session.setKeepAlive(true);
+    try {
+      for (int i = 0; i < MESSAGES; i++) {
+        Assertions.assertEquals(i, session.exchange(new DataPackage(MESSAGE_ID, i)).getObject(0));
+      }
+      Assertions.assertEquals("pipelined", session.request(new DataPackage(MESSAGE_ID, "pipelined")).get().getObject(0));
+    } finally {
+      session.closeConnection();
+    }
+  }
+
+  private void startServer(EngineType engineType, int port, Codec... acceptedCodecs) throws InterruptedException {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.setAcceptedCodecs(acceptedCodecs);
+    server.registerMethod(MESSAGE_ID, (data, socket) -> {
+      try {
+        server.sendMessage(socket, new DataPackage("ANSWER", data.getObject(0)));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    Assertions.assertTrue(server.start());
+
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; attempt < 50 && !isListening(port); attempt++) {
+      Thread.sleep(20);
+    }
+  }
+
+  private boolean isListening(int port) {
+    try (Socket socket = new Socket("localhost", port)) {
+      return socket.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.DataPackageRecycler;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class RecyclerTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24730;
+  private static final String HOST        = "localhost";
+  private static final String ECHO_ID     = "ECHO";
+  private static final String KEEP_ID     = "KEEP";
+  private static final int    MESSAGES    = 200;
+
+  private final DataPackageRecycler serverRecycler = new DataPackageRecycler(16, 16, true);
+  private final DataPackageRecycler clientRecycler = new DataPackageRecycler(16, 16, true);
+  private final BlockingQueue<DataPackage> kept = new LinkedBlockingQueue<>();
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testRecycleThreadPerConnection() throws Exception {
+    recycleReceivedPackages(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testRecycleSelector() throws Exception {
+    recycleReceivedPackages(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testRetainedPackage() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 2);
+    client = createClient(SERVER_PORT + 2);
+    client.sendMessage(KEEP_ID, "kept", 7);
+
+    // the package is still valid after the method returned, as the method retained it
+    DataPackage data = kept.poll(2, TimeUnit.SECONDS);
+    Assertions.assertNotNull(data);
+    // the server releases its reference after the method returned, but the method hands the package over before,
+    // so the test waits for the next message: it is handled only after the previous message of the session was released
+    client.sendMessage(KEEP_ID, "next", 8);
+    DataPackage next = kept.poll(2, TimeUnit.SECONDS);
+    Assertions.assertNotNull(next);
+    Assertions.assertEquals(1, data.refCount());
+    Assertions.assertEquals("kept", data.getString(0));
+    Assertions.assertEquals(7, data.getInt(1));
+    Assertions.assertTrue(data.release());
+    // the next package is still retained by the test
+    Assertions.assertEquals(1, serverRecycler.getPooledCount());
+    Assertions.assertEquals("next", next.getString(0));
+    next.release();
+  }
+
+  private void recycleReceivedPackages(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    client = createClient(port);
+    for (int i = 0; i < MESSAGES; i++) {
+      client.sendMessage(ECHO_ID, i, "value");
+      Assertions.assertEquals(i, client.receiveMessage().getInt(0));
+    }
+
+    // the packages are released after the method returned, so a few packages serve all messages
+    Assertions.assertEquals(MESSAGES, serverRecycler.getAcquiredCount());
+    Assertions.assertTrue(serverRecycler.getCreatedCount() <= 2, "created " + serverRecycler.getCreatedCount());
+    Assertions.assertEquals(MESSAGES, clientRecycler.getAcquiredCount());
+    Assertions.assertEquals(1, clientRecycler.getCreatedCount());
+    Assertions.assertEquals(0, serverRecycler.detectLeaks());
+    Assertions.assertEquals(0, clientRecycler.detectLeaks());
+  }
+
+  private Client createClient(int port) {
+    Client newClient = new Client(HOST, port);
+    newClient.setKeepAlive(true);
+    newClient.setRecycler(clientRecycler);
+    return newClient;
+  }
+
+  private void startServer(EngineType engineType, int port) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.setRecycler(serverRecycler);
+    server.registerMethod(ECHO_ID, this::answer);
+    server.registerMethod(KEEP_ID, (data, socket) -> kept.add(data.retain()));
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+  }
+
+  private void answer(DataPackage data, Socket socket) {
+    try {
+      server.sendMessage(socket, new DataPackage("ANSWER").addInt(data.getInt(0)));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+}
@@ -0,0 +1,257 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the thread-per-connection engine with the selector engine of the {@link ServerManager}
+ * regarding the number of threads needed for idle connections and the message throughput.
+ */
+public class ServerManagerLoadTest extends AbstractTest {
+
+  private static final Logger LOGGER               = LoggerFactory.getLogger(ServerManagerLoadTest.class);
+  private static final int    SERVER_PORT          = 24570;
+  private static final int    IDLE_CONNECTIONS     = 500;
+  private static final int    CONCURRENT_CLIENTS   = 50;
+  private static final int    MESSAGES_PER_CLIENT  = 20;
+  private static final int    CONCURRENT_EXCHANGES = 1000;
+  private static final String MESSAGE_ID           = "LOAD";
+  private static final int    LOGGED_MESSAGES      = 20_000;
+
+  private ServerManager server;
+
+  @AfterEach
+  public void shutdown() {
+    if (server != null) {
+      server.stop();
+      server = null;
+    }
+  }
+
+  @Test
+  public void testSelectorEngineRequestResponse() throws Exception {
+    server = startEchoServer(EngineType.SELECTOR, SERVER_PORT);
+    connectWithRetry(SERVER_PORT).close();
+
+    Client client = new Client("localhost", SERVER_PORT);
+    client.sendMessage(MESSAGE_ID, "Hello");
+    DataPackage answer = client.receiveMessage();
+    client.closeConnection();
+
+    Assertions.assertNotNull(answer);
+    Assertions.assertEquals("Hello", answer.get(0));
+  }
+
+  @Test
+  public void testIdleConnectionsThreadPerConnection() throws Exception {
+    int threads = measureThreadsForIdleConnections(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 1);
+    Assertions.assertTrue(threads >= IDLE_CONNECTIONS, "Every idle connection should occupy a thread");
+  }
+
+  @Test
+  public void testIdleConnectionsSelector() throws Exception {
+    int threads = measureThreadsForIdleConnections(EngineType.SELECTOR, SERVER_PORT + 2);
+    Assertions.assertTrue(threads < IDLE_CONNECTIONS / 10, "Idle connections must not occupy threads");
+  }
+
+  @Test
+  public void testThroughputThreadPerConnection() throws Exception {
+    measureThroughput(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testThroughputSelector() throws Exception {
+    measureThroughput(EngineType.SELECTOR, SERVER_PORT + 4);
+  }
+
+  @Test
+  public void testConcurrentExchangesPlatformThreads() throws Exception {
+    measureConcurrentExchanges(false, SERVER_PORT + 5);
+  }
+
+  @Test
+  public void testConcurrentExchangesVirtualThreads() throws Exception {
+    measureConcurrentExchanges(true, SERVER_PORT + 6);
+  }
+
+  @Test
+  public void testAccessLogThroughput() throws Exception {
+    // the former synchronous INFO log of every message (including its payload) compared to the access log
+    long synchronous = measureLoggedThroughput(SERVER_PORT + 7, 0, true);
+    long disabled = measureLoggedThroughput(SERVER_PORT + 8, 0, false);
+    long sampled = measureLoggedThroughput(SERVER_PORT + 9, 100, false);
+    long everyMessage = measureLoggedThroughput(SERVER_PORT + 10, 1, false);
+    System.out.println("Synchronous INFO log: " + synchronous + " messages/s, access log disabled: " + disabled
+        + " messages/s, sampled 1/100: " + sampled + " messages/s, every message: " + everyMessage + " messages/s");
+  }
+
+  private long measureLoggedThroughput(int port, int sampleRate, boolean synchronousLog) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(EngineType.SELECTOR);
+    server.setAccessLog(sampleRate, false);
+    ServerManager echoServer = server;
+    server.registerMethod(MESSAGE_ID, (data, socket) -> {
+      if (synchronousLog) {
+        LOGGER.info("Method for incoming data with id '{}' found: {} (from address: {})", data.getID(), true, socket);
+        LOGGER.info("Incoming data (raw): {}", data);
+      }
+      try {
+        echoServer.sendMessage(socket, new DataPackage("ECHO", data.getObject(0)));
+      } catch (IOException e) {
+        LOGGER.error("Failed to answer", e);
+      }
+    });
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+
+    Client client = new Client("localhost", port);
+    List<CompletableFuture<DataPackage>> answers = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < LOGGED_MESSAGES; i++) {
+      answers.add(client.request(new DataPackage(MESSAGE_ID, i)));
+    }
+    CompletableFuture.allOf(answers.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+    long durationNanos = System.nanoTime() - start;
+    client.closeConnection();
+    server.stop();
+    server = null;
+    return LOGGED_MESSAGES * TimeUnit.SECONDS.toNanos(1) / durationNanos;
+  }
+
+  private ServerManager startEchoServer(EngineType engineType, int port) {
+    return startEchoServer(engineType, port, false);
+  }
+
+  private ServerManager startEchoServer(EngineType engineType, int port, boolean virtualThreads) {
+    ServerManager echoServer = new ServerManager(port, IDLE_CONNECTIONS) {
+    };
+    echoServer.setEngineType(engineType);
+    echoServer.setIoThreadCount(2);
+    echoServer.setVirtualThreads(virtualThreads);
+    echoServer.registerMethod(MESSAGE_ID, (data, socket) -> {
+      try {
+        echoServer.sendMessage(socket, new DataPackage("ECHO", data.getObject(0)));
+      } catch (IOException e) {
+        LOGGER.error("Failed to answer", e);
+      }
+    });
+    Assertions.assertTrue(echoServer.start());
+    return echoServer;
+  }
+
+  private int measureThreadsForIdleConnections(EngineType engineType, int port) throws Exception {
+    server = startEchoServer(engineType, port);
+
+    List<Socket> idleConnections = new ArrayList<>();
+    try {
+      for (int i = 0; i < IDLE_CONNECTIONS; i++) {
+        idleConnections.add(connectWithRetry(port));
+      }
+      // give the server time to accept all connections
+      Thread.sleep(500);
+
+      int additionalThreads = countServerThreads(port);
+      LOGGER.info("{}: {} idle connections occupy {} additional threads", engineType, IDLE_CONNECTIONS, additionalThreads);
+      System.out.println(engineType + ": " + IDLE_CONNECTIONS + " idle connections -> " + additionalThreads + " threads");
+      return additionalThreads;
+    } finally {
+      idleConnections.forEach(ConnectionUtils::close);
+    }
+  }
+
+  private void measureThroughput(EngineType engineType, int port) throws Exception {
+    server = startEchoServer(engineType, port);
+    connectWithRetry(port).close();
+
+    AtomicInteger answers = new AtomicInteger();
+    ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_CLIENTS);
+    long start = System.nanoTime();
+    for (int i = 0; i < CONCURRENT_CLIENTS; i++) {
+      clients.submit(() -> {
+        for (int m = 0; m < MESSAGES_PER_CLIENT; m++) {
+          Client client = new Client("localhost", port);
+          try {
+            client.sendMessage(MESSAGE_ID, m);
+            if (client.receiveMessage() != null) {
+              answers.incrementAndGet();
+            }
+          } catch (IOException e) {
+            LOGGER.error("Failed to exchange message", e);
+          } finally {
+            client.closeConnection();
+          }
+        }
+      });
+    }
+    clients.shutdown();
+    Assertions.assertTrue(clients.awaitTermination(60, TimeUnit.SECONDS));
+    long durationMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    int expected = CONCURRENT_CLIENTS * MESSAGES_PER_CLIENT;
+    System.out.println(engineType + ": " + expected + " messages in " + durationMillis + " ms -> "
+        + (expected * 1000L / durationMillis) + " messages/s");
+    Assertions.assertEquals(expected, answers.get());
+  }
+
+  private void measureConcurrentExchanges(boolean virtualThreads, int port) throws Exception {
+    server = startEchoServer(EngineType.THREAD_PER_CONNECTION, port, virtualThreads);
+    connectWithRetry(port).close();
+
+    Client client = new Client("localhost", port, 30000);
+    List<CompletableFuture<DataPackage>> exchanges = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < CONCURRENT_EXCHANGES; i++) {
+      exchanges.add(client.exchangeAsync(new DataPackage(MESSAGE_ID, i)));
+    }
+    CompletableFuture.allOf(exchanges.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+    long durationMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    System.out.println((server.isVirtualThreads() ? "Virtual" : "Platform") + " threads (requested virtual: " + virtualThreads
+        + "): " + CONCURRENT_EXCHANGES + " concurrent exchanges in " + durationMillis + " ms");
+    for (int i = 0; i < CONCURRENT_EXCHANGES; i++) {
+      Assertions.assertEquals(i, (int) exchanges.get(i).get().get(0));
+    }
+  }
+
+  private int countServerThreads(int port) {
+    String portSuffix = "-" + port;
+    return (int) Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().startsWith("ServerManager-") && thread.getName().contains(portSuffix))
+        .count();
+  }
+
+  private Socket connectWithRetry(int port) throws Exception {
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; ; attempt++) {
+      try {
+        return new Socket("localhost", port);
+      } catch (IOException e) {
+        if (attempt >= 50) {
+          throw e;
+        }
+        Thread.sleep(20);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,256 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.StreamBody;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class StreamBodyTest extends AbstractTest {
+
+  private static final int    SERVER_PORT  = 24740;
+  private static final String HOST         = "localhost";
+  private static final String UPLOAD_ID    = "UPLOAD";
+  private static final String IGNORE_ID    = "IGNORE";
+  private static final String DOWNLOAD_ID  = "DOWNLOAD";
+  private static final String ECHO_ID      = "ECHO";
+  private static final long   UPLOAD_SIZE  = 8 * 1024 * 1024 + 123;
+  /** Queued chunks of the selector engine (or the buffered chunk of the blocking engine) */
+  private static final int    MAX_BUFFERED = 5 * FrameCodec.CHUNK_LENGTH;
+
+  private ServerManager server;
+  private Client        client;
+
+  @AfterEach
+  public void shutdown() {
+    if (client != null) {
+      client.closeConnection();
+    }
+    server.stop();
+  }
+
+  @Test
+  public void testUploadThreadPerConnection() throws Exception {
+    upload(EngineType.THREAD_PER_CONNECTION, SERVER_PORT);
+  }
+
+  @Test
+  public void testUploadSelector() throws Exception {
+    upload(EngineType.SELECTOR, SERVER_PORT + 1);
+  }
+
+  @Test
+  public void testIgnoredBodyThreadPerConnection() throws Exception {
+    ignoreBody(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 2);
+  }
+
+  @Test
+  public void testIgnoredBodySelector() throws Exception {
+    ignoreBody(EngineType.SELECTOR, SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testFileRegion() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 4);
+    client = createClient(SERVER_PORT + 4);
+
+    File file = File.createTempFile("body", ".bin");
+    file.deleteOnExit();
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      output.setLength(1024 * 1024);
+      output.seek(1000);
+      output.write("region".getBytes());
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      client.sendMessage(new DataPackage(UPLOAD_ID).setBody(StreamBody.of(channel, 1000, 500_000)));
+      DataPackage result = client.receiveMessage();
+      Assertions.assertEquals(500_000L, result.getLong(0));
+      Assertions.assertEquals(500_000L, result.getLong(1));
+
+      CRC32 expected = new CRC32();
+      byte[] region = Files.readAllBytes(file.toPath());
+      expected.update(region, 1000, 500_000);
+      Assertions.assertEquals(expected.getValue(), result.getLong(2));
+      // the position of the channel is not changed by the body
+      Assertions.assertEquals(0, channel.position());
+    }
+  }
+
+  @Test
+  public void testDownload() throws Exception {
+    // replies of the blocking engine are written with the codec of the connection, so they may have a body
+    startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 5);
+    client = createClient(SERVER_PORT + 5);
+
+    client.sendMessage(DOWNLOAD_ID, UPLOAD_SIZE);
+    DataPackage download = client.receiveMessage();
+    Assertions.assertEquals(UPLOAD_SIZE, download.getBody().getLength());
+    Assertions.assertEquals(checksum(new PatternInputStream(UPLOAD_SIZE)), checksum(download.getBody().getInputStream()));
+
+    client.sendMessage(ECHO_ID, 1);
+    Assertions.assertEquals(1, client.receiveMessage().getInt(0));
+  }
+
+  @Test
+  public void testPipelinedDownload() throws Exception {
+    startServer(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 6);
+    client = createClient(SERVER_PORT + 6);
+
+    DataPackage download = client.request(new DataPackage(DOWNLOAD_ID, UPLOAD_SIZE)).get(5, TimeUnit.SECONDS);
+    CompletableFuture<DataPackage> echo = client.request(new DataPackage(ECHO_ID, 3));
+    // the answer of the second request follows the chunks of the body, which are read by this thread
+    Thread.sleep(100);
+    Assertions.assertFalse(echo.isDone());
+    Assertions.assertEquals(checksum(new PatternInputStream(UPLOAD_SIZE)), checksum(download.getBody().getInputStream()));
+    Assertions.assertEquals(3, echo.get(5, TimeUnit.SECONDS).getInt(0));
+
+    // a closed body is skipped
+    download = client.request(new DataPackage(DOWNLOAD_ID, UPLOAD_SIZE)).get(5, TimeUnit.SECONDS);
+    download.getBody().close();
+    Assertions.assertEquals(4, client.request(new DataPackage(ECHO_ID, 4)).get(5, TimeUnit.SECONDS).getInt(0));
+  }
+
+  private void upload(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    client = createClient(port);
+
+    for (int i = 0; i < 2; i++) {
+      client.sendMessage(new DataPackage(UPLOAD_ID).setBody(StreamBody.of(new PatternInputStream(UPLOAD_SIZE))));
+      DataPackage result = client.receiveMessage();
+      Assertions.assertEquals(StreamBody.UNKNOWN_LENGTH, result.getLong(0));
+      Assertions.assertEquals(UPLOAD_SIZE, result.getLong(1));
+      Assertions.assertEquals(checksum(new PatternInputStream(UPLOAD_SIZE)), result.getLong(2));
+      Assertions.assertTrue(result.getInt(3) <= MAX_BUFFERED, "buffered " + result.getInt(3) + " bytes");
+    }
+  }
+
+  private void ignoreBody(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    client = createClient(port);
+
+    // the handler does not read the body, its chunks are discarded after the handler returned
+    client.sendMessage(new DataPackage(IGNORE_ID).setBody(StreamBody.of(new PatternInputStream(UPLOAD_SIZE), UPLOAD_SIZE)));
+    Assertions.assertEquals(IGNORE_ID, client.receiveMessage().getID());
+    client.sendMessage(ECHO_ID, 2);
+    Assertions.assertEquals(2, client.receiveMessage().getInt(0));
+  }
+
+  private Client createClient(int port) {
+    Client newClient = new Client(HOST, port);
+    newClient.setKeepAlive(true);
+    return newClient;
+  }
+
+  private void startServer(EngineType engineType, int port) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.registerMethod(UPLOAD_ID, this::receiveUpload);
+    server.registerMethod(IGNORE_ID, (data, socket) -> reply(socket, new DataPackage(IGNORE_ID)));
+    server.registerMethod(ECHO_ID, (data, socket) -> reply(socket, new DataPackage(ECHO_ID, data.getInt(0))));
+    server.registerMethod(DOWNLOAD_ID, (data, socket) -> {
+      long size = data.getLong(0);
+      reply(socket, new DataPackage(DOWNLOAD_ID).setBody(StreamBody.of(new PatternInputStream(size), size)));
+    });
+    Assertions.assertTrue(server.start());
+    server.awaitStarted();
+  }
+
+  /**
+   * Reads the body in small steps and answers with its length, checksum and the maximum of buffered bytes.
+   */
+  private void receiveUpload(DataPackage data, Socket socket) {
+    try {
+      InputStream body = data.getBody().getInputStream();
+      CRC32 crc = new CRC32();
+      byte[] buffer = new byte[4096];
+      long received = 0;
+      int maxBuffered = 0;
+      int read;
+      while ((read = body.read(buffer)) >= 0) {
+        crc.update(buffer, 0, read);
+        received += read;
+        maxBuffered = Math.max(maxBuffered, body.available());
+        if (received % (1024 * 1024) < buffer.length) {
+          // a slow handler, the client has to wait for it
+          Thread.sleep(5);
+        }
+      }
+      reply(socket, new DataPackage("RESULT", data.getBody().getLength(), received, crc.getValue(), maxBuffered));
+    } catch (IOException | InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void reply(Socket socket, DataPackage reply) {
+    try {
+      server.sendMessage(socket, reply);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static long checksum(InputStream input) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = input.read(buffer)) >= 0) {
+      crc.update(buffer, 0, read);
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Generates the content of a body without holding it in memory.
+   */
+  private static class PatternInputStream extends InputStream {
+
+    private long remaining;
+    private long position;
+
+    PatternInputStream(long length) {
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() {
+      if (remaining == 0) {
+        return -1;
+      }
+      remaining--;
+      return (int) (position++ * 31 >>> 3) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (remaining == 0) {
+        return -1;
+      }
+      int count = (int) Math.min(length, remaining);
+      for (int i = 0; i < count; i++) {
+        buffer[offset + i] = (byte) (position++ * 31 >>> 3);
+      }
+      remaining -= count;
+      return count;
+    }
+  }
+
+}
@@ -0,0 +1,306 @@
+package de.spiderlinker.network;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.network.client.Client;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.protocol.FrameCodec;
+import de.spiderlinker.network.server.EngineType;
+import de.spiderlinker.network.server.ServerManager;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import de.spiderlinker.network.utils.TlsConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class TlsTest extends AbstractTest {
+
+  private static final int    SERVER_PORT = 24680;
+  private static final String HOST        = "localhost";
+  private static final String MESSAGE_ID  = "SECURE";
+  private static final char[] PASSWORD    = "changeit".toCharArray();
+  private static final int    CONNECTIONS = 200;
+
+  private static KeyStore keyStore;
+
+  private final Set<String> cipherSuites = ConcurrentHashMap.newKeySet();
+
+  private ServerManager server;
+
+  @AfterEach
+  public void shutdown() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testCuratedCipherSuites() throws Exception {
+    TlsConfiguration tls = TlsConfiguration.of(createContext());
+
+    Assertions.assertTrue(TlsConfiguration.DEFAULT_CIPHER_SUITES.containsAll(Arrays.asList(tls.getCipherSuites())));
+    Assertions.assertEquals("TLSv1.3", tls.getProtocols()[0]);
+    Assertions.assertArrayEquals(new String[]{"TLSv1.2"}, tls.withProtocols("TLSv1.2", "SSLv3-unknown").getProtocols());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> tls.withCipherSuites("TLS_RSA_WITH_NULL_MD5-unknown"));
+  }
+
+  @Test
+  public void testExchangeOverTls() throws Exception {
+    startServer(SERVER_PORT);
+    Client client = new Client(HOST, SERVER_PORT);
+    client.setTls(TlsConfiguration.of(createContext()));
+
+    Assertions.assertEquals(1, (int) client.exchange(new DataPackage(MESSAGE_ID, 1)).get(0));
+    client.closeConnection();
+    client.setKeepAlive(true);
+    Assertions.assertEquals(2, (int) client.exchange(new DataPackage(MESSAGE_ID, 2)).get(0));
+    Assertions.assertEquals(3, (int) client.request(new DataPackage(MESSAGE_ID, 3)).get(5, TimeUnit.SECONDS).get(0));
+    client.closeConnection();
+
+    Assertions.assertTrue(TlsConfiguration.DEFAULT_CIPHER_SUITES.containsAll(cipherSuites), cipherSuites.toString());
+  }
+
+  @Test
+  public void testTls12Client() throws Exception {
+    startServer(SERVER_PORT + 1);
+    Client client = new Client(HOST, SERVER_PORT + 1);
+    client.setTls(TlsConfiguration.of(createContext()).withProtocols("TLSv1.2"));
+
+    Assertions.assertEquals(1, (int) client.exchange(new DataPackage(MESSAGE_ID, 1)).get(0));
+    client.closeConnection();
+    Assertions.assertTrue(cipherSuites.iterator().next().startsWith("TLS_ECDHE_"), cipherSuites.toString());
+  }
+
+  @Test
+  public void testExchangeOverTlsSelector() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 2);
+    Client client = new Client(HOST, SERVER_PORT + 2);
+    client.setTls(TlsConfiguration.of(createContext()));
+
+    Assertions.assertEquals(1, (int) client.exchange(new DataPackage(MESSAGE_ID, 1)).get(0));
+    client.closeConnection();
+    client.setKeepAlive(true);
+    Assertions.assertEquals(2, (int) client.exchange(new DataPackage(MESSAGE_ID, 2)).get(0));
+    // the message spans multiple TLS records
+    byte[] large = new byte[300 * 1024];
+    Arrays.fill(large, (byte) 7);
+    Assertions.assertArrayEquals(large, (byte[]) client.exchange(new DataPackage(MESSAGE_ID, large)).get(0));
+    Assertions.assertEquals(3, (int) client.request(new DataPackage(MESSAGE_ID, 3)).get(5, TimeUnit.SECONDS).get(0));
+    client.closeConnection();
+  }
+
+  @Test
+  public void testExchangeAsyncOverTls() throws Exception {
+    startServer(SERVER_PORT + 8);
+    Client client = new Client(HOST, SERVER_PORT + 8);
+    client.setTls(TlsConfiguration.of(createContext()));
+
+    // the server only accepts TLS, a plain exchange would fail
+    Assertions.assertEquals(1, (int) client.exchangeAsync(new DataPackage(MESSAGE_ID, 1)).get(5, TimeUnit.SECONDS).get(0));
+    Assertions.assertFalse(cipherSuites.isEmpty());
+  }
+
+  @Test
+  public void testManyConnectionsSelector() throws Exception {
+    startServer(EngineType.SELECTOR, SERVER_PORT + 5);
+    TlsConfiguration tls = TlsConfiguration.of(createContext());
+    List<Client> clients = new ArrayList<>();
+    try {
+      long start = System.nanoTime();
+      for (int i = 0; i < CONNECTIONS; i++) {
+        Client client = new Client(HOST, SERVER_PORT + 5);
+        client.setTls(tls);
+        client.setKeepAlive(true);
+        Assertions.assertEquals(i, (int) client.exchange(new DataPackage(MESSAGE_ID, i)).get(0));
+        clients.add(client);
+      }
+      // all sessions are still open and served by the two I/O threads
+      for (int i = 0; i < CONNECTIONS; i++) {
+        Assertions.assertEquals(-i, (int) clients.get(i).exchange(new DataPackage(MESSAGE_ID, -i)).get(0));
+      }
+      System.out.printf("%d TLS sessions on %d I/O threads in %d ms%n", CONNECTIONS, server.getIoThreadCount(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } finally {
+      clients.forEach(Client::closeConnection);
+    }
+  }
+
+  @Test
+  public void testSessionIsResumed() throws Exception {
+    assertSessionIsResumed(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 3);
+  }
+
+  @Test
+  public void testSessionIsResumedSelector() throws Exception {
+    assertSessionIsResumed(EngineType.SELECTOR, SERVER_PORT + 6);
+  }
+
+  private void assertSessionIsResumed(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    TlsConfiguration tls = TlsConfiguration.of(createContext());
+
+    SSLSession first = exchangeOverSocket(tls, port);
+    SSLSession second = exchangeOverSocket(tls, port);
+    // a resumed session keeps the creation time of the session it was resumed from
+    Assertions.assertEquals(first.getCreationTime(), second.getCreationTime());
+
+    invalidateSessions(tls.getContext().getClientSessionContext());
+    Assertions.assertNotEquals(first.getCreationTime(), exchangeOverSocket(tls, port).getCreationTime());
+  }
+
+  /**
+   * Compares the connections (handshake, message and answer) per second with and without session resumption.
+   */
+  @Test
+  public void testHandshakesPerSecond() throws Exception {
+    measureHandshakes(EngineType.THREAD_PER_CONNECTION, SERVER_PORT + 4);
+  }
+
+  @Test
+  public void testHandshakesPerSecondSelector() throws Exception {
+    measureHandshakes(EngineType.SELECTOR, SERVER_PORT + 7);
+  }
+
+  private void measureHandshakes(EngineType engineType, int port) throws Exception {
+    startServer(engineType, port);
+    TlsConfiguration tls = TlsConfiguration.of(createContext());
+    Client client = new Client(HOST, port);
+    client.setTls(tls);
+
+    for (int round = 0; round < 2; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < CONNECTIONS; i++) {
+        invalidateSessions(tls.getContext().getClientSessionContext());
+        client.exchange(new DataPackage(MESSAGE_ID, i));
+        client.closeConnection();
+      }
+      long fullHandshakes = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < CONNECTIONS; i++) {
+        client.exchange(new DataPackage(MESSAGE_ID, i));
+        client.closeConnection();
+      }
+      long resumedHandshakes = System.nanoTime() - start;
+
+      System.out.printf("%s: %.0f connections/s with full handshake, %.0f connections/s with resumed session%n",
+          engineType, CONNECTIONS * 1e9 / fullHandshakes, CONNECTIONS * 1e9 / resumedHandshakes);
+    }
+  }
+
+  private SSLSession exchangeOverSocket(TlsConfiguration tls, int port) throws Exception {
+    try (SSLSocket socket = tls.createSocket(HOST, port, 5000)) {
+      FrameCodec codec = FrameCodec.forSocket(socket, true, CodecRegistry.getDefault());
+      Assertions.assertTrue(codec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST));
+      codec.writeObject(new DataPackage(MESSAGE_ID, 1));
+      // the session ticket of TLS 1.3 is received after the handshake
+      Assertions.assertEquals(1, (int) ((DataPackage) codec.readObject()).get(0));
+      return socket.getSession();
+    }
+  }
+
+  private static void invalidateSessions(SSLSessionContext sessions) {
+    for (Enumeration<byte[]> ids = sessions.getIds(); ids.hasMoreElements(); ) {
+      SSLSession session = sessions.getSession(ids.nextElement());
+      if (session != null) {
+        session.invalidate();
+      }
+    }
+  }
+
+  private void startServer(int port) throws Exception {
+    startServer(EngineType.THREAD_PER_CONNECTION, port);
+  }
+
+  private void startServer(EngineType engineType, int port) throws Exception {
+    server = new ServerManager(port) {
+    };
+    server.setEngineType(engineType);
+    server.setIoThreadCount(2);
+    server.setTls(TlsConfiguration.of(createContext()));
+    server.registerMethod(MESSAGE_ID, (data, socket) -> {
+      if (socket instanceof SSLSocket) {
+        // the selector engine encrypts with an SSLEngine, its sockets are plain
+        cipherSuites.add(((SSLSocket) socket).getSession().getCipherSuite());
+      }
+      try {
+        server.sendMessage(socket, new DataPackage("ANSWER", data.getObject(0)));
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    Assertions.assertTrue(server.start());
+
+    // the server socket is bound asynchronously after #start()
+    for (int attempt = 0; attempt < 50 && !isListening(port); attempt++) {
+      Thread.sleep(20);
+    }
+  }
+
+  private boolean isListening(int port) {
+    try (Socket socket = new Socket(HOST, port)) {
+      return socket.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return context with a self-signed certificate, which is used as key (server) and trusted certificate (client)
+   */
+  static SSLContext createContext() throws Exception {
+    KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(getKeyStore(), PASSWORD);
+    TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagers.init(getKeyStore());
+
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+    return context;
+  }
+
+  private static synchronized KeyStore getKeyStore() throws Exception {
+    if (keyStore == null) {
+      File directory = Files.createTempDirectory("tls-test").toFile();
+      File file = new File(directory, "keystore.p12");
+      String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+      Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "EC",
+          "-keysize", "256", "-sigalg", "SHA256withECDSA", "-dname", "CN=" + HOST, "-validity", "1",
+          "-storetype", "PKCS12", "-keystore", file.getAbsolutePath(),
+          "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+          .redirectErrorStream(true)
+          .start();
+      Assertions.assertTrue(process.waitFor(60, TimeUnit.SECONDS) && process.exitValue() == 0, "keytool failed");
+
+      keyStore = KeyStore.getInstance("PKCS12");
+      try (InputStream input = new FileInputStream(file)) {
+        keyStore.load(input, PASSWORD);
+      }
+      Files.delete(file.toPath());
+      Files.delete(directory.toPath());
+    }
+    return keyStore;
+  }
+
+}
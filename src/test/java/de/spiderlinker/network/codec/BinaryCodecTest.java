@@ -0,0 +1,346 @@
+package de.spiderlinker.network.codec;
+
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.Payload;
+import de.spiderlinker.network.data.PayloadSchema;
+import de.spiderlinker.network.data.PayloadSchema.Type;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class BinaryCodecTest {
+
+  private static final int ITERATIONS = 10000;
+
+  private final BinaryCodec codec = new BinaryCodec();
+
+  @Test
+  public void roundTripValues() throws Exception {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("key", Arrays.asList(1, "two", null));
+    map.put("nested", new DataPackage("NESTED", 'c'));
+
+    DataPackage data = new DataPackage("VALUES", null, true, false, (byte) -1, (short) 300, 'x', Integer.MIN_VALUE,
+        Long.MAX_VALUE, 1.5f, -2.25, "text äöü", new byte[]{1, 2, 3}, map).withRequestId(17);
+    DataPackage decoded = (DataPackage) roundTrip(codec, data);
+
+    Assertions.assertEquals("VALUES", decoded.getID());
+    Assertions.assertEquals(17, decoded.getRequestId());
+    Assertions.assertEquals(data.get().size(), decoded.get().size());
+    for (int i = 0; i < data.get().size(); i++) {
+      Object expected = data.getObject(i);
+      if (expected instanceof byte[]) {
+        Assertions.assertArrayEquals((byte[]) expected, (byte[]) decoded.getObject(i));
+      } else if (!(expected instanceof Map)) {
+        Assertions.assertEquals(expected, decoded.getObject(i));
+      }
+    }
+
+    Map<?, ?> decodedMap = decoded.get(12);
+    Assertions.assertEquals(map.get("key"), decodedMap.get("key"));
+    Assertions.assertEquals("NESTED", ((DataPackage) decodedMap.get("nested")).getID());
+  }
+
+  @Test
+  public void roundTripPrimitives() throws Exception {
+    DataPackage data = new DataPackage("PRIMITIVES").addInt(-5).addLong(1L << 40).addDouble(0.5).addBoolean(true);
+    data.addData("text");
+    DataPackage decoded = (DataPackage) roundTrip(codec, data);
+
+    // primitives keep their slots, the encoding is the same as for boxed values
+    Assertions.assertEquals(Type.INT, decoded.getPayload().getType(0));
+    Assertions.assertEquals(-5, decoded.getInt(0));
+    Assertions.assertEquals(1L << 40, decoded.getLong(1));
+    Assertions.assertEquals(0.5, decoded.getDouble(2));
+    Assertions.assertTrue(decoded.getBoolean(3));
+    Assertions.assertEquals("text", decoded.getString(4));
+    Assertions.assertArrayEquals(encode(codec, new DataPackage("PRIMITIVES", -5, 1L << 40, 0.5, true, "text")),
+        encode(codec, data));
+  }
+
+  @Test
+  public void roundTripSchema() throws Exception {
+    PayloadSchema schema = PayloadSchema.of(Type.INT, Type.LONG, Type.DOUBLE, Type.BOOLEAN, Type.BYTES, Type.STRING,
+        Type.OBJECT);
+    DataPackage data = DataPackage.withSchema("SCHEMA", schema).withRequestId(3);
+    Payload payload = data.getPayload();
+    payload.setInt(0, 7);
+    payload.setLong(1, Long.MIN_VALUE);
+    payload.setDouble(2, -1.5);
+    payload.setBoolean(3, true);
+    payload.set(4, new byte[]{1, 2});
+    payload.set(6, Arrays.asList(1, 2));
+    DataPackage decoded = (DataPackage) roundTrip(codec, data);
+
+    Assertions.assertEquals(schema, decoded.getPayload().getSchema());
+    Assertions.assertEquals(3, decoded.getRequestId());
+    Assertions.assertEquals(7, decoded.getInt(0));
+    Assertions.assertEquals(Long.MIN_VALUE, decoded.getLong(1));
+    Assertions.assertEquals(-1.5, decoded.getDouble(2));
+    Assertions.assertTrue(decoded.getBoolean(3));
+    Assertions.assertArrayEquals(new byte[]{1, 2}, decoded.getBytes(4));
+    Assertions.assertNull(decoded.getString(5));
+    Assertions.assertEquals(Arrays.asList(1, 2), decoded.getObject(6));
+  }
+
+  @Test
+  public void schemaSizeIsPredictable() throws Exception {
+    PayloadSchema schema = PayloadSchema.of(Type.INT, Type.LONG, Type.DOUBLE);
+    DataPackage small = DataPackage.withSchema("FIXED", schema);
+    DataPackage large = DataPackage.withSchema("FIXED", schema);
+    large.getPayload().setInt(0, Integer.MAX_VALUE);
+    large.getPayload().setLong(1, Long.MAX_VALUE);
+
+    Assertions.assertTrue(schema.isFixedSize());
+    Assertions.assertEquals(20, schema.getFixedSize());
+    Assertions.assertEquals(encode(codec, small).length, encode(codec, large).length);
+  }
+
+  @Test
+  public void hugeSlotCountOfTinySchemaPackage() {
+    // tag, length and bytes of the id, request ID, 64 Mi slots and the type of the first slot
+    byte[] schemaPackage = {16, 1, 'X', 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20, 0};
+    Assertions.assertThrows(StreamCorruptedException.class, () -> codec.decode(new ByteArrayInputStream(schemaPackage)));
+
+    // the structure of a nested schema package is checked by lazy decoding without decoding it
+    byte[] nested = new byte[5 + schemaPackage.length];
+    System.arraycopy(new byte[]{14, 1, 'Y', 0, 1}, 0, nested, 0, 5);
+    System.arraycopy(schemaPackage, 0, nested, 5, schemaPackage.length);
+    BinaryCodec lazyCodec = new BinaryCodec(false, true);
+    Assertions.assertThrows(StreamCorruptedException.class, () -> lazyCodec.decode(new ByteArrayInputStream(nested)));
+  }
+
+  @Test
+  public void hugeLengthsOfTinyValues() {
+    // string with a length of 64 MiB and byte array slot with a length of 64 MiB
+    byte[][] corrupted = {
+        {10, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20, 'a'},
+        {16, 1, 'X', 0, 1, (byte) Type.BYTES.ordinal(), 0x04, 0, 0, 0, 'a'}};
+    BinaryCodec lazyCodec = new BinaryCodec(false, true);
+    for (byte[] encoded : corrupted) {
+      Assertions.assertThrows(StreamCorruptedException.class, () -> codec.decode(new ByteArrayInputStream(encoded)));
+      Assertions.assertThrows(StreamCorruptedException.class, () -> lazyCodec.decode(new ByteArrayInputStream(encoded)));
+    }
+    // 64 Mi lazily decoded values, whose offsets are allocated before the values are checked
+    byte[] values = {14, 1, 'X', 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20, 0};
+    Assertions.assertThrows(StreamCorruptedException.class, () -> lazyCodec.decode(new ByteArrayInputStream(values)));
+  }
+
+  @Test
+  public void lazyDecoding() throws Exception {
+    BinaryCodec lazyCodec = new BinaryCodec(true, true);
+    DataPackage data = new DataPackage("LAZY", "text", Arrays.asList(1, "two"), new DataPackage("INNER", 3))
+        .addInt(4).withRequestId(5);
+    DataPackage decoded = (DataPackage) lazyCodec.decode(new ByteArrayInputStream(encode(codec, data)));
+
+    // only the header is decoded
+    Assertions.assertEquals("LAZY", decoded.getID());
+    Assertions.assertEquals(5, decoded.getRequestId());
+    Assertions.assertEquals(4, decoded.size());
+    for (int i = 0; i < decoded.size(); i++) {
+      Assertions.assertFalse(decoded.getPayload().isDecoded(i));
+    }
+
+    Assertions.assertEquals(4, decoded.getInt(3));
+    Assertions.assertEquals(Type.INT, decoded.getPayload().getType(3));
+    Assertions.assertFalse(decoded.getPayload().isDecoded(0));
+    Assertions.assertEquals("text", decoded.getString(0));
+    Assertions.assertEquals(data.toString(), decoded.toString());
+  }
+
+  @Test
+  public void lazyRelay() throws Exception {
+    BinaryCodec lazyCodec = new BinaryCodec(true, true);
+    byte[] encoded = encode(codec, new DataPackage("RELAY", "text", 1L, 2.5, new byte[]{3}));
+    DataPackage decoded = (DataPackage) lazyCodec.decode(new ByteArrayInputStream(encoded));
+
+    // an unmodified package is written with the received bytes, even after its values were read
+    Assertions.assertArrayEquals(encoded, encode(codec, decoded));
+    Assertions.assertFalse(decoded.getPayload().isDecoded(0));
+    Assertions.assertEquals(1L, decoded.getLong(1));
+    Assertions.assertArrayEquals(encoded, encode(codec, decoded));
+
+    decoded.get().remove(0);
+    Assertions.assertNull(decoded.getPayload().getEncoded());
+    DataPackage modified = (DataPackage) roundTrip(codec, decoded);
+    Assertions.assertEquals(Arrays.asList(1L, 2.5), modified.get().subList(0, 2));
+    Assertions.assertArrayEquals(new byte[]{3}, modified.getBytes(2));
+  }
+
+  @Test
+  public void lazyRelayOfModifiedNestedValues() throws Exception {
+    BinaryCodec lazyCodec = new BinaryCodec(true, true);
+    byte[] encoded = encode(codec, new DataPackage("RELAY", Arrays.asList("a", "b"), new byte[]{1, 2, 3}));
+    DataPackage decoded = (DataPackage) lazyCodec.decode(new ByteArrayInputStream(encoded));
+
+    // the nested values are modified in place, the package itself is not
+    decoded.<List<Object>>get(0).set(1, "MODIFIED");
+    decoded.getBytes(1)[0] = 99;
+    Assertions.assertNull(decoded.getPayload().getEncoded());
+    DataPackage relayed = (DataPackage) codec.decode(new ByteArrayInputStream(encode(codec, decoded)));
+    Assertions.assertEquals(Arrays.asList("a", "MODIFIED"), relayed.get(0));
+    Assertions.assertArrayEquals(new byte[]{99, 2, 3}, relayed.getBytes(1));
+  }
+
+  @Test
+  public void lazyDecodingValidatesStructure() throws IOException {
+    BinaryCodec lazyCodec = new BinaryCodec(false, true);
+    byte[] encoded = encode(codec, new DataPackage("CORRUPT", "text", 1));
+    Assertions.assertThrows(IOException.class,
+        () -> lazyCodec.decode(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1))));
+    Assertions.assertThrows(IOException.class,
+        () -> lazyCodec.decode(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length + 1))));
+    byte[] serialized = encode(codec, new DataPackage("SERIALIZED", BigDecimal.ONE));
+    Assertions.assertThrows(IOException.class, () -> lazyCodec.decode(new ByteArrayInputStream(serialized)));
+  }
+
+  @Test
+  public void nestingIsLimited() throws Exception {
+    BinaryCodec lazyCodec = new BinaryCodec(false, true);
+    byte[] deepest = encode(codec, new DataPackage("DEEP", nestedLists(BinaryCodec.MAX_DEPTH - 1)));
+    Assertions.assertEquals(nestedLists(BinaryCodec.MAX_DEPTH - 1), ((DataPackage) codec.decode(new ByteArrayInputStream(deepest))).get(0));
+    Assertions.assertEquals(nestedLists(BinaryCodec.MAX_DEPTH - 1), ((DataPackage) lazyCodec.decode(new ByteArrayInputStream(deepest))).get(0));
+
+    // rejected by decoding and by checking the structure of lazily decoded values
+    for (Object value : new Object[]{nestedLists(BinaryCodec.MAX_DEPTH), Collections.singletonMap("key", nestedLists(BinaryCodec.MAX_DEPTH))}) {
+      byte[] tooDeep = encode(codec, new DataPackage("DEEP", value));
+      Assertions.assertThrows(StreamCorruptedException.class, () -> codec.decode(new ByteArrayInputStream(tooDeep)));
+      Assertions.assertThrows(StreamCorruptedException.class, () -> lazyCodec.decode(new ByteArrayInputStream(tooDeep)));
+    }
+    DataPackage nestedPackages = new DataPackage("INNERMOST");
+    for (int i = 0; i < BinaryCodec.MAX_DEPTH; i++) {
+      nestedPackages = new DataPackage("OUTER", nestedPackages);
+    }
+    byte[] encodedPackages = encode(codec, nestedPackages);
+    Assertions.assertThrows(StreamCorruptedException.class, () -> codec.decode(new ByteArrayInputStream(encodedPackages)));
+  }
+
+  private static List<Object> nestedLists(int depth) {
+    List<Object> list = new ArrayList<>(Collections.singletonList("innermost"));
+    for (int i = 1; i < depth; i++) {
+      List<Object> outer = new ArrayList<>();
+      outer.add(list);
+      list = outer;
+    }
+    return list;
+  }
+
+  /**
+   * Compares forwarding a received package with eager and lazy decoding.
+   */
+  @Test
+  public void compareLazyRelay() throws Exception {
+    BinaryCodec lazyCodec = new BinaryCodec(true, true);
+    DataPackage data = new DataPackage("ROUTE");
+    for (int i = 0; i < 32; i++) {
+      data.addData("value " + i);
+      data.addLong(i * 1000L);
+    }
+    byte[] encoded = encode(codec, data);
+
+    for (int round = 0; round < 2; round++) {
+      // the first round warms up
+      long eager = measureRelay(codec, encoded);
+      long lazy = measureRelay(lazyCodec, encoded);
+      if (round == 1) {
+        System.out.printf("Relay of %d bytes: eager %d ns, lazy %d ns%n", encoded.length, eager / ITERATIONS,
+            lazy / ITERATIONS);
+      }
+    }
+  }
+
+  private static long measureRelay(Codec decoder, byte[] encoded) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      DataPackage received = (DataPackage) decoder.decode(new ByteArrayInputStream(encoded));
+      Assertions.assertEquals("ROUTE", received.getID());
+      output.reset();
+      decoder.encode(received, output);
+    }
+    Assertions.assertEquals(encoded.length, output.size());
+    return System.nanoTime() - start;
+  }
+
+  @Test
+  public void javaSerializationFallback() throws Exception {
+    DataPackage decoded = (DataPackage) roundTrip(codec, new DataPackage("FALLBACK", new BigDecimal("1.25")));
+
+    Assertions.assertEquals(new BigDecimal("1.25"), decoded.getObject(0));
+  }
+
+  @Test
+  public void fallbackDisabled() throws Exception {
+    BinaryCodec strictCodec = new BinaryCodec(false);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.encode(new DataPackage("FALLBACK", new BigDecimal("1")), bytes);
+
+    Assertions.assertThrows(NotSerializableException.class,
+        () -> strictCodec.encode(new DataPackage("FALLBACK", new BigDecimal("1")), new ByteArrayOutputStream()));
+    Assertions.assertThrows(InvalidClassException.class,
+        () -> strictCodec.decode(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  @Test
+  public void registry() throws Exception {
+    Assertions.assertSame(JavaSerializationCodec.INSTANCE, CodecRegistry.get(JavaSerializationCodec.ID));
+    Assertions.assertEquals(BinaryCodec.ID, CodecRegistry.getDefault().getId());
+    Assertions.assertThrows(IOException.class, () -> CodecRegistry.get(CodecRegistry.MAX_CODEC_ID));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CodecRegistry.validateId(CodecRegistry.MAX_CODEC_ID + 1));
+  }
+
+  /**
+   * Compares bytes on the wire and encode/decode time of a typical message with the Java serialization.
+   */
+  @Test
+  public void compareWithJavaSerialization() throws Exception {
+    DataPackage data = new DataPackage("USER_UPDATE", 42, "username", 1234567890123L, true,
+        Collections.singletonList("role"));
+
+    int binarySize = encode(codec, data).length;
+    int javaSize = encode(JavaSerializationCodec.INSTANCE, data).length;
+    long binaryNanos = measureRoundTrips(codec, data);
+    long javaNanos = measureRoundTrips(JavaSerializationCodec.INSTANCE, data);
+
+    System.out.println("BinaryCodec: " + binarySize + " bytes, " + binaryNanos / ITERATIONS + " ns per encode+decode");
+    System.out.println("JavaSerializationCodec: " + javaSize + " bytes, " + javaNanos / ITERATIONS + " ns per encode+decode");
+    Assertions.assertTrue(binarySize * 4 < javaSize, "Binary encoding must be much smaller");
+  }
+
+  private static long measureRoundTrips(Codec codec, DataPackage data) throws Exception {
+    // warm up, then measure
+    for (int i = 0; i < ITERATIONS; i++) {
+      roundTrip(codec, data);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      roundTrip(codec, data);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static Object roundTrip(Codec codec, Object obj) throws Exception {
+    return codec.decode(new ByteArrayInputStream(encode(codec, obj)));
+  }
+
+  private static byte[] encode(Codec codec, Object obj) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.encode(obj, bytes);
+    return bytes.toByteArray();
+  }
+
+}
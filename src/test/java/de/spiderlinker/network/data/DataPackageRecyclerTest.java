@@ -0,0 +1,141 @@
+package de.spiderlinker.network.data;
+
+import de.spiderlinker.network.codec.BinaryCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class DataPackageRecyclerTest {
+
+  private static final int ITERATIONS = 100_000;
+
+  @Test
+  public void reuseReleasedPackages() {
+    DataPackageRecycler recycler = new DataPackageRecycler();
+    DataPackage first = recycler.acquire("FIRST", 5);
+    first.addData("text", 1);
+    first.addInt(2);
+    Assertions.assertTrue(first.isPooled());
+    Assertions.assertEquals(5, first.getRequestId());
+    Assertions.assertTrue(first.release());
+    Assertions.assertEquals(1, recycler.getPooledCount());
+
+    DataPackage second = recycler.acquire("SECOND");
+    Assertions.assertSame(first, second);
+    Assertions.assertEquals("SECOND", second.getID());
+    Assertions.assertEquals(DataPackage.NO_REQUEST_ID, second.getRequestId());
+    Assertions.assertEquals(0, second.size());
+    Assertions.assertEquals(1, recycler.getCreatedCount());
+    Assertions.assertEquals(2, recycler.getAcquiredCount());
+  }
+
+  @Test
+  public void referenceCounting() {
+    DataPackageRecycler recycler = new DataPackageRecycler();
+    DataPackage data = recycler.acquire("COUNTED");
+    Assertions.assertSame(data, data.retain());
+    Assertions.assertEquals(2, data.refCount());
+    Assertions.assertFalse(data.release());
+    Assertions.assertEquals(0, recycler.getPooledCount());
+    Assertions.assertTrue(DataPackageRecycler.release(data));
+    Assertions.assertEquals(0, data.refCount());
+    Assertions.assertThrows(IllegalStateException.class, data::release);
+    Assertions.assertThrows(IllegalStateException.class, data::retain);
+
+    // packages which are not pooled are not counted
+    DataPackage unpooled = new DataPackage("UNPOOLED");
+    Assertions.assertFalse(unpooled.release());
+    Assertions.assertFalse(unpooled.release());
+    Assertions.assertEquals(1, unpooled.refCount());
+    Assertions.assertFalse(DataPackageRecycler.release("no package"));
+  }
+
+  @Test
+  public void limits() {
+    DataPackageRecycler recycler = new DataPackageRecycler(1, 4, false);
+    DataPackage large = recycler.acquire("LARGE");
+    for (int i = 0; i < 10; i++) {
+      large.addInt(i);
+    }
+    DataPackage other = recycler.acquire("OTHER");
+    large.release();
+    other.release();
+    Assertions.assertEquals(1, recycler.getPooledCount());
+
+    // the values of the trimmed payload are gone
+    DataPackage reused = recycler.acquire("REUSED");
+    Assertions.assertSame(large, reused);
+    Assertions.assertEquals(0, reused.size());
+    reused.addData("value");
+    Assertions.assertEquals("value", reused.getString(0));
+  }
+
+  @Test
+  public void leakDetection() throws InterruptedException {
+    DataPackageRecycler recycler = new DataPackageRecycler(16, 16, true);
+    recycler.acquire("RELEASED").release();
+    acquireAndForget(recycler);
+
+    long end = System.currentTimeMillis() + 5000;
+    while (recycler.getLeakCount() == 0 && System.currentTimeMillis() < end) {
+      System.gc();
+      Thread.sleep(10);
+      recycler.detectLeaks();
+    }
+    Assertions.assertEquals(1, recycler.getLeakCount());
+  }
+
+  private static void acquireAndForget(DataPackageRecycler recycler) {
+    recycler.acquire("LEAKED").addData("value");
+  }
+
+  /**
+   * Measures the bytes allocated per decoded message with and without recycler (like the read path of the server).
+   */
+  @Test
+  public void allocationBenchmark() throws Exception {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      // the allocated bytes are only measured by HotSpot based JVMs
+      return;
+    }
+    com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+
+    BinaryCodec codec = new BinaryCodec();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataPackage message = new DataPackage("BENCH").addInt(1).addLong(2).addDouble(3).addBoolean(true);
+    codec.encode(message, bytes);
+    byte[] encoded = bytes.toByteArray();
+    DataPackageRecycler recycler = new DataPackageRecycler();
+
+    for (int round = 0; round < 2; round++) {
+      // the first round warms up
+      long threadId = Thread.currentThread().getId();
+      long start = allocation.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < ITERATIONS; i++) {
+        DataPackage decoded = (DataPackage) codec.decode(new ByteArrayInputStream(encoded));
+        decoded.release();
+      }
+      long unpooled = allocation.getThreadAllocatedBytes(threadId) - start;
+
+      start = allocation.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < ITERATIONS; i++) {
+        DataPackage decoded = (DataPackage) codec.decode(new ByteArrayInputStream(encoded), recycler);
+        decoded.release();
+      }
+      long pooled = allocation.getThreadAllocatedBytes(threadId) - start;
+
+      if (round == 1) {
+        System.out.printf("Allocated bytes per decoded message: %d without recycler, %d with recycler%n",
+            unpooled / ITERATIONS, pooled / ITERATIONS);
+        Assertions.assertTrue(pooled < unpooled, pooled + " >= " + unpooled);
+      }
+    }
+    Assertions.assertEquals(1, recycler.getCreatedCount());
+  }
+
+}
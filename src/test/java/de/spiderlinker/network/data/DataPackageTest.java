@@ -5,8 +5,21 @@ import org.apache.commons.lang3.SerializationUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Base64;
+import java.util.List;
+
 public class DataPackageTest {
 
+  /** new DataPackage("LOGIN", "user", 42, new DataPackage("NESTED", true)) serialized by the first releases */
+  private static final String FIRST_RELEASE_FORM = "rO0ABXNyAChkZS5zcGlkZXJsaW5rZXIubmV0d29yay5kYXRhLkRhdGFQYWNrYWdl7YQaWndmKaICAAJMAAtkYXRhT2JqZWN0"
+      + "c3QAEExqYXZhL3V0aWwvTGlzdDtMAAJpZHQAEkxqYXZhL2xhbmcvU3RyaW5nO3hwc3IAFGphdmEudXRpbC5MaW5rZWRMaXN0"
+      + "DClTXUpgiCIDAAB4cHcEAAAAA3QABHVzZXJzcgARamF2YS5sYW5nLkludGVnZXIS4qCk94GHOAIAAUkABXZhbHVleHIAEGph"
+      + "dmEubGFuZy5OdW1iZXKGrJUdC5TgiwIAAHhwAAAAKnNxAH4AAHNxAH4ABHcEAAAAAXNyABFqYXZhLmxhbmcuQm9vbGVhbs0g"
+      + "coDVnPruAgABWgAFdmFsdWV4cAF4dAAGTkVTVEVEeHQABUxPR0lO";
+
   private String testID = "#testID";
 
   @Test
@@ -30,4 +43,58 @@ public class DataPackageTest {
     Assertions.assertTrue(ClassMethodUtils.equals(dataPackage, serializedDataPackage));
   }
 
+  @Test
+  void testSerialVersionUidOfFirstReleases() {
+    Assertions.assertEquals(-1331910613942261342L, ObjectStreamClass.lookup(DataPackage.class).getSerialVersionUID());
+  }
+
+  @Test
+  void testReadSerialFormOfFirstReleases() throws Exception {
+    DataPackage dataPackage;
+    try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(FIRST_RELEASE_FORM)))) {
+      dataPackage = (DataPackage) input.readObject();
+    }
+
+    Assertions.assertEquals("LOGIN", dataPackage.getID());
+    Assertions.assertEquals(DataPackage.NO_REQUEST_ID, dataPackage.getRequestId());
+    Assertions.assertEquals("user", dataPackage.getString(0));
+    Assertions.assertEquals(42, dataPackage.getInt(1));
+    Assertions.assertTrue(dataPackage.<DataPackage>get(2).getBoolean(0));
+  }
+
+  @Test
+  void testWriteSerialFormOfFirstReleases() throws Exception {
+    ObjectStreamClass serialForm = ObjectStreamClass.lookup(DataPackage.class);
+    Assertions.assertEquals(List.class, serialForm.getField("dataObjects").getType());
+    Assertions.assertEquals(String.class, serialForm.getField("id").getType());
+    Assertions.assertEquals(3, serialForm.getFields().length);
+
+    DataPackage request = new DataPackage(testID, "request").addInt(1).withRequestId(42);
+    DataPackage serializedRequest = SerializationUtils.clone(request);
+    Assertions.assertEquals(42, serializedRequest.getRequestId());
+    Assertions.assertEquals(request.get(), serializedRequest.get());
+  }
+
+  @Test
+  void testReplyCarriesRequestId() {
+    DataPackage request = new DataPackage(testID, "request").withRequestId(42);
+    DataPackage reply = request.createReply("#reply", "answer");
+
+    Assertions.assertTrue(reply.isRequest());
+    Assertions.assertEquals(42, reply.getRequestId());
+    Assertions.assertEquals("answer", reply.getObject(0));
+    Assertions.assertFalse(new DataPackage(testID).createReply("#reply").isRequest());
+  }
+
+  @Test
+  void testWithRequestIdSharesData() {
+    DataPackage dataPackage = new DataPackage(testID, "data");
+    DataPackage request = dataPackage.withRequestId(7);
+
+    Assertions.assertSame(request, request.withRequestId(7));
+    Assertions.assertEquals(DataPackage.NO_REQUEST_ID, dataPackage.getRequestId());
+    Assertions.assertEquals(testID, request.getID());
+    Assertions.assertSame(dataPackage.get(), request.get());
+  }
+
 }
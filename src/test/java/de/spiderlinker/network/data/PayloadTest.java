@@ -0,0 +1,179 @@
+package de.spiderlinker.network.data;
+
+import de.spiderlinker.network.codec.BinaryCodec;
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.PayloadSchema.Type;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PayloadTest {
+
+  private static final int ITERATIONS = 200_000;
+  private static final int VALUES     = 32;
+
+  @Test
+  public void listOperations() {
+    DataPackage data = new DataPackage("LIST", "a", "c");
+    data.addData(1, "b");
+    data.addInt(4);
+    data.get().add("e");
+
+    Assertions.assertEquals(Arrays.asList("a", "b", "c", 4, "e"), data.get());
+    Assertions.assertEquals("[LIST] [a, b, c, 4, e]", data.toString());
+    Assertions.assertEquals(4, data.getInt(3));
+    Assertions.assertEquals("b", data.get().remove(1));
+    Assertions.assertEquals(4, data.getInt(2));
+    Assertions.assertEquals(Type.INT, data.getPayload().getType(2));
+
+    data.get().set(2, "d");
+    Assertions.assertEquals(Type.OBJECT, data.getPayload().getType(2));
+    Assertions.assertEquals(Arrays.asList("a", "c", "d", "e"), data.get());
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> data.get(4));
+  }
+
+  @Test
+  public void typedAccess() {
+    DataPackage data = new DataPackage("TYPED", 1, 2L, 3.0, false, new byte[]{4}, "five")
+        .addInt(6).addLong(7).addDouble(8.5).addBoolean(true);
+
+    // boxed values and primitives are read alike
+    Assertions.assertEquals(1, data.getInt(0));
+    Assertions.assertEquals(2L, data.getLong(1));
+    Assertions.assertEquals(3.0, data.getDouble(2));
+    Assertions.assertFalse(data.getBoolean(3));
+    Assertions.assertArrayEquals(new byte[]{4}, data.getBytes(4));
+    Assertions.assertEquals("five", data.getString(5));
+    Assertions.assertEquals(6, data.getInt(6));
+    Assertions.assertEquals(7L, data.getLong(7));
+    Assertions.assertEquals(8.5, data.getDouble(8));
+    Assertions.assertTrue(data.getBoolean(9));
+    Assertions.assertEquals(6, (int) data.get(6));
+    Assertions.assertEquals(10, data.size());
+
+    Assertions.assertThrows(ClassCastException.class, () -> data.getLong(6));
+    Assertions.assertThrows(ClassCastException.class, () -> data.getString(6));
+    Assertions.assertThrows(ClassCastException.class, () -> data.getInt(5));
+  }
+
+  @Test
+  public void schemaSlots() {
+    PayloadSchema schema = PayloadSchema.of(Type.INT, Type.STRING);
+    DataPackage data = DataPackage.withSchema("SCHEMA", schema);
+
+    Assertions.assertEquals(Arrays.asList(0, null), data.get());
+    data.getPayload().set(0, 5);
+    data.getPayload().set(1, "text");
+    Assertions.assertEquals(5, data.getInt(0));
+    Assertions.assertEquals("text", data.getString(1));
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> data.getPayload().set(0, "text"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> data.getPayload().setLong(0, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> data.getPayload().set(1, 1));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> data.addData("more"));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> data.addInt(1));
+  }
+
+  @Test
+  public void javaSerialization() throws Exception {
+    DataPackage data = new DataPackage("JAVA", "text").addInt(1).addDouble(2.5).withRequestId(9);
+    DataPackage decoded = (DataPackage) roundTrip(JavaSerializationCodec.INSTANCE, data);
+
+    Assertions.assertEquals(data.get(), decoded.get());
+    Assertions.assertEquals(9, decoded.getRequestId());
+    Assertions.assertEquals(Type.INT, decoded.getPayload().getType(1));
+
+    DataPackage schema = DataPackage.withSchema("SCHEMA", PayloadSchema.of(Type.LONG, Type.BYTES));
+    schema.getPayload().setLong(0, 3);
+    DataPackage decodedSchema = (DataPackage) roundTrip(JavaSerializationCodec.INSTANCE, schema);
+    Assertions.assertEquals(3, decodedSchema.getLong(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> decodedSchema.getPayload().set(1, "text"));
+  }
+
+  /**
+   * Compares the former linked list payload with the array payload (boxed and primitive values) regarding
+   * construction, indexed access and serialization with the {@link BinaryCodec}.
+   */
+  @Test
+  public void benchmark() throws Exception {
+    BinaryCodec codec = new BinaryCodec();
+    long blackhole = 0;
+    for (int round = 0; round < 2; round++) {
+      // the first round warms up
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        List<Object> list = new LinkedList<>();
+        for (int v = 0; v < VALUES; v++) {
+          list.add(i + v);
+        }
+        for (int v = 0; v < VALUES; v++) {
+          blackhole += (Integer) list.get(v);
+        }
+      }
+      long linkedList = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        DataPackage data = new DataPackage("BENCH");
+        for (int v = 0; v < VALUES; v++) {
+          data.addData(i + v);
+        }
+        for (int v = 0; v < VALUES; v++) {
+          blackhole += (Integer) data.get(v);
+        }
+      }
+      long boxed = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        DataPackage data = new DataPackage("BENCH");
+        for (int v = 0; v < VALUES; v++) {
+          data.addInt(i + v);
+        }
+        for (int v = 0; v < VALUES; v++) {
+          blackhole += data.getInt(v);
+        }
+      }
+      long primitive = System.nanoTime() - start;
+
+      DataPackage boxedData = new DataPackage("BENCH");
+      DataPackage primitiveData = new DataPackage("BENCH");
+      for (int v = 0; v < VALUES; v++) {
+        boxedData.addData(100_000 + v);
+        primitiveData.addInt(100_000 + v);
+      }
+      long boxedCodec = measureRoundTrips(codec, boxedData);
+      long primitiveCodec = measureRoundTrips(codec, primitiveData);
+
+      if (round == 1) {
+        System.out.printf("Construct + access of %d values: LinkedList %d ns, boxed array %d ns, primitive array %d ns%n",
+            VALUES, linkedList / ITERATIONS, boxed / ITERATIONS, primitive / ITERATIONS);
+        System.out.printf("BinaryCodec encode + decode: boxed %d ns, primitive %d ns%n",
+            boxedCodec / (ITERATIONS / 10), primitiveCodec / (ITERATIONS / 10));
+      }
+    }
+    Assertions.assertNotEquals(0, blackhole);
+  }
+
+  private static long measureRoundTrips(Codec codec, DataPackage data) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS / 10; i++) {
+      roundTrip(codec, data);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static Object roundTrip(Codec codec, Object obj) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.encode(obj, bytes);
+    return codec.decode(new ByteArrayInputStream(bytes.toByteArray()));
+  }
+
+}
@@ -0,0 +1,84 @@
+package de.spiderlinker.network.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+  private static final int THREADS         = 4;
+  private static final int VALUES_PER_THREAD = 1_000_000;
+
+  @Test
+  public void bucketsCoverAllValues() {
+    int previous = -1;
+    for (long micros = 0; micros < (1L << 40); micros = micros < 4096 ? micros + 1 : micros * 33 / 32) {
+      int index = LatencyHistogram.indexOf(micros);
+      Assertions.assertTrue(index >= previous && index < LatencyHistogram.BUCKET_COUNT, "Index of " + micros);
+      long highest = LatencyHistogram.highestValueOf(index);
+      if (index < LatencyHistogram.BUCKET_COUNT - 1) {
+        Assertions.assertTrue(highest >= micros && highest - micros <= micros / 32, micros + " -> " + highest);
+      }
+      previous = index;
+    }
+    Assertions.assertEquals(0, LatencyHistogram.indexOf(-5));
+  }
+
+  @Test
+  public void percentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int micros = 1; micros <= 10_000; micros++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    HistogramSnapshot snapshot = histogram.getSnapshot();
+    Assertions.assertEquals(10_000, snapshot.getCount());
+    assertWithinPrecision(5_000, snapshot.getMedian());
+    assertWithinPrecision(9_900, snapshot.get99thPercentile());
+    assertWithinPrecision(9_990, snapshot.get999thPercentile());
+    assertWithinPrecision(10_000, snapshot.getMax());
+    assertWithinPrecision(5_000, (long) snapshot.getMean());
+    Assertions.assertEquals(1, snapshot.getValueAtPercentile(0));
+  }
+
+  @Test
+  public void emptySnapshot() {
+    HistogramSnapshot snapshot = new LatencyHistogram().getSnapshot();
+    Assertions.assertEquals(0, snapshot.getCount());
+    Assertions.assertEquals(0, snapshot.get99thPercentile());
+    Assertions.assertEquals(0, snapshot.getMax());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> snapshot.getValueAtPercentile(101));
+  }
+
+  @Test
+  public void concurrentRecording() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<Thread> threads = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < THREADS; i++) {
+      Thread thread = new Thread(() -> {
+        for (int value = 0; value < VALUES_PER_THREAD; value++) {
+          histogram.record(value);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    Assertions.assertEquals(THREADS * VALUES_PER_THREAD, histogram.getSnapshot().getCount());
+    System.out.printf("Recorded %d values with %d threads in %d ms (%d ns per value)%n", THREADS * VALUES_PER_THREAD,
+        THREADS, TimeUnit.NANOSECONDS.toMillis(elapsed), elapsed * THREADS / (THREADS * VALUES_PER_THREAD));
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    Assertions.assertTrue(actual >= expected && actual - expected <= expected / 32, expected + " != " + actual);
+  }
+
+}
@@ -0,0 +1,123 @@
+package de.spiderlinker.network.protocol;
+
+import de.spiderlinker.network.codec.BinaryCodec;
+import de.spiderlinker.network.codec.Codec;
+import de.spiderlinker.network.codec.CodecRegistry;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.DataPackage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DatagramCodecTest {
+
+  private final List<byte[]> datagrams = new ArrayList<>();
+  private final DatagramCodec.Sender sender = datagram -> {
+    byte[] copy = new byte[datagram.remaining()];
+    datagram.get(copy);
+    datagrams.add(copy);
+  };
+
+  @Test
+  public void packsFramesIntoDatagrams() throws Exception {
+    DatagramCodec codec = new DatagramCodec(CodecRegistry.getDefault(), 200);
+    for (int i = 0; i < 50; i++) {
+      codec.write(new DataPackage("TELEMETRY", i), sender);
+    }
+    Assertions.assertTrue(codec.flush(sender));
+    Assertions.assertFalse(codec.flush(sender));
+
+    List<Object> received = new ArrayList<>();
+    for (byte[] datagram : datagrams) {
+      Assertions.assertTrue(datagram.length <= 200, "Datagram of " + datagram.length + " bytes");
+      DatagramCodec.decode(datagram, 0, datagram.length, received);
+    }
+    Assertions.assertTrue(datagrams.size() > 1 && datagrams.size() < 50, datagrams.size() + " datagrams");
+    Assertions.assertEquals(50, received.size());
+    for (int i = 0; i < received.size(); i++) {
+      Assertions.assertEquals(i, (int) ((DataPackage) received.get(i)).get(0));
+    }
+  }
+
+  @Test
+  public void framesOfEveryCodec() throws Exception {
+    new DatagramCodec(JavaSerializationCodec.INSTANCE, 1000).write(new DataPackage("JAVA", 1), sender);
+    DatagramCodec binary = new DatagramCodec(CodecRegistry.get(BinaryCodec.ID), 1000);
+    binary.write(new DataPackage("BINARY", 2), sender);
+    binary.flush(sender);
+
+    byte[] datagram = datagrams.get(0);
+    List<Object> received = new ArrayList<>();
+    DatagramCodec.decode(datagram, 0, datagram.length, received);
+    Assertions.assertEquals("BINARY", ((DataPackage) received.get(0)).getID());
+    Assertions.assertEquals(BinaryCodec.ID, FrameCodec.getCodecId(datagram, 0));
+  }
+
+  @Test
+  public void rejectsFramesOfUnacceptedCodecs() throws Exception {
+    DatagramCodec java = new DatagramCodec(JavaSerializationCodec.INSTANCE, 1000);
+    java.write(new DataPackage("JAVA", 1), sender);
+    java.flush(sender);
+    byte[] datagram = datagrams.get(0);
+    Codec[] accepted = {new BinaryCodec(false)};
+    Assertions.assertThrows(StreamCorruptedException.class,
+        () -> DatagramCodec.decode(datagram, 0, datagram.length, new ArrayList<>(), accepted));
+  }
+
+  @Test
+  public void rejectsOversizedMessage() throws Exception {
+    DatagramCodec codec = new DatagramCodec(CodecRegistry.getDefault(), 100);
+    codec.write(new DataPackage("SMALL", 1), sender);
+
+    char[] large = new char[200];
+    Arrays.fill(large, 'x');
+    Assertions.assertThrows(IOException.class, () -> codec.write(new DataPackage("LARGE", new String(large)), sender));
+
+    // the pending frame is kept
+    codec.flush(sender);
+    List<Object> received = new ArrayList<>();
+    DatagramCodec.decode(datagrams.get(0), 0, datagrams.get(0).length, received);
+    Assertions.assertEquals(1, received.size());
+    Assertions.assertEquals("SMALL", ((DataPackage) received.get(0)).getID());
+  }
+
+  @Test
+  public void rejectsTruncatedDatagram() throws Exception {
+    DatagramCodec codec = new DatagramCodec(CodecRegistry.getDefault(), 1000);
+    codec.write(new DataPackage("TELEMETRY", 1), sender);
+    codec.flush(sender);
+    byte[] datagram = datagrams.get(0);
+
+    List<Object> received = new ArrayList<>();
+    Assertions.assertThrows(StreamCorruptedException.class,
+        () -> DatagramCodec.decode(datagram, 0, datagram.length - 1, received));
+    Assertions.assertThrows(StreamCorruptedException.class,
+        () -> DatagramCodec.decode(datagram, 0, FrameCodec.HEADER_LENGTH - 1, received));
+    Assertions.assertThrows(StreamCorruptedException.class,
+        () -> DatagramCodec.decode(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, 0, 9, received));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new DatagramCodec(CodecRegistry.getDefault(), DatagramCodec.MAX_DATAGRAM_SIZE + 1));
+  }
+
+  @Test
+  public void senderReceivesOnlyCompletedDatagrams() throws Exception {
+    List<Integer> sizes = new ArrayList<>();
+    DatagramCodec codec = new DatagramCodec(CodecRegistry.getDefault(), 100);
+    DatagramCodec.Sender sizeSender = (ByteBuffer datagram) -> sizes.add(datagram.remaining());
+    codec.write(new DataPackage("A"), sizeSender);
+    Assertions.assertTrue(sizes.isEmpty());
+    for (int i = 0; i < 20; i++) {
+      codec.write(new DataPackage("A"), sizeSender);
+    }
+    codec.flush(sizeSender);
+    Assertions.assertTrue(sizes.size() > 1);
+    Assertions.assertTrue(sizes.stream().allMatch(size -> size <= 100), sizes.toString());
+  }
+
+}
@@ -0,0 +1,393 @@
+package de.spiderlinker.network.protocol;
+
+import de.spiderlinker.network.codec.BinaryCodec;
+import de.spiderlinker.network.codec.JavaSerializationCodec;
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.StreamBody;
+import de.spiderlinker.network.utils.ConnectionUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class FrameCodecTest {
+
+  private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+  @Test
+  public void frameLayout() throws IOException {
+    FrameCodec codec = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, true);
+    codec.writeHandshake(ConnectionUtils.HANDSHAKE_REQUEST);
+
+    byte[] frame = written.toByteArray();
+    byte flags = FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, 0);
+    Assertions.assertArrayEquals(FrameCodec.encodeFrame(flags, ConnectionUtils.HANDSHAKE_REQUEST.getBytes()), frame);
+    Assertions.assertTrue(FrameCodec.isFrameStart(frame[0]));
+    Assertions.assertEquals(ConnectionUtils.HANDSHAKE_REQUEST.length(), FrameCodec.readPayloadLength(frame, 0));
+  }
+
+  @Test
+  public void framedRoundTrip() throws Exception {
+    assertRoundTrip(true);
+  }
+
+  @Test
+  public void legacyRoundTrip() throws Exception {
+    assertRoundTrip(false);
+    Assertions.assertTrue(new String(written.toByteArray()).startsWith(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE));
+  }
+
+  @Test
+  public void framedCodecReadsLegacyBusyReply() throws IOException {
+    byte[] busyLine = (ConnectionUtils.HANDSHAKE_BUSY + "\r\n").getBytes();
+    FrameCodec codec = new FrameCodec(new ByteArrayInputStream(busyLine), written, true);
+
+    Assertions.assertFalse(codec.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST));
+  }
+
+  @Test
+  public void codecIdInFlags() throws Exception {
+    FrameCodec writer = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, true, JavaSerializationCodec.INSTANCE);
+    writer.writeObject(new DataPackage("JAVA", 1));
+
+    byte[] frame = written.toByteArray();
+    Assertions.assertEquals(JavaSerializationCodec.ID, FrameCodec.getCodecId(frame, 0));
+    FrameCodec.requireType(frame, 0, FrameCodec.TYPE_DATA);
+
+    // the reader decodes with the codec of the frame, not with its own codec
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(frame), new ByteArrayOutputStream(), true, new BinaryCodec());
+    Assertions.assertEquals("JAVA", ((DataPackage) reader.readObject()).getID());
+  }
+
+  @Test
+  public void invalidMagic() {
+    byte[] frame = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_DATA, 0), new byte[4]);
+    frame[1] = 0;
+
+    Assertions.assertThrows(StreamCorruptedException.class, () -> FrameCodec.readPayloadLength(frame, 0));
+  }
+
+  @Test
+  public void invalidLength() {
+    byte[] frame = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_DATA, 0), new byte[0]);
+    frame[4] = (byte) 0xFF;
+
+    Assertions.assertThrows(StreamCorruptedException.class, () -> FrameCodec.readPayloadLength(frame, 0));
+  }
+
+  @Test
+  public void maxPayloadLength() throws Exception {
+    FrameCodec writer = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, true);
+    writer.writeObject(new DataPackage("SMALL", "text"));
+    writer.writeObject(new DataPackage("LARGE", new String(new char[2000])));
+
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(written.toByteArray()), new ByteArrayOutputStream(), true);
+    reader.setMaxPayloadLength(1000);
+    Assertions.assertEquals("text", ((DataPackage) reader.readObject()).getObject(0));
+    Assertions.assertThrows(StreamCorruptedException.class, reader::readObject);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> reader.setMaxPayloadLength(FrameCodec.MAX_PAYLOAD_LENGTH + 1));
+  }
+
+  @Test
+  public void truncatedLargeFrame() {
+    // the header announces the maximum length, the buffer only grows with the bytes which arrive
+    byte[] header = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_DATA, 0), new byte[0]);
+    header[4] = (byte) (FrameCodec.MAX_PAYLOAD_LENGTH >>> 24);
+    byte[] frame = Arrays.copyOf(header, header.length + 100);
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(frame), new ByteArrayOutputStream(), true);
+
+    Assertions.assertThrows(EOFException.class, reader::readObject);
+  }
+
+  @Test
+  public void unexpectedFrame() throws IOException {
+    new FrameCodec(new ByteArrayInputStream(new byte[0]), written, true).writeHandshake(ConnectionUtils.HANDSHAKE_REQUEST);
+    FrameCodec codec = new FrameCodec(new ByteArrayInputStream(written.toByteArray()), new ByteArrayOutputStream(), true);
+
+    Assertions.assertThrows(StreamCorruptedException.class, codec::readObject);
+  }
+
+  @Test
+  public void negotiateRoutes() throws Exception {
+    RouteTable table = RouteTable.EMPTY.extend(Arrays.asList("LOGIN", "CHAT"));
+    ByteArrayOutputStream serverOutput = new ByteArrayOutputStream();
+    FrameCodec server = new FrameCodec(new ByteArrayInputStream(routeRequest()), serverOutput, true);
+    Assertions.assertEquals(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE, server.acceptHandshake(() -> table));
+    Assertions.assertSame(table, server.getRoutes());
+
+    FrameCodec client = new FrameCodec(new ByteArrayInputStream(serverOutput.toByteArray()), written, true);
+    client.setRouteNegotiation(true);
+    Assertions.assertTrue(client.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE));
+    Assertions.assertEquals(table.getNames(), client.getRoutes().getNames());
+
+    written.reset();
+    client.writeObject(new DataPackage("CHAT", "hello").withRequestId(42));
+    client.writeObject(new DataPackage("UNROUTED", "hello"));
+
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(written.toByteArray()), new ByteArrayOutputStream(), true);
+    Assertions.assertThrows(StreamCorruptedException.class, reader::readObject, "Routed data requires negotiated routes");
+
+    byte[] frames = written.toByteArray();
+    Assertions.assertEquals(FrameCodec.TYPE_ROUTED_DATA, FrameCodec.getType(frames, 0));
+    ByteArrayInputStream payload = new ByteArrayInputStream(frames, FrameCodec.HEADER_LENGTH, FrameCodec.readPayloadLength(frames, 0));
+    Assertions.assertEquals(1, FrameCodec.readRouteId(payload));
+    DataPackage routed = FrameCodec.decodeRouted(payload, "CHAT", new BinaryCodec());
+    Assertions.assertEquals("hello", routed.getObject(0));
+    Assertions.assertEquals(42, routed.getRequestId());
+
+    payload = new ByteArrayInputStream(frames, FrameCodec.HEADER_LENGTH, FrameCodec.readPayloadLength(frames, 0));
+    FrameCodec.readRouteId(payload);
+    DataPackage lazy = FrameCodec.decodeRouted(payload, "CHAT", new BinaryCodec(true, true));
+    Assertions.assertFalse(lazy.getPayload().isDecoded(0));
+    Assertions.assertEquals("hello", lazy.getObject(0));
+  }
+
+  @Test
+  public void serverWithoutRoutesIgnoresFeature() throws Exception {
+    ByteArrayOutputStream serverOutput = new ByteArrayOutputStream();
+    FrameCodec server = new FrameCodec(new ByteArrayInputStream(routeRequest()), serverOutput, true);
+    Assertions.assertEquals(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE, server.acceptHandshake());
+
+    FrameCodec client = new FrameCodec(new ByteArrayInputStream(serverOutput.toByteArray()), written, true);
+    client.setRouteNegotiation(true);
+    Assertions.assertTrue(client.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE));
+    Assertions.assertNull(client.getRoutes());
+
+    written.reset();
+    client.writeObject(new DataPackage("CHAT", "hello"));
+    Assertions.assertEquals(FrameCodec.TYPE_DATA, FrameCodec.getType(written.toByteArray(), 0));
+  }
+
+  /**
+   * Compares the bytes per message of routed data frames and data frames with the ID string.
+   */
+  @Test
+  public void routedFramesAreSmaller() throws Exception {
+    String id = "de.spiderlinker.chat.MESSAGE";
+    RouteTable table = RouteTable.EMPTY.extend(Collections.singleton(id));
+    ByteArrayOutputStream serverOutput = new ByteArrayOutputStream();
+    new FrameCodec(new ByteArrayInputStream(routeRequest()), serverOutput, true).acceptHandshake(() -> table);
+    FrameCodec routed = new FrameCodec(new ByteArrayInputStream(serverOutput.toByteArray()), new ByteArrayOutputStream(), true);
+    routed.setRouteNegotiation(true);
+    routed.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE);
+
+    for (Object[] values : new Object[][]{{}, {42}, {"hello", 42L}}) {
+      ByteArrayOutputStream stringFrame = new ByteArrayOutputStream();
+      new FrameCodec(new ByteArrayInputStream(new byte[0]), stringFrame, true).writeObject(new DataPackage(id, values));
+      ByteArrayOutputStream routedFrame = new ByteArrayOutputStream();
+      FrameCodec.encodeRouted(new DataPackage(id, values), routed.getRoutes().getRouteId(id), new BinaryCodec(), routedFrame);
+      int routedSize = FrameCodec.HEADER_LENGTH + routedFrame.size();
+
+      System.out.printf("%d values: %d bytes with ID string, %d bytes routed%n", values.length, stringFrame.size(), routedSize);
+      Assertions.assertTrue(routedSize < stringFrame.size() - id.length() + 2);
+    }
+  }
+
+  @Test
+  public void streamBodyRoundTrip() throws Exception {
+    byte[] content = new byte[3 * FrameCodec.CHUNK_LENGTH + 17];
+    new Random(7).nextBytes(content);
+    FrameCodec writer = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, true);
+    writer.writeObject(new DataPackage("UPLOAD", "file.bin").setBody(StreamBody.of(new ByteArrayInputStream(content))));
+    writer.writeObject(new DataPackage("NEXT", 2));
+
+    // stream data frame, four chunks and the end of the body
+    byte[] frames = written.toByteArray();
+    Assertions.assertEquals(FrameCodec.TYPE_STREAM_DATA, FrameCodec.getType(frames, 0));
+    Assertions.assertEquals(FrameCodec.TYPE_CHUNK,
+        FrameCodec.getType(frames, FrameCodec.HEADER_LENGTH + FrameCodec.readPayloadLength(frames, 0)));
+
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(frames), new ByteArrayOutputStream(), true);
+    DataPackage upload = (DataPackage) reader.readObject();
+    Assertions.assertEquals("file.bin", upload.getString(0));
+    Assertions.assertEquals(StreamBody.UNKNOWN_LENGTH, upload.getBody().getLength());
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    Assertions.assertEquals(content.length, upload.getBody().transferTo(received));
+    Assertions.assertArrayEquals(content, received.toByteArray());
+    Assertions.assertEquals(2, ((DataPackage) reader.readObject()).getInt(0));
+  }
+
+  @Test
+  public void unreadBodyIsSkipped() throws Exception {
+    FrameCodec writer = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, true);
+    byte[] content = new byte[FrameCodec.CHUNK_LENGTH + 1];
+    writer.writeObject(new DataPackage("UPLOAD").setBody(StreamBody.of(new ByteArrayInputStream(content), content.length)));
+    writer.writeObject(new DataPackage("NEXT", 2));
+
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(written.toByteArray()), new ByteArrayOutputStream(), true);
+    DataPackage upload = (DataPackage) reader.readObject();
+    Assertions.assertEquals(content.length, upload.getBody().getLength());
+    Assertions.assertEquals(0, upload.getBody().getInputStream().read());
+    Assertions.assertEquals(2, ((DataPackage) reader.readObject()).getInt(0));
+    Assertions.assertThrows(IOException.class, () -> upload.getBody().getInputStream().read());
+  }
+
+  @Test
+  public void abortedBody() throws Exception {
+    InputStream failing = new InputStream() {
+      private int remaining = 1000;
+
+      @Override
+      public int read() throws IOException {
+        if (remaining-- <= 0) {
+          throw new IOException("disk failure");
+        }
+        return 1;
+      }
+    };
+    FrameCodec writer = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, true);
+    Assertions.assertThrows(IOException.class,
+        () -> writer.writeObject(new DataPackage("UPLOAD").setBody(StreamBody.of(failing))));
+    // a body which is shorter than its length is aborted as well
+    Assertions.assertThrows(IOException.class,
+        () -> writer.writeObject(new DataPackage("UPLOAD").setBody(StreamBody.of(new ByteArrayInputStream(new byte[5]), 6))));
+    writer.writeObject(new DataPackage("NEXT", 2));
+
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(written.toByteArray()), new ByteArrayOutputStream(), true);
+    StreamBody first = ((DataPackage) reader.readObject()).getBody();
+    Assertions.assertThrows(IOException.class, () -> first.transferTo(new ByteArrayOutputStream()));
+    reader.readObject();
+    Assertions.assertEquals(2, ((DataPackage) reader.readObject()).getInt(0));
+  }
+
+  @Test
+  public void bodyRequiresFramedProtocol() {
+    FrameCodec legacy = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, false);
+    DataPackage upload = new DataPackage("UPLOAD").setBody(StreamBody.of(new ByteArrayInputStream(new byte[1])));
+
+    Assertions.assertThrows(IOException.class, () -> legacy.writeObject(upload));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new EncodedMessage(upload));
+  }
+
+  /**
+   * @return handshake frame of a client which requests numeric routes
+   */
+  @Test
+  public void negotiateCompression() throws Exception {
+    byte[] request = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, Compression.LZ4.getFeatures()),
+        ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.getBytes());
+    ByteArrayOutputStream serverOutput = new ByteArrayOutputStream();
+    FrameCodec server = new FrameCodec(new ByteArrayInputStream(request), serverOutput, true);
+    server.setCompressionAccepted(true);
+    Assertions.assertEquals(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE, server.acceptHandshake());
+    Assertions.assertEquals(Compression.LZ4, server.getCompression());
+
+    FrameCodec client = new FrameCodec(new ByteArrayInputStream(serverOutput.toByteArray()), written, true);
+    client.setCompression(Compression.LZ4);
+    Assertions.assertTrue(client.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE));
+    Assertions.assertEquals(Compression.LZ4, client.getCompression());
+
+    char[] text = new char[FrameCodec.CHUNK_LENGTH * 3];
+    Arrays.fill(text, 'x');
+    byte[] body = new String(text).getBytes();
+    written.reset();
+    client.writeObject(new DataPackage("BIG", new String(text)));
+    client.writeObject(new DataPackage("SMALL", 1));
+    client.writeObject(new DataPackage("BODY").setBody(StreamBody.of(new ByteArrayInputStream(body))));
+    byte[] frames = written.toByteArray();
+    Assertions.assertEquals(FrameCodec.TYPE_COMPRESSED, FrameCodec.getType(frames, 0));
+    Assertions.assertTrue(frames.length < body.length / 10, frames.length + " bytes");
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(request);
+    output.write(frames);
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(output.toByteArray()), new ByteArrayOutputStream(), true);
+    reader.setCompressionAccepted(true);
+    reader.acceptHandshake();
+    Assertions.assertEquals(new String(text), ((DataPackage) reader.readObject()).getObject(0));
+    Assertions.assertEquals(1, ((DataPackage) reader.readObject()).getInt(0));
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    Assertions.assertEquals(body.length, ((DataPackage) reader.readObject()).getBody().transferTo(received));
+    Assertions.assertArrayEquals(body, received.toByteArray());
+  }
+
+  @Test
+  public void releaseCompression() throws Exception {
+    byte[] request = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, Compression.DEFLATE.getFeatures()),
+        ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.getBytes());
+    FrameCodec server = new FrameCodec(new ByteArrayInputStream(request), written, true);
+    server.setCompressionAccepted(true);
+    server.setCompressionThreshold(0);
+    server.acceptHandshake();
+    Assertions.assertEquals(Compression.DEFLATE, server.getCompression());
+
+    server.releaseCompression();
+    Assertions.assertEquals(Compression.NONE, server.getCompression());
+    char[] text = new char[1000];
+    Arrays.fill(text, 'x');
+    written.reset();
+    server.writeObject(new DataPackage("BIG", new String(text)));
+    Assertions.assertNotEquals(FrameCodec.TYPE_COMPRESSED, FrameCodec.getType(written.toByteArray(), 0));
+  }
+
+  @Test
+  public void maxPayloadLengthOfDecompressedFrame() throws Exception {
+    byte[] request = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, Compression.LZ4.getFeatures()),
+        ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.getBytes());
+    ByteArrayOutputStream serverOutput = new ByteArrayOutputStream();
+    FrameCodec server = new FrameCodec(new ByteArrayInputStream(request), serverOutput, true);
+    server.setCompressionAccepted(true);
+    server.acceptHandshake();
+    FrameCodec client = new FrameCodec(new ByteArrayInputStream(serverOutput.toByteArray()), written, true);
+    client.setCompression(Compression.LZ4);
+    Assertions.assertTrue(client.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE));
+
+    written.reset();
+    written.write(request);
+    client.writeObject(new DataPackage("BIG", new String(new char[100_000])));
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(written.toByteArray()), new ByteArrayOutputStream(), true);
+    reader.setCompressionAccepted(true);
+    reader.setMaxPayloadLength(10_000);
+    reader.acceptHandshake();
+    Assertions.assertThrows(StreamCorruptedException.class, reader::readObject);
+  }
+
+  @Test
+  public void serverWithoutCompressionIgnoresFeature() throws Exception {
+    byte[] request = FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, Compression.DEFLATE.getFeatures()),
+        ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.getBytes());
+    ByteArrayOutputStream serverOutput = new ByteArrayOutputStream();
+    FrameCodec server = new FrameCodec(new ByteArrayInputStream(request), serverOutput, true);
+    Assertions.assertEquals(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE, server.acceptHandshake());
+    Assertions.assertEquals(Compression.NONE, server.getCompression());
+
+    FrameCodec client = new FrameCodec(new ByteArrayInputStream(serverOutput.toByteArray()), written, true);
+    client.setCompression(Compression.DEFLATE);
+    Assertions.assertTrue(client.performHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE));
+    Assertions.assertEquals(Compression.NONE, client.getCompression());
+
+    written.reset();
+    client.writeObject(new DataPackage("BIG", new String(new char[10_000])));
+    Assertions.assertEquals(FrameCodec.TYPE_DATA, FrameCodec.getType(written.toByteArray(), 0));
+  }
+
+  private static byte[] routeRequest() {
+    byte flags = FrameCodec.flags(FrameCodec.TYPE_HANDSHAKE, FrameCodec.FEATURE_ROUTES);
+    return FrameCodec.encodeFrame(flags, ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE.getBytes());
+  }
+
+  private void assertRoundTrip(boolean framed) throws Exception {
+    FrameCodec writer = new FrameCodec(new ByteArrayInputStream(new byte[0]), written, framed);
+    writer.writeHandshake(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE);
+    writer.writeObject(new DataPackage("FIRST", 1, "one"));
+    writer.writeObject(new DataPackage("SECOND", 2L));
+
+    ByteArrayOutputStream answer = new ByteArrayOutputStream();
+    FrameCodec reader = new FrameCodec(new ByteArrayInputStream(written.toByteArray()), answer, framed);
+    Assertions.assertEquals(ConnectionUtils.HANDSHAKE_REQUEST_KEEP_ALIVE, reader.acceptHandshake());
+    Assertions.assertEquals("one", ((DataPackage) reader.readObject()).getObject(1));
+    Assertions.assertEquals(2L, ((DataPackage) reader.readObject()).getObject(0));
+
+    FrameCodec client = new FrameCodec(new ByteArrayInputStream(answer.toByteArray()), new ByteArrayOutputStream(), framed);
+    Assertions.assertEquals(ConnectionUtils.HANDSHAKE_ACCEPTED, client.readHandshake());
+  }
+
+}
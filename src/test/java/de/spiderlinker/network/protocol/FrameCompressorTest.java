@@ -0,0 +1,159 @@
+package de.spiderlinker.network.protocol;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class FrameCompressorTest {
+
+  @Test
+  public void roundTripDeflate() throws Exception {
+    assertRoundTrip(Compression.DEFLATE);
+  }
+
+  @Test
+  public void roundTripLz4() throws Exception {
+    assertRoundTrip(Compression.LZ4);
+  }
+
+  @Test
+  public void lz4EdgeCases() throws Exception {
+    Lz4Block lz4 = new Lz4Block();
+    byte[] longRun = new byte[70_000];
+    Arrays.fill(longRun, (byte) 'a');
+    byte[] random = new byte[5000];
+    new Random(3).nextBytes(random);
+    byte[] mixed = (text(2000) + new String(random, StandardCharsets.ISO_8859_1) + text(3000)).getBytes(StandardCharsets.ISO_8859_1);
+
+    for (byte[] input : new byte[][]{new byte[0], "a".getBytes(), "abcdabcdabcdab".getBytes(), longRun, random, mixed}) {
+      byte[] compressed = new byte[Lz4Block.maxCompressedLength(input.length) + 3];
+      int length = lz4.compress(input, 0, input.length, compressed, 3);
+      byte[] decompressed = new byte[input.length + 2];
+      Lz4Block.decompress(compressed, 3, length, decompressed, 2, input.length);
+      Assertions.assertArrayEquals(input, Arrays.copyOfRange(decompressed, 2, decompressed.length));
+    }
+  }
+
+  @Test
+  public void smallAndIncompressibleFramesAreNotCompressed() {
+    FrameCompressor compressor = new FrameCompressor(Compression.LZ4, 100);
+    byte[] small = frame(text(99).getBytes(StandardCharsets.UTF_8));
+    Assertions.assertSame(small, compressor.compress(small));
+
+    byte[] random = new byte[1000];
+    new Random(5).nextBytes(random);
+    byte[] incompressible = frame(random);
+    Assertions.assertSame(incompressible, compressor.compress(incompressible));
+  }
+
+  @Test
+  public void corruptedFrames() {
+    for (Compression compression : new Compression[]{Compression.DEFLATE, Compression.LZ4}) {
+      FrameCompressor compressor = new FrameCompressor(compression, 0);
+      byte[] compressed = compressor.compress(frame(text(1000).getBytes(StandardCharsets.UTF_8)));
+      int length = compressed.length - FrameCodec.HEADER_LENGTH;
+
+      // truncated
+      Assertions.assertThrows(StreamCorruptedException.class,
+          () -> compressor.decompress(compressed[3], compressed, FrameCodec.HEADER_LENGTH, length - 10));
+      // wrong length of the original frame
+      byte[] wrongLength = compressed.clone();
+      wrongLength[FrameCodec.HEADER_LENGTH + 3]++;
+      Assertions.assertThrows(StreamCorruptedException.class,
+          () -> compressor.decompress(wrongLength[3], wrongLength, FrameCodec.HEADER_LENGTH, length));
+      // other compression
+      byte flags = FrameCodec.flags(FrameCodec.TYPE_COMPRESSED, compression == Compression.LZ4 ? 1 : 2);
+      Assertions.assertThrows(StreamCorruptedException.class,
+          () -> compressor.decompress(flags, compressed, FrameCodec.HEADER_LENGTH, length));
+    }
+  }
+
+  @Test
+  public void closedCompressor() {
+    for (Compression compression : new Compression[]{Compression.DEFLATE, Compression.LZ4}) {
+      FrameCompressor compressor = new FrameCompressor(compression, 0);
+      byte[] frame = frame(text(1000).getBytes(StandardCharsets.UTF_8));
+      byte[] compressed = compressor.compress(frame);
+      compressor.close();
+      compressor.close();
+
+      Assertions.assertSame(frame, compressor.compress(frame));
+      IOException e = Assertions.assertThrows(IOException.class,
+          () -> compressor.decompress(compressed[3], compressed, FrameCodec.HEADER_LENGTH, compressed.length - FrameCodec.HEADER_LENGTH));
+      Assertions.assertFalse(e instanceof StreamCorruptedException);
+    }
+  }
+
+  /**
+   * Compares ratio and speed of the compressions for a repetitive text payload.
+   */
+  @Test
+  public void compareCompressions() throws Exception {
+    byte[] frame = frame(text(64 * 1024).getBytes(StandardCharsets.UTF_8));
+    for (Compression compression : new Compression[]{Compression.DEFLATE, Compression.LZ4}) {
+      FrameCompressor compressor = new FrameCompressor(compression, FrameCompressor.DEFAULT_THRESHOLD);
+      int length = 0;
+      for (int i = 0; i < 50; i++) {
+        length = compressor.compress(frame, 0, frame.length);
+      }
+      int rounds = 200;
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        compressor.compress(frame, 0, frame.length);
+      }
+      long compressNanos = (System.nanoTime() - start) / rounds;
+
+      byte[] compressed = Arrays.copyOf(compressor.getCompressed(), length);
+      start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        compressor.decompress(compressed[3], compressed, FrameCodec.HEADER_LENGTH, length - FrameCodec.HEADER_LENGTH);
+      }
+      long decompressNanos = (System.nanoTime() - start) / rounds;
+
+      System.out.printf("%s: %d -> %d bytes, compress %d us, decompress %d us%n", compression, frame.length, length,
+          compressNanos / 1000, decompressNanos / 1000);
+      Assertions.assertTrue(length < frame.length / 3, compression + " compressed to " + length);
+    }
+  }
+
+  private static void assertRoundTrip(Compression compression) throws Exception {
+    FrameCompressor sender = new FrameCompressor(compression, FrameCompressor.DEFAULT_THRESHOLD);
+    FrameCompressor receiver = new FrameCompressor(compression, FrameCompressor.DEFAULT_THRESHOLD);
+    // the buffers are reused, frames of different sizes must not see leftovers of previous frames
+    for (int size : new int[]{20_000, 600, 100_000, 1000}) {
+      byte[] frame = frame(text(size).getBytes(StandardCharsets.UTF_8));
+      byte[] compressed = sender.compress(frame);
+      Assertions.assertEquals(FrameCodec.TYPE_COMPRESSED, FrameCodec.getType(compressed, 0));
+      Assertions.assertEquals(compression.getId(), FrameCodec.getCodecId(compressed, 0));
+      Assertions.assertTrue(compressed.length < frame.length);
+
+      int payloadLength = receiver.decompress(compressed[3], compressed, FrameCodec.HEADER_LENGTH,
+          FrameCodec.readPayloadLength(compressed, 0));
+      Assertions.assertEquals(size, payloadLength);
+      Assertions.assertArrayEquals(frame, Arrays.copyOf(receiver.getDecompressed(), frame.length));
+    }
+  }
+
+  private static byte[] frame(byte[] payload) {
+    return FrameCodec.encodeFrame(FrameCodec.flags(FrameCodec.TYPE_DATA, 0), payload);
+  }
+
+  /**
+   * @return repetitive text like a log or a JSON document
+   */
+  private static String text(int length) {
+    StringBuilder text = new StringBuilder(length + 64);
+    Random random = new Random(length);
+    while (text.length() < length) {
+      text.append("{\"user\":\"user").append(random.nextInt(100)).append("\",\"action\":\"")
+          .append(random.nextBoolean() ? "login" : "logout").append("\",\"time\":").append(1700000000 + random.nextInt(1000)).append("}\n");
+    }
+    return text.substring(0, length);
+  }
+
+}
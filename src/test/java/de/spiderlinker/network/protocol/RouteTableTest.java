@@ -0,0 +1,62 @@
+package de.spiderlinker.network.protocol;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RouteTableTest {
+
+  @Test
+  public void extendKeepsRouteIds() {
+    RouteTable table = RouteTable.EMPTY.extend(Arrays.asList("LOGIN", "LOGOUT"));
+    RouteTable extended = table.extend(Arrays.asList("CHAT", "LOGIN"));
+
+    Assertions.assertEquals(0, extended.getRouteId("LOGIN"));
+    Assertions.assertEquals(1, extended.getRouteId("LOGOUT"));
+    Assertions.assertEquals(2, extended.getRouteId("CHAT"));
+    Assertions.assertEquals(RouteTable.NO_ROUTE, extended.getRouteId("UNKNOWN"));
+    Assertions.assertSame(extended, extended.extend(Collections.singleton("CHAT")), "Unchanged table must be reused");
+  }
+
+  @Test
+  public void encodeAndDecode() throws IOException {
+    RouteTable table = RouteTable.EMPTY.extend(Arrays.asList("LOGIN", "Ünïcödé", ""));
+
+    RouteTable decoded = RouteTable.decode(new ByteArrayInputStream(table.encode()));
+
+    Assertions.assertEquals(table.getNames(), decoded.getNames());
+    Assertions.assertEquals("Ünïcödé", decoded.getName(1));
+    Assertions.assertThrows(StreamCorruptedException.class, () -> decoded.getName(3));
+  }
+
+  @Test
+  public void incompleteTable() {
+    byte[] encoded = RouteTable.EMPTY.extend(Collections.singleton("LOGIN")).encode();
+
+    Assertions.assertThrows(EOFException.class,
+        () -> RouteTable.decode(new ByteArrayInputStream(encoded, 0, encoded.length - 1)));
+  }
+
+  @Test
+  public void varLongRoundTrip() throws IOException {
+    long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (long value : values) {
+      RouteTable.writeVarLong(bytes, value);
+    }
+
+    ByteArrayInputStream input = new ByteArrayInputStream(bytes.toByteArray());
+    for (long value : values) {
+      Assertions.assertEquals(value, RouteTable.readVarLong(input));
+    }
+    Assertions.assertEquals(34, bytes.size());
+  }
+
+}
@@ -0,0 +1,104 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.DataPackage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AccessLogTest {
+
+  private static final InetSocketAddress REMOTE = new InetSocketAddress("127.0.0.1", 50312);
+
+  private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void writesStructuredLines() {
+    AccessLog log = new AccessLog("access-log-test", 1, false, 16, lines::add);
+    log.start();
+    Assertions.assertTrue(log.isSampled());
+    Assertions.assertTrue(log.log(new DataPackage("ECHO", "secret"), 3, true, REMOTE, TimeUnit.MICROSECONDS.toNanos(117)));
+    Assertions.assertTrue(log.log(new DataPackage("UNKNOWN"), -1, false, REMOTE, 0));
+    log.stop();
+
+    Assertions.assertEquals(2, lines.size());
+    Assertions.assertEquals("id=ECHO route=3 handled=true remote=" + REMOTE + " latency=117us", lines.get(0));
+    Assertions.assertEquals("id=UNKNOWN route=-1 handled=false remote=" + REMOTE + " latency=0us", lines.get(1));
+  }
+
+  @Test
+  public void rendersPayloadOnlyIfEnabled() {
+    AccessLog log = new AccessLog("access-log-test", 1, true, 16, lines::add);
+    log.start();
+    log.log(new DataPackage("ECHO", "visible"), 0, true, REMOTE, 0);
+    log.stop();
+
+    Assertions.assertEquals(1, lines.size());
+    Assertions.assertTrue(lines.get(0).contains(" payload=") && lines.get(0).contains("visible"), lines.get(0));
+  }
+
+  @Test
+  public void dropsEntriesIfFull() {
+    // the thread of the log is not started, so no entry is written
+    AccessLog log = new AccessLog("access-log-test", 1, false, 4, lines::add);
+    for (int i = 0; i < 4; i++) {
+      Assertions.assertTrue(log.log(new DataPackage("ECHO"), 0, true, REMOTE, 0));
+    }
+    Assertions.assertFalse(log.log(new DataPackage("ECHO"), 0, true, REMOTE, 0));
+    Assertions.assertEquals(1, log.getDroppedEntries());
+
+    // the buffered entries are written when the log is stopped
+    log.start();
+    log.stop();
+    Assertions.assertEquals(4, lines.size());
+    Assertions.assertTrue(log.log(new DataPackage("ECHO"), 0, true, REMOTE, 0));
+  }
+
+  @Test
+  public void samplesMessages() {
+    AccessLog log = new AccessLog("access-log-test", 100, false, 16, lines::add);
+    int sampled = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (log.isSampled()) {
+        sampled++;
+      }
+    }
+    Assertions.assertTrue(sampled > 700 && sampled < 1300, "Sampled " + sampled);
+  }
+
+  @Test
+  public void concurrentProducers() throws InterruptedException {
+    AccessLog log = new AccessLog("access-log-test", 1, false, 1024, lines::add);
+    log.start();
+    List<Thread> producers = new ArrayList<>();
+    int[] buffered = new int[4];
+    for (int p = 0; p < buffered.length; p++) {
+      int producer = p;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          if (log.log(new DataPackage("ID" + producer), i, true, REMOTE, 0)) {
+            buffered[producer]++;
+          }
+        }
+      });
+      producers.add(thread);
+      thread.start();
+    }
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    log.stop();
+
+    int total = 0;
+    for (int count : buffered) {
+      total += count;
+    }
+    Assertions.assertEquals(total, lines.size());
+    Assertions.assertEquals(40_000 - total, log.getDroppedEntries());
+  }
+
+}
@@ -0,0 +1,150 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.Executable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HandlerRegistryTest {
+
+  private final HandlerRegistry registry = new HandlerRegistry();
+
+  private final Executable first  = (data, socket) -> {
+  };
+  private final Executable second = (data, socket) -> {
+  };
+  private final Executable third  = (data, socket) -> {
+  };
+
+  @Test
+  public void registerAndUnregister() {
+    Assertions.assertNull(registry.register("LOGIN", first));
+    Assertions.assertSame(first, registry.lookup("LOGIN"));
+
+    Assertions.assertSame(first, registry.register("LOGIN", second));
+    Assertions.assertSame(second, registry.lookup("LOGIN"));
+
+    Assertions.assertSame(second, registry.unregister("LOGIN"));
+    Assertions.assertNull(registry.lookup("LOGIN"));
+    Assertions.assertNull(registry.unregister("LOGIN"));
+    Assertions.assertEquals(3, registry.getVersion());
+  }
+
+  @Test
+  public void prefixRoutes() {
+    registry.register("*", first);
+    registry.register("user.*", second);
+    registry.register("user.admin.*", third);
+    registry.register("user.login", first);
+
+    Assertions.assertSame(first, registry.lookup("chat"));
+    Assertions.assertSame(second, registry.lookup("user.logout"));
+    Assertions.assertSame(third, registry.lookup("user.admin.delete"));
+    Assertions.assertSame(first, registry.lookup("user.login"), "Exact routes must win over prefix routes");
+    Assertions.assertNull(registry.lookup(null));
+  }
+
+  @Test
+  public void wildcardInsideRouteIsExact() {
+    registry.register("user.*.login", first);
+    registry.register("*", second);
+
+    Assertions.assertSame(first, registry.lookup("user.*.login"));
+    Assertions.assertSame(second, registry.lookup("user.admin.login"));
+  }
+
+  @Test
+  public void nullRoute() {
+    Assertions.assertNull(registry.lookup(null));
+    registry.register("*", second);
+    // data without id has no prefix
+    Assertions.assertNull(registry.lookup(null));
+
+    registry.register(null, first);
+    Assertions.assertSame(first, registry.lookup(null));
+    Assertions.assertSame(second, registry.lookup("null"));
+    Assertions.assertSame(first, registry.unregister(null));
+    Assertions.assertNull(registry.lookup(null));
+  }
+
+  @Test
+  public void swapWithExpectedVersion() {
+    registry.register("A", first);
+    long version = registry.getVersion();
+
+    Map<String, Executable> handlers = new HashMap<>();
+    handlers.put("B", second);
+    handlers.put("C.*", third);
+
+    registry.register("D", first);
+    Assertions.assertFalse(registry.swap(version, handlers), "Swap must fail after a concurrent change");
+    Assertions.assertSame(first, registry.lookup("A"));
+
+    Assertions.assertTrue(registry.swap(registry.getVersion(), handlers));
+    Assertions.assertNull(registry.lookup("A"));
+    Assertions.assertNull(registry.lookup("D"));
+    Assertions.assertSame(second, registry.lookup("B"));
+    Assertions.assertSame(third, registry.lookup("C.x"));
+    Assertions.assertEquals(handlers, registry.getRoutes());
+  }
+
+  @Test
+  public void replaceAll() {
+    registry.register("A", first);
+
+    long version = registry.replaceAll(Collections.singletonMap("B", second));
+
+    Assertions.assertEquals(registry.getVersion(), version);
+    Assertions.assertNull(registry.lookup("A"));
+    Assertions.assertSame(second, registry.lookup("B"));
+  }
+
+  /**
+   * Measures the lookup while another thread registers and unregisters routes.
+   * The stable routes must be found by every lookup.
+   */
+  @Test
+  public void lookupUnderRegistrationChurn() throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      registry.register("STABLE_" + i, first);
+    }
+    registry.register("PREFIX.*", second);
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong changes = new AtomicLong();
+    Thread churn = new Thread(() -> {
+      for (int i = 0; running.get(); i++) {
+        registry.register("CHURN_" + (i % 50), third);
+        registry.unregister("CHURN_" + ((i + 25) % 50));
+        changes.addAndGet(2);
+      }
+    });
+    churn.start();
+
+    String[] ids = {"STABLE_0", "STABLE_42", "STABLE_99", "PREFIX.value"};
+    long lookups = 0;
+    long start = System.nanoTime();
+    try {
+      while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500)) {
+        for (String id : ids) {
+          Assertions.assertNotNull(registry.lookup(id));
+          lookups++;
+        }
+      }
+    } finally {
+      running.set(false);
+      churn.join();
+    }
+
+    long duration = System.nanoTime() - start;
+    System.out.printf("%d lookups (%.1f ns/lookup) during %d registry changes%n",
+        lookups, (double) duration / lookups, changes.get());
+  }
+
+}
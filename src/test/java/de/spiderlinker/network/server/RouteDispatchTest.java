@@ -0,0 +1,91 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.data.DataPackage;
+import de.spiderlinker.network.data.Executable;
+import de.spiderlinker.network.protocol.RouteTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RouteDispatchTest {
+
+  private static final int ROUTES = 100;
+
+  private final ServerManager server = new ServerManager(24660) {
+  };
+
+  private final Executable first  = (data, socket) -> {
+  };
+  private final Executable second = (data, socket) -> {
+  };
+
+  @Test
+  public void routeIdsResolveRegisteredExecutables() {
+    server.registerMethod("A", first);
+    server.registerMethod("B.*", second);
+    RouteTable table = server.getRouteTable();
+    Assertions.assertEquals(1, table.size(), "Prefix routes must not be in the route table");
+
+    Assertions.assertSame(first, server.getExecutableForReceivedData(new DataPackage("A"), table.getRouteId("A")));
+
+    // the route ID stays valid after the executable was replaced or removed
+    server.registerMethod("A", second);
+    Assertions.assertSame(second, server.getExecutableForReceivedData(new DataPackage("A"), 0));
+    server.unregisterMethod("A");
+    Assertions.assertNull(server.getExecutableForReceivedData(new DataPackage("A"), 0));
+    server.registerMethod("B.*", first);
+    server.registerMethod("C", first);
+    Assertions.assertEquals(0, server.getRouteTable().getRouteId("A"));
+    Assertions.assertEquals(1, server.getRouteTable().getRouteId("C"));
+  }
+
+  @Test
+  public void routeTableIsCachedPerVersion() {
+    server.registerMethod("A", first);
+    RouteTable table = server.getRouteTable();
+
+    Assertions.assertSame(table, server.getRouteTable());
+    server.registerMethod("A", second);
+    Assertions.assertSame(table, server.getRouteTable(), "Table without new names must be reused");
+  }
+
+  /**
+   * Compares the dispatch by ID string (hash lookup of the registry) with the dispatch by route ID (array index).
+   */
+  @Test
+  public void compareDispatchLatency() {
+    for (int i = 0; i < ROUTES; i++) {
+      server.registerMethod("de.spiderlinker.route.MESSAGE_" + i, first);
+    }
+    server.registerMethod("de.spiderlinker.prefix.*", second);
+    RouteTable table = server.getRouteTable();
+
+    // received packages contain new strings, so the hash of the ID is not cached
+    DataPackage[] received = new DataPackage[ROUTES];
+    int[] routeIds = new int[ROUTES];
+    for (int i = 0; i < ROUTES; i++) {
+      received[i] = new DataPackage(new String(("de.spiderlinker.route.MESSAGE_" + i).toCharArray()));
+      routeIds[i] = table.getRouteId(received[i].getID());
+    }
+
+    for (int round = 0; round < 3; round++) {
+      long stringLookup = measure(received, null);
+      long routeLookup = measure(received, routeIds);
+      System.out.printf("%.1f ns per string lookup, %.1f ns per route ID lookup%n",
+          (double) stringLookup / ROUTES / 10000, (double) routeLookup / ROUTES / 10000);
+    }
+  }
+
+  private long measure(DataPackage[] received, int[] routeIds) {
+    long start = System.nanoTime();
+    for (int iteration = 0; iteration < 10000; iteration++) {
+      for (int i = 0; i < received.length; i++) {
+        int routeId = routeIds == null ? RouteTable.NO_ROUTE : routeIds[i];
+        Assertions.assertSame(first, server.getExecutableForReceivedData(received[i], routeId));
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+}
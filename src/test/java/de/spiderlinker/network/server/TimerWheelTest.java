@@ -0,0 +1,86 @@
+package de.spiderlinker.network.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimerWheelTest {
+
+  private static final int TIMEOUTS = 100_000;
+
+  private final TimerWheel wheel = new TimerWheel("timer-test", 10, 64);
+
+  @AfterEach
+  public void cleanUp() {
+    wheel.stop();
+  }
+
+  @Test
+  public void expiresAfterDeadline() throws InterruptedException {
+    wheel.start();
+    CountDownLatch expired = new CountDownLatch(1);
+    long start = System.nanoTime();
+    wheel.newTimeout(expired::countDown).expireAfter(TimeUnit.MILLISECONDS.toNanos(100));
+
+    Assertions.assertTrue(expired.await(5, TimeUnit.SECONDS));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    Assertions.assertTrue(elapsed >= 100 && elapsed < 1000, "Expired after " + elapsed + "ms");
+  }
+
+  @Test
+  public void deadlineBeyondRevolution() throws InterruptedException {
+    wheel.start();
+    CountDownLatch expired = new CountDownLatch(1);
+    long start = System.nanoTime();
+    // 64 buckets of 10 ms, so the timeout is checked in an earlier revolution first
+    wheel.newTimeout(expired::countDown).expireAfter(TimeUnit.MILLISECONDS.toNanos(1500));
+
+    Assertions.assertTrue(expired.await(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1500);
+  }
+
+  @Test
+  public void movedDeadlines() throws InterruptedException {
+    wheel.start();
+    AtomicInteger expired = new AtomicInteger();
+    TimerWheel.Timeout postponed = wheel.newTimeout(expired::incrementAndGet);
+    TimerWheel.Timeout cleared = wheel.newTimeout(expired::incrementAndGet);
+    TimerWheel.Timeout cancelled = wheel.newTimeout(expired::incrementAndGet);
+    CountDownLatch advanced = new CountDownLatch(1);
+    TimerWheel.Timeout earlier = wheel.newTimeout(advanced::countDown);
+
+    postponed.expireAfter(TimeUnit.MILLISECONDS.toNanos(50));
+    cleared.expireAfter(TimeUnit.MILLISECONDS.toNanos(50));
+    cancelled.expireAfter(TimeUnit.MILLISECONDS.toNanos(50));
+    earlier.expireAfter(TimeUnit.SECONDS.toNanos(60));
+
+    postponed.expireAfter(TimeUnit.SECONDS.toNanos(60));
+    cleared.clear();
+    cancelled.cancel();
+    earlier.expireAfter(TimeUnit.MILLISECONDS.toNanos(50));
+
+    Assertions.assertTrue(advanced.await(5, TimeUnit.SECONDS));
+    Thread.sleep(200);
+    Assertions.assertEquals(0, expired.get());
+  }
+
+  @Test
+  public void manyTimeouts() throws InterruptedException {
+    wheel.start();
+    CountDownLatch expired = new CountDownLatch(TIMEOUTS);
+    long start = System.nanoTime();
+    for (int i = 0; i < TIMEOUTS; i++) {
+      wheel.newTimeout(expired::countDown).expireAfter(TimeUnit.MILLISECONDS.toNanos(i % 500));
+    }
+    long scheduled = System.nanoTime() - start;
+
+    Assertions.assertTrue(expired.await(10, TimeUnit.SECONDS), expired.getCount() + " timeouts did not expire");
+    System.out.printf("Scheduled %d timeouts in %d ms, all expired after %d ms%n", TIMEOUTS,
+        TimeUnit.NANOSECONDS.toMillis(scheduled), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+}
@@ -0,0 +1,162 @@
+package de.spiderlinker.network.server;
+
+import de.spiderlinker.network.utils.ExecutorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class WorkerPoolTest {
+
+  private final CountDownLatch release  = new CountDownLatch(1);
+  private final List<String>   executed = new CopyOnWriteArrayList<>();
+  private final List<String>   rejected = new CopyOnWriteArrayList<>();
+
+  private WorkerPool pool;
+
+  @AfterEach
+  public void cleanUp() {
+    release.countDown();
+    pool.shutdown();
+  }
+
+  @Test
+  public void rejectWithBusyReply() throws InterruptedException {
+    pool = createSaturatedPool(RejectionPolicy.REJECT_WITH_BUSY_REPLY);
+
+    pool.execute(new TestTask("rejected"));
+
+    Assertions.assertEquals(1, rejected.size());
+    Assertions.assertEquals("rejected", rejected.get(0));
+    Assertions.assertEquals(1, pool.getStatistics().getRejectedTasks());
+    Assertions.assertEquals(1, pool.getStatistics().getQueueDepth());
+  }
+
+  @Test
+  public void callerRuns() throws InterruptedException {
+    pool = createSaturatedPool(RejectionPolicy.CALLER_RUNS);
+    WorkerPool saturatedPool = pool;
+    List<Thread> runners = new CopyOnWriteArrayList<>();
+    CountDownLatch handedOver = new CountDownLatch(1);
+
+    // the task handed over by this (non worker) thread is run by an overflow thread
+    pool.execute(new TestTask("overflow") {
+      @Override
+      public void run() {
+        runners.add(Thread.currentThread());
+        // a task handed over by a worker thread is run by the worker thread itself
+        saturatedPool.execute(new TestTask("caller") {
+          @Override
+          public void run() {
+            runners.add(Thread.currentThread());
+            super.run();
+          }
+        });
+        super.run();
+        handedOver.countDown();
+      }
+    });
+
+    Assertions.assertTrue(handedOver.await(5, TimeUnit.SECONDS));
+    Assertions.assertNotSame(Thread.currentThread(), runners.get(0));
+    Assertions.assertSame(runners.get(0), runners.get(1));
+    Assertions.assertTrue(rejected.isEmpty());
+    Assertions.assertTrue(executed.contains("caller") && executed.contains("overflow"));
+    Assertions.assertEquals(0, pool.getStatistics().getRejectedTasks());
+    Assertions.assertEquals(2, pool.getStatistics().getCallerRunsTasks());
+  }
+
+  @Test
+  public void callerRunsOverflowIsLimited() throws InterruptedException {
+    pool = createSaturatedPool(RejectionPolicy.CALLER_RUNS);
+    CountDownLatch started = new CountDownLatch(1);
+    pool.execute(new TestTask("overflow") {
+      @Override
+      public void run() {
+        started.countDown();
+        awaitRelease();
+        super.run();
+      }
+    });
+    Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // the only overflow thread is busy as well
+    pool.execute(new TestTask("rejected"));
+    Assertions.assertEquals(Collections.singletonList("rejected"), rejected);
+    Assertions.assertEquals(1, pool.getStatistics().getRejectedTasks());
+    Assertions.assertEquals(1, pool.getStatistics().getCallerRunsTasks());
+  }
+
+  @Test
+  public void dropOldest() throws InterruptedException {
+    pool = createSaturatedPool(RejectionPolicy.DROP_OLDEST);
+
+    pool.execute(new TestTask("newest"));
+    Assertions.assertEquals(1, rejected.size());
+    Assertions.assertEquals("queued", rejected.get(0));
+
+    release.countDown();
+    pool.shutdown();
+    Assertions.assertTrue(awaitExecuted("newest"));
+    Assertions.assertFalse(executed.contains("queued"));
+  }
+
+  /**
+   * Creates a pool with a single thread and a queue of one element which are both occupied.
+   */
+  private WorkerPool createSaturatedPool(RejectionPolicy policy) throws InterruptedException {
+    WorkerPool saturatedPool = new WorkerPool(1, 1, 1, policy, ExecutorFactory.newThreadFactory("test-worker", false));
+    CountDownLatch started = new CountDownLatch(1);
+    saturatedPool.execute(new TestTask("blocking") {
+      @Override
+      public void run() {
+        started.countDown();
+        awaitRelease();
+        super.run();
+      }
+    });
+    Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+    saturatedPool.execute(new TestTask("queued"));
+    return saturatedPool;
+  }
+
+  private boolean awaitExecuted(String name) throws InterruptedException {
+    for (int i = 0; i < 100 && !executed.contains(name); i++) {
+      Thread.sleep(20);
+    }
+    return executed.contains(name);
+  }
+
+  private void awaitRelease() {
+    try {
+      release.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private class TestTask implements DispatchTask {
+
+    private final String name;
+
+    TestTask(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void run() {
+      executed.add(name);
+    }
+
+    @Override
+    public void reject() {
+      rejected.add(name);
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+package de.spiderlinker.network.utils;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.io.Checksum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ChunkedFileTransferTest extends AbstractTest {
+
+  private static final int SERVER_PORT = 24630;
+  private static final int CHUNK_SIZE  = 1024 * 1024;
+  // not a multiple of the chunk size, so the last chunk is shorter
+  private static final int FILE_SIZE   = 20 * CHUNK_SIZE + 12345;
+
+  private final ExecutorService receivers = Executors.newCachedThreadPool();
+  private final AtomicLong      received  = new AtomicLong();
+
+  private File source;
+  private File destination;
+
+  @BeforeEach
+  public void createFiles() throws IOException {
+    source = File.createTempFile("chunked-source", ".bin");
+    destination = File.createTempFile("chunked-destination", ".bin");
+    destination.delete();
+
+    byte[] data = new byte[FILE_SIZE];
+    new Random(42).nextBytes(data);
+    try (RandomAccessFile file = new RandomAccessFile(source, "rw")) {
+      file.write(data);
+    }
+  }
+
+  @AfterEach
+  public void shutdown() {
+    receivers.shutdownNow();
+    source.delete();
+    destination.delete();
+  }
+
+  @Test
+  public void testSingleConnection() throws Exception {
+    transfer(SERVER_PORT, 1, 0);
+
+    assertFilesEqual();
+    Assertions.assertEquals(FILE_SIZE, received.get());
+  }
+
+  @Test
+  public void testParallelConnections() throws Exception {
+    transfer(SERVER_PORT + 1, 4, 0);
+
+    assertFilesEqual();
+    Assertions.assertEquals(FILE_SIZE, received.get());
+  }
+
+  @Test
+  public void testResumeWithMissingChunks() throws Exception {
+    // the first 8 chunks were already transferred, chunk 3 is corrupted
+    try (RandomAccessFile sourceFile = new RandomAccessFile(source, "r");
+         RandomAccessFile destinationFile = new RandomAccessFile(destination, "rw")) {
+      byte[] transferred = new byte[8 * CHUNK_SIZE];
+      sourceFile.readFully(transferred);
+      transferred[3 * CHUNK_SIZE + 17]++;
+      destinationFile.write(transferred);
+    }
+
+    transfer(SERVER_PORT + 2, 1, 0);
+
+    assertFilesEqual();
+    Assertions.assertEquals(FILE_SIZE - 3 * CHUNK_SIZE, received.get(), "Only the chunks from the corrupted one must be sent");
+  }
+
+  @Test
+  public void testResumeAfterFailedAttempt() throws Exception {
+    // the receiver drops the first connection, the second attempt has to succeed
+    transfer(SERVER_PORT + 3, 1, 1);
+
+    assertFilesEqual();
+  }
+
+  @Test
+  public void testReplaceLongerFile() throws Exception {
+    try (RandomAccessFile destinationFile = new RandomAccessFile(destination, "rw")) {
+      destinationFile.setLength(FILE_SIZE * 2L);
+    }
+
+    transfer(SERVER_PORT + 4, 2, 0);
+
+    assertFilesEqual();
+  }
+
+  @Test
+  public void testAllAttemptsFail() throws Exception {
+    try (ServerSocket server = SocketUtils.createChannelServerSocket(SERVER_PORT + 5, 10, null)) {
+      receivers.execute(() -> dropConnections(server, 2));
+
+      ChunkedFileTransfer transfer = new ChunkedFileTransfer();
+      transfer.setMaxAttempts(2);
+      Assertions.assertThrows(IOException.class, () -> transfer.send("localhost", SERVER_PORT + 5, source));
+    }
+  }
+
+  private void transfer(int port, int connections, int droppedConnections) throws Exception {
+    try (ServerSocket server = SocketUtils.createChannelServerSocket(port, 10, null)) {
+      Future<?> receiver = receivers.submit(() -> {
+        dropConnections(server, droppedConnections);
+        List<Future<Long>> ranges = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+          Socket socket = server.accept();
+          ranges.add(receivers.submit(() -> {
+            try (Socket sender = socket) {
+              return ChunkedFileTransfer.receive(sender, destination);
+            }
+          }));
+        }
+        for (Future<Long> range : ranges) {
+          received.addAndGet(range.get());
+        }
+        return null;
+      });
+
+      ChunkedFileTransfer transfer = new ChunkedFileTransfer();
+      transfer.setChunkSize(CHUNK_SIZE);
+      transfer.setConnections(connections);
+      transfer.send("localhost", port, source);
+      receiver.get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private static void dropConnections(ServerSocket server, int connections) {
+    try {
+      for (int i = 0; i < connections; i++) {
+        server.accept().close();
+      }
+    } catch (IOException e) {
+      // server closed
+    }
+  }
+
+  private void assertFilesEqual() throws IOException {
+    Assertions.assertEquals(source.length(), destination.length());
+    Assertions.assertEquals(Checksum.getCRC32Checksum(source.getPath()), Checksum.getCRC32Checksum(destination.getPath()));
+  }
+
+}
@@ -0,0 +1,159 @@
+package de.spiderlinker.network.utils;
+
+import de.spiderlinker.AbstractTest;
+import de.spiderlinker.io.Checksum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers files over loopback and compares the throughput of the channel based transfer
+ * with the stream based transfer of {@link ConnectionUtils#writeFile(Socket, File)}.
+ */
+public class FileTransferTest extends AbstractTest {
+
+  private static final int SERVER_PORT = 24620;
+  private static final int FILE_SIZE   = 64 * 1024 * 1024;
+  private static final int TRANSFERS   = 3;
+
+  private File source;
+  private File destination;
+
+  @BeforeEach
+  public void createFiles() throws IOException {
+    source = File.createTempFile("transfer-source", ".bin");
+    destination = File.createTempFile("transfer-destination", ".bin");
+
+    byte[] block = new byte[1024 * 1024];
+    new Random(42).nextBytes(block);
+    try (RandomAccessFile file = new RandomAccessFile(source, "rw")) {
+      for (int written = 0; written < FILE_SIZE; written += block.length) {
+        file.write(block);
+      }
+    }
+  }
+
+  @AfterEach
+  public void deleteFiles() {
+    source.delete();
+    destination.delete();
+  }
+
+  @Test
+  public void testMultipleFilesOverSameConnection() throws Exception {
+    try (ServerSocket server = SocketUtils.createChannelServerSocket(SERVER_PORT, 1, null)) {
+      CompletableFuture<Long> received = receiveFiles(server, TRANSFERS);
+
+      long start = System.nanoTime();
+      try (Socket socket = SocketUtils.createChannelSocket("localhost", SERVER_PORT, 0)) {
+        for (int i = 0; i < TRANSFERS; i++) {
+          ConnectionUtils.sendFile(socket, source);
+        }
+        Assertions.assertEquals((long) FILE_SIZE * TRANSFERS, (long) received.get(30, TimeUnit.SECONDS));
+      }
+      printThroughput("sendFile (channel)", start, (long) FILE_SIZE * TRANSFERS);
+    }
+
+    Assertions.assertEquals(Checksum.getCRC32Checksum(source.getPath()), Checksum.getCRC32Checksum(destination.getPath()));
+  }
+
+  @Test
+  public void testSendFileWithoutChannel() throws Exception {
+    try (ServerSocket server = SocketUtils.createServerSocket(SERVER_PORT + 1)) {
+      CompletableFuture<Long> received = receiveFiles(server, TRANSFERS);
+
+      long start = System.nanoTime();
+      try (Socket socket = SocketUtils.createSocket("localhost", SERVER_PORT + 1)) {
+        for (int i = 0; i < TRANSFERS; i++) {
+          ConnectionUtils.sendFile(socket, source);
+        }
+        Assertions.assertEquals((long) FILE_SIZE * TRANSFERS, (long) received.get(30, TimeUnit.SECONDS));
+      }
+      printThroughput("sendFile (stream)", start, (long) FILE_SIZE * TRANSFERS);
+    }
+
+    Assertions.assertEquals(Checksum.getCRC32Checksum(source.getPath()), Checksum.getCRC32Checksum(destination.getPath()));
+  }
+
+  @Test
+  public void testWriteFileThroughput() throws Exception {
+    try (ServerSocket server = SocketUtils.createServerSocket(SERVER_PORT + 2)) {
+      CompletableFuture<Void> received = CompletableFuture.runAsync(() -> {
+        try (Socket client = server.accept()) {
+          ConnectionUtils.readFile(client, destination);
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+
+      long start = System.nanoTime();
+      try (Socket socket = SocketUtils.createSocket("localhost", SERVER_PORT + 2)) {
+        ConnectionUtils.writeFile(socket, source);
+        received.get(30, TimeUnit.SECONDS);
+      }
+      printThroughput("writeFile (8 KB buffer)", start, FILE_SIZE);
+    }
+
+    Assertions.assertEquals(FILE_SIZE, Files.size(destination.toPath()));
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    File empty = File.createTempFile("transfer-empty", ".bin");
+    try (ServerSocket server = SocketUtils.createChannelServerSocket(SERVER_PORT + 3, 1, null)) {
+      CompletableFuture<Long> received = receiveFiles(server, 1);
+      try (Socket socket = SocketUtils.createChannelSocket("localhost", SERVER_PORT + 3, 0)) {
+        ConnectionUtils.sendFile(socket, empty);
+        Assertions.assertEquals(0L, (long) received.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      empty.delete();
+    }
+  }
+
+  @Test
+  public void testConnectionClosedDuringTransfer() throws Exception {
+    try (ServerSocket server = SocketUtils.createChannelServerSocket(SERVER_PORT + 4, 1, null)) {
+      CompletableFuture<Long> received = receiveFiles(server, 1);
+      try (Socket socket = SocketUtils.createChannelSocket("localhost", SERVER_PORT + 4, 0)) {
+        // announce more bytes than are sent
+        socket.getOutputStream().write(new byte[]{0, 0, 0, 0, 0, 0, 0, 100, 1, 2, 3});
+      }
+      Assertions.assertThrows(Exception.class, () -> received.get(5, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * Accepts one connection and receives the given number of files over it.
+   */
+  private CompletableFuture<Long> receiveFiles(ServerSocket server, int files) {
+    return CompletableFuture.supplyAsync(() -> {
+      long total = 0;
+      try (Socket client = server.accept()) {
+        for (int i = 0; i < files; i++) {
+          total += ConnectionUtils.receiveFile(client, destination);
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      return total;
+    });
+  }
+
+  private static void printThroughput(String method, long start, long bytes) {
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%s: %d MB in %.0f ms (%.0f MB/s)%n", method, bytes >> 20, seconds * 1000, (bytes >> 20) / seconds);
+  }
+
+}